@@ -40,6 +40,12 @@ public class ConnectionConfigFactory {
 
     private int maxThreads = 0;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private int maxCommandLength = DefaultConnectionConfig.DEFAULT_MAX_COMMAND_LENGTH;
+
     /**
      * Create a connection configuration instances based on the configuration on this factory
      * @return The {@link ConnectionConfig} instance
@@ -47,7 +53,8 @@ public class ConnectionConfigFactory {
     public ConnectionConfig createConnectionConfig() {
         return new DefaultConnectionConfig(anonymousLoginEnabled,
                 loginFailureDelay, maxLogins, maxAnonymousLogins,
-                maxLoginFailures, maxThreads);
+                maxLoginFailures, maxThreads, maxDownloadRate, maxUploadRate,
+                maxCommandLength);
     }
 
     /**
@@ -158,4 +165,58 @@ public class ConnectionConfigFactory {
         this.loginFailureDelay = loginFailureDelay;
     }
 
+    /**
+     * Get the maximum number of bytes per second downloaded by all sessions
+     * of the server together
+     * @return The maximum download rate, 0 if not limited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second downloaded by all sessions
+     * of the server together
+     * @param maxDownloadRate The maximum download rate, 0 to disable the limit
+     */
+    public void setMaxDownloadRate(final int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * Get the maximum number of bytes per second uploaded by all sessions
+     * of the server together
+     * @return The maximum upload rate, 0 if not limited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second uploaded by all sessions
+     * of the server together
+     * @param maxUploadRate The maximum upload rate, 0 to disable the limit
+     */
+    public void setMaxUploadRate(final int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * Get the maximum length of a command line sent by the client
+     * @return The maximum command length in bytes
+     */
+    public int getMaxCommandLength() {
+        return maxCommandLength;
+    }
+
+    /**
+     * Set the maximum length of a command line sent by the client, including
+     * the line ending. Longer commands are discarded and answered with an
+     * error, which also limits the memory a client can make the server
+     * buffer. Defaults to 1024 bytes.
+     * @param maxCommandLength The maximum command length in bytes
+     */
+    public void setMaxCommandLength(final int maxCommandLength) {
+        this.maxCommandLength = maxCommandLength;
+    }
 }
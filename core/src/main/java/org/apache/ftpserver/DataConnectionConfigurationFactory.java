@@ -51,6 +51,44 @@ public class DataConnectionConfigurationFactory {
     private String passiveExternalAddress;
     private PassivePorts passivePorts = new PassivePorts(Collections.<Integer>emptySet(), true);
     private boolean implicitSsl;
+    private boolean nonBlocking = false;
+
+    private int transferBufferSize = 32 * 1024;
+
+    private int maxPooledBuffers = 64;
+
+    private int sendBufferSize = 0;
+
+    private int receiveBufferSize = 0;
+
+    private boolean tcpNoDelay = false;
+
+    private int trafficClass = -1;
+
+    private boolean autoTuneBufferSizes = false;
+
+    // 100 Mbit/s
+    private int autoTuneTargetRate = 12500000;
+
+    private int maxAutoTunedBufferSize = 4 * 1024 * 1024;
+
+    private int compressionLevel = 6;
+
+    private int maxCompressionLevel = 9;
+
+    private int compressionBufferSize = 32 * 1024;
+
+    private UploadDurability uploadDurability = UploadDurability.NONE;
+
+    private boolean pipelinedUploads = false;
+
+    private int uploadPipelineDepth = 8;
+
+    private boolean sharedPassivePorts = false;
+
+    private int passiveSocketPoolSize = 0;
+
+    private int activeConnectTimeout = 30;
 
     /**
      * Create a {@link DataConnectionConfiguration} instance based on the 
@@ -59,11 +97,21 @@ public class DataConnectionConfigurationFactory {
      */
     public DataConnectionConfiguration createDataConnectionConfiguration() {
     	checkValidAddresses();
+        if (pipelinedUploads && nonBlocking) {
+            log.warn("Pipelined uploads are not used by non-blocking data connections");
+        }
         return new DefaultDataConnectionConfiguration(idleTime,
                 ssl, activeEnabled, activeIpCheck,
                 activeLocalAddress, activeLocalPort,
                 passiveAddress, passivePorts,
-                passiveExternalAddress, implicitSsl);
+                passiveExternalAddress, implicitSsl, nonBlocking,
+                transferBufferSize, maxPooledBuffers, sendBufferSize,
+                receiveBufferSize, tcpNoDelay, trafficClass,
+                autoTuneBufferSizes, autoTuneTargetRate,
+                maxAutoTunedBufferSize, compressionLevel, maxCompressionLevel,
+                compressionBufferSize, uploadDurability, pipelinedUploads,
+                uploadPipelineDepth, sharedPassivePorts, passiveSocketPoolSize,
+                activeConnectTimeout);
     }
     /*
      * (Non-Javadoc)
@@ -160,6 +208,27 @@ public class DataConnectionConfigurationFactory {
         this.activeLocalPort = activeLocalPort;
     }
 
+    /**
+     * Get the maximum time to wait for an active data connection to be
+     * connected
+     * @return The connect timeout in seconds
+     */
+    public int getActiveConnectTimeout() {
+        return activeConnectTimeout;
+    }
+
+    /**
+     * Set the maximum time to wait for an active data connection to be
+     * connected. The connect is started without blocking as soon as the
+     * PORT or EPRT command is received, and the transfer fails if the client
+     * has not accepted the connection in time. Defaults to 30 seconds.
+     * @param activeConnectTimeout The connect timeout in seconds, 0 for the
+     *   operating system default
+     */
+    public void setActiveConnectTimeout(int activeConnectTimeout) {
+        this.activeConnectTimeout = activeConnectTimeout;
+    }
+
     /**
      * Get passive host.
      * @return The address used for passive data connections
@@ -264,6 +333,53 @@ public class DataConnectionConfigurationFactory {
         notify();
     }
 
+    /**
+     * Are the passive ports shared?
+     * @return true if the passive ports are shared
+     */
+    public boolean isSharedPassivePorts() {
+        return sharedPassivePorts;
+    }
+
+    /**
+     * Set whether the passive ports should be shared. Each shared passive
+     * port is bound once, when first used, and accepts the data connections
+     * of all sessions. Every accepted connection is matched to the waiting
+     * PASV from the same client address, connections from other addresses
+     * are closed. Only one PASV of each client address waits on a shared
+     * port at a time. When every shared port already has a waiting PASV from
+     * the client address, the PASV is refused. Only a few ports are then needed for any
+     * number of concurrent transfers, and a waiting PASV does not hold a
+     * socket of its own. Shared passive ports always use blocking data
+     * connections.
+     * Defaults to false.
+     * @param sharedPassivePorts true to share the passive ports
+     */
+    public void setSharedPassivePorts(boolean sharedPassivePorts) {
+        this.sharedPassivePorts = sharedPassivePorts;
+    }
+
+    /**
+     * Get the number of passive sockets to keep bound in advance
+     * @return The number of pooled passive sockets, 0 if not pooled
+     */
+    public int getPassiveSocketPoolSize() {
+        return passiveSocketPoolSize;
+    }
+
+    /**
+     * Set the number of passive sockets to keep bound in advance. A PASV
+     * then takes an already bound socket from the pool instead of reserving
+     * and binding a port itself, and the pool is refilled in the
+     * background. Pooled sockets hold their passive ports while waiting, so
+     * the pool should be well below the number of passive ports. Not used
+     * with shared passive ports. Defaults to 0, no pooling.
+     * @param passiveSocketPoolSize The number of pooled passive sockets
+     */
+    public void setPassiveSocketPoolSize(int passiveSocketPoolSize) {
+        this.passiveSocketPoolSize = passiveSocketPoolSize;
+    }
+
     /**
      * Get the {@link SslConfiguration} to be used by data connections
      * @return The {@link SslConfiguration} used by data connections
@@ -294,4 +410,335 @@ public class DataConnectionConfigurationFactory {
     public void setImplicitSsl(boolean implicitSsl) {
         this.implicitSsl = implicitSsl;
     }
+
+    /**
+     * @return True if data transfers use the non-blocking data connection
+     *         engine
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Set whether data transfers should use the non-blocking data connection
+     * engine. Non-blocking transfers are driven by a selector and do not hold
+     * on to a thread while waiting for the client, so the number of
+     * concurrent transfers is no longer limited by the number of threads.
+     * SSL secured data connections are always blocking.
+     * @param nonBlocking True if data transfers should be non-blocking
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * Get the size of the buffers used for data transfers.
+     * @return The buffer size in bytes
+     */
+    public int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    /**
+     * Set the size of the buffers used for data transfers. Larger buffers
+     * mean fewer reads and writes per transfer, at the cost of memory for
+     * every concurrent transfer. Defaults to 32 kB.
+     * @param transferBufferSize The buffer size in bytes
+     */
+    public void setTransferBufferSize(int transferBufferSize) {
+        if (transferBufferSize <= 0) {
+            throw new FtpServerConfigurationException(
+                    "Transfer buffer size must be positive");
+        }
+        this.transferBufferSize = transferBufferSize;
+    }
+
+    /**
+     * Get the maximum number of transfer buffers pooled for reuse, in use or
+     * idle.
+     * @return The maximum number of pooled buffers
+     */
+    public int getMaxPooledBuffers() {
+        return maxPooledBuffers;
+    }
+
+    /**
+     * Set the maximum number of transfer buffers pooled for reuse, in use or
+     * idle. This bounds the memory held by the pools, direct memory in
+     * particular. When more transfers are running, transient heap buffers
+     * are allocated and discarded after use. Zero disables pooling. Defaults
+     * to 64.
+     * @param maxPooledBuffers The maximum number of pooled buffers
+     */
+    public void setMaxPooledBuffers(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Get the send buffer size of data sockets.
+     * @return The send buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Set the send buffer size (SO_SNDBUF) of data sockets. On links with a
+     * high bandwidth and latency, the buffer must hold at least the
+     * bandwidth-delay product for a single transfer to fill the link.
+     * @param sendBufferSize The send buffer size in bytes, 0 for the
+     *   operating system default
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Get the receive buffer size of data sockets.
+     * @return The receive buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Set the receive buffer size (SO_RCVBUF) of data sockets. The size
+     * limits the TCP window advertised to the client, and thereby the upload
+     * rate over links with a high latency.
+     * @param receiveBufferSize The receive buffer size in bytes, 0 for the
+     *   operating system default
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Is Nagle's algorithm disabled for data sockets?
+     * @return true if TCP_NODELAY is set
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Set whether Nagle's algorithm should be disabled (TCP_NODELAY) for data
+     * sockets.
+     * @param tcpNoDelay true to set TCP_NODELAY
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Get the traffic class of data sockets.
+     * @return The traffic class, -1 for the operating system default
+     */
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Set the traffic class (IP_TOS) of data sockets, for example 0x08 for
+     * maximum throughput.
+     * @param trafficClass The traffic class, -1 for the operating system
+     *   default
+     */
+    public void setTrafficClass(int trafficClass) {
+        if (trafficClass < -1 || trafficClass > 255) {
+            throw new FtpServerConfigurationException(
+                    "Traffic class must be between 0 and 255, or -1");
+        }
+        this.trafficClass = trafficClass;
+    }
+
+    /**
+     * Are the buffer sizes of data sockets auto-tuned?
+     * @return true if buffer sizes are auto-tuned
+     */
+    public boolean isAutoTuneBufferSizes() {
+        return autoTuneBufferSizes;
+    }
+
+    /**
+     * Set whether the send and receive buffers of data sockets should be
+     * sized from the round-trip time measured on the control connection. The
+     * buffers are then sized to hold the target rate for one round-trip,
+     * between 64 kB and the maximum auto-tuned size. Until a round-trip time
+     * has been measured, the configured buffer sizes are used.
+     * @param autoTuneBufferSizes true to auto-tune buffer sizes
+     */
+    public void setAutoTuneBufferSizes(boolean autoTuneBufferSizes) {
+        this.autoTuneBufferSizes = autoTuneBufferSizes;
+    }
+
+    /**
+     * Get the transfer rate auto-tuned buffers are sized for.
+     * @return The target rate in bytes per second
+     */
+    public int getAutoTuneTargetRate() {
+        return autoTuneTargetRate;
+    }
+
+    /**
+     * Set the transfer rate auto-tuned buffers are sized for. Defaults to
+     * 12500000 bytes per second (100 Mbit/s).
+     * @param autoTuneTargetRate The target rate in bytes per second
+     */
+    public void setAutoTuneTargetRate(int autoTuneTargetRate) {
+        this.autoTuneTargetRate = autoTuneTargetRate;
+    }
+
+    /**
+     * Get the largest buffer size auto-tuning will use.
+     * @return The maximum buffer size in bytes
+     */
+    public int getMaxAutoTunedBufferSize() {
+        return maxAutoTunedBufferSize;
+    }
+
+    /**
+     * Set the largest buffer size auto-tuning will use. Defaults to 4 MB.
+     * @param maxAutoTunedBufferSize The maximum buffer size in bytes
+     */
+    public void setMaxAutoTunedBufferSize(int maxAutoTunedBufferSize) {
+        this.maxAutoTunedBufferSize = maxAutoTunedBufferSize;
+    }
+
+    /**
+     * Get the default compression level used in MODE Z.
+     * @return The compression level
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Set the compression level used in MODE Z until the client selects
+     * another level with <code>OPTS MODE Z LEVEL</code>. Defaults to 6.
+     * @param compressionLevel The compression level, between 0 and 9
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        checkCompressionLevel(compressionLevel);
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Get the highest compression level a client may select in MODE Z.
+     * @return The maximum compression level
+     */
+    public int getMaxCompressionLevel() {
+        return maxCompressionLevel;
+    }
+
+    /**
+     * Set the highest compression level a client may select in MODE Z. The
+     * highest levels cost a lot of CPU for little gain, lowering the maximum
+     * protects the server from clients asking for them. Defaults to 9.
+     * @param maxCompressionLevel The maximum compression level, between 0
+     *   and 9
+     */
+    public void setMaxCompressionLevel(int maxCompressionLevel) {
+        checkCompressionLevel(maxCompressionLevel);
+        this.maxCompressionLevel = maxCompressionLevel;
+    }
+
+    private void checkCompressionLevel(int level) {
+        if (level < 0 || level > 9) {
+            throw new FtpServerConfigurationException(
+                    "Compression level must be between 0 and 9");
+        }
+    }
+
+    /**
+     * Get the size of the buffers used for compression in MODE Z.
+     * @return The buffer size in bytes
+     */
+    public int getCompressionBufferSize() {
+        return compressionBufferSize;
+    }
+
+    /**
+     * Set the size of the buffers used to compress and decompress data in
+     * MODE Z. Defaults to 32 kB.
+     * @param compressionBufferSize The buffer size in bytes
+     */
+    public void setCompressionBufferSize(int compressionBufferSize) {
+        if (compressionBufferSize <= 0) {
+            throw new FtpServerConfigurationException(
+                    "Compression buffer size must be positive");
+        }
+        this.compressionBufferSize = compressionBufferSize;
+    }
+
+    /**
+     * Get how uploaded data is made durable.
+     * @return The upload durability
+     */
+    public UploadDurability getUploadDurability() {
+        return uploadDurability;
+    }
+
+    /**
+     * Set how uploaded data is made durable before the client is told that
+     * the transfer is complete. With {@link UploadDurability#SYNC} every file
+     * is synced by the thread finishing the transfer, with
+     * {@link UploadDurability#GROUP_COMMIT} the syncs of concurrent uploads
+     * are batched by a background committer. Defaults to
+     * {@link UploadDurability#NONE}, leaving durability to the operating
+     * system.
+     * @param uploadDurability The upload durability
+     */
+    public void setUploadDurability(UploadDurability uploadDurability) {
+        if (uploadDurability == null) {
+            throw new FtpServerConfigurationException(
+                    "Upload durability must not be null");
+        }
+        this.uploadDurability = uploadDurability;
+    }
+
+    /**
+     * Are uploads pipelined?
+     * @return true if uploads are pipelined
+     */
+    public boolean isPipelinedUploads() {
+        return pipelinedUploads;
+    }
+
+    /**
+     * Set whether uploads should be pipelined. Pipelined uploads read from
+     * the data connection and write to the file on separate threads, linked
+     * by a bounded ring of buffers, so that network and disk I/O overlap and
+     * a slow disk does not stall the client until the ring is full.
+     * Ignored for {@link #setNonBlocking(boolean) non-blocking} data
+     * connections, which already write to the file on the I/O threads of
+     * the data connection engine instead of the selector thread.
+     * @param pipelinedUploads true to pipeline uploads
+     */
+    public void setPipelinedUploads(boolean pipelinedUploads) {
+        this.pipelinedUploads = pipelinedUploads;
+    }
+
+    /**
+     * Get the number of buffers in the ring of a pipelined upload.
+     * @return The number of buffers
+     */
+    public int getUploadPipelineDepth() {
+        return uploadPipelineDepth;
+    }
+
+    /**
+     * Set the number of buffers in the ring of a pipelined upload. Each
+     * buffer is of the transfer buffer size, the ring can therefore absorb
+     * a disk stall of up to the depth times the buffer size. Defaults to 8.
+     * @param uploadPipelineDepth The number of buffers
+     */
+    public void setUploadPipelineDepth(int uploadPipelineDepth) {
+        if (uploadPipelineDepth <= 0) {
+            throw new FtpServerConfigurationException(
+                    "Upload pipeline depth must be positive");
+        }
+        this.uploadPipelineDepth = uploadPipelineDepth;
+    }
 }
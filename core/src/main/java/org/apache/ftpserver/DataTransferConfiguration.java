@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver;
+
+/**
+ * Options of the data transfers, in addition to the data connection
+ * configuration of {@link DataConnectionConfiguration}. The data connection
+ * configurations created by {@link DataConnectionConfigurationFactory}
+ * implement this interface. Other data connection configurations use the
+ * default options.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface DataTransferConfiguration extends
+        DataConnectionConfiguration {
+
+    /**
+     * Should data transfers use the non-blocking data connection engine?
+     * Non-blocking transfers are driven by a selector and do not hold on to
+     * a thread while waiting for the client.
+     * @return True if data transfers are non-blocking
+     */
+    boolean isNonBlocking();
+
+    /**
+     * Get the size of the buffers used for data transfers. Buffers are
+     * pooled and reused by all data connections of the listener.
+     * @return The buffer size in bytes
+     */
+    int getTransferBufferSize();
+
+    /**
+     * Get the maximum number of transfer buffers pooled for reuse, in use or
+     * idle. When all of them are in use, transient buffers are allocated and
+     * discarded after use.
+     * @return The maximum number of pooled buffers
+     */
+    int getMaxPooledBuffers();
+
+    /**
+     * Get the send buffer size (SO_SNDBUF) of data sockets.
+     * @return The send buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    int getSendBufferSize();
+
+    /**
+     * Get the receive buffer size (SO_RCVBUF) of data sockets.
+     * @return The receive buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    int getReceiveBufferSize();
+
+    /**
+     * Should Nagle's algorithm be disabled (TCP_NODELAY) for data sockets?
+     * @return true if TCP_NODELAY is set
+     */
+    boolean isTcpNoDelay();
+
+    /**
+     * Get the traffic class (IP_TOS) of data sockets.
+     * @return The traffic class, -1 for the operating system default
+     */
+    int getTrafficClass();
+
+    /**
+     * Should the buffer sizes of data sockets be sized from the round-trip
+     * time measured on the control connection? Auto-tuned sizes replace the
+     * configured send and receive buffer sizes once a round-trip time is
+     * known.
+     * @return true if buffer sizes are auto-tuned
+     */
+    boolean isAutoTuneBufferSizes();
+
+    /**
+     * Get the transfer rate auto-tuned buffers are sized for. The buffer size
+     * is the product of this rate and the round-trip time.
+     * @return The target rate in bytes per second
+     */
+    int getAutoTuneTargetRate();
+
+    /**
+     * Get the largest buffer size auto-tuning will use.
+     * @return The maximum buffer size in bytes
+     */
+    int getMaxAutoTunedBufferSize();
+
+    /**
+     * Get the compression level used in MODE Z until the client selects
+     * another level with <code>OPTS MODE Z LEVEL</code>.
+     * @return The default compression level, between 0 and 9
+     */
+    int getCompressionLevel();
+
+    /**
+     * Get the highest compression level a client may select in MODE Z.
+     * Higher levels are lowered to this level.
+     * @return The maximum compression level, between 0 and 9
+     */
+    int getMaxCompressionLevel();
+
+    /**
+     * Get the size of the buffers used to compress and decompress data in
+     * MODE Z.
+     * @return The buffer size in bytes
+     */
+    int getCompressionBufferSize();
+
+    /**
+     * Get how uploaded data is made durable before the client is told that
+     * the transfer is complete.
+     * @return The upload durability
+     */
+    UploadDurability getUploadDurability();
+
+    /**
+     * Are uploads pipelined? Pipelined uploads read from the data connection
+     * and write to the file on separate threads, linked by a bounded ring of
+     * buffers, so that a slow disk does not stall the client until the ring
+     * is full. Ignored if the data connections are non-blocking.
+     * @return true if uploads are pipelined
+     */
+    boolean isPipelinedUploads();
+
+    /**
+     * Get the number of buffers in the ring of a pipelined upload.
+     * @return The number of buffers
+     */
+    int getUploadPipelineDepth();
+
+    /**
+     * Are the passive ports shared? Each shared passive port is bound once
+     * and accepts the data connections of all sessions, every connection is
+     * matched to the waiting PASV from the same client address. Only one PASV
+     * of each client address waits on a shared port at a time.
+     * @return true if the passive ports are shared
+     */
+    boolean isSharedPassivePorts();
+
+    /**
+     * Get the shared passive port to use for the next PASV. Shared ports are
+     * used in turn and are never reserved.
+     * @return The shared passive port
+     */
+    int nextSharedPassivePort();
+
+    /**
+     * Get the number of shared passive ports
+     * @return The number of distinct ports returned by
+     *   {@link #nextSharedPassivePort()}
+     */
+    int getSharedPassivePortCount();
+
+    /**
+     * Get the number of passive sockets to keep bound in advance. PASV then
+     * takes an already bound socket from the pool, which is refilled in the
+     * background.
+     * @return The number of pooled passive sockets, 0 if not pooled
+     */
+    int getPassiveSocketPoolSize();
+
+    /**
+     * Get the maximum time to wait for an active data connection to be
+     * connected.
+     * @return The connect timeout in seconds, 0 for the operating system
+     *         default
+     */
+    int getActiveConnectTimeout();
+}
@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver;
 
+import java.io.File;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -29,6 +30,8 @@ import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.ftpletcontainer.impl.DefaultFtpletContainer;
 import org.apache.ftpserver.impl.DefaultFtpServer;
 import org.apache.ftpserver.impl.DefaultFtpServerContext;
+import org.apache.ftpserver.impl.DigestCache;
+import org.apache.ftpserver.impl.HashAlgorithm;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.message.MessageResource;
 
@@ -221,4 +224,64 @@ public class FtpServerFactory {
     public void setConnectionConfig(final ConnectionConfig connectionConfig) {
         serverContext.setConnectionConfig(connectionConfig);
     }
+
+    /**
+     * Get the file the hashes computed for the checksum commands are saved
+     * to
+     * 
+     * @return The file, or null if the hashes are only kept in memory
+     */
+    public File getDigestCacheFile() {
+        return serverContext.getHashEngine().getDigestCache().getFile();
+    }
+
+    /**
+     * Set the file the hashes computed for the checksum commands are saved
+     * to, so that unchanged files are not hashed again after a restart
+     * 
+     * @param digestCacheFile
+     *            The file, or null to only keep the hashes in memory
+     */
+    public void setDigestCacheFile(final File digestCacheFile) {
+        serverContext.getHashEngine().setDigestCache(
+                new DigestCache(digestCacheFile,
+                        DigestCache.DEFAULT_MAX_ENTRIES));
+    }
+
+    /**
+     * Get the hash algorithms uploaded files are hashed with
+     * 
+     * @return The algorithm names, empty if uploads are not hashed
+     */
+    public String[] getUploadDigests() {
+        HashAlgorithm[] algorithms = serverContext.getHashEngine()
+                .getUploadAlgorithms();
+        String[] names = new String[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            names[i] = algorithms[i].getName();
+        }
+        return names;
+    }
+
+    /**
+     * Set the hash algorithms uploaded files are hashed with while the data
+     * is received. The hashes are cached, so that checksum commands for the
+     * uploaded file do not have to read it again, and are available to the
+     * Ftplets once the upload has completed.
+     * 
+     * @param uploadDigests
+     *            The algorithm names, for example "MD5" or "SHA-256". Empty
+     *            to not hash uploads.
+     */
+    public void setUploadDigests(final String[] uploadDigests) {
+        HashAlgorithm[] algorithms = new HashAlgorithm[uploadDigests.length];
+        for (int i = 0; i < uploadDigests.length; i++) {
+            algorithms[i] = HashAlgorithm.parse(uploadDigests[i]);
+            if (algorithms[i] == null) {
+                throw new FtpServerConfigurationException(
+                        "Unknown hash algorithm: " + uploadDigests[i]);
+            }
+        }
+        serverContext.getHashEngine().setUploadAlgorithms(algorithms);
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver;
+
+/**
+ * How uploaded data is made durable before the transfer is reported as
+ * complete to the client.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum UploadDurability {
+
+    /**
+     * Leave durability to the operating system, the transfer completes as
+     * soon as the data has been written.
+     */
+    NONE,
+
+    /**
+     * Sync every uploaded file to disk before the transfer completes.
+     */
+    SYNC,
+
+    /**
+     * Sync uploaded files to disk before the transfer completes, batching the
+     * syncs of concurrent uploads in a background committer.
+     */
+    GROUP_COMMIT;
+
+    /**
+     * Parses the given string into its equivalent enum, ignoring case and
+     * accepting "-" for "_".
+     * 
+     * @param value
+     *            the string value to parse.
+     * @return the equivalent enum
+     */
+    public static UploadDurability parse(String value) {
+        for (UploadDurability durability : values()) {
+            if (durability.name().equalsIgnoreCase(value.replace('-', '_'))) {
+                return durability;
+            }
+        }
+        throw new IllegalArgumentException("Invalid UploadDurability: "
+                + value);
+    }
+}
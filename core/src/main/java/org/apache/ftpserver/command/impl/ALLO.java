@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>ALLO &lt;SP&gt; &lt;decimal-integer&gt; [&lt;SP&gt; R &lt;SP&gt; &lt;decimal-integer&gt;] &lt;CRLF&gt;</code><br>
+ * 
+ * The argument is the number of bytes of storage to be reserved for the
+ * file. This command shall be immediately followed by a STOR or APPE command,
+ * which will reserve the space before writing if the file system supports
+ * it. The optional record size is ignored.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a> 
+ */
+public class ALLO extends AbstractCommand {
+
+    private final Logger LOG = LoggerFactory.getLogger(ALLO.class);
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // reset state variables
+        session.resetState();
+
+        // argument check
+        String argument = request.getArgument();
+        if (argument == null) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "ALLO", null));
+            return;
+        }
+
+        // get the number of bytes, ignoring any record size
+        long allocationSize;
+        try {
+            allocationSize = Long.parseLong(new StringTokenizer(argument, " ")
+                    .nextToken());
+        } catch (NumberFormatException ex) {
+            LOG.debug("Invalid allocation size: " + argument, ex);
+            allocationSize = -1L;
+        }
+
+        if (allocationSize < 0L) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "ALLO", null));
+            return;
+        }
+
+        session.setAllocationSize(allocationSize);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_200_COMMAND_OKAY, "ALLO", null));
+    }
+}
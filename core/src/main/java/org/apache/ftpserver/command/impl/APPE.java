@@ -25,17 +25,20 @@ import java.net.InetAddress;
 import java.net.SocketException;
 
 import org.apache.ftpserver.command.AbstractCommand;
-import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.PreallocatableFtpFile;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
+import org.apache.ftpserver.impl.HashingOutputStream;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -65,8 +68,12 @@ public class APPE extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean transferStarted = false;
         try {
 
+            // get state variable
+            long allocationSize = session.getAllocationSize();
+
             // reset state variables
             session.resetState();
 
@@ -87,8 +94,8 @@ public class APPE extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -133,7 +140,7 @@ public class APPE extends AbstractCommand {
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "APPE", fileName));
 
-            DataConnection dataConnection;
+            AsyncDataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
             } catch (Exception e) {
@@ -144,45 +151,116 @@ public class APPE extends AbstractCommand {
                 return;
             }
 
-            // get data from client
-            boolean failure = false;
-            OutputStream os = null;
+            // open streams
+            final OutputStream os;
+            long offset = 0L;
             try {
-
                 // find offset
-                long offset = 0L;
                 if (file.doesExist()) {
                     offset = file.getSize();
                 }
 
-                // open streams
-                os = file.createOutputStream(offset);
+                if (allocationSize > 0
+                        && file instanceof PreallocatableFtpFile) {
+                    os = ((PreallocatableFtpFile) file).createOutputStream(
+                            offset, allocationSize);
+                } else {
+                    os = file.createOutputStream(offset);
+                }
+            } catch (IOException ex) {
+                LOG.debug("IOException during file upload", ex);
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                        "APPE", fileName));
+                return;
+            }
 
-                // transfer data
-                long transSz = dataConnection.transferFromClient(session.getFtpletSession(), os);
+            // hash the uploaded data while it is written if the file was
+            // empty, otherwise the hashes would not cover the whole file
+            final HashingOutputStream hashingStream = offset == 0 ? context
+                    .getHashEngine().createUploadStream(os) : null;
+
+            // transfer data, the command completes once the transfer has
+            // finished
+            final FtpFile storedFile = file;
+            final String storedFileName = fileName;
+            session.getCommandCompletion().defer();
+            transferStarted = true;
+            DataTransferListener listener = new DataTransferListener() {
+                public void transferCompleted(long transferredSize) {
+                    transferFinished(session, context, request,
+                            storedFile, storedFileName, os, hashingStream,
+                            transferredSize, null);
+                }
 
+                public void transferFailed(IOException e) {
+                    transferFinished(session, context, request,
+                            storedFile, storedFileName, os, hashingStream,
+                            0L, e);
+                }
+            };
+
+            // the transfer completes once the uploaded data is as durable as
+            // configured
+            dataConnection.transferFromClient(session.getFtpletSession(),
+                    hashingStream != null ? hashingStream : os, context
+                            .getUploadCommitter().wrap(session, os, listener));
+        } finally {
+            if (!transferStarted) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Reply to the client once the data transfer has finished.
+     */
+    private void transferFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final String fileName, final OutputStream os,
+            final HashingOutputStream hashingStream, final long transSz,
+            final IOException failure) {
+        try {
+            IOException ex = failure;
+            if (ex == null) {
                 // attempt to close the output stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
-                if(os != null) {
+                try {
                     os.close();
+                } catch (IOException e) {
+                    ex = e;
                 }
+            }
 
+            // cache the hashes of the uploaded data and make them available
+            // to the Ftplets
+            session.setUploadDigests(context.getHashEngine().uploadFinished(
+                    session.getUser(), file, hashingStream, ex == null));
+
+            if (ex == null) {
                 LOG.info("File uploaded {}", fileName);
 
                 // notify the statistics component
                 ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
                         .getFtpStatistics();
                 ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException e) {
-                LOG.debug("SocketException during file upload", e);
-                failure = true;
+
+                // data transfer ok - send transfer complete message
+                session.write(LocalizedFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
+                        fileName));
+            } else if (ex instanceof SocketException) {
+                LOG.debug("SocketException during file upload", ex);
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
                         "APPE", fileName));
-            } catch (IOException e) {
-                LOG.debug("IOException during file upload", e);
-                failure = true;
+            } else {
+                LOG.debug("IOException during file upload", ex);
                 session
                         .write(LocalizedFtpReply
                                 .translate(
@@ -191,19 +269,13 @@ public class APPE extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
                                         "APPE", fileName));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(os);
-            }
-
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
-                        fileName));
             }
         } finally {
+            // make sure we really close the output stream
+            IoUtils.close(os);
+
             session.getDataConnection().closeDataConnection();
+            session.getCommandCompletion().complete();
         }
     }
 }
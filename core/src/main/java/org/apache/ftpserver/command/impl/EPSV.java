@@ -30,6 +30,7 @@ import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.ftpserver.impl.ServerFtpStatistics;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -54,6 +55,7 @@ public class EPSV extends AbstractCommand {
     public void execute(final FtpIoSession session,
             final FtpServerContext context, final FtpRequest request)
             throws IOException {
+        long start = System.nanoTime();
 
         // reset state variables
         session.resetState();
@@ -72,6 +74,12 @@ public class EPSV extends AbstractCommand {
             session.write(LocalizedFtpReply.translate(session, request, context,
                     229, "EPSV", portStr));
 
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            if (ftpStat != null) {
+                ftpStat.setPassiveTime(session, System.nanoTime() - start);
+            }
+
         } catch (DataConnectionException e) {
             session
                     .write(LocalizedFtpReply.translate(session, request, context,
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.HashAlgorithm;
+import org.apache.ftpserver.impl.HashBatch;
+import org.apache.ftpserver.impl.HashEngine;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>HASH &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * 
+ * Returns the hash of a file according to draft-bryan-ftpext-hash, using the
+ * algorithm selected with OPTS HASH. If a byte range has been set with RANG,
+ * only that part of the file is hashed. The reply contains the algorithm,
+ * the hashed range with an exclusive end, the hash and the file name.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a> 
+ */
+public class HASH extends AbstractCommand {
+
+    private final Logger LOG = LoggerFactory.getLogger(HASH.class);
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // get state variables
+        long start = session.getFileOffset();
+        long rangeEnd = session.getRangeEnd();
+
+        // reset state variables
+        session.resetState();
+
+        String fileName = request.getArgument();
+        if (fileName == null || fileName.trim().length() == 0) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "HASH", null));
+            return;
+        }
+
+        // get file object
+        FtpFile file = null;
+        try {
+            file = session.getFileSystemView().getFile(fileName);
+        } catch (Exception ex) {
+            LOG.debug("Exception getting the file object: " + fileName, ex);
+        }
+
+        if (file == null || !file.doesExist()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.missing", fileName));
+            return;
+        }
+        if (!file.isFile()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.invalid", fileName));
+            return;
+        }
+        if (!file.isReadable()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.permission", fileName));
+            return;
+        }
+
+        // the range end from RANG is inclusive, the reply end is exclusive
+        long size = file.getSize();
+        long end = size;
+        if (rangeEnd >= 0) {
+            end = Math.min(end, rangeEnd + 1);
+        }
+        start = Math.min(start, end);
+
+        // hash the file on a hashing thread, the command completes once the
+        // file has been hashed. The hash of a whole unchanged file is taken
+        // from the digest cache.
+        final HashAlgorithm algorithm = session.getHashAlgorithm();
+        final String hashedFileName = fileName;
+        final String path = file.getAbsolutePath();
+        final long hashStart = start;
+        final long hashEnd = end;
+        HashBatch.Listener listener = new HashBatch.Listener() {
+            public void hashed(String[] digests) {
+                hashingFinished(session, context, request, algorithm,
+                        hashedFileName, path, hashStart, hashEnd, digests[0],
+                        null);
+            }
+
+            public void failed(int index, IOException e) {
+                hashingFinished(session, context, request, algorithm,
+                        hashedFileName, path, hashStart, hashEnd, null, e);
+            }
+        };
+
+        session.getCommandCompletion().defer();
+        boolean hashingStarted = false;
+        try {
+            HashEngine hashEngine = context.getHashEngine();
+            HashBatch batch;
+            if (start == 0 && end == size) {
+                batch = hashEngine.hash(session.getUser(),
+                        new FtpFile[] { file }, algorithm, listener);
+            } else {
+                batch = hashEngine.hash(file, algorithm, start, end - start,
+                        listener);
+            }
+            hashingStarted = true;
+
+            // cancelled if the session is closed
+            session.setHashBatch(batch);
+        } finally {
+            if (!hashingStarted) {
+                session.getCommandCompletion().complete();
+            }
+        }
+    }
+
+    /**
+     * Reply to the client once the file has been hashed, or hashing it has
+     * failed.
+     */
+    private void hashingFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final HashAlgorithm algorithm, final String fileName,
+            final String path, final long start, final long end,
+            final String hash, final IOException failure) {
+        try {
+            if (failure != null) {
+                LOG.debug("Failed to hash " + fileName, failure);
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+                        "HASH", fileName));
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(algorithm.getName()).append(' ');
+            sb.append(start).append('-').append(end).append(' ');
+            sb.append(hash).append(' ');
+            sb.append(path);
+
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context, FtpReply.REPLY_213_FILE_STATUS, "HASH", sb
+                            .toString()));
+        } finally {
+            session.getCommandCompletion().complete();
+        }
+    }
+}
@@ -20,10 +20,6 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.FtpFile;
@@ -31,8 +27,9 @@ import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.HashAlgorithm;
+import org.apache.ftpserver.impl.HashBatch;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
-import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,11 +58,7 @@ public class MD5 extends AbstractCommand {
         // reset state variables
         session.resetState();
 
-        boolean isMMD5 = false;
-
-        if ("MMD5".equals(request.getCommand())) {
-            isMMD5 = true;
-        }
+        final boolean isMMD5 = "MMD5".equals(request.getCommand());
 
         // print file information
         String argument = request.getArgument();
@@ -89,7 +82,8 @@ public class MD5 extends AbstractCommand {
             fileNames = new String[] { argument };
         }
 
-        StringBuilder sb = new StringBuilder();
+        final String[] names = new String[fileNames.length];
+        final FtpFile[] files = new FtpFile[fileNames.length];
         for (int i = 0; i < fileNames.length; i++) {
             String fileName = fileNames[i].trim();
 
@@ -127,10 +121,63 @@ public class MD5 extends AbstractCommand {
                 return;
             }
 
-            InputStream is = null;
-            try {
-                is = file.createInputStream(0);
-                String md5Hash = md5(is);
+            names[i] = fileName;
+            files[i] = file;
+        }
+
+        // hash the files in parallel on the hashing threads, the command
+        // completes once all files have been hashed. The hash of an
+        // unchanged file, including a file hashed while being uploaded, is
+        // taken from the digest cache.
+        session.getCommandCompletion().defer();
+        boolean hashingStarted = false;
+        try {
+            HashBatch batch = context.getHashEngine().hash(session.getUser(),
+                    files, HashAlgorithm.MD5, new HashBatch.Listener() {
+                        public void hashed(String[] digests) {
+                            hashingFinished(session, context, request,
+                                    isMMD5, names, digests, -1, null);
+                        }
+
+                        public void failed(int index, IOException e) {
+                            hashingFinished(session, context, request,
+                                    isMMD5, names, null, index, e);
+                        }
+                    });
+            hashingStarted = true;
+
+            // cancelled if the session is closed
+            session.setHashBatch(batch);
+        } finally {
+            if (!hashingStarted) {
+                session.getCommandCompletion().complete();
+            }
+        }
+    }
+
+    /**
+     * Reply to the client once all files have been hashed, or hashing a
+     * file has failed.
+     */
+    private void hashingFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final boolean isMMD5, final String[] fileNames,
+            final String[] digests, final int failedIndex,
+            final IOException failure) {
+        try {
+            if (failure != null) {
+                LOG.debug("Exception hashing the file: "
+                        + fileNames[failedIndex], failure);
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context,
+                        FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+                        "MD5", fileNames[failedIndex]));
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < fileNames.length; i++) {
+                String fileName = fileNames[i];
 
                 if (i > 0) {
                     sb.append(", ");
@@ -144,46 +191,18 @@ public class MD5 extends AbstractCommand {
                 	sb.append('"');
                 }
                 sb.append(' ');
-                sb.append(md5Hash);
-
-            } catch (NoSuchAlgorithmException e) {
-                LOG.debug("MD5 algorithm not available", e);
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
-                        "MD5.notimplemened", null));
-            } finally {
-                IoUtils.close(is);
+                sb.append(digests[i].toUpperCase());
             }
+            if (isMMD5) {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, 252, "MMD5", sb.toString()));
+            } else {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, 251, "MD5", sb.toString()));
+            }
+        } finally {
+            session.getCommandCompletion().complete();
         }
-        if (isMMD5) {
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    252, "MMD5", sb.toString()));
-        } else {
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    251, "MD5", sb.toString()));
-        }
-    }
-
-    /**
-     * @param is
-     *            InputStream for which the MD5 hash is calculated
-     * @return The hash of the content in the input stream
-     * @throws IOException
-     * @throws NoSuchAlgorithmException
-     */
-    private String md5(InputStream is) throws IOException,
-            NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("MD5");
-        DigestInputStream dis = new DigestInputStream(is, digest);
-
-        byte[] buffer = new byte[1024];
-
-        int read = dis.read(buffer);
-        while (read > -1) {
-            read = dis.read(buffer);
-        }
-
-        return new String(encodeHex(dis.getMessageDigest().digest()));
     }
 
     /**
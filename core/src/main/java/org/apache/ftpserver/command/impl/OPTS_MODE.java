@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>OPTS MODE Z [LEVEL &lt;level&gt;]</code><br>
+ * 
+ * Select the compression level used in MODE Z. Levels above the maximum
+ * level of the data connection configuration are lowered to the maximum, the
+ * level in effect is returned in the reply. Without options, the default
+ * level is restored.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a> 
+ */
+public class OPTS_MODE extends AbstractCommand {
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException, FtpException {
+
+        // reset state
+        session.resetState();
+
+        // skip the MODE token, the mode must be Z
+        StringTokenizer st = new StringTokenizer(request.getArgument(), " ");
+        st.nextToken();
+        if (!st.hasMoreTokens() || !"Z".equalsIgnoreCase(st.nextToken())) {
+            writeSyntaxError(session, context, request);
+            return;
+        }
+
+        int level = session.getDataTransferConfiguration()
+                .getCompressionLevel();
+        while (st.hasMoreTokens()) {
+            String option = st.nextToken();
+            if (!"LEVEL".equalsIgnoreCase(option) || !st.hasMoreTokens()) {
+                writeSyntaxError(session, context, request);
+                return;
+            }
+
+            try {
+                level = Integer.parseInt(st.nextToken());
+            } catch (NumberFormatException ex) {
+                writeSyntaxError(session, context, request);
+                return;
+            }
+            if (level < 0 || level > 9) {
+                writeSyntaxError(session, context, request);
+                return;
+            }
+        }
+
+        ServerDataConnectionFactory dataConnection = session
+                .getDataConnection();
+        dataConnection.setZipLevel(level);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.MODE", String
+                        .valueOf(dataConnection.getZipLevel())));
+    }
+
+    private void writeSyntaxError(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request) {
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                "OPTS.MODE", null));
+    }
+}
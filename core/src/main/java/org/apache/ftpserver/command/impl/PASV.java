@@ -33,6 +33,7 @@ import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.SocketAddressEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +60,7 @@ public class PASV extends AbstractCommand {
     public void execute(final FtpIoSession session,
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
+        long start = System.nanoTime();
 
         // reset state variables
         session.resetState();
@@ -89,6 +91,12 @@ public class PASV extends AbstractCommand {
                     .encode(externalDataConAddress);
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_227_ENTERING_PASSIVE_MODE, "PASV", addrStr));
+
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            if (ftpStat != null) {
+                ftpStat.setPassiveTime(session, System.nanoTime() - start);
+            }
         } catch (DataConnectionException e) {
             LOG.warn("Failed to open passive data connection", e);
             session
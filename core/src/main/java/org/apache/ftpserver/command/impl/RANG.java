@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>RANG &lt;SP&gt; start-point &lt;SP&gt; end-point &lt;CRLF&gt;</code><br>
+ * 
+ * The arguments are the offsets of the first and the last byte, inclusive,
+ * of the part of the file to transfer with the following RETR or STOR
+ * command, as specified in draft-bryan-ftp-range. Like REST, this command
+ * shall be immediately followed by the transfer command. <code>RANG 1 0</code>
+ * resets the range. Only binary transfers are supported.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RANG extends AbstractCommand {
+
+    private final Logger LOG = LoggerFactory.getLogger(RANG.class);
+
+    /**
+     * Execute command
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // reset state variables, including any REST offset
+        session.resetState();
+
+        // argument check
+        String argument = request.getArgument();
+        if (argument == null) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+
+        long start;
+        long end;
+        try {
+            StringTokenizer st = new StringTokenizer(argument, " ");
+            start = Long.parseLong(st.nextToken());
+            end = Long.parseLong(st.nextToken());
+            if (st.hasMoreTokens()) {
+                throw new NumberFormatException("Too many arguments");
+            }
+        } catch (RuntimeException ex) {
+            LOG.debug("Invalid byte range: " + argument, ex);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+
+        if (start == 1L && end == 0L) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+                    "RANG.reset", null));
+            return;
+        }
+
+        if (start < 0L || end < start) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG.invalid", null));
+            return;
+        }
+
+        // ASCII offsets do not match the file offsets
+        if (session.getDataType() != DataType.BINARY) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+                    "RANG.type", null));
+            return;
+        }
+
+        session.setFileOffset(start);
+        session.setRangeEnd(end);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+                "RANG", null));
+    }
+
+}
@@ -19,14 +19,12 @@
 
 package org.apache.ftpserver.command.impl;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 
 import org.apache.ftpserver.command.AbstractCommand;
-import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
@@ -34,10 +32,13 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.RangeInputStream;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -66,10 +67,12 @@ public class RETR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean transferStarted = false;
         try {
 
-            // get state variable
+            // get state variables
             long skipLen = session.getFileOffset();
+            long rangeEnd = session.getRangeEnd();
 
             // argument check
             String fileName = request.getArgument();
@@ -127,8 +130,8 @@ public class RETR extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -142,11 +145,7 @@ public class RETR extends AbstractCommand {
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "RETR", null));
 
-            // send file data to client
-            boolean failure = false;
-            InputStream is = null;
-
-            DataConnection dataConnection;
+            AsyncDataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
             } catch (Exception e) {
@@ -157,19 +156,78 @@ public class RETR extends AbstractCommand {
                 return;
             }
 
+            // open streams
+            final InputStream is;
             try {
+                InputStream in = openInputStream(session, context, file,
+                        skipLen);
+
+                // only send the requested byte range
+                if (rangeEnd >= 0) {
+                    in = new RangeInputStream(in, rangeEnd - skipLen + 1);
+                }
+                is = in;
+            } catch (IOException ex) {
+                LOG.debug("IOException during data transfer", ex);
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                        "RETR", fileName));
+                return;
+            }
 
-                // open streams
-                is = openInputStream(session, file, skipLen);
+            // send file data to client, the command completes once the
+            // transfer has finished
+            final FtpFile retrievedFile = file;
+            final String retrievedFileName = fileName;
+            session.getCommandCompletion().defer();
+            transferStarted = true;
+            dataConnection.transferToClient(session.getFtpletSession(), is,
+                    new DataTransferListener() {
+                        public void transferCompleted(long transferredSize) {
+                            transferFinished(session, context, request,
+                                    retrievedFile, retrievedFileName, is,
+                                    transferredSize, null);
+                        }
+
+                        public void transferFailed(IOException e) {
+                            transferFinished(session, context, request,
+                                    retrievedFile, retrievedFileName, is, 0L,
+                                    e);
+                        }
+                    });
+        } finally {
+            if (!transferStarted) {
+                session.resetState();
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
 
-                // transfer data
-                long transSz = dataConnection.transferToClient(session.getFtpletSession(), is);
+    /**
+     * Reply to the client once the data transfer has finished.
+     */
+    private void transferFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final String fileName, final InputStream is,
+            final long transSz, final IOException failure) {
+        try {
+            IOException ex = failure;
+            if (ex == null) {
                 // attempt to close the input stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
-                if(is != null) {
+                try {
                     is.close();
+                } catch (IOException e) {
+                    ex = e;
                 }
+            }
 
+            if (ex == null) {
                 LOG.info("File downloaded {}", fileName);
 
                 // notify the statistics component
@@ -178,16 +236,18 @@ public class RETR extends AbstractCommand {
                 if (ftpStat != null) {
                     ftpStat.setDownload(session, file, transSz);
                 }
-                
-            } catch (SocketException ex) {
+
+                // data transfer ok - send transfer complete message
+                session.write(LocalizedFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
+                        fileName));
+            } else if (ex instanceof SocketException) {
                 LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
                         "RETR", fileName));
-            } catch (IOException ex) {
+            } else {
                 LOG.debug("IOException during data transfer", ex);
-                failure = true;
                 session
                         .write(LocalizedFtpReply
                                 .translate(
@@ -196,42 +256,29 @@ public class RETR extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
                                         "RETR", fileName));
-            } finally {
-                // make sure we really close the input stream
-                IoUtils.close(is);
-            }
-
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
-                        fileName));
-
             }
         } finally {
+            // make sure we really close the input stream
+            IoUtils.close(is);
+
             session.resetState();
             session.getDataConnection().closeDataConnection();
+            session.getCommandCompletion().complete();
         }
     }
 
     /**
      * Skip length and open input stream.
      */
-    public InputStream openInputStream(FtpIoSession session, FtpFile file,
-            long skipLen) throws IOException {
+    public InputStream openInputStream(FtpIoSession session,
+            FtpServerContext context, FtpFile file, long skipLen)
+            throws IOException {
         InputStream in;
         if (session.getDataType() == DataType.ASCII) {
-            int c;
-            long offset = 0L;
-            in = new BufferedInputStream(file.createInputStream(0L));
-            while (offset++ < skipLen) {
-                if ((c = in.read()) == -1) {
-                    throw new IOException("Cannot skip");
-                }
-                if (c == '\n') {
-                    offset++;
-                }
-            }
+            // the offset counts every \n as \r\n, use the index to find
+            // the matching position in the file
+            in = context.getAsciiOffsetIndex().openInputStream(
+                    session.getUser(), file, skipLen);
         } else {
             in = file.createInputStream(skipLen);
         }
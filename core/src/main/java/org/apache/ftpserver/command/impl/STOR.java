@@ -25,17 +25,22 @@ import java.net.InetAddress;
 import java.net.SocketException;
 
 import org.apache.ftpserver.command.AbstractCommand;
-import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.PreallocatableFtpFile;
+import org.apache.ftpserver.ftplet.RandomAccessFtpFile;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
+import org.apache.ftpserver.impl.HashingOutputStream;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.RangeOutputStream;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -65,10 +70,13 @@ public class STOR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean transferStarted = false;
         try {
 
             // get state variable
             long skipLen = session.getFileOffset();
+            long allocationSize = session.getAllocationSize();
+            long rangeEnd = session.getRangeEnd();
 
             // argument check
             String fileName = request.getArgument();
@@ -87,8 +95,8 @@ public class STOR extends AbstractCommand {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -121,13 +129,21 @@ public class STOR extends AbstractCommand {
                 return;
             }
 
+            // a byte range must not truncate the rest of the file
+            if (rangeEnd >= 0 && !(file instanceof RandomAccessFtpFile)) {
+                session.write(LocalizedFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                        "STOR.range", fileName));
+                return;
+            }
+
             // get data connection
             session.write(
                     LocalizedFtpReply.translate(session, request, context,
                             FtpReply.REPLY_150_FILE_STATUS_OKAY, "STOR",
                             fileName)).awaitUninterruptibly(10000);
 
-            DataConnection dataConnection;
+            AsyncDataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
             } catch (Exception e) {
@@ -138,35 +154,123 @@ public class STOR extends AbstractCommand {
                 return;
             }
 
-            // transfer data
-            boolean failure = false;
-            OutputStream outStream = null;
+            // open streams
+            final OutputStream outStream;
             try {
-                outStream = file.createOutputStream(skipLen);
-                long transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
+                if (rangeEnd >= 0) {
+                    outStream = ((RandomAccessFtpFile) file)
+                            .createRangeOutputStream(skipLen);
+                } else if (allocationSize > 0
+                        && file instanceof PreallocatableFtpFile) {
+                    outStream = ((PreallocatableFtpFile) file)
+                            .createOutputStream(skipLen, allocationSize);
+                } else {
+                    outStream = file.createOutputStream(skipLen);
+                }
+            } catch (IOException ex) {
+                LOG.debug("IOException during data transfer", ex);
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                        "STOR", fileName));
+                return;
+            }
+
+            // only accept the requested byte range, hash the uploaded data
+            // while it is written if it replaces the whole file
+            final HashingOutputStream hashingStream;
+            OutputStream transferStream;
+            if (rangeEnd >= 0) {
+                hashingStream = null;
+                transferStream = new RangeOutputStream(outStream, rangeEnd
+                        - skipLen + 1);
+            } else {
+                hashingStream = skipLen == 0 ? context.getHashEngine()
+                        .createUploadStream(outStream) : null;
+                transferStream = hashingStream != null ? hashingStream
+                        : outStream;
+            }
+
+            // transfer data, the command completes once the transfer has
+            // finished
+            final FtpFile storedFile = file;
+            final String storedFileName = fileName;
+            session.getCommandCompletion().defer();
+            transferStarted = true;
+            DataTransferListener listener = new DataTransferListener() {
+                public void transferCompleted(long transferredSize) {
+                    transferFinished(session, context, request,
+                            storedFile, storedFileName, outStream,
+                            hashingStream, transferredSize, null);
+                }
+
+                public void transferFailed(IOException e) {
+                    transferFinished(session, context, request,
+                            storedFile, storedFileName, outStream,
+                            hashingStream, 0L, e);
+                }
+            };
+
+            // the transfer completes once the uploaded data is as durable as
+            // configured
+            dataConnection.transferFromClient(session.getFtpletSession(), transferStream,
+                    context.getUploadCommitter().wrap(session, outStream, listener));
+        } finally {
+            if (!transferStarted) {
+                session.resetState();
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
 
+    /**
+     * Reply to the client once the data transfer has finished.
+     */
+    private void transferFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final String fileName, final OutputStream outStream,
+            final HashingOutputStream hashingStream, final long transSz,
+            final IOException failure) {
+        try {
+            IOException ex = failure;
+            if (ex == null) {
                 // attempt to close the output stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
-                if(outStream != null) {
+                try {
                     outStream.close();
+                } catch (IOException e) {
+                    ex = e;
                 }
+            }
+
+            // cache the hashes of the uploaded data and make them available
+            // to the Ftplets
+            session.setUploadDigests(context.getHashEngine().uploadFinished(
+                    session.getUser(), file, hashingStream, ex == null));
 
+            if (ex == null) {
                 LOG.info("File uploaded {}", fileName);
 
                 // notify the statistics component
                 ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
                         .getFtpStatistics();
                 ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException ex) {
+
+                // data transfer ok - send transfer complete message
+                session.write(LocalizedFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
+                        fileName));
+            } else if (ex instanceof SocketException) {
                 LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
                         "STOR", fileName));
-            } catch (IOException ex) {
+            } else {
                 LOG.debug("IOException during data transfer", ex);
-                failure = true;
                 session
                         .write(LocalizedFtpReply
                                 .translate(
@@ -175,21 +279,14 @@ public class STOR extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
                                         "STOR", fileName));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(outStream);
-            }
-
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
-                        fileName));
-
             }
         } finally {
+            // make sure we really close the output stream
+            IoUtils.close(outStream);
+
             session.resetState();
             session.getDataConnection().closeDataConnection();
+            session.getCommandCompletion().complete();
         }
     }
 }
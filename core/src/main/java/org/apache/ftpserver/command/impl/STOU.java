@@ -25,7 +25,6 @@ import java.net.InetAddress;
 import java.net.SocketException;
 
 import org.apache.ftpserver.command.AbstractCommand;
-import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FileSystemView;
@@ -33,10 +32,13 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsyncDataConnection;
+import org.apache.ftpserver.impl.DataTransferListener;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
-import org.apache.ftpserver.impl.IODataConnectionFactory;
+import org.apache.ftpserver.impl.HashingOutputStream;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -65,12 +67,13 @@ public class STOU extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean transferStarted = false;
         try {
             // 24-10-2007 - added check if PORT or PASV is issued, see
             // https://issues.apache.org/jira/browse/FTPSERVER-110
             DataConnectionFactory connFactory = session.getDataConnection();
-            if (connFactory instanceof IODataConnectionFactory) {
-                InetAddress address = ((IODataConnectionFactory) connFactory)
+            if (connFactory instanceof ServerDataConnectionFactory) {
+                InetAddress address = ((ServerDataConnectionFactory) connFactory)
                         .getInetAddress();
                 if (address == null) {
                     session.write(new DefaultFtpReply(
@@ -129,11 +132,7 @@ public class STOU extends AbstractCommand {
             session.write(new DefaultFtpReply(
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "FILE: " + fileName));
 
-            // get data from client
-            boolean failure = false;
-            OutputStream os = null;
-
-            DataConnection dataConnection;
+            AsyncDataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
             } catch (Exception e) {
@@ -144,20 +143,85 @@ public class STOU extends AbstractCommand {
                 return;
             }
 
+            // open streams
+            final OutputStream os;
             try {
-
-                // open streams
                 os = file.createOutputStream(0L);
+            } catch (IOException ex) {
+                LOG.debug("IOException during data transfer", ex);
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                        "STOU", fileName));
+                return;
+            }
+
+            // hash the uploaded data while it is written
+            final HashingOutputStream hashingStream = context.getHashEngine()
+                    .createUploadStream(os);
+
+            // transfer data, the command completes once the transfer has
+            // finished
+            final FtpFile storedFile = file;
+            final String storedFileName = fileName;
+            session.getCommandCompletion().defer();
+            transferStarted = true;
+            DataTransferListener listener = new DataTransferListener() {
+                public void transferCompleted(long transferredSize) {
+                    transferFinished(session, context, request,
+                            storedFile, storedFileName, os, hashingStream,
+                            transferredSize, null);
+                }
 
-                // transfer data
-                long transSz = dataConnection.transferFromClient(session.getFtpletSession(), os);
+                public void transferFailed(IOException e) {
+                    transferFinished(session, context, request,
+                            storedFile, storedFileName, os, hashingStream,
+                            0L, e);
+                }
+            };
 
+            // the transfer completes once the uploaded data is as durable as
+            // configured
+            dataConnection.transferFromClient(session.getFtpletSession(),
+                    hashingStream != null ? hashingStream : os, context
+                            .getUploadCommitter().wrap(session, os, listener));
+        } finally {
+            if (!transferStarted) {
+                session.getDataConnection().closeDataConnection();
+            }
+        }
+    }
+
+    /**
+     * Reply to the client once the data transfer has finished.
+     */
+    private void transferFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final String fileName, final OutputStream os,
+            final HashingOutputStream hashingStream, final long transSz,
+            final IOException failure) {
+        try {
+            IOException ex = failure;
+            if (ex == null) {
                 // attempt to close the output stream so that errors in 
                 // closing it will return an error to the client (FTPSERVER-119) 
-                if(os != null) {
+                try {
                     os.close();
+                } catch (IOException e) {
+                    ex = e;
                 }
+            }
+
+            // cache the hashes of the uploaded data and make them available
+            // to the Ftplets
+            session.setUploadDigests(context.getHashEngine().uploadFinished(
+                    session.getUser(), file, hashingStream, ex == null));
 
+            if (ex == null) {
                 LOG.info("File uploaded {}", fileName);
 
                 // notify the statistics component
@@ -166,16 +230,18 @@ public class STOU extends AbstractCommand {
                 if (ftpStat != null) {
                     ftpStat.setUpload(session, file, transSz);
                 }
-                
-            } catch (SocketException ex) {
+
+                // data transfer ok - send transfer complete message
+                session.write(LocalizedFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
+                        fileName));
+            } else if (ex instanceof SocketException) {
                 LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
                         "STOU", fileName));
-            } catch (IOException ex) {
+            } else {
                 LOG.debug("IOException during data transfer", ex);
-                failure = true;
                 session
                         .write(LocalizedFtpReply
                                 .translate(
@@ -184,22 +250,14 @@ public class STOU extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
                                         "STOU", fileName));
-            } finally {
-                // make sure we really close the output stream
-                IoUtils.close(os);
-            }
-
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
-                        fileName));
-
             }
         } finally {
+            // make sure we really close the output stream
+            IoUtils.close(os);
+
             session.getDataConnection().closeDataConnection();
+            session.getCommandCompletion().complete();
         }
-
     }
 
     /**
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.HashAlgorithm;
+import org.apache.ftpserver.impl.HashBatch;
+import org.apache.ftpserver.impl.HashEngine;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>XCRC &lt;SP&gt; &lt;pathname&gt; [&lt;SP&gt; &lt;start&gt; [&lt;SP&gt; &lt;end&gt;]] &lt;CRLF&gt;</code><br>
+ * <code>XSHA1 &lt;SP&gt; &lt;pathname&gt; [&lt;SP&gt; &lt;start&gt; [&lt;SP&gt; &lt;end&gt;]] &lt;CRLF&gt;</code><br>
+ * <code>XSHA256 &lt;SP&gt; &lt;pathname&gt; [&lt;SP&gt; &lt;start&gt; [&lt;SP&gt; &lt;end&gt;]] &lt;CRLF&gt;</code><br>
+ * 
+ * Returns the CRC32, SHA-1 or SHA-256 of a file, as upper case hex digits.
+ * Path names containing spaces can be quoted. If a start position is given,
+ * only the bytes from that position up to the end position, exclusive, or
+ * the end of the file are hashed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a> 
+ */
+public class XCRC extends AbstractCommand {
+
+    private static final Map<String, HashAlgorithm> ALGORITHMS = new HashMap<String, HashAlgorithm>();
+
+    // keyed by the command without the X prefix, which is removed when
+    // parsing the request
+    static {
+        ALGORITHMS.put("CRC", HashAlgorithm.CRC32);
+        ALGORITHMS.put("SHA1", HashAlgorithm.SHA_1);
+        ALGORITHMS.put("SHA256", HashAlgorithm.SHA_256);
+    }
+
+    private final Logger LOG = LoggerFactory.getLogger(XCRC.class);
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // reset state variables
+        session.resetState();
+
+        HashAlgorithm algorithm = ALGORITHMS.get(request.getCommand());
+
+        String argument = request.getArgument();
+        if (algorithm == null || argument == null
+                || argument.trim().length() == 0) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "XCRC", null));
+            return;
+        }
+
+        // split the path name from the range
+        String fileName;
+        String[] positions;
+        argument = argument.trim();
+        if (argument.charAt(0) == '"') {
+            int quote = argument.indexOf('"', 1);
+            if (quote == -1) {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context,
+                        FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                        "XCRC", null));
+                return;
+            }
+            fileName = argument.substring(1, quote);
+            positions = split(argument.substring(quote + 1));
+        } else {
+            String[] tokens = split(argument);
+
+            // up to two trailing numbers are the range, unless they are part
+            // of the name of an existing file
+            int nameTokens = tokens.length;
+            while (nameTokens > 1 && tokens.length - nameTokens < 2
+                    && isNumber(tokens[nameTokens - 1])) {
+                nameTokens--;
+            }
+            if (nameTokens < tokens.length
+                    && exists(session, argument)
+                    && !exists(session, join(tokens, nameTokens))) {
+                nameTokens = tokens.length;
+            }
+
+            if (nameTokens == tokens.length) {
+                fileName = argument;
+            } else {
+                fileName = join(tokens, nameTokens);
+            }
+            positions = new String[tokens.length - nameTokens];
+            System.arraycopy(tokens, nameTokens, positions, 0,
+                    positions.length);
+        }
+
+        long start = 0;
+        long end = -1;
+        try {
+            if (positions.length > 2) {
+                throw new NumberFormatException("Too many positions");
+            }
+            if (positions.length > 0) {
+                start = Long.parseLong(positions[0]);
+            }
+            if (positions.length > 1) {
+                end = Long.parseLong(positions[1]);
+            }
+        } catch (NumberFormatException ex) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "XCRC", null));
+            return;
+        }
+        if (start < 0 || (end >= 0 && end < start)) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "XCRC", null));
+            return;
+        }
+
+        // get file object
+        FtpFile file = null;
+        try {
+            file = session.getFileSystemView().getFile(fileName);
+        } catch (Exception ex) {
+            LOG.debug("Exception getting the file object: " + fileName, ex);
+        }
+
+        if (file == null || !file.doesExist()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "XCRC.missing", fileName));
+            return;
+        }
+        if (!file.isFile()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "XCRC.invalid", fileName));
+            return;
+        }
+        if (!file.isReadable()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "XCRC.permission", fileName));
+            return;
+        }
+
+        long size = file.getSize();
+        if (end < 0 || end > size) {
+            end = size;
+        }
+        start = Math.min(start, end);
+
+        // hash the file on a hashing thread, the command completes once the
+        // file has been hashed. The hash of a whole unchanged file is taken
+        // from the digest cache.
+        final String hashedFileName = fileName;
+        HashBatch.Listener listener = new HashBatch.Listener() {
+            public void hashed(String[] digests) {
+                hashingFinished(session, context, request, hashedFileName,
+                        digests[0], null);
+            }
+
+            public void failed(int index, IOException e) {
+                hashingFinished(session, context, request, hashedFileName,
+                        null, e);
+            }
+        };
+
+        session.getCommandCompletion().defer();
+        boolean hashingStarted = false;
+        try {
+            HashEngine hashEngine = context.getHashEngine();
+            HashBatch batch;
+            if (start == 0 && end == size) {
+                batch = hashEngine.hash(session.getUser(),
+                        new FtpFile[] { file }, algorithm, listener);
+            } else {
+                batch = hashEngine.hash(file, algorithm, start, end - start,
+                        listener);
+            }
+            hashingStarted = true;
+
+            // cancelled if the session is closed
+            session.setHashBatch(batch);
+        } finally {
+            if (!hashingStarted) {
+                session.getCommandCompletion().complete();
+            }
+        }
+    }
+
+    /**
+     * Reply to the client once the file has been hashed, or hashing it has
+     * failed.
+     */
+    private void hashingFinished(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final String fileName, final String hash,
+            final IOException failure) {
+        try {
+            if (failure != null) {
+                LOG.debug("Failed to hash " + fileName, failure);
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+                        "XCRC", fileName));
+                return;
+            }
+
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context, FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY,
+                    "XCRC", hash.toUpperCase()));
+        } finally {
+            session.getCommandCompletion().complete();
+        }
+    }
+
+    private static String[] split(final String str) {
+        String trimmed = str.trim();
+        if (trimmed.length() == 0) {
+            return new String[0];
+        }
+        return trimmed.split("\\s+");
+    }
+
+    private static String join(final String[] tokens, final int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(tokens[i]);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNumber(final String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (!Character.isDigit(str.charAt(i))) {
+                return false;
+            }
+        }
+        return str.length() > 0;
+    }
+
+    private boolean exists(final FtpIoSession session, final String fileName) {
+        try {
+            FtpFile file = session.getFileSystemView().getFile(fileName);
+            return file != null && file.doesExist();
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}
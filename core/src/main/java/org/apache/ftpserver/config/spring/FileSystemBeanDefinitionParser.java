@@ -59,5 +59,13 @@ public class FileSystemBeanDefinitionParser extends
             builder.addPropertyValue("createHome", Boolean
                     .parseBoolean(element.getAttribute("create-home")));
         }
+        if (StringUtils.hasText(element.getAttribute("hot-file-cache-size"))) {
+            builder.addPropertyValue("hotFileCacheSize", SpringUtil.parseInt(
+                    element, "hot-file-cache-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("hot-file-max-size"))) {
+            builder.addPropertyValue("hotFileMaxSize", SpringUtil.parseInt(
+                    element, "hot-file-max-size"));
+        }
     }
 }
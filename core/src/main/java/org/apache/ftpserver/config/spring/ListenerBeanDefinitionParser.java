@@ -25,6 +25,7 @@ import java.net.UnknownHostException;
 import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.UploadDurability;
 import org.apache.ftpserver.ipfilter.DefaultIpFilter;
 import org.apache.ftpserver.ipfilter.IpFilterType;
 import org.apache.ftpserver.listener.ListenerFactory;
@@ -90,6 +91,41 @@ public class ListenerBeanDefinitionParser extends
                     element, "idle-timeout", 300));
         }
 
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            factoryBuilder.addPropertyValue("maxDownloadRate", SpringUtil
+                    .parseInt(element, "max-download-rate"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            factoryBuilder.addPropertyValue("maxUploadRate", SpringUtil
+                    .parseInt(element, "max-upload-rate"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("send-buffer-size"))) {
+            factoryBuilder.addPropertyValue("sendBufferSize", SpringUtil
+                    .parseInt(element, "send-buffer-size"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("receive-buffer-size"))) {
+            factoryBuilder.addPropertyValue("receiveBufferSize", SpringUtil
+                    .parseInt(element, "receive-buffer-size"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("read-buffer-size"))) {
+            factoryBuilder.addPropertyValue("readBufferSize", SpringUtil
+                    .parseInt(element, "read-buffer-size"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("tcp-no-delay"))) {
+            factoryBuilder.addPropertyValue("tcpNoDelay", SpringUtil
+                    .parseBoolean(element, "tcp-no-delay", false));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("traffic-class"))) {
+            factoryBuilder.addPropertyValue("trafficClass", SpringUtil
+                    .parseInt(element, "traffic-class"));
+        }
+
         String localAddress = SpringUtil.parseStringFromInetAddress(element,
                 "local-address");
         if (localAddress != null) {
@@ -228,6 +264,45 @@ public class ListenerBeanDefinitionParser extends
         if (element != null) {
             
             dc.setImplicitSsl(SpringUtil.parseBoolean(element, "implicit-ssl", false));
+
+            dc.setNonBlocking(SpringUtil.parseBoolean(element, "non-blocking", false));
+
+            dc.setTransferBufferSize(SpringUtil.parseInt(element,
+                    "transfer-buffer-size", dc.getTransferBufferSize()));
+            dc.setMaxPooledBuffers(SpringUtil.parseInt(element,
+                    "max-pooled-buffers", dc.getMaxPooledBuffers()));
+
+            dc.setSendBufferSize(SpringUtil.parseInt(element,
+                    "send-buffer-size", dc.getSendBufferSize()));
+            dc.setReceiveBufferSize(SpringUtil.parseInt(element,
+                    "receive-buffer-size", dc.getReceiveBufferSize()));
+            dc.setTcpNoDelay(SpringUtil.parseBoolean(element, "tcp-no-delay",
+                    dc.isTcpNoDelay()));
+            dc.setTrafficClass(SpringUtil.parseInt(element, "traffic-class",
+                    dc.getTrafficClass()));
+            dc.setAutoTuneBufferSizes(SpringUtil.parseBoolean(element,
+                    "auto-tune-buffer-sizes", dc.isAutoTuneBufferSizes()));
+            dc.setAutoTuneTargetRate(SpringUtil.parseInt(element,
+                    "auto-tune-target-rate", dc.getAutoTuneTargetRate()));
+            dc.setMaxAutoTunedBufferSize(SpringUtil.parseInt(element,
+                    "max-auto-tuned-buffer-size", dc.getMaxAutoTunedBufferSize()));
+
+            dc.setCompressionLevel(SpringUtil.parseInt(element,
+                    "compression-level", dc.getCompressionLevel()));
+            dc.setMaxCompressionLevel(SpringUtil.parseInt(element,
+                    "max-compression-level", dc.getMaxCompressionLevel()));
+            dc.setCompressionBufferSize(SpringUtil.parseInt(element,
+                    "compression-buffer-size", dc.getCompressionBufferSize()));
+
+            if (StringUtils.hasText(element.getAttribute("upload-durability"))) {
+                dc.setUploadDurability(UploadDurability.parse(element
+                        .getAttribute("upload-durability")));
+            }
+
+            dc.setPipelinedUploads(SpringUtil.parseBoolean(element,
+                    "pipelined-uploads", dc.isPipelinedUploads()));
+            dc.setUploadPipelineDepth(SpringUtil.parseInt(element,
+                    "upload-pipeline-depth", dc.getUploadPipelineDepth()));
             
             // data con config element available
             SslConfiguration ssl = parseSsl(element);
@@ -248,6 +323,8 @@ public class ListenerBeanDefinitionParser extends
                         "ip-check", false));
                 dc.setActiveLocalPort(SpringUtil.parseInt(activeElm,
                         "local-port", 0));
+                dc.setActiveConnectTimeout(SpringUtil.parseInt(activeElm,
+                        "connect-timeout", dc.getActiveConnectTimeout()));
                 
                 String localAddress = SpringUtil.parseStringFromInetAddress(
                         activeElm, "local-address");
@@ -275,6 +352,11 @@ public class ListenerBeanDefinitionParser extends
                 if (ports != null) {
                     dc.setPassivePorts(ports);
                 }
+
+                dc.setSharedPassivePorts(SpringUtil.parseBoolean(passiveElm,
+                        "shared", dc.isSharedPassivePorts()));
+                dc.setPassiveSocketPoolSize(SpringUtil.parseInt(passiveElm,
+                        "pool-size", dc.getPassiveSocketPoolSize()));
             }
         } else {
             // no data conn config element, do we still have SSL config from the
@@ -122,6 +122,18 @@ public class ServerBeanDefinitionParser extends
             connectionConfig.setMaxThreads(SpringUtil.parseInt(element,
                     "max-threads"));
         }
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            connectionConfig.setMaxDownloadRate(SpringUtil.parseInt(element,
+                    "max-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            connectionConfig.setMaxUploadRate(SpringUtil.parseInt(element,
+                    "max-upload-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-command-length"))) {
+            connectionConfig.setMaxCommandLength(SpringUtil.parseInt(element,
+                    "max-command-length"));
+        }
         if (StringUtils.hasText(element.getAttribute("max-anon-logins"))) {
             connectionConfig.setMaxAnonymousLogins(SpringUtil.parseInt(element,
                     "max-anon-logins"));
@@ -141,6 +153,16 @@ public class ServerBeanDefinitionParser extends
 
         factoryBuilder.addPropertyValue("connectionConfig", connectionConfig.createConnectionConfig());
 
+        if (StringUtils.hasText(element.getAttribute("digest-cache-file"))) {
+            factoryBuilder.addPropertyValue("digestCacheFile", new File(
+                    element.getAttribute("digest-cache-file")));
+        }
+        if (StringUtils.hasText(element.getAttribute("upload-digests"))) {
+            factoryBuilder.addPropertyValue("uploadDigests", StringUtils
+                    .tokenizeToStringArray(element
+                            .getAttribute("upload-digests"), ", "));
+        }
+
        
         BeanDefinition factoryDefinition = factoryBuilder.getBeanDefinition();
 
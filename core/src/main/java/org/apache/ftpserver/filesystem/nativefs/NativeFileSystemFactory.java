@@ -21,6 +21,7 @@ package org.apache.ftpserver.filesystem.nativefs;
 
 import java.io.File;
 
+import org.apache.ftpserver.filesystem.nativefs.impl.HotFileCache;
 import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FileSystemView;
@@ -43,6 +44,12 @@ public class NativeFileSystemFactory implements FileSystemFactory {
 
     private boolean caseInsensitive;
 
+    private int hotFileCacheSize = 0;
+
+    private int hotFileMaxSize = 64 * 1024;
+
+    private HotFileCache hotFileCache;
+
     /**
      * Should the home directories be created automatically
      * @return true if the file system will create the home directory if not available
@@ -78,6 +85,63 @@ public class NativeFileSystemFactory implements FileSystemFactory {
         this.caseInsensitive = caseInsensitive;
     }
 
+    /**
+     * Get the total number of bytes of small files kept in memory for
+     * downloads
+     * @return The cache size, 0 if no files are cached
+     */
+    public int getHotFileCacheSize() {
+        return hotFileCacheSize;
+    }
+
+    /**
+     * Set the total number of bytes of small files kept in memory for
+     * downloads. A file is cached once it is downloaded a second time within
+     * a minute. The least recently downloaded files are evicted when the
+     * cache is full.
+     * @param hotFileCacheSize The cache size, 0 to not cache any files
+     */
+    public void setHotFileCacheSize(int hotFileCacheSize) {
+        if (hotFileCacheSize < 0) {
+            throw new IllegalArgumentException(
+                    "Hot file cache size can not be negative");
+        }
+        this.hotFileCacheSize = hotFileCacheSize;
+    }
+
+    /**
+     * Get the size of the largest file kept in memory for downloads
+     * @return The max file size
+     */
+    public int getHotFileMaxSize() {
+        return hotFileMaxSize;
+    }
+
+    /**
+     * Set the size of the largest file kept in memory for downloads. Larger
+     * files are always read from disk.
+     * @param hotFileMaxSize The max file size, must be positive
+     */
+    public void setHotFileMaxSize(int hotFileMaxSize) {
+        if (hotFileMaxSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Hot file max size must be positive");
+        }
+        this.hotFileMaxSize = hotFileMaxSize;
+    }
+
+    /**
+     * Get the cache of small files shared by all views created by this
+     * factory, including the hit rate statistics
+     * @return The cache, or null if no files are cached
+     */
+    public synchronized HotFileCache getHotFileCache() {
+        if (hotFileCache == null && hotFileCacheSize > 0) {
+            hotFileCache = new HotFileCache(hotFileCacheSize, hotFileMaxSize);
+        }
+        return hotFileCache;
+    }
+
     /**
      * Create the appropriate user file system view.
      */
@@ -99,7 +163,7 @@ public class NativeFileSystemFactory implements FileSystemFactory {
             }
 
             FileSystemView fsView = new NativeFileSystemView(user,
-                    caseInsensitive);
+                    caseInsensitive, getHotFileCache());
             return fsView;
         }
     }
@@ -0,0 +1,571 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps the content of small, frequently downloaded files in direct (off-heap)
+ * buffers. Entries are keyed on the absolute path and are only used as long as
+ * the size and last modified time of the file are unchanged. When the cache is
+ * full, the least recently used files are evicted.
+ *
+ * A file is only cached when it is downloaded a second time within the
+ * admission window, so that files downloaded once neither evict the hot
+ * files nor cost a direct buffer each. The buffers of evicted files are
+ * reused for the next cached files once no download reads from them
+ * anymore.
+ *
+ * Files changed through the file system are invalidated right away, files
+ * changed outside of the server are detected by their size or last modified
+ * time.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HotFileCache {
+
+    /**
+     * The default time within which a file must be downloaded again to be
+     * cached, in milliseconds
+     */
+    public static final long DEFAULT_ADMISSION_WINDOW = 60 * 1000;
+
+    /**
+     * The maximum number of files downloaded once that are remembered
+     */
+    private static final int MAX_CANDIDATES = 1024;
+
+    private static class Entry {
+        private final long length;
+
+        private final long lastModified;
+
+        private final ByteBuffer content;
+
+        // guarded by the cache
+        private int readers = 0;
+
+        private boolean evicted = false;
+
+        public Entry(final long length, final long lastModified,
+                final ByteBuffer content) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+
+        public boolean isCurrent(final long length, final long lastModified) {
+            return this.length == length && this.lastModified == lastModified;
+        }
+    }
+
+    /**
+     * Reads from a private view of a cached buffer, the cached content itself
+     * is never modified. The buffer can only be reused once the stream has
+     * been closed.
+     */
+    private class EntryInputStream extends InputStream {
+
+        private final Entry entry;
+
+        private final ByteBuffer buffer;
+
+        private volatile boolean closed = false;
+
+        public EntryInputStream(final Entry entry, final long offset) {
+            this.entry = entry;
+            buffer = entry.content.duplicate();
+            buffer.position((int) Math.min(offset, buffer.limit()));
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkOpen();
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            checkOpen();
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            checkOpen();
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            checkOpen();
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+            synchronized (HotFileCache.this) {
+                if (!closed) {
+                    closed = true;
+                    release(entry);
+                }
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+
+    private final long maxSize;
+
+    private final int maxFileSize;
+
+    private final long admissionWindow;
+
+    // access ordered, the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+
+    // the time of the first download of files not yet cached, the eldest
+    // candidates are forgotten
+    private final LinkedHashMap<String, Long> candidates = new LinkedHashMap<String, Long>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+            return size() > MAX_CANDIDATES;
+        }
+    };
+
+    // the buffers of evicted files, by capacity
+    private final TreeMap<Integer, List<ByteBuffer>> freeBuffers = new TreeMap<Integer, List<ByteBuffer>>();
+
+    private long size = 0;
+
+    private long freeSize = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a cache with the default admission window
+     * @param maxSize The maximum total number of bytes to cache
+     * @param maxFileSize The size of the largest file to cache
+     */
+    public HotFileCache(final long maxSize, final int maxFileSize) {
+        this(maxSize, maxFileSize, DEFAULT_ADMISSION_WINDOW);
+    }
+
+    /**
+     * Create a cache
+     * @param maxSize The maximum total number of bytes to cache
+     * @param maxFileSize The size of the largest file to cache
+     * @param admissionWindow The time in milliseconds within which a file
+     *   must be downloaded again to be cached
+     */
+    public HotFileCache(final long maxSize, final int maxFileSize,
+            final long admissionWindow) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        if (maxFileSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Max file size must be positive");
+        }
+        if (admissionWindow < 0) {
+            throw new IllegalArgumentException(
+                    "Admission window must not be negative");
+        }
+
+        this.maxSize = maxSize;
+        this.maxFileSize = (int) Math.min(maxFileSize, maxSize);
+        this.admissionWindow = admissionWindow;
+    }
+
+    /**
+     * Get the maximum total number of bytes to cache
+     * @return The cache size
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the size of the largest file to cache
+     * @return The max file size
+     */
+    public int getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Get the time within which a file must be downloaded again to be cached
+     * @return The admission window in milliseconds
+     */
+    public long getAdmissionWindow() {
+        return admissionWindow;
+    }
+
+    /**
+     * Create an input stream for the cached content of a file, loading the file
+     * into the cache if it is downloaded again within the admission window.
+     * The stream must be closed for its buffer to be reused.
+     * @param file The file to read
+     * @param offset The offset to start reading at
+     * @return The input stream, or null if the file is too large to be
+     *         cached, not downloaded often enough or was modified while being
+     *         loaded
+     * @throws IOException If the file can not be read
+     */
+    public InputStream createInputStream(final File file, final long offset)
+            throws IOException {
+        long length = file.length();
+        if (length > maxFileSize) {
+            return null;
+        }
+        long lastModified = file.lastModified();
+        String key = file.getAbsolutePath();
+
+        ByteBuffer buffer;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isCurrent(length, lastModified)) {
+                hits.incrementAndGet();
+                return open(entry, offset);
+            }
+            misses.incrementAndGet();
+
+            // a changed cached file is still hot
+            if (entry == null && !admit(key)) {
+                return null;
+            }
+            buffer = reserve((int) length);
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect((int) length);
+        }
+
+        Entry entry = load(file, buffer, length, lastModified);
+        synchronized (this) {
+            if (entry == null) {
+                free(buffer);
+                invalidate(file);
+                return null;
+            }
+            put(key, entry);
+            return open(entry, offset);
+        }
+    }
+
+    /**
+     * Has the file already been downloaded within the admission window?
+     * Otherwise remember the download.
+     */
+    private boolean admit(final String key) {
+        long now = System.currentTimeMillis();
+        Long firstDownload = candidates.remove(key);
+        if (firstDownload != null
+                && now - firstDownload.longValue() <= admissionWindow) {
+            return true;
+        }
+        candidates.put(key, Long.valueOf(now));
+        return false;
+    }
+
+    private InputStream open(final Entry entry, final long offset) {
+        entry.readers++;
+        return new EntryInputStream(entry, offset);
+    }
+
+    private Entry load(final File file, final ByteBuffer content,
+            final long length, final long lastModified) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            while (content.hasRemaining()) {
+                if (channel.read(content) == -1) {
+                    break;
+                }
+            }
+
+            // do not cache a file that is being modified
+            if (content.hasRemaining() || channel.size() != length
+                    || file.lastModified() != lastModified) {
+                return null;
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                free(content);
+            }
+            throw e;
+        } finally {
+            raf.close();
+        }
+
+        content.flip();
+        return new Entry(length, lastModified, content);
+    }
+
+    /**
+     * Get a buffer for a file about to be cached. The least recently used
+     * files are evicted until the buffer of one of them can be reused or
+     * there is room for a new buffer.
+     * @return The buffer limited to the file length, null if a new buffer
+     *         must be allocated
+     */
+    private ByteBuffer reserve(final int length) {
+        ByteBuffer buffer = takeBuffer(length);
+
+        Iterator<Entry> iter = entries.values().iterator();
+        while (buffer == null && size + length > maxSize && iter.hasNext()) {
+            Entry eldest = iter.next();
+            iter.remove();
+            remove(eldest);
+            evictions.incrementAndGet();
+
+            buffer = takeBuffer(length);
+        }
+
+        if (buffer == null) {
+            dropFreeBuffers(length);
+        }
+        return buffer;
+    }
+
+    /**
+     * Take the smallest free buffer large enough for the file, unless it
+     * would waste more than half of the buffer
+     * @return The buffer limited to the file length, null if there is none
+     */
+    private ByteBuffer takeBuffer(final int length) {
+        SortedMap<Integer, List<ByteBuffer>> fitting = freeBuffers
+                .tailMap(Integer.valueOf(length));
+        if (fitting.isEmpty()) {
+            return null;
+        }
+
+        Integer capacity = fitting.firstKey();
+        if (capacity.intValue() > 2 * length) {
+            return null;
+        }
+
+        List<ByteBuffer> buffers = fitting.get(capacity);
+        ByteBuffer buffer = buffers.remove(buffers.size() - 1);
+        if (buffers.isEmpty()) {
+            freeBuffers.remove(capacity);
+        }
+        freeSize -= capacity.intValue();
+
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * Keep a buffer no longer used for reuse, if the cached and free buffers
+     * stay within the cache size. Otherwise it is left to the garbage
+     * collector.
+     */
+    private void free(final ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (size + freeSize + capacity > maxSize) {
+            return;
+        }
+
+        Integer key = Integer.valueOf(capacity);
+        List<ByteBuffer> buffers = freeBuffers.get(key);
+        if (buffers == null) {
+            buffers = new ArrayList<ByteBuffer>();
+            freeBuffers.put(key, buffers);
+        }
+        buffers.add(buffer);
+        freeSize += capacity;
+    }
+
+    private void release(final Entry entry) {
+        entry.readers--;
+        if (entry.evicted && entry.readers == 0) {
+            free(entry.content);
+        }
+    }
+
+    private void remove(final Entry entry) {
+        size -= entry.content.capacity();
+        entry.evicted = true;
+        if (entry.readers == 0) {
+            free(entry.content);
+        }
+    }
+
+    private void put(final String key, final Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            remove(previous);
+        }
+        size += entry.content.capacity();
+
+        // other files might have been loaded at the same time
+        dropFreeBuffers(0);
+        Iterator<Entry> iter = entries.values().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Entry eldest = iter.next();
+            iter.remove();
+            remove(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Leave the largest free buffers to the garbage collector until there is
+     * room for the requested number of bytes
+     */
+    private void dropFreeBuffers(final int length) {
+        while (size + freeSize + length > maxSize && !freeBuffers.isEmpty()) {
+            Integer capacity = freeBuffers.lastKey();
+            List<ByteBuffer> buffers = freeBuffers.get(capacity);
+            buffers.remove(buffers.size() - 1);
+            if (buffers.isEmpty()) {
+                freeBuffers.remove(capacity);
+            }
+            freeSize -= capacity.intValue();
+        }
+    }
+
+    /**
+     * Remove a file from the cache, called when the file is written, moved or
+     * deleted
+     * @param file The file
+     */
+    public synchronized void invalidate(final File file) {
+        Entry entry = entries.remove(file.getAbsolutePath());
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Remove all files from the cache
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.evicted = true;
+        }
+        entries.clear();
+        candidates.clear();
+        freeBuffers.clear();
+        size = 0;
+        freeSize = 0;
+    }
+
+    /**
+     * Get the number of cached files
+     * @return The number of files
+     */
+    public synchronized int getFileCount() {
+        return entries.size();
+    }
+
+    /**
+     * Get the total number of bytes of the buffers holding cached files
+     * @return The number of bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the total number of bytes of the buffers kept for reuse
+     * @return The number of bytes
+     */
+    public synchronized long getFreeSize() {
+        return freeSize;
+    }
+
+    /**
+     * Get the number of downloads served from the cache
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of downloads of small enough files that had to be read
+     * from disk
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the share of downloads served from the cache
+     * @return The hit rate between 0 and 1, 0 if nothing has been downloaded
+     */
+    public double getHitRate() {
+        long currentHits = hits.get();
+        long total = currentHits + misses.get();
+        return total == 0 ? 0 : (double) currentHits / total;
+    }
+
+    /**
+     * Get the number of files evicted to make room for other files
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
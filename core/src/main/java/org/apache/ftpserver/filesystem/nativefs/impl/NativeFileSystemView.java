@@ -56,6 +56,8 @@ public class NativeFileSystemView implements FileSystemView {
 
     private boolean caseInsensitive = false;
 
+    private HotFileCache hotFileCache;
+
     /**
      * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
      */
@@ -68,6 +70,14 @@ public class NativeFileSystemView implements FileSystemView {
      */
     public NativeFileSystemView(User user, boolean caseInsensitive)
             throws FtpException {
+        this(user, caseInsensitive, null);
+    }
+
+    /**
+     * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
+     */
+    public NativeFileSystemView(User user, boolean caseInsensitive,
+            HotFileCache hotFileCache) throws FtpException {
         if (user == null) {
             throw new IllegalArgumentException("user can not be null");
         }
@@ -77,6 +87,7 @@ public class NativeFileSystemView implements FileSystemView {
         }
 
         this.caseInsensitive = caseInsensitive;
+        this.hotFileCache = hotFileCache;
 
         // add last '/' if necessary
         String rootDir = user.getHomeDirectory();
@@ -99,7 +110,7 @@ public class NativeFileSystemView implements FileSystemView {
      * user.
      */
     public FtpFile getHomeDirectory() {
-        return new NativeFtpFile("/", new File(rootDir), user);
+        return new NativeFtpFile("/", new File(rootDir), user, hotFileCache);
     }
 
     /**
@@ -108,10 +119,11 @@ public class NativeFileSystemView implements FileSystemView {
     public FtpFile getWorkingDirectory() {
         FtpFile fileObj = null;
         if (currDir.equals("/")) {
-            fileObj = new NativeFtpFile("/", new File(rootDir), user);
+            fileObj = new NativeFtpFile("/", new File(rootDir), user,
+                    hotFileCache);
         } else {
             File file = new File(rootDir, currDir.substring(1));
-            fileObj = new NativeFtpFile(currDir, file, user);
+            fileObj = new NativeFtpFile(currDir, file, user, hotFileCache);
 
         }
         return fileObj;
@@ -129,7 +141,7 @@ public class NativeFileSystemView implements FileSystemView {
 
         // strip the root directory and return
         String userFileName = physicalName.substring(rootDir.length() - 1);
-        return new NativeFtpFile(userFileName, fileObj, user);
+        return new NativeFtpFile(userFileName, fileObj, user, hotFileCache);
     }
 
     /**
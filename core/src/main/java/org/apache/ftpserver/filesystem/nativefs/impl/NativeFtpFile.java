@@ -33,6 +33,8 @@ import java.util.List;
 import java.util.StringTokenizer;
 
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.PreallocatableFtpFile;
+import org.apache.ftpserver.ftplet.RandomAccessFtpFile;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.impl.WriteRequest;
 import org.slf4j.Logger;
@@ -45,7 +47,8 @@ import org.slf4j.LoggerFactory;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class NativeFtpFile implements FtpFile {
+public class NativeFtpFile implements PreallocatableFtpFile,
+        RandomAccessFtpFile {
 
     private final Logger LOG = LoggerFactory.getLogger(NativeFtpFile.class);
 
@@ -58,11 +61,21 @@ public class NativeFtpFile implements FtpFile {
 
     private User user;
 
+    private HotFileCache hotFileCache;
+
     /**
      * Constructor, internal do not use directly.
      */
     protected NativeFtpFile(final String fileName, final File file,
             final User user) {
+        this(fileName, file, user, null);
+    }
+
+    /**
+     * Constructor, internal do not use directly.
+     */
+    protected NativeFtpFile(final String fileName, final File file,
+            final User user, final HotFileCache hotFileCache) {
         if (fileName == null) {
             throw new IllegalArgumentException("fileName can not be null");
         }
@@ -80,6 +93,7 @@ public class NativeFtpFile implements FtpFile {
         this.fileName = fileName;
         this.file = file;
         this.user = user;
+        this.hotFileCache = hotFileCache;
     }
 
     /**
@@ -260,6 +274,7 @@ public class NativeFtpFile implements FtpFile {
     public boolean delete() {
         boolean retVal = false;
         if (isRemovable()) {
+            invalidate(file);
             retVal = file.delete();
         }
         return retVal;
@@ -279,6 +294,7 @@ public class NativeFtpFile implements FtpFile {
                 // we fail
                 retVal = false;
             } else {
+                invalidate(file);
                 retVal = file.renameTo(destFile);
             }
         }
@@ -337,7 +353,8 @@ public class NativeFtpFile implements FtpFile {
         for (int i = 0; i < files.length; ++i) {
             File fileObj = files[i];
             String fileName = virtualFileStr + fileObj.getName();
-            virtualFiles[i] = new NativeFtpFile(fileName, fileObj, user);
+            virtualFiles[i] = new NativeFtpFile(fileName, fileObj, user,
+                    hotFileCache);
         }
 
         return Collections.unmodifiableList(Arrays.asList(virtualFiles));
@@ -348,15 +365,74 @@ public class NativeFtpFile implements FtpFile {
      */
     public OutputStream createOutputStream(final long offset)
             throws IOException {
+        return createOutputStream(offset, 0L);
+    }
+
+    /**
+     * Create output stream for writing. The file is extended to hold the
+     * expected data before the first write, so that it is not grown by every
+     * write, and truncated to the written data when the stream is flushed or
+     * closed.
+     */
+    public OutputStream createOutputStream(final long offset,
+            final long allocationSize) throws IOException {
 
         // permission check
         if (!isWritable()) {
             throw new IOException("No write permission : " + file.getName());
         }
 
+        invalidate(file);
+
         // create output stream
         final RandomAccessFile raf = new RandomAccessFile(file, "rw");
         raf.setLength(offset);
+
+        final boolean preallocated = preallocate(raf, offset, allocationSize);
+        raf.seek(offset);
+
+        // The IBM jre needs to have both the stream and the random access file
+        // objects closed to actually close the file
+        return new FileOutputStream(raf.getFD()) {
+            private boolean reserved = preallocated;
+
+            @Override
+            public void flush() throws IOException {
+                if (reserved) {
+                    // release the space reserved but never written
+                    raf.setLength(raf.getFilePointer());
+                    reserved = false;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    flush();
+                    super.close();
+                } finally {
+                    raf.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Create output stream for writing part of the file, leaving the rest of
+     * the file untouched.
+     */
+    public OutputStream createRangeOutputStream(final long offset)
+            throws IOException {
+
+        // permission check
+        if (!isWritable()) {
+            throw new IOException("No write permission : " + file.getName());
+        }
+
+        invalidate(file);
+
+        // create output stream
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
         raf.seek(offset);
 
         // The IBM jre needs to have both the stream and the random access file
@@ -370,6 +446,28 @@ public class NativeFtpFile implements FtpFile {
         };
     }
 
+    /**
+     * Extend the file to hold the expected data.
+     * @return true if the file was extended
+     */
+    private boolean preallocate(final RandomAccessFile raf, final long offset,
+            final long allocationSize) {
+        long length = offset + allocationSize;
+        if (allocationSize <= 0 || length < 0) {
+            return false;
+        }
+
+        try {
+            raf.setLength(length);
+            return true;
+        } catch (IOException ex) {
+            // not fatal, the file will grow as it is written
+            LOG.debug("Failed to preallocate " + allocationSize
+                    + " bytes for " + file, ex);
+            return false;
+        }
+    }
+
     /**
      * Create input stream for reading.
      */
@@ -380,6 +478,14 @@ public class NativeFtpFile implements FtpFile {
             throw new IOException("No read permission : " + file.getName());
         }
 
+        // small files might be served from memory
+        if (hotFileCache != null) {
+            InputStream in = hotFileCache.createInputStream(file, offset);
+            if (in != null) {
+                return in;
+            }
+        }
+
         // move to the appropriate offset and create input stream
         final RandomAccessFile raf = new RandomAccessFile(file, "r");
         raf.seek(offset);
@@ -395,6 +501,12 @@ public class NativeFtpFile implements FtpFile {
         };
     }
 
+    private void invalidate(final File file) {
+        if (hotFileCache != null) {
+            hotFileCache.invalidate(file);
+        }
+    }
+
     /**
      * Normalize separate character. Separate character should be '/' always.
      */
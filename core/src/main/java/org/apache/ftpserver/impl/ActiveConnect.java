@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Connects an active data connection without blocking, on the selector
+ * thread of the {@link NioDataConnectionEngine}. The connect is started as
+ * soon as the client sends PORT or EPRT, so that it overlaps with the client
+ * sending the transfer command, and fails if the client has not accepted it
+ * within the connect timeout.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ActiveConnect implements NioDataConnectionEngine.Handler {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(ActiveConnect.class);
+
+    private final NioDataConnectionEngine engine;
+
+    private final SocketChannel channel;
+
+    private boolean done = false;
+
+    /**
+     * Set as soon as the connect has finished, before the channel is
+     * switched back to blocking mode
+     */
+    private boolean connected = false;
+
+    private IOException failure;
+
+    /**
+     * Open a data channel for an active data connection, bound to the
+     * configured local address and port
+     * @param session The session of the data connection
+     * @return The unconnected channel, in non-blocking mode
+     * @throws IOException If the channel could not be opened or bound
+     */
+    public static SocketChannel openChannel(final FtpIoSession session)
+            throws IOException {
+        DataConnectionConfiguration dataConfig = session.getListener()
+                .getDataConnectionConfiguration();
+
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setReuseAddress(true);
+
+            // buffer sizes must be set before connecting
+            DataSocketOptions.create(session).configure(channel.socket());
+
+            // if no local address has been configured, make sure we use the
+            // same as the client connects from
+            InetAddress localAddr;
+            if (dataConfig.getActiveLocalAddress() != null) {
+                localAddr = InetAddress.getByName(dataConfig
+                        .getActiveLocalAddress());
+            } else {
+                localAddr = ((InetSocketAddress) session.getLocalAddress())
+                        .getAddress();
+            }
+
+            SocketAddress localSocketAddress = new InetSocketAddress(localAddr,
+                    dataConfig.getActiveLocalPort());
+
+            LOG.debug("Binding active data connection to {}",
+                    localSocketAddress);
+            channel.socket().bind(localSocketAddress);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Start connecting an active data connection
+     * @param engine The engine to finish the connect on
+     * @param channel The channel opened by {@link #openChannel(FtpIoSession)}
+     * @param address The address of the client
+     * @param timeoutSeconds The connect timeout in seconds, 0 for the
+     *   operating system default
+     * @return The started connect
+     * @throws IOException If the connect could not be started
+     */
+    public static ActiveConnect start(final NioDataConnectionEngine engine,
+            final SocketChannel channel, final SocketAddress address,
+            final int timeoutSeconds) throws IOException {
+        final ActiveConnect connect = new ActiveConnect(engine, channel);
+        final boolean connected = channel.connect(address);
+
+        engine.execute(new Runnable() {
+            public void run() {
+                if (connected) {
+                    connect.switchToBlocking();
+                    return;
+                }
+
+                try {
+                    engine.register(channel, SelectionKey.OP_CONNECT, connect);
+                } catch (IOException e) {
+                    connect.failed(e);
+                    return;
+                }
+
+                if (timeoutSeconds > 0) {
+                    engine.schedule(TimeUnit.SECONDS.toNanos(timeoutSeconds),
+                            new Runnable() {
+                                public void run() {
+                                    connect.timedOut();
+                                }
+                            });
+                }
+            }
+        });
+
+        return connect;
+    }
+
+    private ActiveConnect(final NioDataConnectionEngine engine,
+            final SocketChannel channel) {
+        this.engine = engine;
+        this.channel = channel;
+    }
+
+    /**
+     * @see NioDataConnectionEngine.Handler#ready(SelectionKey)
+     */
+    public void ready(final SelectionKey key) throws IOException {
+        if (channel.finishConnect()) {
+            synchronized (this) {
+                connected = true;
+            }
+            key.cancel();
+
+            // the channel can only be switched back to blocking mode once
+            // the selector has deregistered it, which is done before the
+            // next tasks are run
+            engine.execute(new Runnable() {
+                public void run() {
+                    switchToBlocking();
+                }
+            });
+        }
+    }
+
+    private void switchToBlocking() {
+        try {
+            channel.configureBlocking(true);
+        } catch (IOException e) {
+            failed(e);
+            return;
+        }
+        finished(null);
+    }
+
+    private void timedOut() {
+        synchronized (this) {
+            if (done || connected) {
+                return;
+            }
+        }
+        failed(new SocketTimeoutException(
+                "Active data connection not opened in time"));
+    }
+
+    /**
+     * @see NioDataConnectionEngine.Handler#failed(IOException)
+     */
+    public void failed(final IOException e) {
+        close();
+        finished(e);
+    }
+
+    private synchronized void finished(final IOException e) {
+        if (!done) {
+            done = true;
+            failure = e;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the connect to finish
+     * @return The connected channel, in blocking mode
+     * @throws IOException If the connect failed, timed out or has been
+     *             cancelled
+     */
+    public synchronized SocketChannel await() throws IOException {
+        while (!done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IOException(
+                        "Interrupted waiting for the active data connection");
+            }
+        }
+
+        if (failure != null) {
+            IOException e = new IOException(
+                    "Failed to open active data connection: "
+                            + failure.getMessage());
+            e.initCause(failure);
+            throw e;
+        }
+
+        return channel;
+    }
+
+    /**
+     * Stop connecting and close the channel
+     */
+    public void cancel() {
+        close();
+        finished(new SocketException("Active data connection closed"));
+    }
+
+    private void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close active data connection", e);
+        }
+    }
+}
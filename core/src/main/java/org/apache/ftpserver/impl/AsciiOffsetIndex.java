@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Maps offsets in the ASCII representation of a file, where every
+ * <code>\n</code> is sent as <code>\r\n</code>, to offsets in the file itself,
+ * so that an ASCII download restarted with REST does not have to read the
+ * whole file up to the restart offset.
+ *
+ * For every file, the ASCII offset at every checkpoint (a fixed number of
+ * bytes apart) is recorded the first time the file is scanned past it. Later
+ * restarts start scanning at the closest checkpoint before the requested
+ * offset. The index of a file is discarded when its size or last modified
+ * time changes, and the least recently used files are dropped when too many
+ * files are indexed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AsciiOffsetIndex {
+
+    /**
+     * The default number of bytes between two checkpoints
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1024 * 1024;
+
+    /**
+     * The default max number of indexed files
+     */
+    public static final int DEFAULT_MAX_FILES = 256;
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    /**
+     * The checkpoints of a single file. Checkpoint k is at the file offset
+     * k * interval, only the ASCII offsets are stored.
+     */
+    private static class FileIndex {
+        private final long size;
+
+        private final long lastModified;
+
+        private long[] asciiOffsets = new long[16];
+
+        private int count = 1;
+
+        public FileIndex(final long size, final long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public boolean isCurrent(final long size, final long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        /**
+         * Find the last checkpoint at or before an ASCII offset
+         */
+        public synchronized int floor(final long asciiOffset) {
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (asciiOffsets[mid] <= asciiOffset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        public synchronized long getAsciiOffset(final int checkpoint) {
+            return asciiOffsets[checkpoint];
+        }
+
+        public synchronized void add(final int checkpoint,
+                final long asciiOffset) {
+            // concurrent scans of the same file find the same checkpoints,
+            // only the first one is recorded
+            if (checkpoint != count) {
+                return;
+            }
+
+            if (count == asciiOffsets.length) {
+                long[] newOffsets = new long[count * 2];
+                System.arraycopy(asciiOffsets, 0, newOffsets, 0, count);
+                asciiOffsets = newOffsets;
+            }
+            asciiOffsets[count++] = asciiOffset;
+        }
+
+        public synchronized int getCheckpointCount() {
+            return count;
+        }
+    }
+
+    private final int checkpointInterval;
+
+    private final Map<String, FileIndex> files;
+
+    /**
+     * Create an index with the default checkpoint interval and max number of
+     * files
+     */
+    public AsciiOffsetIndex() {
+        this(DEFAULT_CHECKPOINT_INTERVAL, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * Create an index
+     * @param checkpointInterval The number of bytes between two checkpoints
+     * @param maxFiles The max number of indexed files
+     */
+    public AsciiOffsetIndex(final int checkpointInterval, final int maxFiles) {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "Checkpoint interval must be positive");
+        }
+        if (maxFiles <= 0) {
+            throw new IllegalArgumentException(
+                    "Max number of files must be positive");
+        }
+
+        this.checkpointInterval = checkpointInterval;
+        this.files = new LinkedHashMap<String, FileIndex>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, FileIndex> eldest) {
+                return size() > maxFiles;
+            }
+        };
+    }
+
+    /**
+     * Open a file for an ASCII download starting at an offset in the ASCII
+     * representation of the file
+     * @param user The user downloading the file, used to tell apart equally
+     *   named files in different home directories. Might be null.
+     * @param file The file
+     * @param asciiOffset The ASCII offset, as sent with REST
+     * @return The stream, positioned at the first byte at or after the
+     *         ASCII offset
+     * @throws IOException If the file is shorter than the ASCII offset or can
+     *         not be read
+     */
+    public InputStream openInputStream(final User user, final FtpFile file,
+            final long asciiOffset) throws IOException {
+        if (asciiOffset <= 0) {
+            return file.createInputStream(0L);
+        }
+
+        FileIndex index = getIndex(user, file);
+        return file.createInputStream(findOffset(index, file, asciiOffset));
+    }
+
+    private FileIndex getIndex(final User user, final FtpFile file) {
+        String key = file.getAbsolutePath();
+        if (user != null) {
+            key = user.getHomeDirectory() + key;
+        }
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+
+        synchronized (files) {
+            FileIndex index = files.get(key);
+            if (index == null || !index.isCurrent(size, lastModified)) {
+                index = new FileIndex(size, lastModified);
+                files.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    private long findOffset(final FileIndex index, final FtpFile file,
+            final long asciiOffset) throws IOException {
+        int checkpoint = index.floor(asciiOffset);
+        long offset = (long) checkpoint * checkpointInterval;
+        long currentAsciiOffset = index.getAsciiOffset(checkpoint);
+
+        // every byte takes at least one ASCII byte, so no earlier byte can
+        // match
+        if (currentAsciiOffset == asciiOffset) {
+            return offset;
+        }
+
+        InputStream in = file.createInputStream(offset);
+        try {
+            byte[] buff = new byte[SCAN_BUFFER_SIZE];
+            while (true) {
+                int count = in.read(buff);
+                if (count == -1) {
+                    throw new IOException("Cannot skip");
+                }
+
+                for (int i = 0; i < count; i++) {
+                    currentAsciiOffset += (buff[i] == '\n') ? 2 : 1;
+                    offset++;
+
+                    if (offset % checkpointInterval == 0) {
+                        index.add((int) (offset / checkpointInterval),
+                                currentAsciiOffset);
+                    }
+                    if (currentAsciiOffset >= asciiOffset) {
+                        return offset;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the number of indexed files
+     * @return The number of files
+     */
+    public int getFileCount() {
+        synchronized (files) {
+            return files.size();
+        }
+    }
+
+    /**
+     * Get the number of checkpoints recorded for a file, including the one at
+     * the start of the file
+     * @param user The user, might be null
+     * @param file The file
+     * @return The number of checkpoints
+     */
+    public int getCheckpointCount(final User user, final FtpFile file) {
+        return getIndex(user, file).getCheckpointCount();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Translates line endings for ASCII data transfers. Buffers are scanned for
+ * <code>\r</code> and <code>\n</code> and the runs of bytes between line
+ * endings are written in bulk.
+ *
+ * When sending to the client, any <code>\n</code> not preceded by
+ * <code>\r</code> is replaced by <code>\r\n</code>. When receiving from the
+ * client, <code>\r</code>, <code>\n</code> and <code>\r\n</code> are all
+ * replaced by the local line ending.
+ *
+ * The last translated byte is remembered, so a line ending split across two
+ * buffers is handled correctly. A translator must therefore only be used for
+ * a single transfer.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AsciiTranslator {
+
+    private final boolean toClient;
+
+    private final byte[] eol;
+
+    private byte lastByte = 0;
+
+    /**
+     * Create a translator
+     * @param toClient true when sending data to the client, false when
+     *   receiving data from the client
+     * @param eol The local line ending, written for every line ending
+     *   received from the client
+     */
+    public AsciiTranslator(final boolean toClient, final byte[] eol) {
+        this.toClient = toClient;
+        this.eol = eol;
+    }
+
+    /**
+     * Translate a buffer and write the result
+     * @param buff The buffer
+     * @param offset The offset of the first byte to translate
+     * @param count The number of bytes to translate
+     * @param out The stream to write the translated bytes to
+     * @throws IOException If writing fails
+     */
+    public void translate(final byte[] buff, final int offset, final int count,
+            final OutputStream out) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+
+        if (toClient) {
+            translateToClient(buff, offset, offset + count, out);
+        } else {
+            translateFromClient(buff, offset, offset + count, out);
+        }
+
+        // store this byte so that we can compare it for line endings
+        lastByte = buff[offset + count - 1];
+    }
+
+    private void translateToClient(final byte[] buff, final int offset,
+            final int end, final OutputStream out) throws IOException {
+        byte previous = lastByte;
+        int start = offset;
+
+        for (int i = offset; i < end; i++) {
+            byte b = buff[i];
+            if (b == '\n' && previous != '\r') {
+                // write the run before the \n together with the missing \r,
+                // the \n itself starts the next run
+                out.write(buff, start, i - start);
+                out.write('\r');
+                start = i;
+            }
+            previous = b;
+        }
+
+        out.write(buff, start, end - start);
+    }
+
+    private void translateFromClient(final byte[] buff, final int offset,
+            final int end, final OutputStream out) throws IOException {
+        byte previous = lastByte;
+        int start = offset;
+
+        for (int i = offset; i < end; i++) {
+            byte b = buff[i];
+            if (b == '\r' || b == '\n') {
+                out.write(buff, start, i - start);
+
+                // for reads, we should always get \r\n so on \r we dump the
+                // local line ending and then ignore the \n. Some clients won't
+                // transform new lines into \r\n so a lone \n is also a line
+                // ending.
+                if (b == '\r' || previous != '\r') {
+                    out.write(eol);
+                }
+                start = i + 1;
+            }
+            previous = b;
+        }
+
+        out.write(buff, start, end - start);
+    }
+}
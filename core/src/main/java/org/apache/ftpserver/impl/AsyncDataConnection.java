@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.FtpSession;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A data connection which can report the end of a transfer to a listener
+ * instead of blocking the caller. Implementations which can not transfer
+ * asynchronously complete the transfer before returning and notify the
+ * listener from the calling thread.
+ *
+ * The methods never throw, any failure is reported to the listener.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface AsyncDataConnection extends DataConnection {
+
+    /**
+     * Transfer data from the client (e.g. STOR).
+     * @param session The current {@link FtpSession}
+     * @param out The {@link OutputStream} containing the destination of the
+     *   data from the client
+     * @param listener Notified when the transfer has finished
+     */
+    void transferFromClient(FtpSession session, OutputStream out,
+            DataTransferListener listener);
+
+    /**
+     * Transfer data to the client (e.g. RETR).
+     * @param session The current {@link FtpSession}
+     * @param in Data to be transfered to the client
+     * @param listener Notified when the transfer has finished
+     */
+    void transferToClient(FtpSession session, InputStream in,
+            DataTransferListener listener);
+}
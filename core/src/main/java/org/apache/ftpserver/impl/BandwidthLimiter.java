@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A single level (server, listener, user or session) in the bandwidth
+ * hierarchy. Limits the rate of the transfers passing through it using a
+ * {@link TokenBucket}, if a max rate is configured, and measures the current
+ * throughput.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BandwidthLimiter {
+
+    private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxRate;
+
+    private final int maxBurst;
+
+    private final TokenBucket bucket;
+
+    private final AtomicLong transferredBytes = new AtomicLong(0);
+
+    private long sampleTime = System.nanoTime();
+
+    private long sampleBytes = 0;
+
+    private long currentRate = 0;
+
+    /**
+     * Create a limiter
+     * @param maxRate The max number of bytes per second, 0 for no limit
+     * @param maxBurst The max burst, 0 for the default burst
+     */
+    public BandwidthLimiter(final int maxRate, final int maxBurst) {
+        this.maxRate = maxRate;
+        this.maxBurst = maxBurst;
+
+        if (maxRate > 0) {
+            bucket = new TokenBucket(maxRate, maxBurst);
+        } else {
+            bucket = null;
+        }
+    }
+
+    /**
+     * Get the max rate
+     * @return The max number of bytes per second, 0 if not limited
+     */
+    public int getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Get the configured max burst
+     * @return The max burst, 0 if the default burst is used
+     */
+    public int getMaxBurst() {
+        return maxBurst;
+    }
+
+    /**
+     * Is the rate limited by this limiter?
+     * @return true if a max rate is configured
+     */
+    public boolean isLimited() {
+        return bucket != null;
+    }
+
+    /**
+     * Get the largest number of bytes that should be transferred at once
+     * @return The burst of the limiter, {@link Long#MAX_VALUE} if not limited
+     */
+    public long getBurst() {
+        if (bucket != null) {
+            return bucket.getBurst();
+        } else {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Record a transfer and take the tokens for it.
+     * @return The time to wait in nanoseconds for the tokens to become
+     *         available
+     */
+    long reserve(final long bytes, final long now) {
+        transferredBytes.addAndGet(bytes);
+
+        if (bucket != null) {
+            return bucket.reserve(bytes, now);
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Get the current throughput. The rate is sampled at most once per
+     * second, as the average since the previous sample.
+     * @return The current number of bytes per second
+     */
+    public synchronized long getCurrentRate() {
+        long now = System.nanoTime();
+        long elapsed = now - sampleTime;
+
+        if (elapsed >= SAMPLE_INTERVAL) {
+            long bytes = transferredBytes.get();
+            // in floating point, the bytes times the interval in nanoseconds
+            // would overflow after a few gigabytes
+            currentRate = (long) ((bytes - sampleBytes)
+                    * ((double) SAMPLE_INTERVAL / elapsed));
+
+            sampleBytes = bytes;
+            sampleTime = now;
+        }
+
+        return currentRate;
+    }
+}
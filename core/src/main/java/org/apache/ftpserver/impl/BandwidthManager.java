@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.listener.nio.AbstractListener;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps track of the shared {@link BandwidthLimiter}s for the whole server,
+ * each listener, each user (across all of the user's sessions) and each
+ * session. The limiters are created when first needed, and recreated if the
+ * configured rates have changed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BandwidthManager {
+
+    /**
+     * The download and upload limiters for a single level
+     */
+    private static class Limiters {
+        private final BandwidthLimiter download;
+
+        private final BandwidthLimiter upload;
+
+        public Limiters(int maxDownloadRate, int maxUploadRate,
+                int maxDownloadBurst, int maxUploadBurst) {
+            download = new BandwidthLimiter(maxDownloadRate, maxDownloadBurst);
+            upload = new BandwidthLimiter(maxUploadRate, maxUploadBurst);
+        }
+
+        public boolean isConfiguredAs(int maxDownloadRate, int maxUploadRate,
+                int maxDownloadBurst, int maxUploadBurst) {
+            return download.getMaxRate() == maxDownloadRate
+                    && upload.getMaxRate() == maxUploadRate
+                    && download.getMaxBurst() == maxDownloadBurst
+                    && upload.getMaxBurst() == maxUploadBurst;
+        }
+
+        public BandwidthLimiter get(boolean download) {
+            return download ? this.download : this.upload;
+        }
+    }
+
+    private final FtpServerContext serverContext;
+
+    private volatile Limiters server;
+
+    private final ConcurrentMap<Listener, Limiters> listeners = new ConcurrentHashMap<Listener, Limiters>();
+
+    private final ConcurrentMap<String, Limiters> users = new ConcurrentHashMap<String, Limiters>();
+
+    private final ConcurrentMap<UUID, Limiters> sessions = new ConcurrentHashMap<UUID, Limiters>();
+
+    public BandwidthManager(final FtpServerContext serverContext) {
+        this.serverContext = serverContext;
+    }
+
+    /**
+     * Create the rate limiter for a transfer in the provided session
+     * @param session The session
+     * @param download true for downloads, false for uploads
+     * @return The limiter for the transfer, including all the levels the
+     *         transfer passes through
+     */
+    public TransferRateLimiter createTransferRateLimiter(
+            final FtpIoSession session, final boolean download) {
+        BandwidthLimiter sessionLimiter = null;
+        BandwidthLimiter userLimiter = null;
+
+        User user = session.getUser();
+        if (user != null) {
+            TransferRateRequest transferRateRequest = new TransferRateRequest();
+            transferRateRequest = (TransferRateRequest) user
+                    .authorize(transferRateRequest);
+
+            if (transferRateRequest != null) {
+                sessionLimiter = getLimiters(sessions, session.getSessionId(),
+                        transferRateRequest.getMaxDownloadRate(),
+                        transferRateRequest.getMaxUploadRate(),
+                        transferRateRequest.getMaxDownloadBurst(),
+                        transferRateRequest.getMaxUploadBurst()).get(download);
+                userLimiter = getLimiters(users, user.getName(),
+                        transferRateRequest.getMaxTotalDownloadRate(),
+                        transferRateRequest.getMaxTotalUploadRate(), 0, 0)
+                        .get(download);
+            }
+        }
+
+        BandwidthLimiter listenerLimiter = null;
+        Listener listener = session.getListener();
+        if (listener instanceof AbstractListener) {
+            // other listener implementations have no rate limits
+            AbstractListener abstractListener = (AbstractListener) listener;
+            listenerLimiter = getLimiters(listeners, listener,
+                    abstractListener.getMaxDownloadRate(),
+                    abstractListener.getMaxUploadRate(), 0, 0).get(download);
+        }
+
+        BandwidthLimiter serverLimiter = getServerLimiters().get(download);
+
+        return new TransferRateLimiter(sessionLimiter, userLimiter,
+                listenerLimiter, serverLimiter);
+    }
+
+    /**
+     * Release the limiters for a closed session
+     * @param session The closed session
+     */
+    public void sessionClosed(final FtpIoSession session) {
+        sessions.remove(session.getSessionId());
+    }
+
+    /**
+     * Get the current rate for the whole server
+     * @param download true for downloads, false for uploads
+     * @return The current number of bytes per second
+     */
+    public long getCurrentServerRate(final boolean download) {
+        return getServerLimiters().get(download).getCurrentRate();
+    }
+
+    /**
+     * Get the current rate for a listener
+     * @param listener The listener
+     * @param download true for downloads, false for uploads
+     * @return The current number of bytes per second
+     */
+    public long getCurrentListenerRate(final Listener listener,
+            final boolean download) {
+        return getCurrentRate(listeners.get(listener), download);
+    }
+
+    /**
+     * Get the current rate for all sessions of a user
+     * @param userName The user name
+     * @param download true for downloads, false for uploads
+     * @return The current number of bytes per second
+     */
+    public long getCurrentUserRate(final String userName,
+            final boolean download) {
+        return getCurrentRate(users.get(userName), download);
+    }
+
+    /**
+     * Get the current rate for a session
+     * @param sessionId The session ID
+     * @param download true for downloads, false for uploads
+     * @return The current number of bytes per second
+     */
+    public long getCurrentSessionRate(final UUID sessionId,
+            final boolean download) {
+        return getCurrentRate(sessions.get(sessionId), download);
+    }
+
+    private long getCurrentRate(final Limiters limiters, final boolean download) {
+        if (limiters == null) {
+            return 0;
+        } else {
+            return limiters.get(download).getCurrentRate();
+        }
+    }
+
+    private Limiters getServerLimiters() {
+        // other connection configurations do not limit the server
+        int maxDownloadRate = 0;
+        int maxUploadRate = 0;
+        ConnectionConfig connectionConfig = serverContext.getConnectionConfig();
+        if (connectionConfig instanceof DefaultConnectionConfig) {
+            DefaultConnectionConfig defaultConfig = (DefaultConnectionConfig) connectionConfig;
+            maxDownloadRate = defaultConfig.getMaxDownloadRate();
+            maxUploadRate = defaultConfig.getMaxUploadRate();
+        }
+
+        Limiters limiters = server;
+        if (limiters == null
+                || !limiters.isConfiguredAs(maxDownloadRate, maxUploadRate, 0, 0)) {
+            synchronized (this) {
+                limiters = server;
+                if (limiters == null
+                        || !limiters.isConfiguredAs(maxDownloadRate,
+                                maxUploadRate, 0, 0)) {
+                    limiters = new Limiters(maxDownloadRate, maxUploadRate, 0, 0);
+                    server = limiters;
+                }
+            }
+        }
+        return limiters;
+    }
+
+    private <K> Limiters getLimiters(final ConcurrentMap<K, Limiters> map,
+            final K key, final int maxDownloadRate, final int maxUploadRate,
+            final int maxDownloadBurst, final int maxUploadBurst) {
+        while (true) {
+            Limiters limiters = map.get(key);
+
+            if (limiters != null
+                    && limiters.isConfiguredAs(maxDownloadRate, maxUploadRate,
+                            maxDownloadBurst, maxUploadBurst)) {
+                return limiters;
+            }
+
+            Limiters newLimiters = new Limiters(maxDownloadRate,
+                    maxUploadRate, maxDownloadBurst, maxUploadBurst);
+            if (limiters == null) {
+                if (map.putIfAbsent(key, newLimiters) == null) {
+                    return newLimiters;
+                }
+            } else if (map.replace(key, limiters, newLimiters)) {
+                return newLimiters;
+            }
+            // lost a race with another thread, try again
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Bounded pool of equally sized {@link ByteBuffer}s used for data transfers.
+ * The pool allocates at most the configured number of buffers, in use or
+ * idle, and keeps all of them for reuse. A buffer is always handed out though:
+ * once all buffers of the pool are in use, a transient heap buffer is
+ * allocated, which is not counted as in use and is left to the garbage
+ * collector when released. This bounds the memory held by the pool, direct
+ * memory in particular, without ever blocking a transfer.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    private final boolean direct;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * The number of buffers in the queue, kept separately since the size of
+     * the queue is expensive to compute
+     */
+    private final AtomicInteger pooled = new AtomicInteger(0);
+
+    /**
+     * The number of buffers allocated by the pool, in use or idle
+     */
+    private final AtomicInteger allocated = new AtomicInteger(0);
+
+    private final AtomicInteger inUse = new AtomicInteger(0);
+
+    /**
+     * The transient buffers currently handed out, only kept to tell them
+     * apart from the pooled buffers when they are released
+     */
+    private final Map<ByteBuffer, Boolean> transients = Collections
+            .synchronizedMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+    private final AtomicInteger transientCount = new AtomicInteger(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Create a pool
+     * @param bufferSize The size of each buffer in bytes
+     * @param maxPooled The maximum number of buffers allocated by the pool
+     * @param direct true for direct buffers, false for heap buffers
+     */
+    public BufferPool(final int bufferSize, final int maxPooled,
+            final boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * Get a buffer from the pool, allocating a new one if the pool is empty.
+     * If all buffers of the pool are in use, a transient heap buffer is
+     * returned, even from a pool of direct buffers.
+     * @return A cleared buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+            hits.incrementAndGet();
+            buffer.clear();
+            inUse.incrementAndGet();
+            return buffer;
+        }
+
+        misses.incrementAndGet();
+        if (allocated.incrementAndGet() <= maxPooled) {
+            if (direct) {
+                buffer = ByteBuffer.allocateDirect(bufferSize);
+            } else {
+                buffer = ByteBuffer.allocate(bufferSize);
+            }
+            inUse.incrementAndGet();
+            return buffer;
+        }
+        allocated.decrementAndGet();
+
+        // the pool is exhausted
+        buffer = ByteBuffer.allocate(bufferSize);
+        transients.put(buffer, Boolean.TRUE);
+        transientCount.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer must not be used by the caller
+     * afterwards.
+     * @param buffer A buffer acquired from this pool, ignored if null
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        if (transientCount.get() > 0 && transients.remove(buffer) != null) {
+            // left to the garbage collector
+            transientCount.decrementAndGet();
+            return;
+        }
+
+        inUse.decrementAndGet();
+        pooled.incrementAndGet();
+        buffers.offer(buffer);
+    }
+
+    /**
+     * Get the size of the buffers in this pool
+     * @return The buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Is this a pool of direct buffers?
+     * @return true for direct buffers, false for heap buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Get the number of buffers acquired from the pool
+     * @return The number of buffers reused from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of buffers which had to be allocated since the pool
+     * was empty, including the transient buffers
+     * @return The number of allocated buffers
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of buffers of the pool currently acquired and not yet
+     * released, not counting the transient buffers
+     * @return The number of buffers in use
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Get the number of idle buffers in the pool
+     * @return The number of pooled buffers
+     */
+    public int getPooled() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.DataTransferConfiguration;
+import org.apache.ftpserver.listener.Listener;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps the {@link BufferPool}s used for data transfers, sized by the data
+ * connection configuration of each listener. Every listener has a pool of
+ * heap buffers, for transfers which work on streams, and a pool of direct
+ * buffers, for transfers which read from or write to channels without an
+ * intermediate copy.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BufferPoolManager {
+
+    /**
+     * The heap and direct buffer pools of a listener
+     */
+    private static class Pools {
+        private final BufferPool heap;
+
+        private final BufferPool direct;
+
+        public Pools(final int bufferSize, final int maxPooled) {
+            heap = new BufferPool(bufferSize, maxPooled, false);
+            direct = new BufferPool(bufferSize, maxPooled, true);
+        }
+    }
+
+    private final ConcurrentMap<Listener, Pools> listeners = new ConcurrentHashMap<Listener, Pools>();
+
+    /**
+     * Pools with the default configuration, for sessions not created by a
+     * listener
+     */
+    private final Pools defaultPools;
+
+    public BufferPoolManager() {
+        DataConnectionConfigurationFactory defaults = new DataConnectionConfigurationFactory();
+        defaultPools = new Pools(defaults.getTransferBufferSize(), defaults
+                .getMaxPooledBuffers());
+    }
+
+    /**
+     * Get the buffer pool for the data connections of a listener
+     * @param listener The listener, or null for the default pools
+     * @param direct true for direct buffers, false for heap buffers
+     * @return The pool
+     */
+    public BufferPool getBufferPool(final Listener listener,
+            final boolean direct) {
+        Pools pools;
+        if (listener == null) {
+            pools = defaultPools;
+        } else {
+            pools = listeners.get(listener);
+        }
+
+        if (pools == null) {
+            DataTransferConfiguration dataConnectionConfig = DataTransferConfigurationAdapter
+                    .adapt(listener.getDataConnectionConfiguration());
+            Pools newPools = new Pools(dataConnectionConfig
+                    .getTransferBufferSize(), dataConnectionConfig
+                    .getMaxPooledBuffers());
+
+            pools = listeners.putIfAbsent(listener, newPools);
+            if (pools == null) {
+                pools = newPools;
+            }
+        }
+
+        return direct ? pools.direct : pools.heap;
+    }
+
+    /**
+     * Get the number of buffers reused from the pools of all listeners
+     * @return The number of pool hits
+     */
+    public long getHits() {
+        long hits = defaultPools.heap.getHits()
+                + defaultPools.direct.getHits();
+        for (Pools pools : listeners.values()) {
+            hits += pools.heap.getHits() + pools.direct.getHits();
+        }
+        return hits;
+    }
+
+    /**
+     * Get the number of buffers allocated because the pools were empty
+     * @return The number of pool misses
+     */
+    public long getMisses() {
+        long misses = defaultPools.heap.getMisses()
+                + defaultPools.direct.getMisses();
+        for (Pools pools : listeners.values()) {
+            misses += pools.heap.getMisses() + pools.direct.getMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * Get the number of buffers used by running transfers
+     * @return The number of buffers in use
+     */
+    public int getInUse() {
+        int inUse = defaultPools.heap.getInUse()
+                + defaultPools.direct.getInUse();
+        for (Pools pools : listeners.values()) {
+            inUse += pools.heap.getInUse() + pools.direct.getInUse();
+        }
+        return inUse;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Buffered output stream collecting small writes in a heap {@link ByteBuffer},
+ * typically taken from a {@link BufferPool}, instead of allocating its own
+ * buffer. Closing this stream does not close the underlying stream, and the
+ * buffer can be returned to the pool once the stream has been flushed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    private final byte[] buff;
+
+    private int count = 0;
+
+    /**
+     * Create a stream
+     * @param out The underlying stream
+     * @param buffer The buffer to use, must have an accessible array
+     */
+    public ByteBufferOutputStream(final OutputStream out,
+            final ByteBuffer buffer) {
+        this.out = out;
+        this.buff = buffer.array();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (count == buff.length) {
+            flushBuffer();
+        }
+        buff[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len >= buff.length) {
+            // no point in copying large writes
+            flushBuffer();
+            out.write(b, off, len);
+            return;
+        }
+
+        if (len > buff.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buff, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buff, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.LinkedList;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps track of commands which complete asynchronously, after
+ * {@link org.apache.ftpserver.command.Command#execute} has returned, for a
+ * single session. This allows long running data transfers to release the
+ * thread executing the command.
+ *
+ * A command which will complete asynchronously calls {@link #defer()} before
+ * returning from <code>execute</code>, and {@link #complete()} once done.
+ * While it is running, new requests from the client are queued and executed
+ * in order after the command has completed, just as if the command had
+ * blocked.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CommandCompletion {
+
+    private final LinkedList<FtpRequest> queuedRequests = new LinkedList<FtpRequest>();
+
+    private Runnable continuation;
+
+    private boolean deferred = false;
+
+    private boolean completed = false;
+
+    /**
+     * Is an asynchronous command running, or are queued requests being
+     * executed?
+     */
+    private boolean busy = false;
+
+    /**
+     * Queue the request if the session is busy with an asynchronous command.
+     * @param request The request received from the client
+     * @return true if the request has been queued, false if it should be
+     *         executed right away
+     */
+    public synchronized boolean queue(final FtpRequest request) {
+        if (busy) {
+            queuedRequests.add(request);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Get the next queued request. If there are no more queued requests, the
+     * session is no longer busy.
+     * @return The next request, or null if there are no queued requests
+     */
+    public synchronized FtpRequest nextQueuedRequest() {
+        if (queuedRequests.isEmpty()) {
+            busy = false;
+            return null;
+        } else {
+            return queuedRequests.removeFirst();
+        }
+    }
+
+    /**
+     * Called before executing a command.
+     * @param continuation To be run if the command completes asynchronously
+     */
+    public synchronized void commandStarted(final Runnable continuation) {
+        this.continuation = continuation;
+        deferred = false;
+        completed = false;
+    }
+
+    /**
+     * Called by a command which will complete after returning from
+     * <code>execute</code>.
+     */
+    public synchronized void defer() {
+        deferred = true;
+    }
+
+    /**
+     * Called after executing a command.
+     * @return true if the command has completed, false if it will complete
+     *         asynchronously and run the continuation
+     */
+    public synchronized boolean commandExecuted() {
+        if (!deferred || completed) {
+            continuation = null;
+            return true;
+        } else {
+            busy = true;
+            return false;
+        }
+    }
+
+    /**
+     * Called by a deferred command once it has completed. If the command has
+     * already returned from <code>execute</code>, the continuation is run on
+     * the calling thread.
+     */
+    public void complete() {
+        Runnable task = null;
+        synchronized (this) {
+            if (!deferred || completed) {
+                return;
+            }
+            completed = true;
+
+            if (busy) {
+                task = continuation;
+                continuation = null;
+            }
+        }
+
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Is the session busy with an asynchronous command?
+     * @return true if an asynchronous command is running
+     */
+    public synchronized boolean isBusy() {
+        return busy;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Bounded pool of {@link Deflater}s and {@link Inflater}s used for MODE Z
+ * transfers. Both hold native memory which is only freed when
+ * <code>end()</code> is called, so instances are reset and reused between
+ * transfers instead of being left to the garbage collector. Instances
+ * released to a full pool, and all pooled instances when the pool is
+ * disposed, are ended.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CompressionPool {
+
+    private final int maxPooled;
+
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+
+    private final AtomicInteger pooledDeflaters = new AtomicInteger(0);
+
+    private final AtomicInteger pooledInflaters = new AtomicInteger(0);
+
+    private volatile boolean disposed = false;
+
+    public CompressionPool() {
+        this(new DataConnectionConfigurationFactory().getMaxPooledBuffers());
+    }
+
+    /**
+     * Create a pool
+     * @param maxPooled The maximum number of idle deflaters, and of idle
+     *   inflaters, to keep
+     */
+    public CompressionPool(final int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Get a deflater from the pool, creating a new one if the pool is empty.
+     * @param level The compression level
+     * @return A deflater ready for a new stream
+     */
+    public Deflater acquireDeflater(final int level) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+
+        pooledDeflaters.decrementAndGet();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /**
+     * Return a deflater to the pool, or end it if the pool is full. The
+     * deflater must not be used by the caller afterwards.
+     * @param deflater A deflater acquired from this pool, ignored if null
+     */
+    public void releaseDeflater(final Deflater deflater) {
+        if (deflater == null) {
+            return;
+        }
+
+        if (disposed) {
+            deflater.end();
+        } else if (pooledDeflaters.incrementAndGet() <= maxPooled) {
+            deflater.reset();
+            deflaters.offer(deflater);
+        } else {
+            // the pool is full
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Get an inflater from the pool, creating a new one if the pool is empty.
+     * @return An inflater ready for a new stream
+     */
+    public Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater();
+        }
+
+        pooledInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Return an inflater to the pool, or end it if the pool is full. The
+     * inflater must not be used by the caller afterwards.
+     * @param inflater An inflater acquired from this pool, ignored if null
+     */
+    public void releaseInflater(final Inflater inflater) {
+        if (inflater == null) {
+            return;
+        }
+
+        if (disposed) {
+            inflater.end();
+        } else if (pooledInflaters.incrementAndGet() <= maxPooled) {
+            inflater.reset();
+            inflaters.offer(inflater);
+        } else {
+            // the pool is full
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Create a compressing stream using a pooled deflater. The deflater is
+     * released when the stream is closed.
+     * @param out The stream to write the compressed data to
+     * @param level The compression level
+     * @param bufferSize The size of the compression buffer
+     * @return The compressing stream
+     */
+    public DeflaterOutputStream createDeflaterOutputStream(
+            final OutputStream out, final int level, final int bufferSize) {
+        final Deflater deflater = acquireDeflater(level);
+        return new DeflaterOutputStream(out, deflater, bufferSize) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+
+                try {
+                    super.close();
+                } finally {
+                    releaseDeflater(deflater);
+                }
+            }
+        };
+    }
+
+    /**
+     * Create a decompressing stream using a pooled inflater. The inflater is
+     * released when the stream is closed.
+     * @param in The stream to read the compressed data from
+     * @param bufferSize The size of the decompression buffer
+     * @return The decompressing stream
+     */
+    public InflaterInputStream createInflaterInputStream(final InputStream in,
+            final int bufferSize) {
+        final Inflater inflater = acquireInflater();
+        return new InflaterInputStream(in, inflater, bufferSize) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+
+                try {
+                    super.close();
+                } finally {
+                    releaseInflater(inflater);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the number of idle deflaters in the pool
+     * @return The number of pooled deflaters
+     */
+    public int getPooledDeflaters() {
+        return pooledDeflaters.get();
+    }
+
+    /**
+     * Get the number of idle inflaters in the pool
+     * @return The number of pooled inflaters
+     */
+    public int getPooledInflaters() {
+        return pooledInflaters.get();
+    }
+
+    /**
+     * End all pooled instances. Instances released afterwards are ended
+     * instead of pooled.
+     */
+    public void dispose() {
+        disposed = true;
+
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * CRC-32C (Castagnoli) checksum. The implementation of the Java platform is
+ * used when available (Java 9 and later), since it is compiled to the
+ * hardware CRC32 instructions, otherwise the checksum is computed with a
+ * lookup table.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class Crc32c implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private static final Constructor<?> PLATFORM_CONSTRUCTOR = findPlatformConstructor();
+
+    private static Constructor<?> findPlatformConstructor() {
+        try {
+            return Class.forName("java.util.zip.CRC32C")
+                    .getDeclaredConstructor();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a checksum, using the implementation of the Java platform if
+     * available
+     * @return The checksum
+     */
+    public static Checksum create() {
+        if (PLATFORM_CONSTRUCTOR != null) {
+            try {
+                return (Checksum) PLATFORM_CONSTRUCTOR.newInstance();
+            } catch (Exception e) {
+                // fall back to the lookup table
+            }
+        }
+        return new Crc32c();
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    public void update(final int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+    }
+
+    public void update(final byte[] b, final int off, final int len) {
+        int value = crc;
+        for (int i = off; i < off + len; i++) {
+            value = (value >>> 8) ^ TABLE[(value ^ b[i]) & 0xff];
+        }
+        crc = value;
+    }
+
+    public long getValue() {
+        return (~crc) & 0xFFFFFFFFL;
+    }
+
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ftpserver.DataTransferConfiguration;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The socket options for the data connections of a session, as configured by
+ * the {@link DataTransferConfiguration} of the listener. With auto-tuning
+ * enabled, the buffer sizes are computed from the round-trip time of the
+ * control connection so that a single transfer can fill the link.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataSocketOptions {
+
+    /**
+     * The smallest buffer size used by auto-tuning, auto-tuned buffers
+     * should never be smaller than the common operating system defaults
+     */
+    public static final int MIN_AUTO_TUNED_BUFFER_SIZE = 64 * 1024;
+
+    private final int sendBufferSize;
+
+    private final int receiveBufferSize;
+
+    private final boolean tcpNoDelay;
+
+    private final int trafficClass;
+
+    /**
+     * Create the options for a data connection
+     * @param config The data connection configuration
+     * @param rttNanos The round-trip time of the control connection in
+     *   nanoseconds, 0 if not known
+     */
+    public DataSocketOptions(final DataTransferConfiguration config,
+            final long rttNanos) {
+        if (config.isAutoTuneBufferSizes() && rttNanos > 0) {
+            int size = getAutoTunedBufferSize(rttNanos, config
+                    .getAutoTuneTargetRate(), config
+                    .getMaxAutoTunedBufferSize());
+            sendBufferSize = size;
+            receiveBufferSize = size;
+        } else {
+            sendBufferSize = config.getSendBufferSize();
+            receiveBufferSize = config.getReceiveBufferSize();
+        }
+        tcpNoDelay = config.isTcpNoDelay();
+        trafficClass = config.getTrafficClass();
+    }
+
+    /**
+     * Create the options for the data connections of a session
+     * @param session The session
+     * @return The options
+     */
+    public static DataSocketOptions create(final FtpIoSession session) {
+        return new DataSocketOptions(session.getDataTransferConfiguration(),
+                session.getRttEstimator().getRtt());
+    }
+
+    /**
+     * Get the buffer size needed to transfer at the target rate over a link
+     * with the provided round-trip time, that is the bandwidth-delay product.
+     * @param rttNanos The round-trip time in nanoseconds
+     * @param targetRate The target rate in bytes per second
+     * @param maxBufferSize The largest buffer size to return
+     * @return The buffer size in bytes
+     */
+    public static int getAutoTunedBufferSize(final long rttNanos,
+            final int targetRate, final int maxBufferSize) {
+        double size = (double) targetRate * rttNanos
+                / TimeUnit.SECONDS.toNanos(1);
+
+        size = Math.min(size, maxBufferSize);
+        size = Math.max(size, MIN_AUTO_TUNED_BUFFER_SIZE);
+        return (int) size;
+    }
+
+    /**
+     * Get the send buffer size
+     * @return The send buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Get the receive buffer size
+     * @return The receive buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Configure a passive server socket. Must be called before binding the
+     * socket, for receive buffers larger than 64 kB to be used by the
+     * accepted sockets.
+     * @param serverSocket The server socket
+     * @throws SocketException If the options could not be set
+     */
+    public void configure(final ServerSocket serverSocket)
+            throws SocketException {
+        if (receiveBufferSize > 0) {
+            serverSocket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    /**
+     * Configure a data socket. For active data connections this must be
+     * called before connecting, for receive buffers larger than 64 kB to
+     * be used.
+     * @param socket The socket
+     * @throws SocketException If the options could not be set
+     */
+    public void configure(final Socket socket) throws SocketException {
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (trafficClass != -1) {
+            socket.setTrafficClass(trafficClass);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.DataTransferConfiguration;
+import org.apache.ftpserver.UploadDurability;
+import org.apache.ftpserver.ssl.SslConfiguration;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Provides the default data transfer options for a data connection
+ * configuration which does not implement {@link DataTransferConfiguration}.
+ * The data connection configuration itself is delegated to.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataTransferConfigurationAdapter implements
+        DataTransferConfiguration {
+
+    private static final DataTransferConfiguration DEFAULTS = (DataTransferConfiguration) new DataConnectionConfigurationFactory()
+            .createDataConnectionConfiguration();
+
+    /**
+     * Get the data transfer options of a data connection configuration
+     * @param config The data connection configuration
+     * @return The configuration itself if it implements
+     *         {@link DataTransferConfiguration}, else the configuration with
+     *         the default data transfer options
+     */
+    public static DataTransferConfiguration adapt(
+            final DataConnectionConfiguration config) {
+        if (config == null || config instanceof DataTransferConfiguration) {
+            return (DataTransferConfiguration) config;
+        }
+        return new DataTransferConfigurationAdapter(config);
+    }
+
+    private final DataConnectionConfiguration config;
+
+    private DataTransferConfigurationAdapter(
+            final DataConnectionConfiguration config) {
+        this.config = config;
+    }
+
+    public int getIdleTime() {
+        return config.getIdleTime();
+    }
+
+    public boolean isActiveEnabled() {
+        return config.isActiveEnabled();
+    }
+
+    public boolean isActiveIpCheck() {
+        return config.isActiveIpCheck();
+    }
+
+    public String getActiveLocalAddress() {
+        return config.getActiveLocalAddress();
+    }
+
+    public int getActiveLocalPort() {
+        return config.getActiveLocalPort();
+    }
+
+    public String getPassiveAddress() {
+        return config.getPassiveAddress();
+    }
+
+    public String getPassiveExernalAddress() {
+        return config.getPassiveExernalAddress();
+    }
+
+    public String getPassivePorts() {
+        return config.getPassivePorts();
+    }
+
+    public int requestPassivePort() {
+        return config.requestPassivePort();
+    }
+
+    public void releasePassivePort(final int port) {
+        config.releasePassivePort(port);
+    }
+
+    public SslConfiguration getSslConfiguration() {
+        return config.getSslConfiguration();
+    }
+
+    public boolean isImplicitSsl() {
+        return config.isImplicitSsl();
+    }
+
+    public int getActiveConnectTimeout() {
+        return DEFAULTS.getActiveConnectTimeout();
+    }
+
+    public boolean isSharedPassivePorts() {
+        return DEFAULTS.isSharedPassivePorts();
+    }
+
+    public int nextSharedPassivePort() {
+        return DEFAULTS.nextSharedPassivePort();
+    }
+
+    public int getSharedPassivePortCount() {
+        return DEFAULTS.getSharedPassivePortCount();
+    }
+
+    public int getPassiveSocketPoolSize() {
+        return DEFAULTS.getPassiveSocketPoolSize();
+    }
+
+    public boolean isNonBlocking() {
+        return DEFAULTS.isNonBlocking();
+    }
+
+    public int getTransferBufferSize() {
+        return DEFAULTS.getTransferBufferSize();
+    }
+
+    public int getMaxPooledBuffers() {
+        return DEFAULTS.getMaxPooledBuffers();
+    }
+
+    public int getSendBufferSize() {
+        return DEFAULTS.getSendBufferSize();
+    }
+
+    public int getReceiveBufferSize() {
+        return DEFAULTS.getReceiveBufferSize();
+    }
+
+    public boolean isTcpNoDelay() {
+        return DEFAULTS.isTcpNoDelay();
+    }
+
+    public int getTrafficClass() {
+        return DEFAULTS.getTrafficClass();
+    }
+
+    public boolean isAutoTuneBufferSizes() {
+        return DEFAULTS.isAutoTuneBufferSizes();
+    }
+
+    public int getAutoTuneTargetRate() {
+        return DEFAULTS.getAutoTuneTargetRate();
+    }
+
+    public int getMaxAutoTunedBufferSize() {
+        return DEFAULTS.getMaxAutoTunedBufferSize();
+    }
+
+    public int getCompressionLevel() {
+        return DEFAULTS.getCompressionLevel();
+    }
+
+    public int getMaxCompressionLevel() {
+        return DEFAULTS.getMaxCompressionLevel();
+    }
+
+    public int getCompressionBufferSize() {
+        return DEFAULTS.getCompressionBufferSize();
+    }
+
+    public UploadDurability getUploadDurability() {
+        return DEFAULTS.getUploadDurability();
+    }
+
+    public boolean isPipelinedUploads() {
+        return DEFAULTS.isPipelinedUploads();
+    }
+
+    public int getUploadPipelineDepth() {
+        return DEFAULTS.getUploadPipelineDepth();
+    }
+}
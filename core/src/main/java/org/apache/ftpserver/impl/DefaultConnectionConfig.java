@@ -29,6 +29,12 @@ import org.apache.ftpserver.ConnectionConfigFactory;
  */
 public class DefaultConnectionConfig implements ConnectionConfig {
 
+    /**
+     * The maximum command length used if not configured, or if the connection
+     * configuration is not a {@link DefaultConnectionConfig}
+     */
+    public static final int DEFAULT_MAX_COMMAND_LENGTH = 1024;
+
     private int maxLogins = 10;
 
     private boolean anonymousLoginEnabled = true;
@@ -41,18 +47,39 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     
     private int maxThreads = 0;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private int maxCommandLength = DEFAULT_MAX_COMMAND_LENGTH;
+
     /**
      * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
      */
     public DefaultConnectionConfig(boolean anonymousLoginEnabled,
             int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
             int maxLoginFailures, int maxThreads) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads, 0, 0,
+                DEFAULT_MAX_COMMAND_LENGTH);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxDownloadRate,
+            int maxUploadRate, int maxCommandLength) {
         this.anonymousLoginEnabled = anonymousLoginEnabled;
         this.loginFailureDelay = loginFailureDelay;
         this.maxLogins = maxLogins;
         this.maxAnonymousLogins = maxAnonymousLogins;
         this.maxLoginFailures = maxLoginFailures;
         this.maxThreads = maxThreads;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
+        this.maxCommandLength = maxCommandLength;
     }
 
     public int getLoginFailureDelay() {
@@ -78,5 +105,31 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public int getMaxThreads() {
         return maxThreads;
     }
-    
+
+    /**
+     * The maximum number of bytes per second downloaded by all sessions of
+     * the server together
+     * @return The maximum download rate, 0 if not limited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * The maximum number of bytes per second uploaded by all sessions of
+     * the server together
+     * @return The maximum upload rate, 0 if not limited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * The maximum length of a command line sent by the client, including the
+     * line ending. Longer commands are rejected.
+     * @return The maximum command length in bytes
+     */
+    public int getMaxCommandLength() {
+        return maxCommandLength;
+    }
 }
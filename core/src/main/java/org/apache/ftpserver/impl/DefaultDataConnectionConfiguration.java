@@ -19,8 +19,9 @@
 
 package org.apache.ftpserver.impl;
 
-import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.DataTransferConfiguration;
+import org.apache.ftpserver.UploadDurability;
 import org.apache.ftpserver.ssl.SslConfiguration;
 
 /**
@@ -31,7 +32,7 @@ import org.apache.ftpserver.ssl.SslConfiguration;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class DefaultDataConnectionConfiguration implements
-        DataConnectionConfiguration {
+        DataTransferConfiguration {
 
     // maximum idle time in seconds
     private int idleTime;
@@ -48,6 +49,44 @@ public class DefaultDataConnectionConfiguration implements
     
     private final boolean implicitSsl;
 
+    private final boolean nonBlocking;
+
+    private final int transferBufferSize;
+
+    private final int maxPooledBuffers;
+
+    private final int sendBufferSize;
+
+    private final int receiveBufferSize;
+
+    private final boolean tcpNoDelay;
+
+    private final int trafficClass;
+
+    private final boolean autoTuneBufferSizes;
+
+    private final int autoTuneTargetRate;
+
+    private final int maxAutoTunedBufferSize;
+
+    private final int compressionLevel;
+
+    private final int maxCompressionLevel;
+
+    private final int compressionBufferSize;
+
+    private final UploadDurability uploadDurability;
+
+    private final boolean pipelinedUploads;
+
+    private final int uploadPipelineDepth;
+
+    private final boolean sharedPassivePorts;
+
+    private final int passiveSocketPoolSize;
+
+    private final int activeConnectTimeout;
+
     /**
      * Internal constructor, do not use directly. Use {@link DataConnectionConfigurationFactory} instead.
      */
@@ -55,7 +94,16 @@ public class DefaultDataConnectionConfiguration implements
             SslConfiguration ssl, boolean activeEnabled, boolean activeIpCheck,
             String activeLocalAddress, int activeLocalPort,
             String passiveAddress, PassivePorts passivePorts,
-            String passiveExternalAddress, boolean implicitSsl) {
+            String passiveExternalAddress, boolean implicitSsl,
+            boolean nonBlocking, int transferBufferSize, int maxPooledBuffers,
+            int sendBufferSize, int receiveBufferSize, boolean tcpNoDelay,
+            int trafficClass, boolean autoTuneBufferSizes,
+            int autoTuneTargetRate, int maxAutoTunedBufferSize,
+            int compressionLevel, int maxCompressionLevel,
+            int compressionBufferSize, UploadDurability uploadDurability,
+            boolean pipelinedUploads, int uploadPipelineDepth,
+            boolean sharedPassivePorts, int passiveSocketPoolSize,
+            int activeConnectTimeout) {
         this.idleTime = idleTime;
         this.ssl = ssl;
         this.activeEnabled = activeEnabled;
@@ -66,6 +114,25 @@ public class DefaultDataConnectionConfiguration implements
         this.passivePorts = passivePorts;
         this.passiveExternalAddress = passiveExternalAddress;
         this.implicitSsl = implicitSsl;
+        this.nonBlocking = nonBlocking;
+        this.transferBufferSize = transferBufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.trafficClass = trafficClass;
+        this.autoTuneBufferSizes = autoTuneBufferSizes;
+        this.autoTuneTargetRate = autoTuneTargetRate;
+        this.maxAutoTunedBufferSize = maxAutoTunedBufferSize;
+        this.compressionLevel = compressionLevel;
+        this.maxCompressionLevel = maxCompressionLevel;
+        this.compressionBufferSize = compressionBufferSize;
+        this.uploadDurability = uploadDurability;
+        this.pipelinedUploads = pipelinedUploads;
+        this.uploadPipelineDepth = uploadPipelineDepth;
+        this.sharedPassivePorts = sharedPassivePorts;
+        this.passiveSocketPoolSize = passiveSocketPoolSize;
+        this.activeConnectTimeout = activeConnectTimeout;
     }
 
     /**
@@ -103,6 +170,13 @@ public class DefaultDataConnectionConfiguration implements
         return activeLocalPort;
     }
 
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getActiveConnectTimeout()
+     */
+    public int getActiveConnectTimeout() {
+        return activeConnectTimeout;
+    }
+
     /**
      * Get passive host.
      */
@@ -121,7 +195,7 @@ public class DefaultDataConnectionConfiguration implements
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
      */
-    public synchronized int requestPassivePort() {
+    public int requestPassivePort() {
     	return passivePorts.reserveNextPort();
     }
 
@@ -137,10 +211,38 @@ public class DefaultDataConnectionConfiguration implements
     /**
      * Release data port
      */
-    public synchronized void releasePassivePort(final int port) {
+    public void releasePassivePort(final int port) {
         passivePorts.releasePort(port);
     }
 
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#isSharedPassivePorts()
+     */
+    public boolean isSharedPassivePorts() {
+        return sharedPassivePorts;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#nextSharedPassivePort()
+     */
+    public int nextSharedPassivePort() {
+        return passivePorts.nextSharedPort();
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getSharedPassivePortCount()
+     */
+    public int getSharedPassivePortCount() {
+        return passivePorts.getSharedPortCount();
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getPassiveSocketPoolSize()
+     */
+    public int getPassiveSocketPoolSize() {
+        return passiveSocketPoolSize;
+    }
+
     /**
      * Get SSL component.
      */
@@ -154,4 +256,116 @@ public class DefaultDataConnectionConfiguration implements
     public boolean isImplicitSsl() {
         return implicitSsl;
     }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#isNonBlocking()
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getTransferBufferSize()
+     */
+    public int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getMaxPooledBuffers()
+     */
+    public int getMaxPooledBuffers() {
+        return maxPooledBuffers;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getSendBufferSize()
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getReceiveBufferSize()
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#isTcpNoDelay()
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getTrafficClass()
+     */
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#isAutoTuneBufferSizes()
+     */
+    public boolean isAutoTuneBufferSizes() {
+        return autoTuneBufferSizes;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getAutoTuneTargetRate()
+     */
+    public int getAutoTuneTargetRate() {
+        return autoTuneTargetRate;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getMaxAutoTunedBufferSize()
+     */
+    public int getMaxAutoTunedBufferSize() {
+        return maxAutoTunedBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getCompressionLevel()
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getMaxCompressionLevel()
+     */
+    public int getMaxCompressionLevel() {
+        return maxCompressionLevel;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getCompressionBufferSize()
+     */
+    public int getCompressionBufferSize() {
+        return compressionBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getUploadDurability()
+     */
+    public UploadDurability getUploadDurability() {
+        return uploadDurability;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#isPipelinedUploads()
+     */
+    public boolean isPipelinedUploads() {
+        return pipelinedUploads;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataTransferConfiguration#getUploadPipelineDepth()
+     */
+    public int getUploadPipelineDepth() {
+        return uploadPipelineDepth;
+    }
 }
@@ -34,6 +34,7 @@ import org.apache.ftpserver.listener.Listener;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.write.WriteToClosedSessionException;
 import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -111,6 +112,14 @@ public class DefaultFtpHandler implements FtpHandler {
             LOG.warn("Data connection threw an exception on disconnect", e);
         }
         
+        context.getBandwidthManager().sessionClosed(session);
+
+        // stop hashing files nobody will get the hashes of
+        HashBatch hashBatch = session.getHashBatch();
+        if (hashBatch != null) {
+            hashBatch.cancel();
+        }
+
         FileSystemView fs = session.getFileSystemView();
         if(fs != null) {
             try  {
@@ -145,6 +154,10 @@ public class DefaultFtpHandler implements FtpHandler {
                     "Client sent command that could not be decoded: {}",
                     ((ProtocolDecoderException)cause).getHexdump());
             session.write(new DefaultFtpReply(FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS, "Invalid character in command"));
+        } else if (cause instanceof RecoverableProtocolDecoderException) {
+            // the rest of the line has been discarded, the session can go on
+            LOG.warn("Client sent command longer than the maximum command length");
+            session.write(new DefaultFtpReply(FtpReply.REPLY_500_SYNTAX_ERROR_COMMAND_UNRECOGNIZED, "Command line too long"));
         } else if (cause instanceof WriteToClosedSessionException) {
             WriteToClosedSessionException writeToClosedSessionException = 
                 (WriteToClosedSessionException) cause;
@@ -173,12 +186,37 @@ public class DefaultFtpHandler implements FtpHandler {
 
     public void messageReceived(final FtpIoSession session,
             final FtpRequest request) throws Exception {
+        session.getRttEstimator().requestReceived(System.nanoTime());
+
+        // a command is still completing asynchronously, the request will be
+        // executed once it is done
+        if (session.getCommandCompletion().queue(request)) {
+            return;
+        }
+
+        execute(session, request);
+    }
+
+    /**
+     * Execute a request.
+     * @return false if the command will complete asynchronously, true
+     *         otherwise
+     */
+    private boolean execute(final FtpIoSession session,
+            final FtpRequest request) throws Exception {
         try {
             session.updateLastAccessTime();
             
             String commandName = request.getCommand();
-            CommandFactory commandFactory = context.getCommandFactory();
-            Command command = commandFactory.getCommand(commandName);
+            Command command = null;
+            if (request instanceof DefaultFtpRequest) {
+                // already looked up when decoding the request
+                command = ((DefaultFtpRequest) request).getResolvedCommand();
+            }
+            if (command == null) {
+                CommandFactory commandFactory = context.getCommandFactory();
+                command = commandFactory.getCommand(commandName);
+            }
 
             // make sure the user is authenticated before he issues commands
             if (!session.isLoggedIn()
@@ -186,7 +224,7 @@ public class DefaultFtpHandler implements FtpHandler {
                 session.write(LocalizedFtpReply.translate(session, request,
                         context, FtpReply.REPLY_530_NOT_LOGGED_IN,
                         "permission", null));
-                return;
+                return true;
             }
 
             FtpletContainer ftplets = context.getFtpletContainer();
@@ -202,13 +240,27 @@ public class DefaultFtpHandler implements FtpHandler {
             if (ftpletRet == FtpletResult.DISCONNECT) {
                 LOG.debug("Ftplet returned DISCONNECT, session will be closed");
                 session.close(false).awaitUninterruptibly(10000);
-                return;
+                return true;
             } else if (ftpletRet != FtpletResult.SKIP) {
 
                 if (command != null) {
+                    CommandCompletion completion = session
+                            .getCommandCompletion();
+                    completion.commandStarted(new Runnable() {
+                        public void run() {
+                            commandCompleted(session, request);
+                        }
+                    });
+
                     synchronized (session) {
                         command.execute(session, context, request);
                     }
+
+                    if (!completion.commandExecuted()) {
+                        // the Ftplets will be called once the command has
+                        // completed
+                        return false;
+                    }
                 } else {
                     session.write(LocalizedFtpReply.translate(session, request,
                             context,
@@ -216,20 +268,7 @@ public class DefaultFtpHandler implements FtpHandler {
                             "not.implemented", null));
                 }
 
-                try {
-                    ftpletRet = ftplets.afterCommand(
-                            session.getFtpletSession(), request, session
-                                    .getLastReply());
-                } catch (Exception e) {
-                    LOG.debug("Ftplet container threw exception", e);
-                    ftpletRet = FtpletResult.DISCONNECT;
-                }
-                if (ftpletRet == FtpletResult.DISCONNECT) {
-                    LOG.debug("Ftplet returned DISCONNECT, session will be closed");
-
-                    session.close(false).awaitUninterruptibly(10000);
-                    return;
-                }
+                afterCommand(session, request);
             }
 
         } catch (Exception ex) {
@@ -249,17 +288,77 @@ public class DefaultFtpHandler implements FtpHandler {
             }
         }
 
+        return true;
+    }
+
+    /**
+     * Notify the Ftplets that a command has been executed.
+     * @return false if the session is being closed
+     */
+    private boolean afterCommand(final FtpIoSession session,
+            final FtpRequest request) {
+        FtpletResult ftpletRet;
+        try {
+            ftpletRet = context.getFtpletContainer().afterCommand(
+                    session.getFtpletSession(), request, session
+                            .getLastReply());
+        } catch (Exception e) {
+            LOG.debug("Ftplet container threw exception", e);
+            ftpletRet = FtpletResult.DISCONNECT;
+        }
+        if (ftpletRet == FtpletResult.DISCONNECT) {
+            LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+
+            session.close(false).awaitUninterruptibly(10000);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called when a command completes asynchronously. Notifies the Ftplets
+     * and executes the requests received while the command was running.
+     */
+    private void commandCompleted(final FtpIoSession session,
+            final FtpRequest request) {
+        if (!afterCommand(session, request)) {
+            return;
+        }
+
+        CommandCompletion completion = session.getCommandCompletion();
+        try {
+            FtpRequest next;
+            while ((next = completion.nextQueuedRequest()) != null) {
+                if (!execute(session, next)) {
+                    // will continue once this command has completed
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            try {
+                exceptionCaught(session, e);
+            } catch (Exception ex) {
+                LOG.warn("Failed to handle exception", ex);
+            }
+        }
     }
 
     public void sessionIdle(final FtpIoSession session, final IdleStatus status)
             throws Exception {
+        if (session.getCommandCompletion().isBusy()) {
+            // the control connection is idle while a data transfer is running
+            return;
+        }
+
         LOG.info("Session idle, closing");
         session.close(false).awaitUninterruptibly(10000);
     }
 
     public void messageSent(final FtpIoSession session, final FtpReply reply)
             throws Exception {
-        // do nothing
-
+        // the client will not respond to preliminary replies
+        if (reply.getCode() >= 200) {
+            session.getRttEstimator().replySent(System.nanoTime());
+        }
     }
 }
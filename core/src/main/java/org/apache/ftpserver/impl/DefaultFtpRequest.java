@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.impl;
 
+import org.apache.ftpserver.command.Command;
 import org.apache.ftpserver.ftplet.FtpRequest;
 
 /**
@@ -36,6 +37,10 @@ public class DefaultFtpRequest implements FtpRequest {
 
     private String argument;
 
+    private String verb;
+
+    private Command resolvedCommand;
+
     /**
      * Default constructor.
      */
@@ -43,6 +48,28 @@ public class DefaultFtpRequest implements FtpRequest {
         parse(requestLine);
     }
 
+    /**
+     * Constructor for an already parsed request. The request line is only
+     * built if asked for.
+     * 
+     * @param verb
+     *            The command exactly as sent by the client
+     * @param command
+     *            The upper case command, without any X prefix
+     * @param argument
+     *            The argument, or null if none was sent
+     * @param resolvedCommand
+     *            The {@link Command} already looked up for the command, or
+     *            null if it has not been looked up
+     */
+    public DefaultFtpRequest(final String verb, final String command,
+            final String argument, final Command resolvedCommand) {
+        this.verb = verb;
+        this.command = command;
+        this.argument = argument;
+        this.resolvedCommand = resolvedCommand;
+    }
+
     /**
      * Parse the ftp command line.
      */
@@ -86,9 +113,26 @@ public class DefaultFtpRequest implements FtpRequest {
      * Get the ftp request line.
      */
     public String getRequestLine() {
+        if (line == null) {
+            if (argument == null) {
+                line = verb;
+            } else {
+                line = verb + ' ' + argument;
+            }
+        }
         return line;
     }
 
+    /**
+     * Get the {@link Command} already looked up for this request
+     * 
+     * @return The command, or null if it must be looked up in the
+     *         {@link org.apache.ftpserver.command.CommandFactory}
+     */
+    public Command getResolvedCommand() {
+        return resolvedCommand;
+    }
+
     /**
      * Has argument.
      */
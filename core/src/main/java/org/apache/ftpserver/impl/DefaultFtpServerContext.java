@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.command.CommandFactoryFactory;
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
@@ -71,6 +73,24 @@ public class DefaultFtpServerContext implements FtpServerContext {
 
     private FtpletContainer ftpletContainer = new DefaultFtpletContainer();
 
+    private BandwidthManager bandwidthManager = new BandwidthManager(this);
+
+    private BufferPoolManager bufferPoolManager = new BufferPoolManager();
+
+    private CompressionPool compressionPool = new CompressionPool();
+
+    private UploadCommitter uploadCommitter = new UploadCommitter();
+
+    private UploadPipeline uploadPipeline = new UploadPipeline();
+
+    private AsciiOffsetIndex asciiOffsetIndex = new AsciiOffsetIndex();
+
+    private HashEngine hashEngine = new HashEngine(new DigestCache());
+
+    private PassiveDemultiplexer passiveDemultiplexer = new PassiveDemultiplexer();
+
+    private PassiveSocketPool passiveSocketPool = new PassiveSocketPool();
+
     private FtpStatistics statistics = new DefaultFtpStatistics();
 
     private CommandFactory commandFactory = new CommandFactoryFactory().createCommandFactory();
@@ -86,6 +106,8 @@ public class DefaultFtpServerContext implements FtpServerContext {
      * The thread pool executor to be used by the server using this context
      */
     private ThreadPoolExecutor threadPoolExecutor = null;
+
+    private NioDataConnectionEngine dataConnectionEngine = null;
     
     static {
         ADMIN_AUTHORITIES.add(new WritePermission());
@@ -98,6 +120,11 @@ public class DefaultFtpServerContext implements FtpServerContext {
     public DefaultFtpServerContext() {
         // create the default listener
         listeners.put("default", new ListenerFactory().createListener());
+
+        ((ServerFtpStatistics) statistics).setBandwidthManager(bandwidthManager);
+        ((ServerFtpStatistics) statistics).setBufferPoolManager(bufferPoolManager);
+        ((ServerFtpStatistics) statistics).setUploadPipeline(uploadPipeline);
+        ((ServerFtpStatistics) statistics).setPassiveSocketPool(passiveSocketPool);
     }
 
     /**
@@ -169,6 +196,13 @@ public class DefaultFtpServerContext implements FtpServerContext {
 
     public void setFtpStatistics(FtpStatistics statistics) {
         this.statistics = statistics;
+
+        if (statistics instanceof ServerFtpStatistics) {
+            ((ServerFtpStatistics) statistics).setBandwidthManager(bandwidthManager);
+            ((ServerFtpStatistics) statistics).setBufferPoolManager(bufferPoolManager);
+            ((ServerFtpStatistics) statistics).setUploadPipeline(uploadPipeline);
+            ((ServerFtpStatistics) statistics).setPassiveSocketPool(passiveSocketPool);
+        }
     }
 
     /**
@@ -208,6 +242,21 @@ public class DefaultFtpServerContext implements FtpServerContext {
                 // TODO: how to handle?
             }
         }
+
+        synchronized (this) {
+            if (dataConnectionEngine != null) {
+                LOG.debug("Shutting down the data connection engine");
+                dataConnectionEngine.dispose();
+                dataConnectionEngine = null;
+            }
+        }
+
+        uploadPipeline.dispose();
+        uploadCommitter.dispose();
+        compressionPool.dispose();
+        hashEngine.dispose();
+        passiveDemultiplexer.dispose();
+        passiveSocketPool.dispose();
     }
 
     public Listener getListener(String name) {
@@ -279,4 +328,53 @@ public class DefaultFtpServerContext implements FtpServerContext {
         }
         return threadPoolExecutor;
     }
+
+    public BandwidthManager getBandwidthManager() {
+        return bandwidthManager;
+    }
+
+    public BufferPoolManager getBufferPoolManager() {
+        return bufferPoolManager;
+    }
+
+    public CompressionPool getCompressionPool() {
+        return compressionPool;
+    }
+
+    public UploadCommitter getUploadCommitter() {
+        return uploadCommitter;
+    }
+
+    public UploadPipeline getUploadPipeline() {
+        return uploadPipeline;
+    }
+
+    public AsciiOffsetIndex getAsciiOffsetIndex() {
+        return asciiOffsetIndex;
+    }
+
+    public HashEngine getHashEngine() {
+        return hashEngine;
+    }
+
+    public PassiveDemultiplexer getPassiveDemultiplexer() {
+        return passiveDemultiplexer;
+    }
+
+    public PassiveSocketPool getPassiveSocketPool() {
+        return passiveSocketPool;
+    }
+
+    public synchronized NioDataConnectionEngine getDataConnectionEngine() {
+        if (dataConnectionEngine == null) {
+            LOG.debug("Starting the data connection engine");
+            try {
+                dataConnectionEngine = new NioDataConnectionEngine();
+            } catch (IOException e) {
+                throw new FtpServerConfigurationException(
+                        "Failed to start the data connection engine", e);
+            }
+        }
+        return dataConnectionEngine;
+    }
 }
@@ -22,6 +22,7 @@ package org.apache.ftpserver.impl;
 import java.net.InetSocketAddress;
 import java.security.cert.Certificate;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
@@ -30,8 +31,8 @@ import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
-import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
+import org.apache.ftpserver.ftplet.UploadDigestSession;
 import org.apache.ftpserver.ftplet.User;
 
 /**
@@ -41,7 +42,7 @@ import org.apache.ftpserver.ftplet.User;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class DefaultFtpSession implements FtpSession {
+public class DefaultFtpSession implements UploadDigestSession {
 
     private FtpIoSession ioSession;
 
@@ -108,6 +109,13 @@ public class DefaultFtpSession implements FtpSession {
         return ioSession.getRenameFrom();
     }
 
+    /**
+     * Get the hashes of the data received by the last upload.
+     */
+    public Map<String, String> getUploadDigests() {
+        return ioSession.getUploadDigests();
+    }
+
     /**
      * Returns user name entered in USER command
      * 
@@ -24,11 +24,17 @@ import java.net.InetSocketAddress;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Histogram;
+import org.apache.ftpserver.ftplet.TransferMetric;
 import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -46,6 +52,14 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
     private FileObserver fileObserver = null;
 
+    private volatile BandwidthManager bandwidthManager = null;
+
+    private volatile BufferPoolManager bufferPoolManager = null;
+
+    private volatile UploadPipeline uploadPipeline = null;
+
+    private volatile PassiveSocketPool passiveSocketPool = null;
+
     private Date startTime = new Date();
 
     private AtomicInteger uploadCount = new AtomicInteger(0);
@@ -76,6 +90,52 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
     private AtomicLong bytesDownload = new AtomicLong(0L);
 
+    /**
+     * The histograms of all transfer metrics, for a single listener or the
+     * whole server
+     */
+    private static class TransferHistograms {
+        private final LogHistogram[] downloads = createHistograms();
+
+        private final LogHistogram[] uploads = createHistograms();
+
+        private static LogHistogram[] createHistograms() {
+            LogHistogram[] histograms = new LogHistogram[TransferMetric
+                    .values().length];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LogHistogram();
+            }
+            return histograms;
+        }
+
+        public LogHistogram get(boolean download, TransferMetric metric) {
+            return (download ? downloads : uploads)[metric.ordinal()];
+        }
+
+        public void record(boolean download, long size, long setupNanos,
+                long firstByteNanos, long durationNanos) {
+            get(download, TransferMetric.CONNECTION_SETUP_TIME).record(
+                    TimeUnit.NANOSECONDS.toMicros(setupNanos));
+            get(download, TransferMetric.DURATION).record(
+                    TimeUnit.NANOSECONDS.toMicros(durationNanos));
+
+            // empty transfers have neither a first byte nor a throughput
+            if (size > 0) {
+                get(download, TransferMetric.TIME_TO_FIRST_BYTE).record(
+                        TimeUnit.NANOSECONDS.toMicros(firstByteNanos));
+                get(download, TransferMetric.THROUGHPUT).record(
+                        (long) (size * 1000000000.0 / Math.max(1,
+                                durationNanos)));
+            }
+        }
+    }
+
+    private volatile TransferHistograms serverHistograms = new TransferHistograms();
+
+    private final ConcurrentMap<Listener, TransferHistograms> listenerHistograms = new ConcurrentHashMap<Listener, TransferHistograms>();
+
+    private volatile LogHistogram passiveHistogram = new LogHistogram();
+
     private static class UserLogins {
         private Map<InetAddress, AtomicInteger> perAddress = new ConcurrentHashMap<InetAddress, AtomicInteger>();
 
@@ -259,8 +319,248 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         }
     }
 
+    /**
+     * Get the current download rate of the whole server
+     */
+    public long getCurrentDownloadRate() {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentServerRate(true);
+    }
+
+    /**
+     * Get the current upload rate of the whole server
+     */
+    public long getCurrentUploadRate() {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentServerRate(false);
+    }
+
+    /**
+     * Get the current download rate of the specific listener
+     */
+    public long getCurrentListenerDownloadRate(final Listener listener) {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentListenerRate(listener,
+                true);
+    }
+
+    /**
+     * Get the current upload rate of the specific listener
+     */
+    public long getCurrentListenerUploadRate(final Listener listener) {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentListenerRate(listener,
+                false);
+    }
+
+    /**
+     * Get the current download rate for all sessions of the specific user
+     */
+    public long getCurrentUserDownloadRate(final User user) {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentUserRate(
+                user.getName(), true);
+    }
+
+    /**
+     * Get the current upload rate for all sessions of the specific user
+     */
+    public long getCurrentUserUploadRate(final User user) {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentUserRate(
+                user.getName(), false);
+    }
+
+    /**
+     * Get the current download rate of the specific session
+     */
+    public long getCurrentSessionDownloadRate(final FtpSession session) {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentSessionRate(session
+                .getSessionId(), true);
+    }
+
+    /**
+     * Get the current upload rate of the specific session
+     */
+    public long getCurrentSessionUploadRate(final FtpSession session) {
+        BandwidthManager manager = bandwidthManager;
+        return manager == null ? 0 : manager.getCurrentSessionRate(session
+                .getSessionId(), false);
+    }
+
+    /**
+     * Get the number of transfer buffers reused from the buffer pools
+     */
+    public long getTransferBufferPoolHits() {
+        BufferPoolManager manager = bufferPoolManager;
+        return manager == null ? 0 : manager.getHits();
+    }
+
+    /**
+     * Get the number of transfer buffers allocated because the buffer pools
+     * were empty
+     */
+    public long getTransferBufferPoolMisses() {
+        BufferPoolManager manager = bufferPoolManager;
+        return manager == null ? 0 : manager.getMisses();
+    }
+
+    /**
+     * Get the number of transfer buffers used by running transfers
+     */
+    public int getTransferBuffersInUse() {
+        BufferPoolManager manager = bufferPoolManager;
+        return manager == null ? 0 : manager.getInUse();
+    }
+
+    /**
+     * Get the number of filled buffers of pipelined uploads waiting to be
+     * written
+     */
+    public int getUploadPipelineBuffersFilled() {
+        UploadPipeline pipeline = uploadPipeline;
+        return pipeline == null ? 0 : pipeline.getBuffersFilled();
+    }
+
+    /**
+     * Get the total number of buffers of running pipelined uploads
+     */
+    public int getUploadPipelineCapacity() {
+        UploadPipeline pipeline = uploadPipeline;
+        return pipeline == null ? 0 : pipeline.getCapacity();
+    }
+
+    /**
+     * Get the number of times pipelined uploads waited for the disk
+     */
+    public long getUploadPipelineFullStalls() {
+        UploadPipeline pipeline = uploadPipeline;
+        return pipeline == null ? 0 : pipeline.getFullStalls();
+    }
+
+    /**
+     * Get the number of times pipelined uploads waited for the client
+     */
+    public long getUploadPipelineEmptyStalls() {
+        UploadPipeline pipeline = uploadPipeline;
+        return pipeline == null ? 0 : pipeline.getEmptyStalls();
+    }
+
+    /**
+     * Get the number of pooled passive sockets waiting to be used
+     */
+    public int getPassiveSocketPoolAvailable() {
+        PassiveSocketPool pool = passiveSocketPool;
+        return pool == null ? 0 : pool.getAvailable();
+    }
+
+    /**
+     * Get the total size of the passive socket pools
+     */
+    public int getPassiveSocketPoolCapacity() {
+        PassiveSocketPool pool = passiveSocketPool;
+        return pool == null ? 0 : pool.getCapacity();
+    }
+
+    /**
+     * Get the number of PASV served with a pooled socket
+     */
+    public long getPassiveSocketPoolHits() {
+        PassiveSocketPool pool = passiveSocketPool;
+        return pool == null ? 0 : pool.getHits();
+    }
+
+    /**
+     * Get the number of PASV which found the passive socket pool empty
+     */
+    public long getPassiveSocketPoolMisses() {
+        PassiveSocketPool pool = passiveSocketPool;
+        return pool == null ? 0 : pool.getMisses();
+    }
+
+    /**
+     * Get the distribution of the time taken to serve PASV and EPSV commands
+     */
+    public Histogram getPassiveHistogram() {
+        return passiveHistogram;
+    }
+
+    /**
+     * Get the distribution of a measurement of the completed downloads
+     */
+    public Histogram getDownloadHistogram(final TransferMetric metric) {
+        return serverHistograms.get(true, metric);
+    }
+
+    /**
+     * Get the distribution of a measurement of the completed uploads
+     */
+    public Histogram getUploadHistogram(final TransferMetric metric) {
+        return serverHistograms.get(false, metric);
+    }
+
+    /**
+     * Get the distribution of a measurement of the completed downloads of the
+     * specific listener
+     */
+    public Histogram getListenerDownloadHistogram(final Listener listener,
+            final TransferMetric metric) {
+        return getListenerHistograms(listener).get(true, metric);
+    }
+
+    /**
+     * Get the distribution of a measurement of the completed uploads of the
+     * specific listener
+     */
+    public Histogram getListenerUploadHistogram(final Listener listener,
+            final TransferMetric metric) {
+        return getListenerHistograms(listener).get(false, metric);
+    }
+
+    private TransferHistograms getListenerHistograms(final Listener listener) {
+        TransferHistograms histograms = listenerHistograms.get(listener);
+        if (histograms == null) {
+            TransferHistograms newHistograms = new TransferHistograms();
+            histograms = listenerHistograms.putIfAbsent(listener,
+                    newHistograms);
+            if (histograms == null) {
+                histograms = newHistograms;
+            }
+        }
+        return histograms;
+    }
+
     // //////////////////////////////////////////////////////
     // /////////////// All setter methods /////////////////
+    /**
+     * Set the bandwidth manager used for the current transfer rates.
+     */
+    public void setBandwidthManager(final BandwidthManager bandwidthManager) {
+        this.bandwidthManager = bandwidthManager;
+    }
+
+    /**
+     * Set the buffer pool manager used for the transfer buffer gauges.
+     */
+    public void setBufferPoolManager(final BufferPoolManager bufferPoolManager) {
+        this.bufferPoolManager = bufferPoolManager;
+    }
+
+    /**
+     * Set the upload pipeline used for the upload pipeline gauges.
+     */
+    public void setUploadPipeline(final UploadPipeline uploadPipeline) {
+        this.uploadPipeline = uploadPipeline;
+    }
+
+    /**
+     * Set the passive socket pool used for the passive socket pool gauges.
+     */
+    public void setPassiveSocketPool(final PassiveSocketPool passiveSocketPool) {
+        this.passiveSocketPool = passiveSocketPool;
+    }
+
     /**
      * Increment upload count.
      */
@@ -281,6 +581,31 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         notifyDownload(session, file, size);
     }
 
+    /**
+     * Record the timings of a completed data transfer. Not synchronized, the
+     * histograms are lock free.
+     */
+    public void setTransferTimes(final FtpIoSession session,
+            final boolean download, final long size, final long setupNanos,
+            final long firstByteNanos, final long durationNanos) {
+        serverHistograms.record(download, size, setupNanos, firstByteNanos,
+                durationNanos);
+
+        Listener listener = session.getListener();
+        if (listener != null) {
+            getListenerHistograms(listener).record(download, size,
+                    setupNanos, firstByteNanos, durationNanos);
+        }
+    }
+
+    /**
+     * Record the time taken to serve a PASV or EPSV command. Not
+     * synchronized, the histogram is lock free.
+     */
+    public void setPassiveTime(final FtpIoSession session, final long nanos) {
+        passiveHistogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
     /**
      * Increment delete count.
      */
@@ -577,5 +902,9 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
         bytesUpload.set(0);
         bytesDownload.set(0);
+
+        serverHistograms = new TransferHistograms();
+        listenerHistograms.clear();
+        passiveHistogram = new LogHistogram();
     }
 }
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.util.IoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Remembers the hashes of whole files, so that files which have not changed
+ * are not read again. Entries are keyed on the algorithm and path and are
+ * only used as long as the size and last modified time of the file are
+ * unchanged.
+ *
+ * If a file is configured, the cache is loaded from it when created, and
+ * saved to it when disposed and, on a background thread, after every
+ * {@value #SAVE_INTERVAL} new hashes. The file is written to a temporary file
+ * first, so that a crash while saving does not lose the previously saved
+ * hashes. The cache is only locked while copying the entries, not while
+ * writing the file.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DigestCache {
+
+    private final Logger LOG = LoggerFactory.getLogger(DigestCache.class);
+
+    /**
+     * The default max number of cached hashes
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 200000;
+
+    private static final int SAVE_INTERVAL = 1000;
+
+    private static final String ENCODING = "UTF-8";
+
+    private static class CachedDigest {
+        private final long size;
+
+        private final long lastModified;
+
+        private final String digest;
+
+        public CachedDigest(final long size, final long lastModified,
+                final String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    private final File file;
+
+    private final Map<String, CachedDigest> entries;
+
+    private int unsaved = 0;
+
+    /**
+     * Is a background save running?
+     */
+    private boolean saving = false;
+
+    /**
+     * Held while writing the file, so that saves do not overlap
+     */
+    private final Object saveLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache only kept in memory
+     */
+    public DigestCache() {
+        this(null, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create a cache
+     * @param file The file to load the cache from and save it to, null to
+     *   only keep the cache in memory
+     * @param maxEntries The max number of hashes, the least recently used
+     *   hashes are dropped first
+     */
+    public DigestCache(final File file, final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException(
+                    "Max number of entries must be positive");
+        }
+
+        this.file = file;
+        this.entries = new LinkedHashMap<String, CachedDigest>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, CachedDigest> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        if (file != null && file.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                LOG.warn("Failed to load digest cache from " + file
+                        + ", starting with an empty cache", e);
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the file the cache is saved to
+     * @return The file, or null if the cache is only kept in memory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private static String createKey(final HashAlgorithm algorithm,
+            final String path) {
+        return algorithm.getName() + ' ' + path;
+    }
+
+    /**
+     * Get the hash of a file
+     * @param algorithm The algorithm
+     * @param path The path identifying the file
+     * @param size The current size of the file
+     * @param lastModified The current last modified time of the file
+     * @return The hash as hex digits, or null if the hash is not known for
+     *         the current version of the file
+     */
+    public String get(final HashAlgorithm algorithm, final String path,
+            final long size, final long lastModified) {
+        CachedDigest entry;
+        synchronized (this) {
+            entry = entries.get(createKey(algorithm, path));
+        }
+
+        if (entry != null && entry.size == size
+                && entry.lastModified == lastModified) {
+            hits.incrementAndGet();
+            return entry.digest;
+        } else {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Remember the hash of a file
+     * @param algorithm The algorithm
+     * @param path The path identifying the file
+     * @param size The size of the hashed file
+     * @param lastModified The last modified time of the hashed file
+     * @param digest The hash as hex digits
+     */
+    public void put(final HashAlgorithm algorithm, final String path,
+            final long size, final long lastModified, final String digest) {
+        synchronized (this) {
+            entries.put(createKey(algorithm, path), new CachedDigest(size,
+                    lastModified, digest));
+
+            if (file == null || ++unsaved < SAVE_INTERVAL || saving) {
+                return;
+            }
+            saving = true;
+        }
+
+        Thread saver = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    save();
+                } catch (IOException e) {
+                    LOG.warn("Failed to save digest cache to " + file, e);
+                } finally {
+                    synchronized (DigestCache.this) {
+                        saving = false;
+                    }
+                }
+            }
+        }, "FtpServer-digest-cache-saver");
+        saver.setDaemon(true);
+        saver.start();
+    }
+
+    /**
+     * Get the number of cached hashes
+     * @return The number of hashes
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of hashes found in the cache
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of hashes not found in the cache
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // algorithm, size, last modified, hash and path, the path
+                // last as it might contain tabs
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5) {
+                    continue;
+                }
+
+                HashAlgorithm algorithm = HashAlgorithm.parse(fields[0]);
+                if (algorithm == null) {
+                    continue;
+                }
+                try {
+                    entries.put(createKey(algorithm, fields[4]),
+                            new CachedDigest(Long.parseLong(fields[1]), Long
+                                    .parseLong(fields[2]), fields[3]));
+                } catch (NumberFormatException e) {
+                    LOG.debug("Ignoring invalid digest cache entry: " + line);
+                }
+            }
+        } finally {
+            IoUtils.close(reader);
+        }
+    }
+
+    /**
+     * Save the cache to its file, does nothing if the cache is only kept in
+     * memory
+     * @throws IOException If the file can not be written
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+
+        synchronized (saveLock) {
+            Map<String, CachedDigest> snapshot;
+            synchronized (this) {
+                snapshot = new LinkedHashMap<String, CachedDigest>(entries);
+                unsaved = 0;
+            }
+
+            write(snapshot);
+        }
+    }
+
+    private void write(final Map<String, CachedDigest> snapshot)
+            throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmpFile), ENCODING));
+        try {
+            for (Map.Entry<String, CachedDigest> mapEntry : snapshot
+                    .entrySet()) {
+                String key = mapEntry.getKey();
+                int separator = key.indexOf(' ');
+                String path = key.substring(separator + 1);
+                if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                    // can not be read back
+                    continue;
+                }
+
+                CachedDigest entry = mapEntry.getValue();
+                writer.write(key.substring(0, separator));
+                writer.write('\t');
+                writer.write(Long.toString(entry.size));
+                writer.write('\t');
+                writer.write(Long.toString(entry.lastModified));
+                writer.write('\t');
+                writer.write(entry.digest);
+                writer.write('\t');
+                writer.write(path);
+                writer.write('\n');
+            }
+            writer.close();
+        } finally {
+            IoUtils.close(writer);
+        }
+
+        // renameTo does not replace existing files on all platforms
+        if (!tmpFile.renameTo(file)) {
+            if (!file.delete() || !tmpFile.renameTo(file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        }
+    }
+
+    /**
+     * Save the cache, called when the server is stopped
+     */
+    public void dispose() {
+        try {
+            save();
+        } catch (IOException e) {
+            LOG.warn("Failed to save digest cache to " + file, e);
+        }
+    }
+}
@@ -22,13 +22,16 @@ package org.apache.ftpserver.impl;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.cert.Certificate;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
 
+import org.apache.ftpserver.DataTransferConfiguration;
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpFile;
@@ -91,12 +94,27 @@ public class FtpIoSession implements IoSession {
 	private static final String ATTRIBUTE_FILE_OFFSET = ATTRIBUTE_PREFIX
 			+ "file-offset";
 
+	private static final String ATTRIBUTE_ALLOCATION_SIZE = ATTRIBUTE_PREFIX
+			+ "allocation-size";
+
+	private static final String ATTRIBUTE_RANGE_END = ATTRIBUTE_PREFIX
+			+ "range-end";
+
 	private static final String ATTRIBUTE_DATA_TYPE = ATTRIBUTE_PREFIX
 			+ "data-type";
 
 	private static final String ATTRIBUTE_STRUCTURE = ATTRIBUTE_PREFIX
 			+ "structure";
 
+	private static final String ATTRIBUTE_HASH_ALGORITHM = ATTRIBUTE_PREFIX
+			+ "hash-algorithm";
+
+	private static final String ATTRIBUTE_HASH_BATCH = ATTRIBUTE_PREFIX
+			+ "hash-batch";
+
+	private static final String ATTRIBUTE_UPLOAD_DIGESTS = ATTRIBUTE_PREFIX
+			+ "upload-digests";
+
 	private static final String ATTRIBUTE_FAILED_LOGINS = ATTRIBUTE_PREFIX
 			+ "failed-logins";
 
@@ -112,6 +130,11 @@ public class FtpIoSession implements IoSession {
 	private static final String ATTRIBUTE_CACHED_REMOTE_ADDRESS = ATTRIBUTE_PREFIX
 			+ "cached-remote-address";
 
+	private static final String ATTRIBUTE_COMMAND_COMPLETION = ATTRIBUTE_PREFIX
+			+ "command-completion";
+	private static final String ATTRIBUTE_RTT_ESTIMATOR = ATTRIBUTE_PREFIX
+			+ "rtt-estimator";
+
 	private IoSession wrappedSession;
 
 	private FtpServerContext context;
@@ -543,14 +566,20 @@ public class FtpIoSession implements IoSession {
 	public void resetState() {
 		removeAttribute(ATTRIBUTE_RENAME_FROM);
 		removeAttribute(ATTRIBUTE_FILE_OFFSET);
+		removeAttribute(ATTRIBUTE_ALLOCATION_SIZE);
+		removeAttribute(ATTRIBUTE_RANGE_END);
 	}
 
 	public synchronized ServerDataConnectionFactory getDataConnection() {
 		if (containsAttribute(ATTRIBUTE_DATA_CONNECTION)) {
 			return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
 		} else {
-			IODataConnectionFactory dataCon = new IODataConnectionFactory(
-					context, this);
+			ServerDataConnectionFactory dataCon;
+			if (getDataTransferConfiguration().isNonBlocking()) {
+				dataCon = new NioDataConnectionFactory(context, this);
+			} else {
+				dataCon = new IODataConnectionFactory(context, this);
+			}
 			dataCon
 					.setServerControlAddress(((InetSocketAddress) getLocalAddress())
 							.getAddress());
@@ -560,6 +589,38 @@ public class FtpIoSession implements IoSession {
 		}
 	}
 
+	/**
+	 * Get the tracker for commands completing asynchronously
+	 */
+	public CommandCompletion getCommandCompletion() {
+		CommandCompletion completion = (CommandCompletion) getAttribute(ATTRIBUTE_COMMAND_COMPLETION);
+		if (completion == null) {
+			CommandCompletion newCompletion = new CommandCompletion();
+			completion = (CommandCompletion) setAttributeIfAbsent(
+					ATTRIBUTE_COMMAND_COMPLETION, newCompletion);
+			if (completion == null) {
+				completion = newCompletion;
+			}
+		}
+		return completion;
+	}
+
+	/**
+	 * Get the round-trip time estimator for the control connection
+	 */
+	public RttEstimator getRttEstimator() {
+		RttEstimator estimator = (RttEstimator) getAttribute(ATTRIBUTE_RTT_ESTIMATOR);
+		if (estimator == null) {
+			RttEstimator newEstimator = new RttEstimator();
+			estimator = (RttEstimator) setAttributeIfAbsent(
+					ATTRIBUTE_RTT_ESTIMATOR, newEstimator);
+			if (estimator == null) {
+				estimator = newEstimator;
+			}
+		}
+		return estimator;
+	}
+
 	public FileSystemView getFileSystemView() {
 		return (FileSystemView) getAttribute(ATTRIBUTE_FILE_SYSTEM);
 	}
@@ -579,6 +640,16 @@ public class FtpIoSession implements IoSession {
 		return (Listener) getAttribute(ATTRIBUTE_LISTENER);
 	}
 
+	/**
+	 * Get the data transfer options of the listener
+	 * @return The data connection configuration of the listener, with the
+	 *         default data transfer options if it does not provide them
+	 */
+	public DataTransferConfiguration getDataTransferConfiguration() {
+		return DataTransferConfigurationAdapter.adapt(getListener()
+				.getDataConnectionConfiguration());
+	}
+
 	public void setListener(Listener listener) {
 		setAttribute(ATTRIBUTE_LISTENER, listener);
 	}
@@ -655,6 +726,8 @@ public class FtpIoSession implements IoSession {
 		removeAttribute(ATTRIBUTE_FILE_SYSTEM);
 		removeAttribute(ATTRIBUTE_RENAME_FROM);
 		removeAttribute(ATTRIBUTE_FILE_OFFSET);
+		removeAttribute(ATTRIBUTE_ALLOCATION_SIZE);
+		removeAttribute(ATTRIBUTE_RANGE_END);
 	}
 
 	public void logoutUser() {
@@ -690,6 +763,40 @@ public class FtpIoSession implements IoSession {
 		return (Long) getAttribute(ATTRIBUTE_FILE_OFFSET, 0L);
 	}
 
+	/**
+	 * Set the number of bytes announced by ALLO for the next upload
+	 * @param allocationSize The number of bytes to reserve
+	 */
+	public void setAllocationSize(long allocationSize) {
+		setAttribute(ATTRIBUTE_ALLOCATION_SIZE, allocationSize);
+	}
+
+	/**
+	 * Get the number of bytes announced by ALLO for the next upload
+	 * @return The number of bytes to reserve, 0 if no space was announced
+	 */
+	public long getAllocationSize() {
+		return (Long) getAttribute(ATTRIBUTE_ALLOCATION_SIZE, 0L);
+	}
+
+	/**
+	 * Set the last byte of the range requested by RANG for the next transfer,
+	 * the first byte is the file offset
+	 * @param rangeEnd The offset of the last byte, inclusive
+	 */
+	public void setRangeEnd(long rangeEnd) {
+		setAttribute(ATTRIBUTE_RANGE_END, rangeEnd);
+	}
+
+	/**
+	 * Get the last byte of the range requested by RANG for the next transfer
+	 * @return The offset of the last byte, inclusive, or -1 if no range was
+	 *         requested
+	 */
+	public long getRangeEnd() {
+		return (Long) getAttribute(ATTRIBUTE_RANGE_END, -1L);
+	}
+
 	public void setStructure(Structure structure) {
 		setAttribute(ATTRIBUTE_STRUCTURE, structure);
 	}
@@ -725,6 +832,59 @@ public class FtpIoSession implements IoSession {
 		return (DataType) getAttribute(ATTRIBUTE_DATA_TYPE, DataType.ASCII);
 	}
 
+	/**
+	 * Set the algorithm used by HASH, as selected with OPTS HASH
+	 * @param hashAlgorithm The algorithm
+	 */
+	public void setHashAlgorithm(HashAlgorithm hashAlgorithm) {
+		setAttribute(ATTRIBUTE_HASH_ALGORITHM, hashAlgorithm);
+	}
+
+	/**
+	 * Get the algorithm used by HASH
+	 * @return The algorithm, SHA-1 unless another algorithm has been selected
+	 */
+	public HashAlgorithm getHashAlgorithm() {
+		return (HashAlgorithm) getAttribute(ATTRIBUTE_HASH_ALGORITHM,
+				HashAlgorithm.SHA_1);
+	}
+
+	/**
+	 * Set the files hashed by the last checksum command, so that the hashing
+	 * can be cancelled when the session is closed
+	 * @param hashBatch The batch
+	 */
+	public void setHashBatch(HashBatch hashBatch) {
+		setAttribute(ATTRIBUTE_HASH_BATCH, hashBatch);
+	}
+
+	/**
+	 * Get the files hashed by the last checksum command
+	 * @return The batch, or null if no files have been hashed
+	 */
+	public HashBatch getHashBatch() {
+		return (HashBatch) getAttribute(ATTRIBUTE_HASH_BATCH);
+	}
+
+	/**
+	 * Set the hashes of the data received by the last upload
+	 * @param uploadDigests The hashes, keyed by algorithm name
+	 */
+	public void setUploadDigests(Map<String, String> uploadDigests) {
+		setAttribute(ATTRIBUTE_UPLOAD_DIGESTS, uploadDigests);
+	}
+
+	/**
+	 * Get the hashes of the data received by the last upload
+	 * @return The hashes, keyed by algorithm name. Empty if the last upload
+	 *         was not hashed.
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, String> getUploadDigests() {
+		return (Map<String, String>) getAttribute(ATTRIBUTE_UPLOAD_DIGESTS,
+				Collections.emptyMap());
+	}
+
 	public Date getLoginTime() {
 		return (Date) getAttribute(ATTRIBUTE_LOGIN_TIME);
 	}
@@ -70,4 +70,66 @@ public interface FtpServerContext extends FtpletContext {
      * @return the thread pool executor for this context.
      */
     ThreadPoolExecutor getThreadPoolExecutor();
+
+    /**
+     * Returns the bandwidth manager keeping track of the transfer rate
+     * limits of the server, listeners, users and sessions.
+     * @return the bandwidth manager for this context.
+     */
+    BandwidthManager getBandwidthManager();
+
+    /**
+     * Returns the engine driving the non-blocking data connections of the
+     * server, starting it if needed.
+     * @return the data connection engine for this context.
+     */
+    NioDataConnectionEngine getDataConnectionEngine();
+
+    /**
+     * Returns the manager of the buffer pools used for data transfers.
+     * @return the buffer pool manager for this context.
+     */
+    BufferPoolManager getBufferPoolManager();
+
+    /**
+     * Returns the pool of deflaters and inflaters used for MODE Z transfers.
+     * @return the compression pool for this context.
+     */
+    CompressionPool getCompressionPool();
+
+    /**
+     * Returns the committer making uploaded data durable.
+     * @return the upload committer for this context.
+     */
+    UploadCommitter getUploadCommitter();
+
+    /**
+     * Returns the pipeline running the writes of pipelined uploads.
+     * @return the upload pipeline for this context.
+     */
+    UploadPipeline getUploadPipeline();
+
+    /**
+     * Returns the index used to restart ASCII downloads.
+     * @return the ASCII offset index for this context.
+     */
+    AsciiOffsetIndex getAsciiOffsetIndex();
+
+    /**
+     * Returns the engine computing the hashes for the checksum commands.
+     * @return the hash engine for this context.
+     */
+    HashEngine getHashEngine();
+
+    /**
+     * Returns the acceptors of the shared passive ports.
+     * @return the passive demultiplexer for this context.
+     */
+    PassiveDemultiplexer getPassiveDemultiplexer();
+
+    /**
+     * Returns the pools of passive sockets bound in advance.
+     * @return the passive socket pool for this context.
+     */
+    PassiveSocketPool getPassiveSocketPool();
 }
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The hash algorithms supported by the HASH, MD5 and X* checksum commands.
+ * The checksums and digests of the Java platform are used, which current
+ * JVMs compile to the CRC32 and SHA instructions of the processor.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum HashAlgorithm {
+
+    MD5("MD5"), SHA_1("SHA-1"), SHA_256("SHA-256"), CRC32("CRC32"),
+    CRC32C("CRC32C");
+
+    /**
+     * Incremental computation of a single hash
+     */
+    public static interface Hasher {
+
+        /**
+         * Add data to the hash
+         * @param b The buffer
+         * @param off The offset of the first byte
+         * @param len The number of bytes
+         */
+        void update(byte[] b, int off, int len);
+
+        /**
+         * Complete the hash, the hasher must not be used afterwards
+         * @return The hash
+         */
+        byte[] digest();
+    }
+
+    private static class MessageDigestHasher implements Hasher {
+        private final MessageDigest digest;
+
+        public MessageDigestHasher(final MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        public void update(final byte[] b, final int off, final int len) {
+            digest.update(b, off, len);
+        }
+
+        public byte[] digest() {
+            return digest.digest();
+        }
+    }
+
+    private static class ChecksumHasher implements Hasher {
+        private final Checksum checksum;
+
+        public ChecksumHasher(final Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        public void update(final byte[] b, final int off, final int len) {
+            checksum.update(b, off, len);
+        }
+
+        public byte[] digest() {
+            long value = checksum.getValue();
+            return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
+                    (byte) (value >>> 8), (byte) value };
+        }
+    }
+
+    private final String name;
+
+    private HashAlgorithm(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of the algorithm, as used in the HASH command
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Create a hasher for a new hash
+     * @return The hasher
+     */
+    public Hasher createHasher() {
+        if (this == CRC32) {
+            return new ChecksumHasher(new java.util.zip.CRC32());
+        } else if (this == CRC32C) {
+            return new ChecksumHasher(Crc32c.create());
+        }
+
+        try {
+            return new MessageDigestHasher(MessageDigest.getInstance(name));
+        } catch (NoSuchAlgorithmException e) {
+            // all Java platforms must support MD5, SHA-1 and SHA-256
+            throw new IllegalStateException(name + " not available", e);
+        }
+    }
+
+    /**
+     * Parse an algorithm name, ignoring case
+     * @param name The name
+     * @return The algorithm, or null if not supported
+     */
+    public static HashAlgorithm parse(final String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encode a hash as lower case hex digits
+     * @param hash The hash
+     * @return The hex string
+     */
+    public static String toHex(final byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(HEX_DIGITS[(b >>> 4) & 0x0f]);
+            sb.append(HEX_DIGITS[b & 0x0f]);
+        }
+        return sb.toString();
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef"
+            .toCharArray();
+}
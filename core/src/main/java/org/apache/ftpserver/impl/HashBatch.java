@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The hashing of several files in parallel, one task per file. The listener
+ * is called exactly once: with all hashes once every file has been hashed,
+ * or with the first failure, in which case the hashing of the other files is
+ * cancelled. The whole batch can also be cancelled, for example when the
+ * session is closed, and the listener is then not called at all.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HashBatch {
+
+    /**
+     * Notified once the batch is done
+     */
+    public static interface Listener {
+
+        /**
+         * All files have been hashed
+         * @param digests The hashes as hex digits, in the same order as the
+         *   files
+         */
+        void hashed(String[] digests);
+
+        /**
+         * Hashing a file failed, the other files are not hashed
+         * @param index The index of the file that could not be hashed
+         * @param e The failure
+         */
+        void failed(int index, IOException e);
+    }
+
+    private final Listener listener;
+
+    private final String[] digests;
+
+    private final Future<?>[] futures;
+
+    private final AtomicInteger remaining;
+
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    /**
+     * Create a batch
+     * @param size The number of files
+     * @param listener The listener to notify once done
+     */
+    public HashBatch(final int size, final Listener listener) {
+        this.listener = listener;
+        digests = new String[size];
+        futures = new Future<?>[size];
+        remaining = new AtomicInteger(size);
+    }
+
+    /**
+     * Set the task hashing a file, so that it can be cancelled
+     * @param index The index of the file
+     * @param future The task
+     */
+    synchronized void setFuture(final int index, final Future<?> future) {
+        futures[index] = future;
+        if (done.get()) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Is the batch done, either completed, failed or cancelled? Files not
+     * yet hashed are then skipped.
+     * @return true if the batch is done
+     */
+    public boolean isDone() {
+        return done.get();
+    }
+
+    /**
+     * Called once a file has been hashed
+     * @param index The index of the file
+     * @param digest The hash
+     */
+    void hashed(final int index, final String digest) {
+        digests[index] = digest;
+
+        // the decrement publishes the hash to the thread completing the batch
+        if (remaining.decrementAndGet() == 0
+                && done.compareAndSet(false, true)) {
+            listener.hashed(digests);
+        }
+    }
+
+    /**
+     * Called if hashing a file failed
+     * @param index The index of the file
+     * @param e The failure
+     */
+    void failed(final int index, final IOException e) {
+        if (done.compareAndSet(false, true)) {
+            cancelTasks();
+            listener.failed(index, e);
+        }
+    }
+
+    /**
+     * Cancel the hashing of all files not yet hashed, the listener will not
+     * be notified
+     */
+    public void cancel() {
+        if (done.compareAndSet(false, true)) {
+            cancelTasks();
+        }
+    }
+
+    private synchronized void cancelTasks() {
+        for (Future<?> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Computes the hashes of files, or parts of files, for the checksum
+ * commands. Hashes of whole files are kept in a {@link DigestCache} and only
+ * computed again once the file has changed.
+ *
+ * Uploads can also be hashed while the data is written, so that the hashes
+ * of a freshly uploaded file are already cached when the client asks for
+ * them.
+ *
+ * Several files can be hashed in parallel, on a fixed number of hashing
+ * threads shared by all sessions, so that a single request for many large
+ * files neither blocks its session nor uses up the whole server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HashEngine {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExecutorService executor;
+
+    private final BufferPool bufferPool;
+
+    private volatile DigestCache digestCache;
+
+    private volatile HashAlgorithm[] uploadAlgorithms = new HashAlgorithm[0];
+
+    /**
+     * Create an engine
+     * @param digestCache The cache for the hashes of whole files
+     */
+    public HashEngine(final DigestCache digestCache) {
+        this(digestCache, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an engine
+     * @param digestCache The cache for the hashes of whole files
+     * @param threads The number of threads hashing files in parallel
+     */
+    public HashEngine(final DigestCache digestCache, final int threads) {
+        this.digestCache = digestCache;
+
+        final AtomicInteger hashingThreads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "FtpServer-hasher-"
+                        + hashingThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // one buffer for each hashing thread, and a few for the hashes
+        // computed on the threads executing commands
+        bufferPool = new BufferPool(BUFFER_SIZE, threads + 4, false);
+    }
+
+    /**
+     * Get the cache for the hashes of whole files
+     * @return The cache
+     */
+    public DigestCache getDigestCache() {
+        return digestCache;
+    }
+
+    /**
+     * Set the cache for the hashes of whole files
+     * @param digestCache The cache
+     */
+    public void setDigestCache(final DigestCache digestCache) {
+        this.digestCache = digestCache;
+    }
+
+    /**
+     * Get the algorithms uploaded data is hashed with
+     * @return The algorithms, empty if uploads are not hashed
+     */
+    public HashAlgorithm[] getUploadAlgorithms() {
+        return uploadAlgorithms.clone();
+    }
+
+    /**
+     * Set the algorithms uploaded data is hashed with. Hashing uploads
+     * disables the zero-copy transfer from the data connection to the file.
+     * @param uploadAlgorithms The algorithms, empty to not hash uploads
+     */
+    public void setUploadAlgorithms(final HashAlgorithm[] uploadAlgorithms) {
+        this.uploadAlgorithms = uploadAlgorithms.clone();
+    }
+
+    /**
+     * Get the path identifying a file in the digest cache. The same virtual
+     * path is a different file for users with different home directories.
+     * @param user The user, might be null
+     * @param file The file
+     * @return The path
+     */
+    public static String getCachePath(final User user, final FtpFile file) {
+        if (user == null) {
+            return file.getAbsolutePath();
+        } else {
+            return user.getHomeDirectory() + file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Hash a whole file, using the cached hash if the file has not changed
+     * @param user The user requesting the hash, might be null
+     * @param file The file
+     * @param algorithm The algorithm
+     * @return The hash as hex digits
+     * @throws IOException If the file can not be read
+     */
+    public String hash(final User user, final FtpFile file,
+            final HashAlgorithm algorithm) throws IOException {
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+        String path = getCachePath(user, file);
+
+        DigestCache cache = digestCache;
+        String digest = cache.get(algorithm, path, size, lastModified);
+        if (digest == null) {
+            digest = hash(file, algorithm, 0, size);
+
+            // do not cache the hash of a file changed while being hashed
+            if (file.getSize() == size
+                    && file.getLastModified() == lastModified) {
+                cache.put(algorithm, path, size, lastModified, digest);
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Hash whole files in parallel on the hashing threads, using the cached
+     * hashes of files that have not changed
+     * @param user The user requesting the hashes, might be null
+     * @param files The files
+     * @param algorithm The algorithm
+     * @param listener The listener notified once all files have been hashed
+     *   or hashing a file has failed, called on a hashing thread
+     * @return The batch, which can be used to cancel the hashing
+     */
+    public HashBatch hash(final User user, final FtpFile[] files,
+            final HashAlgorithm algorithm, final HashBatch.Listener listener) {
+        final HashBatch batch = new HashBatch(files.length, listener);
+
+        for (int i = 0; i < files.length; i++) {
+            final FtpFile file = files[i];
+            boolean submitted = submit(batch, i, new HashTask(file) {
+                String hash() throws IOException {
+                    return HashEngine.this.hash(user, file, algorithm);
+                }
+            });
+            if (!submitted) {
+                break;
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Hash part of a file on a hashing thread, without using the cache
+     * @param file The file
+     * @param algorithm The algorithm
+     * @param offset The offset of the first byte to hash
+     * @param length The number of bytes to hash
+     * @param listener The listener notified once the file has been hashed
+     *   or hashing it has failed, called on a hashing thread
+     * @return The batch, which can be used to cancel the hashing
+     */
+    public HashBatch hash(final FtpFile file, final HashAlgorithm algorithm,
+            final long offset, final long length,
+            final HashBatch.Listener listener) {
+        HashBatch batch = new HashBatch(1, listener);
+        submit(batch, 0, new HashTask(file) {
+            String hash() throws IOException {
+                return HashEngine.this.hash(file, algorithm, offset, length);
+            }
+        });
+        return batch;
+    }
+
+    /**
+     * Submit the hashing of a file of a batch to the hashing threads
+     * @return false if the hashing threads have been stopped, the batch has
+     *         then failed
+     */
+    private boolean submit(final HashBatch batch, final int index,
+            final HashTask hashTask) {
+        Runnable task = new Runnable() {
+            public void run() {
+                if (batch.isDone()) {
+                    return;
+                }
+
+                try {
+                    batch.hashed(index, hashTask.hash());
+                } catch (IOException e) {
+                    batch.failed(index, e);
+                } catch (RuntimeException e) {
+                    IOException ioe = new IOException("Failed to hash "
+                            + hashTask.file.getAbsolutePath());
+                    ioe.initCause(e);
+                    batch.failed(index, ioe);
+                }
+            }
+        };
+
+        try {
+            batch.setFuture(index, executor.submit(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            IOException ioe = new IOException("Server is shutting down");
+            ioe.initCause(e);
+            batch.failed(index, ioe);
+            return false;
+        }
+    }
+
+    /**
+     * Computes the hash of a single file of a batch
+     */
+    private abstract static class HashTask {
+
+        final FtpFile file;
+
+        HashTask(final FtpFile file) {
+            this.file = file;
+        }
+
+        abstract String hash() throws IOException;
+    }
+
+    /**
+     * Hash part of a file, without using the cache
+     * @param file The file
+     * @param algorithm The algorithm
+     * @param offset The offset of the first byte to hash
+     * @param length The number of bytes to hash
+     * @return The hash as hex digits
+     * @throws IOException If the file can not be read or is shorter than the
+     *         requested part
+     */
+    public String hash(final FtpFile file, final HashAlgorithm algorithm,
+            final long offset, final long length) throws IOException {
+        HashAlgorithm.Hasher hasher = algorithm.createHasher();
+
+        InputStream in = file.createInputStream(offset);
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            // read local files through their channel, which reuses its
+            // native buffer instead of allocating one for every large read
+            FileInputStream fileIn = RangeInputStream.getFileInputStream(in);
+            FileChannel channel = null;
+            if (fileIn != null) {
+                channel = fileIn.getChannel();
+            }
+
+            byte[] buff = buffer.array();
+            long remaining = length;
+            while (remaining > 0) {
+                // the hashing of a file is cancelled by interrupting it
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Hashing cancelled");
+                }
+
+                int max = (int) Math.min(buff.length, remaining);
+                int count;
+                if (channel != null) {
+                    buffer.clear();
+                    buffer.limit(max);
+                    count = channel.read(buffer);
+                } else {
+                    count = in.read(buff, 0, max);
+                }
+                if (count == -1) {
+                    throw new IOException("Unexpected end of file");
+                }
+                hasher.update(buff, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            IoUtils.close(in);
+            bufferPool.release(buffer);
+        }
+
+        return HashAlgorithm.toHex(hasher.digest());
+    }
+
+    /**
+     * Create the stream hashing the data of an upload replacing a whole file
+     * @param out The stream the uploaded data is written to
+     * @return The hashing stream, or null if uploads are not hashed
+     */
+    public HashingOutputStream createUploadStream(final OutputStream out) {
+        HashAlgorithm[] algorithms = uploadAlgorithms;
+        if (algorithms.length == 0) {
+            return null;
+        }
+        return new HashingOutputStream(out, algorithms);
+    }
+
+    /**
+     * Cache the hashes of a completed upload. Must be called once the file
+     * has been closed, so that the cached hashes are tied to its final size
+     * and last modified time.
+     * @param user The user uploading the file, might be null
+     * @param file The uploaded file
+     * @param hashingStream The stream the upload was hashed with, might be
+     *   null
+     * @param success true if the whole file has been uploaded successfully
+     * @return The hashes as hex digits, keyed by algorithm name. Empty if the
+     *         upload was not hashed or failed.
+     */
+    public Map<String, String> uploadFinished(final User user,
+            final FtpFile file, final HashingOutputStream hashingStream,
+            final boolean success) {
+        if (hashingStream == null || !success) {
+            return Collections.emptyMap();
+        }
+
+        HashAlgorithm[] algorithms = hashingStream.getAlgorithms();
+        String[] digests = hashingStream.digest();
+
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+        String path = getCachePath(user, file);
+
+        DigestCache cache = digestCache;
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (int i = 0; i < algorithms.length; i++) {
+            cache.put(algorithms[i], path, size, lastModified, digests[i]);
+            result.put(algorithms[i].getName(), digests[i]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Stop the hashing threads and save the digest cache, called when the
+     * server is stopped
+     */
+    public void dispose() {
+        executor.shutdownNow();
+        digestCache.dispose();
+    }
+}
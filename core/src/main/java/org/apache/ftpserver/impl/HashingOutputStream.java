@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Hashes all data written to the underlying stream, so that the hashes of an
+ * uploaded file are known without reading the file again.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HashingOutputStream extends FilterOutputStream {
+
+    private final HashAlgorithm[] algorithms;
+
+    private final HashAlgorithm.Hasher[] hashers;
+
+    /**
+     * Create a hashing stream
+     * @param out The underlying stream
+     * @param algorithms The algorithms to hash the data with
+     */
+    public HashingOutputStream(final OutputStream out,
+            final HashAlgorithm[] algorithms) {
+        super(out);
+
+        this.algorithms = algorithms;
+        hashers = new HashAlgorithm.Hasher[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            hashers[i] = algorithms[i].createHasher();
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        // only hash data that has been written successfully
+        out.write(b, off, len);
+
+        for (HashAlgorithm.Hasher hasher : hashers) {
+            hasher.update(b, off, len);
+        }
+    }
+
+    /**
+     * Get the algorithms the data is hashed with
+     * @return The algorithms
+     */
+    public HashAlgorithm[] getAlgorithms() {
+        return algorithms;
+    }
+
+    /**
+     * Complete the hashes, the stream must not be written to afterwards
+     * @return The hashes as hex digits, in the same order as the algorithms
+     */
+    public String[] digest() {
+        String[] digests = new String[hashers.length];
+        for (int i = 0; i < hashers.length; i++) {
+            digests[i] = HashAlgorithm.toHex(hashers[i].digest());
+        }
+        return digests;
+    }
+}
@@ -19,21 +19,19 @@
 
 package org.apache.ftpserver.impl;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.Socket;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 
-import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.DataTransferConfiguration;
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FtpSession;
-import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,13 +44,20 @@ import org.slf4j.LoggerFactory;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class IODataConnection implements DataConnection {
+public class IODataConnection implements AsyncDataConnection {
 
     private final Logger LOG = LoggerFactory
     .getLogger(IODataConnection.class);
 
 
-    private static final byte[] EOL = System.getProperty("line.separator").getBytes();
+    static final byte[] EOL = System.getProperty("line.separator").getBytes();
+
+    /**
+     * The maximum number of bytes handed to {@link FileChannel#transferTo} in
+     * a single call, so that session statistics and the rate limit are
+     * updated regularly during large downloads.
+     */
+    private static final long ZERO_COPY_CHUNK_SIZE = 1024 * 1024;
 
     private FtpIoSession session;
 
@@ -60,11 +65,21 @@ public class IODataConnection implements DataConnection {
 
     private ServerDataConnectionFactory factory;
 
+    private FtpServerContext serverContext;
+
+    /**
+     * The time spent opening the socket, including the TLS handshake
+     */
+    private long setupNanos;
+
     public IODataConnection(final Socket socket, final FtpIoSession session,
-            final ServerDataConnectionFactory factory) {
+            final ServerDataConnectionFactory factory,
+            final FtpServerContext serverContext, final long setupNanos) {
         this.session = session;
         this.socket = socket;
         this.factory = factory;
+        this.serverContext = serverContext;
+        this.setupNanos = setupNanos;
     }
 
     /**
@@ -82,7 +97,8 @@ public class IODataConnection implements DataConnection {
             // create input stream
             InputStream is = dataSoc.getInputStream();
             if (factory.isZipMode()) {
-                is = new InflaterInputStream(is);
+                is = serverContext.getCompressionPool()
+                        .createInflaterInputStream(is, getCompressionBufferSize());
             }
             return is;
         } catch (IOException ex) {
@@ -91,6 +107,11 @@ public class IODataConnection implements DataConnection {
         }
     }
 
+    private int getCompressionBufferSize() {
+        return session.getDataTransferConfiguration()
+                .getCompressionBufferSize();
+    }
+
     /**
      * Get data output stream. The return value will never be null.
      */
@@ -106,7 +127,9 @@ public class IODataConnection implements DataConnection {
             // create output stream
             OutputStream os = dataSoc.getOutputStream();
             if (factory.isZipMode()) {
-                os = new DeflaterOutputStream(os);
+                os = serverContext.getCompressionPool()
+                        .createDeflaterOutputStream(os, factory.getZipLevel(),
+                                getCompressionBufferSize());
             }
             return os;
         } catch (IOException ex) {
@@ -123,17 +146,26 @@ public class IODataConnection implements DataConnection {
      */
     public final long transferFromClient(FtpSession session,
             final OutputStream out) throws IOException {
-        TransferRateRequest transferRateRequest = new TransferRateRequest();
-        transferRateRequest = (TransferRateRequest) session.getUser()
-                .authorize(transferRateRequest);
-        int maxRate = 0;
-        if (transferRateRequest != null) {
-            maxRate = transferRateRequest.getMaxUploadRate();
-        }
+        TransferRateLimiter rateLimiter = serverContext.getBandwidthManager()
+                .createTransferRateLimiter(this.session, false);
+        TransferTimer timer = new TransferTimer(this.session, false,
+                setupNanos);
 
         InputStream is = getDataInputStream();
         try {
-            return transfer(session, false, is, out, maxRate);
+            DataTransferConfiguration dataConnectionConfig = this.session
+                    .getDataTransferConfiguration();
+            long transferredSize;
+            if (dataConnectionConfig.isPipelinedUploads()) {
+                transferredSize = transferPipelined(session, is, out,
+                        rateLimiter, timer,
+                        dataConnectionConfig.getUploadPipelineDepth());
+            } else {
+                transferredSize = transfer(session, false, is, out,
+                        rateLimiter, timer);
+            }
+            timer.completed(serverContext, transferredSize);
+            return transferredSize;
         } finally {
             IoUtils.close(is);
         }
@@ -148,22 +180,72 @@ public class IODataConnection implements DataConnection {
      */
     public final long transferToClient(FtpSession session, final InputStream in)
             throws IOException {
-        TransferRateRequest transferRateRequest = new TransferRateRequest();
-        transferRateRequest = (TransferRateRequest) session.getUser()
-                .authorize(transferRateRequest);
-        int maxRate = 0;
-        if (transferRateRequest != null) {
-            maxRate = transferRateRequest.getMaxDownloadRate();
-        }
+        TransferRateLimiter rateLimiter = serverContext.getBandwidthManager()
+                .createTransferRateLimiter(this.session, true);
+        TransferTimer timer = new TransferTimer(this.session, true, setupNanos);
 
         OutputStream out = getDataOutputStream();
         try {
-            return transfer(session, true, in, out, maxRate);
+            long transferredSize;
+            if (isZeroCopyPossible(session, in)) {
+                transferredSize = transferZeroCopy(session, in, rateLimiter,
+                        timer);
+            } else {
+                transferredSize = transfer(session, true, in, out,
+                        rateLimiter, timer);
+            }
+            timer.completed(serverContext, transferredSize);
+            return transferredSize;
         } finally {
             IoUtils.close(out);
         }
     }
 
+    /**
+     * Blocking transfer from the client, the listener is notified before
+     * returning.
+     */
+    public final void transferFromClient(FtpSession session,
+            final OutputStream out, final DataTransferListener listener) {
+        long transferredSize;
+        try {
+            transferredSize = transferFromClient(session, out);
+        } catch (IOException e) {
+            listener.transferFailed(e);
+            return;
+        } catch (RuntimeException e) {
+            listener.transferFailed(toIOException(e));
+            return;
+        }
+        listener.transferCompleted(transferredSize);
+    }
+
+    /**
+     * Blocking transfer to the client, the listener is notified before
+     * returning.
+     */
+    public final void transferToClient(FtpSession session,
+            final InputStream in, final DataTransferListener listener) {
+        long transferredSize;
+        try {
+            transferredSize = transferToClient(session, in);
+        } catch (IOException e) {
+            listener.transferFailed(e);
+            return;
+        } catch (RuntimeException e) {
+            listener.transferFailed(toIOException(e));
+            return;
+        }
+        listener.transferCompleted(transferredSize);
+    }
+
+    private IOException toIOException(RuntimeException e) {
+        IOException ioe = new IOException("Data transfer failed: "
+                + e.getMessage());
+        ioe.initCause(e);
+        return ioe;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -193,54 +275,223 @@ public class IODataConnection implements DataConnection {
 
     }
 
-    private final long transfer(FtpSession session, boolean isWrite,
-            final InputStream in, final OutputStream out, final int maxRate)
-            throws IOException {
-        long transferredSize = 0L;
+    /**
+     * Zero-copy transfers are only possible for binary downloads of plain
+     * files over a clear text, uncompressed data connection backed by a
+     * {@link SocketChannel}.
+     */
+    private boolean isZeroCopyPossible(FtpSession session, InputStream in) {
+        return session.getDataType() == DataType.BINARY
+                && !factory.isSecure() && !factory.isZipMode()
+                && RangeInputStream.getFileInputStream(in) != null
+                && socket != null && socket.getChannel() != null;
+    }
 
-        boolean isAscii = session.getDataType() == DataType.ASCII;
-        long startTime = System.currentTimeMillis();
-        byte[] buff = new byte[4096];
+    /**
+     * Transfer a file to the client by letting the operating system copy the
+     * data directly from the file to the data socket (e.g. sendfile on Linux).
+     * The transfer starts at the current position of the stream, which
+     * includes any REST offset, and ends at the end of the file or of the
+     * RANG byte range.
+     */
+    private final long transferZeroCopy(FtpSession session,
+            final InputStream in, final TransferRateLimiter rateLimiter,
+            final TransferTimer timer) throws IOException {
+        long transferredSize = 0L;
 
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
         try {
-            bis = IoUtils.getBufferedInputStream(in);
+            FileChannel fileChannel = RangeInputStream.getFileInputStream(in)
+                    .getChannel();
+            long remaining = RangeInputStream.getRemaining(in);
+            SocketChannel socketChannel = socket.getChannel();
+
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            long chunkSize = ZERO_COPY_CHUNK_SIZE;
+            if (rateLimiter.isLimited()) {
+                chunkSize = Math.min(chunkSize, rateLimiter.getBurst());
+            }
+
+            long position = fileChannel.position();
+            while (remaining > 0) {
+                long count = fileChannel.transferTo(position, Math.min(
+                        chunkSize, remaining), socketChannel);
+
+                if (count <= 0) {
+                    if (position >= fileChannel.size()) {
+                        break;
+                    }
+                    throw new IOException("Zero-copy transfer stalled at position " + position);
+                }
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseWrittenDataBytes((int) count);
+                }
+
+                position += count;
+                transferredSize += count;
+                remaining -= count;
+                timer.transferred();
+
+                notifyObserver();
+
+                // wait until we are allowed to send more
+                try {
+                    rateLimiter.take(count);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+
+            // keep the stream position consistent with what we have sent
+            fileChannel.position(position);
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        }
+
+        return transferredSize;
+    }
+
+    /**
+     * Transfer from the client with the reads from the data connection on
+     * the calling thread and the writes to the output stream on a thread of
+     * the {@link UploadPipeline}. The client is only stalled by slow writes
+     * once all buffers of the ring are waiting to be written.
+     */
+    private final long transferPipelined(FtpSession session,
+            final InputStream in, final OutputStream out,
+            final TransferRateLimiter rateLimiter, final TransferTimer timer,
+            final int depth) throws IOException {
+        long transferredSize = 0L;
 
-            bos = IoUtils.getBufferedOutputStream(out);
+        BufferPool bufferPool = serverContext.getBufferPoolManager()
+                .getBufferPool(this.session.getListener(), false);
 
+        AsciiTranslator translator = null;
+        if (session.getDataType() == DataType.ASCII) {
+            translator = new AsciiTranslator(false, EOL);
+        }
+
+        // never read more than the rate limiter allows us to receive at once
+        int readSize = bufferPool.getBufferSize();
+        if (rateLimiter.isLimited()) {
+            readSize = (int) Math.min(readSize, rateLimiter.getBurst());
+        }
+
+        UploadPipeline.Ring ring = serverContext.getUploadPipeline().start(
+                bufferPool, depth, out, translator);
+        boolean finished = false;
+        try {
             DefaultFtpSession defaultFtpSession = null;
             if (session instanceof DefaultFtpSession) {
                 defaultFtpSession = (DefaultFtpSession) session;
             }
 
-            byte lastByte = 0;
             while (true) {
 
-                // if current rate exceeds the max rate, sleep for 50ms
-                // and again check the current transfer rate
-                if (maxRate > 0) {
+                // read data, waiting for the writer if the ring is full
+                ByteBuffer buffer = ring.acquire();
+                int count = in.read(buffer.array(), 0, readSize);
 
-                    // prevent "divide by zero" exception
-                    long interval = System.currentTimeMillis() - startTime;
-                    if (interval == 0) {
-                        interval = 1;
-                    }
+                if (count == -1) {
+                    ring.recycle(buffer);
+                    break;
+                }
 
-                    // check current rate
-                    long currRate = (transferredSize * 1000L) / interval;
-                    if (currRate > maxRate) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        continue;
-                    }
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseReadDataBytes(count);
                 }
 
+                // hand the data to the writer
+                ring.submit(buffer, count);
+
+                transferredSize += count;
+                timer.transferred();
+
+                notifyObserver();
+
+                // wait until we are allowed to transfer more
+                try {
+                    rateLimiter.take(count);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+
+            // wait for the writer to write and flush all data
+            ring.finish();
+            finished = true;
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } finally {
+            if (!finished) {
+                ring.abort();
+            }
+        }
+
+        return transferredSize;
+    }
+
+    private final long transfer(FtpSession session, boolean isWrite,
+            final InputStream in, final OutputStream out,
+            final TransferRateLimiter rateLimiter, final TransferTimer timer)
+            throws IOException {
+        long transferredSize = 0L;
+
+        boolean isAscii = session.getDataType() == DataType.ASCII;
+
+        // reads and writes are done with a single pooled buffer, large
+        // enough to make any further buffering of the streams pointless
+        BufferPool bufferPool = serverContext.getBufferPoolManager()
+                .getBufferPool(this.session.getListener(), false);
+        ByteBuffer buffer = bufferPool.acquire();
+        ByteBuffer translateBuffer = null;
+        byte[] buff = buffer.array();
+
+        // never read more than the rate limiter allows us to send at once
+        int readSize = buff.length;
+        if (rateLimiter.isLimited()) {
+            readSize = (int) Math.min(readSize, rateLimiter.getBurst());
+        }
+
+        OutputStream bos = out;
+        try {
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            AsciiTranslator translator = null;
+            if (isAscii) {
+                translator = new AsciiTranslator(isWrite, EOL);
+
+                // the translated line endings are written separately, so
+                // collect them in a second buffer
+                translateBuffer = bufferPool.acquire();
+                bos = new ByteBufferOutputStream(out, translateBuffer);
+            }
+
+            while (true) {
+
                 // read data
-                int count = bis.read(buff);
+                int count = in.read(buff, 0, readSize);
 
                 if (count == -1) {
                     break;
@@ -256,42 +507,24 @@ public class IODataConnection implements DataConnection {
                 }
 
                 // write data
-                // if ascii, replace \n by \r\n
-                if (isAscii) {
-                    for (int i = 0; i < count; ++i) {
-                        byte b = buff[i];
-                        if(isWrite) {
-                            if (b == '\n' && lastByte != '\r') {
-                                bos.write('\r');
-                            }
-
-                            bos.write(b);
-                        } else {
-                            if(b == '\n') {
-                                // for reads, we should always get \r\n
-                                // so what we do here is to ignore \n bytes
-                                // and on \r dump the system local line ending
-                                // Some clients won't transform new lines into \r\n so we make sure we don't delete new lines
-								if (lastByte != '\r'){
-								    bos.write(EOL);
-                                }
-                            } else if(b == '\r') {
-                                bos.write(EOL);
-                            } else {
-                                // not a line ending, just output
-                                bos.write(b);
-                            }
-                        }
-                        // store this byte so that we can compare it for line endings
-                        lastByte = b;
-                    }
+                // if ascii, translate the line endings
+                if (translator != null) {
+                    translator.translate(buff, 0, count, bos);
                 } else {
                     bos.write(buff, 0, count);
                 }
 
                 transferredSize += count;
+                timer.transferred();
 
                 notifyObserver();
+
+                // wait until we are allowed to transfer more
+                try {
+                    rateLimiter.take(count);
+                } catch (InterruptedException ex) {
+                    break;
+                }
             }
         } catch(IOException e) {
             LOG.warn("Exception during data transfer, closing data connection socket", e);
@@ -302,8 +535,11 @@ public class IODataConnection implements DataConnection {
             factory.closeDataConnection();
             throw e;
         } finally {
-            if (bos != null) {
+            try {
                 bos.flush();
+            } finally {
+                bufferPool.release(buffer);
+                bufferPool.release(translateBuffer);
             }
         }
 
@@ -19,12 +19,15 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketAddress;
+import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
@@ -32,7 +35,7 @@ import javax.net.ssl.SSLSocketFactory;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionException;
-import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.DataTransferConfiguration;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ssl.ClientAuth;
 import org.apache.ftpserver.ssl.SslConfiguration;
@@ -58,6 +61,16 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     ServerSocket servSoc;
 
+    /**
+     * The data connection we are waiting for on a shared passive port
+     */
+    private PassiveDemultiplexer.PendingConnection pendingConnection;
+
+    /**
+     * The connect of the active data connection, started by PORT or EPRT
+     */
+    private ActiveConnect activeConnect;
+
     InetAddress address;
 
     int port = 0;
@@ -70,6 +83,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     private boolean isZip = false;
 
+    private int zipLevel;
+
     InetAddress serverControlAddress;
 
     FtpIoSession session;
@@ -82,6 +97,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 .isImplicitSsl()) {
             secure = true;
         }
+        setZipLevel(session.getDataTransferConfiguration()
+                .getCompressionLevel());
     }
 
     /**
@@ -119,6 +136,18 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             servSoc = null;
         }
 
+        // stop waiting on the shared passive port, if any
+        if (pendingConnection != null) {
+            pendingConnection.cancel();
+            pendingConnection = null;
+        }
+
+        // stop connecting in active mode, if still connecting
+        if (activeConnect != null) {
+            activeConnect.cancel();
+            activeConnect = null;
+        }
+
         // reset request time
         requestTime = 0L;
     }
@@ -137,6 +166,127 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         this.address = address.getAddress();
         port = address.getPort();
         requestTime = System.currentTimeMillis();
+
+        // connect while the client sends the transfer command, if this
+        // fails the connect is retried when opening the data connection
+        try {
+            startActiveConnect();
+        } catch (Exception ex) {
+            LOG.warn("Failed to start active data connection", ex);
+        }
+    }
+
+    /**
+     * Start connecting to the client without blocking
+     */
+    private void startActiveConnect() throws IOException {
+        SocketChannel channel = ActiveConnect.openChannel(session);
+        try {
+            activeConnect = ActiveConnect.start(serverContext
+                    .getDataConnectionEngine(), channel, new InetSocketAddress(
+                    address, port), session.getDataTransferConfiguration()
+                    .getActiveConnectTimeout());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the active data connection to be connected. The monitor is not
+     * held while waiting, so that the data connection can still be closed.
+     */
+    private void awaitActiveConnect() throws Exception {
+        ActiveConnect connect;
+        try {
+            synchronized (this) {
+                if (passive) {
+                    return;
+                }
+
+                // not started, or already used by a previous transfer
+                if (activeConnect == null) {
+                    startActiveConnect();
+                }
+                connect = activeConnect;
+            }
+
+            connect.await();
+        } catch (Exception ex) {
+            closeDataConnection();
+            LOG.warn("FtpDataConnection.getDataSocket()", ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Wait for the data connection on a shared passive port
+     * @return The address to connect to, null if every shared port already
+     *   has a pending PASV from the client address
+     */
+    private InetSocketAddress initSharedPassiveDataConnection()
+            throws DataConnectionException {
+        try {
+            DataTransferConfiguration dataCfg = session
+                    .getDataTransferConfiguration();
+
+            String passiveAddress = dataCfg.getPassiveAddress();
+
+            if (passiveAddress == null) {
+                address = serverControlAddress;
+            } else {
+                address = resolveAddress(dataCfg.getPassiveAddress());
+            }
+
+            InetAddress clientAddress = ((InetSocketAddress) session
+                    .getRemoteAddress()).getAddress();
+            PassiveDemultiplexer demultiplexer = serverContext
+                    .getPassiveDemultiplexer();
+            DataSocketOptions socketOptions = DataSocketOptions
+                    .create(session);
+            for (int i = 0; i < dataCfg.getSharedPassivePortCount()
+                    && pendingConnection == null; i++) {
+                pendingConnection = demultiplexer.expect(address, dataCfg
+                        .nextSharedPassivePort(), clientAddress, socketOptions);
+            }
+
+            if (pendingConnection == null) {
+                return null;
+            }
+            port = pendingConnection.getPort();
+            LOG.debug(
+                    "Waiting for passive data connection on shared address \"{}\" and port {}",
+                    address, port);
+
+            // set different state variables
+            passive = true;
+            requestTime = System.currentTimeMillis();
+
+            return new InetSocketAddress(address, port);
+        } catch (Exception ex) {
+            closeDataConnection();
+            throw new DataConnectionException(
+                    "Failed to initate passive data connection: "
+                            + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Accept the passive data connection, from the shared passive port if
+     * the passive ports are shared, and configure it
+     */
+    private Socket acceptDataSocket(final DataSocketOptions socketOptions)
+            throws IOException {
+        if (pendingConnection != null) {
+            // already configured by the acceptor of the shared port
+            PassiveDemultiplexer.PendingConnection pending = pendingConnection;
+            pendingConnection = null;
+            return pending.await(session.getListener()
+                    .getDataConnectionConfiguration().getIdleTime() * 1000L);
+        }
+        Socket socket = servSoc.accept();
+        socketOptions.configure(socket);
+        return socket;
     }
 
     private SslConfiguration getSslConfiguration() {
@@ -162,28 +312,42 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         // close old sockets if any
         closeDataConnection();
 
-        // get the passive port
-        int passivePort = session.getListener()
-                .getDataConnectionConfiguration().requestPassivePort();
-        if (passivePort == -1) {
-            servSoc = null;
-            throw new DataConnectionException(
-                    "Cannot find an available passive port.");
-        }
+        DataTransferConfiguration dataCfg = session
+                .getDataTransferConfiguration();
 
-        // open passive server socket and get parameters
-        try {
-            DataConnectionConfiguration dataCfg = session.getListener()
-                    .getDataConnectionConfiguration();
+        if (dataCfg.isSharedPassivePorts()) {
+            InetSocketAddress sharedAddress = initSharedPassiveDataConnection();
+            if (sharedAddress == null) {
+                // all configured ports are shared, so there is no port left
+                // to give the PASV a socket of its own
+                throw new DataConnectionException(
+                        "Every shared passive port already has a pending PASV from the client address.");
+            }
+            return sharedAddress;
+        }
 
-            String passiveAddress = dataCfg.getPassiveAddress();
+        String passiveAddress = dataCfg.getPassiveAddress();
+        if (passiveAddress == null) {
+            address = serverControlAddress;
+        } else {
+            address = resolveAddress(passiveAddress);
+        }
 
-            if (passiveAddress == null) {
-                address = serverControlAddress;
-            } else {
-                address = resolveAddress(dataCfg.getPassiveAddress());
+        // take an already bound server socket, or get the passive port
+        servSoc = takePooledServerSocket(dataCfg);
+        int passivePort;
+        if (servSoc != null) {
+            passivePort = servSoc.getLocalPort();
+        } else {
+            passivePort = dataCfg.requestPassivePort();
+            if (passivePort == -1) {
+                throw new DataConnectionException(
+                        "Cannot find an available passive port.");
             }
+        }
 
+        // open passive server socket and get parameters
+        try {
             if (secure) {
                 LOG
                         .debug(
@@ -199,7 +363,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 // (https://issues.apache.org/jira/browse/FTPSERVER-241).
                 // Instead, it creates a regular
                 // ServerSocket that will be wrapped as a SSL socket in createDataSocket()
-                servSoc = new ServerSocket(passivePort, 0, address);
+                if (servSoc == null) {
+                    servSoc = createServerSocket(passivePort, address);
+                }
                 LOG
                         .debug(
                                 "SSL Passive data connection created on address \"{}\" and port {}",
@@ -209,7 +375,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                         .debug(
                                 "Opening passive data connection on address \"{}\" and port {}",
                                 address, passivePort);
-                servSoc = new ServerSocket(passivePort, 0, address);
+                if (servSoc == null) {
+                    servSoc = createServerSocket(passivePort, address);
+                }
                 LOG
                         .debug(
                                 "Passive data connection created on address \"{}\" and port {}",
@@ -224,7 +392,12 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
             return new InetSocketAddress(address, port);
         } catch (Exception ex) {
-            servSoc = null;
+            if (servSoc == null) {
+                // the port is reserved, but no socket is bound to it
+                dataCfg.releasePassivePort(passivePort);
+            } else {
+                port = servSoc.getLocalPort();
+            }
             closeDataConnection();
             throw new DataConnectionException(
                     "Failed to initate passive data connection: "
@@ -232,6 +405,42 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         }
     }
 
+    /**
+     * Take a passive server socket from the pool, if the pool is enabled, not
+     * empty, and the pooled sockets have the receive buffer size this session
+     * would use
+     */
+    private ServerSocket takePooledServerSocket(
+            DataTransferConfiguration dataCfg) {
+        if (dataCfg.getPassiveSocketPoolSize() <= 0
+                || DataSocketOptions.create(session).getReceiveBufferSize() != dataCfg
+                        .getReceiveBufferSize()) {
+            return null;
+        }
+
+        ServerSocketChannel channel = serverContext.getPassiveSocketPool()
+                .take(dataCfg, address);
+        return channel == null ? null : channel.socket();
+    }
+
+    /**
+     * Create a passive server socket. The socket is backed by a
+     * {@link ServerSocketChannel} so that accepted data sockets have a channel
+     * available for zero-copy transfers.
+     */
+    private ServerSocket createServerSocket(int passivePort, InetAddress address)
+            throws IOException {
+        ServerSocket serverSocket = ServerSocketChannel.open().socket();
+        try {
+            DataSocketOptions.create(session).configure(serverSocket);
+            serverSocket.bind(new InetSocketAddress(address, passivePort), 0);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        return serverSocket;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -255,8 +464,12 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      *
      * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
      */
-    public DataConnection openConnection() throws Exception {
-        return new IODataConnection(createDataSocket(), session, this);
+    public AsyncDataConnection openConnection() throws Exception {
+        long start = System.nanoTime();
+        awaitActiveConnect();
+        Socket socket = createDataSocket();
+        return new IODataConnection(socket, session, this, serverContext,
+                System.nanoTime() - start);
     }
 
     /**
@@ -268,8 +481,19 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         dataSoc = null;
         DataConnectionConfiguration dataConfig = session.getListener()
                 .getDataConnectionConfiguration();
+        DataSocketOptions socketOptions = DataSocketOptions.create(session);
         try {
             if (!passive) {
+                // already connected by awaitActiveConnect(), unless closed
+                // meanwhile
+                if (activeConnect == null) {
+                    throw new SocketException("Data connection closed");
+                }
+
+                // channel backed, so that binary downloads can use zero-copy
+                dataSoc = activeConnect.await().socket();
+                activeConnect = null;
+
                 if (secure) {
                     LOG.debug("Opening secure active data connection");
                     SslConfiguration ssl = getSslConfiguration();
@@ -282,8 +506,10 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     SSLContext ctx = ssl.getSSLContext();
                     SSLSocketFactory socFactory = ctx.getSocketFactory();
 
-                    // create socket
-                    SSLSocket ssoc = (SSLSocket) socFactory.createSocket();
+                    // wrap the connected socket, as for passive data
+                    // connections
+                    SSLSocket ssoc = (SSLSocket) socFactory.createSocket(
+                            dataSoc, address.getHostAddress(), port, true);
                     ssoc.setUseClientMode(false);
 
                     // initialize socket
@@ -293,25 +519,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     dataSoc = ssoc;
                 } else {
                     LOG.debug("Opening active data connection");
-                    dataSoc = new Socket();
                 }
-
-                dataSoc.setReuseAddress(true);
-
-                InetAddress localAddr = resolveAddress(dataConfig
-                        .getActiveLocalAddress());
-
-                // if no local address has been configured, make sure we use the same as the client connects from
-                if(localAddr == null) {
-                    localAddr = ((InetSocketAddress)session.getLocalAddress()).getAddress();
-                }
-
-                SocketAddress localSocketAddress = new InetSocketAddress(localAddr, dataConfig.getActiveLocalPort());
-
-                LOG.debug("Binding active data connection to {}", localSocketAddress);
-                dataSoc.bind(localSocketAddress);
-
-                dataSoc.connect(new InetSocketAddress(address, port));
             } else {
 
                 if (secure) {
@@ -331,7 +539,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     SSLContext ctx = ssl.getSSLContext();
                     SSLSocketFactory ssocketFactory = ctx.getSocketFactory();
 
-                    Socket serverSocket = servSoc.accept();
+                    Socket serverSocket = acceptDataSocket(socketOptions);
 
                     SSLSocket sslSocket = (SSLSocket) ssocketFactory
                             .createSocket(serverSocket, serverSocket
@@ -355,7 +563,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 } else {
                     LOG.debug("Opening passive data connection");
 
-                    dataSoc = servSoc.accept();
+                    dataSoc = acceptDataSocket(socketOptions);
                 }
                 DataConnectionConfiguration dataCfg = session.getListener()
                     .getDataConnectionConfiguration();
@@ -429,6 +637,23 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         isZip = zip;
     }
 
+    /**
+     * Get the compression level used in zip mode.
+     */
+    public int getZipLevel() {
+        return zipLevel;
+    }
+
+    /**
+     * Set the compression level used in zip mode, limited to the maximum
+     * level of the data connection configuration.
+     */
+    public void setZipLevel(final int level) {
+        int maxLevel = session.getDataTransferConfiguration()
+                .getMaxCompressionLevel();
+        zipLevel = Math.max(0, Math.min(level, maxLevel));
+    }
+
     /**
      * Check the data connection idle status.
      */
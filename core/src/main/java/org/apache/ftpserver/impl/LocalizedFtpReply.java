@@ -97,17 +97,20 @@ public class LocalizedFtpReply extends DefaultFtpReply {
 
     public static final String STAT_START_TIME = "stat.start.time";
 
+    private final boolean constant;
+
     public static LocalizedFtpReply translate(FtpIoSession session, FtpRequest request,
             FtpServerContext context, int code, String subId, String basicMsg) {
-        String msg = translateMessage(session, request, context, code, subId,
-                basicMsg);
+        String template = getMessageTemplate(session, context, code, subId);
+        String msg = replaceVariables(session, request, context, code,
+                basicMsg, template);
 
-        return new LocalizedFtpReply(code, msg);
+        // without any variables, the message is the same every time
+        return new LocalizedFtpReply(code, msg, msg == template);
     }
 
-    private static String translateMessage(FtpIoSession session,
-            FtpRequest request, FtpServerContext context, int code,
-            String subId, String basicMsg) {
+    private static String getMessageTemplate(FtpIoSession session,
+            FtpServerContext context, int code, String subId) {
         MessageResource resource = context.getMessageResource();
         String lang = session.getLanguage();
 
@@ -118,7 +121,6 @@ public class LocalizedFtpReply extends DefaultFtpReply {
         if (msg == null) {
             msg = "";
         }
-        msg = replaceVariables(session, request, context, code, basicMsg, msg);
 
         return msg;
     }
@@ -497,8 +499,19 @@ public class LocalizedFtpReply extends DefaultFtpReply {
     /**
      * Private constructor, only allow creating through factory method
      */
-    private LocalizedFtpReply(int code, String message) {
+    private LocalizedFtpReply(int code, String message, boolean constant) {
         super(code, message);
+        this.constant = constant;
+    }
+
+    /**
+     * Is the message the same every time this reply is sent? True if the
+     * message text does not contain any variables.
+     * 
+     * @return true if the message is constant
+     */
+    public boolean isConstant() {
+        return constant;
     }
 
     
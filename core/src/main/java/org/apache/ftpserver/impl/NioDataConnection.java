@@ -0,0 +1,974 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Non-blocking data connection created by {@link NioDataConnectionFactory}.
+ * Transfers are driven by the readiness events of the
+ * {@link NioDataConnectionEngine}, data is only read or written when the
+ * channel is ready and rate limited transfers pause themselves instead of
+ * sleeping. The files are read and written on the I/O threads of the engine,
+ * never on the selector thread.
+ *
+ * The blocking methods from {@link org.apache.ftpserver.ftplet.DataConnection}
+ * are supported for Ftplets and custom commands, but will hold on to the
+ * calling thread until the transfer has finished.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnection implements AsyncDataConnection {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnection.class);
+
+    /**
+     * The maximum number of bytes handed to {@link FileChannel#transferTo} in
+     * a single call, so that session statistics and the rate limit are
+     * updated regularly during large downloads.
+     */
+    private static final long ZERO_COPY_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The maximum number of reads or writes for a single readiness event, so
+     * that a fast transfer does not hold on to an I/O thread while the other
+     * data connections wait for one.
+     */
+    private static final int MAX_CHUNKS_PER_EVENT = 16;
+
+    private final NioDataConnectionEngine engine;
+
+    private final FtpIoSession session;
+
+    private final NioDataConnectionFactory factory;
+
+    private final FtpServerContext serverContext;
+
+    private final BufferPool heapBuffers;
+
+    private final BufferPool directBuffers;
+
+    public NioDataConnection(final NioDataConnectionEngine engine,
+            final FtpIoSession session, final NioDataConnectionFactory factory,
+            final FtpServerContext serverContext) {
+        this.engine = engine;
+        this.session = session;
+        this.factory = factory;
+        this.serverContext = serverContext;
+
+        BufferPoolManager bufferPoolManager = serverContext
+                .getBufferPoolManager();
+        heapBuffers = bufferPoolManager.getBufferPool(session.getListener(),
+                false);
+        directBuffers = bufferPoolManager.getBufferPool(session
+                .getListener(), true);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.AsyncDataConnection#transferFromClient(org.apache.ftpserver.ftplet.FtpSession, java.io.OutputStream, org.apache.ftpserver.impl.DataTransferListener)
+     */
+    public void transferFromClient(final FtpSession session,
+            final OutputStream out, final DataTransferListener listener) {
+        TransferRateLimiter rateLimiter = serverContext.getBandwidthManager()
+                .createTransferRateLimiter(this.session, false);
+
+        start(new Upload(session, out, rateLimiter, listener));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.AsyncDataConnection#transferToClient(org.apache.ftpserver.ftplet.FtpSession, java.io.InputStream, org.apache.ftpserver.impl.DataTransferListener)
+     */
+    public void transferToClient(final FtpSession session,
+            final InputStream in, final DataTransferListener listener) {
+        TransferRateLimiter rateLimiter = serverContext.getBandwidthManager()
+                .createTransferRateLimiter(this.session, true);
+
+        start(new Download(session, in, true, rateLimiter, listener));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.ftplet.DataConnection#transferFromClient(org.apache.ftpserver.ftplet.FtpSession, java.io.OutputStream)
+     */
+    public long transferFromClient(final FtpSession session,
+            final OutputStream out) throws IOException {
+        BlockingListener listener = new BlockingListener();
+        transferFromClient(session, out, listener);
+        return listener.await();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.ftplet.DataConnection#transferToClient(org.apache.ftpserver.ftplet.FtpSession, java.io.InputStream)
+     */
+    public long transferToClient(final FtpSession session, final InputStream in)
+            throws IOException {
+        BlockingListener listener = new BlockingListener();
+        transferToClient(session, in, listener);
+        return listener.await();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.ftplet.DataConnection#transferToClient(org.apache.ftpserver.ftplet.FtpSession, java.lang.String)
+     */
+    public void transferToClient(final FtpSession session, final String str)
+            throws IOException {
+        // like the blocking data connection, strings are always sent as
+        // UTF-8 without line ending translation or rate limiting
+        InputStream in = new ByteArrayInputStream(str.getBytes("UTF-8"));
+
+        BlockingListener listener = new BlockingListener();
+        start(new Download(session, in, false, new TransferRateLimiter(),
+                listener));
+        listener.await();
+    }
+
+    private void start(final Transfer transfer) {
+        engine.execute(new Runnable() {
+            public void run() {
+                transfer.start();
+            }
+        });
+    }
+
+    /**
+     * Notify connection manager observer.
+     */
+    protected void notifyObserver() {
+        session.updateLastAccessTime();
+    }
+
+    /**
+     * Waits for a transfer to finish, for the blocking methods
+     */
+    private static class BlockingListener implements DataTransferListener {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private long transferredSize;
+
+        private IOException failure;
+
+        public void transferCompleted(final long transferredSize) {
+            this.transferredSize = transferredSize;
+            done.countDown();
+        }
+
+        public void transferFailed(final IOException e) {
+            this.failure = e;
+            done.countDown();
+        }
+
+        public long await() throws IOException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            return transferredSize;
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} which gives access to its content without
+     * copying it
+     */
+    private static class ChunkOutputStream extends ByteArrayOutputStream {
+        public ChunkOutputStream(final int size) {
+            super(size);
+        }
+
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * A single transfer. All methods are called on the selector thread,
+     * except for {@link #transfer()} and the methods it calls, which run on
+     * an I/O thread of the engine. While an I/O task runs, the channel is not
+     * selected, so only one thread at a time works on the transfer.
+     */
+    private abstract class Transfer implements NioDataConnectionEngine.Handler,
+            NioDataConnectionFactory.ChannelListener {
+
+        protected final FtpSession ftpSession;
+
+        protected final DefaultFtpSession defaultFtpSession;
+
+        protected final TransferRateLimiter rateLimiter;
+
+        protected final int readSize;
+
+        protected SocketChannel channel;
+
+        protected long transferredSize = 0L;
+
+        private final int interestOps;
+
+        private final DataTransferListener listener;
+
+        private final long maxIdleNanos;
+
+        /**
+         * Should the transfer be recorded in the transfer histograms?
+         */
+        private final boolean measured;
+
+        private long requestTime;
+
+        private TransferTimer timer;
+
+        private SelectionKey key;
+
+        private long lastActivity = System.nanoTime();
+
+        private boolean paused = false;
+
+        /**
+         * Is an I/O task running for this transfer?
+         */
+        private boolean busy = false;
+
+        /**
+         * Has {@link #transfer()} reached the end of the data?
+         */
+        private boolean done = false;
+
+        /**
+         * Set by {@link #transfer()} if the rate limit has been reached, the
+         * time in nanoseconds to pause the transfer for
+         */
+        private long pauseNanos = 0;
+
+        private boolean finished = false;
+
+        /**
+         * The failure of a transfer which failed while an I/O task was
+         * running, released once the task has returned
+         */
+        private IOException deferredFailure;
+
+        public Transfer(final FtpSession ftpSession,
+                final TransferRateLimiter rateLimiter, final int interestOps,
+                final DataTransferListener listener, final boolean measured) {
+            this.ftpSession = ftpSession;
+            this.rateLimiter = rateLimiter;
+            this.interestOps = interestOps;
+            this.listener = listener;
+            this.measured = measured;
+
+            if (ftpSession instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) ftpSession;
+            } else {
+                defaultFtpSession = null;
+            }
+
+            // never read more than the rate limiter allows us to send at once
+            readSize = (int) Math.min(heapBuffers.getBufferSize(), rateLimiter
+                    .getBurst());
+
+            maxIdleNanos = TimeUnit.SECONDS.toNanos(session.getListener()
+                    .getDataConnectionConfiguration().getIdleTime());
+        }
+
+        public void start() {
+            requestTime = System.nanoTime();
+            factory.requestDataChannel(this);
+            scheduleIdleCheck();
+        }
+
+        public void channelOpened(final SocketChannel channel) {
+            if (finished) {
+                return;
+            }
+
+            this.channel = channel;
+            lastActivity = System.nanoTime();
+            if (measured) {
+                timer = new TransferTimer(session,
+                        interestOps == SelectionKey.OP_WRITE, lastActivity
+                                - requestTime);
+            }
+            try {
+                // not selected until the first I/O task has finished
+                key = engine.register(channel, 0, this);
+                runTransfer();
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        public void channelFailed(final IOException e) {
+            failed(e);
+        }
+
+        public void ready(final SelectionKey key) throws IOException {
+            if (!finished && !paused && !busy) {
+                lastActivity = System.nanoTime();
+                key.interestOps(0);
+                runTransfer();
+            }
+        }
+
+        /**
+         * Hand the transfer over to an I/O thread, and continue on the
+         * selector thread once it is done
+         */
+        private void runTransfer() {
+            busy = true;
+            engine.io(new Runnable() {
+                public void run() {
+                    IOException failure = null;
+                    try {
+                        transfer();
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        failure = new IOException("Data connection failed: "
+                                + e.getMessage());
+                        failure.initCause(e);
+                    }
+
+                    final IOException result = failure;
+                    engine.execute(new Runnable() {
+                        public void run() {
+                            busy = false;
+                            transferDone(result);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Continue after an I/O task, on the selector thread
+         */
+        private void transferDone(final IOException failure) {
+            if (deferredFailure != null) {
+                IOException e = deferredFailure;
+                deferredFailure = null;
+                release(e);
+                return;
+            }
+            if (failure != null) {
+                failed(failure);
+                return;
+            }
+            if (finished) {
+                return;
+            }
+
+            lastActivity = System.nanoTime();
+            if (done) {
+                completed();
+            } else if (pauseNanos > 0) {
+                long waitNanos = pauseNanos;
+                pauseNanos = 0;
+                pause(waitNanos);
+            } else if (key.isValid()) {
+                key.interestOps(interestOps);
+            }
+        }
+
+        /**
+         * Transfer as much data as possible without blocking the channel.
+         * Called on an I/O thread, must call {@link #done()} at the end of the
+         * data.
+         */
+        protected abstract void transfer() throws IOException;
+
+        /**
+         * The end of the data has been reached by {@link #transfer()}
+         */
+        protected void done() {
+            done = true;
+        }
+
+        /**
+         * Called on an I/O thread when the transfer has failed, before the
+         * resources are released
+         */
+        protected void abort() {
+            // nothing to do by default
+        }
+
+        /**
+         * Release any resources held by the transfer
+         */
+        protected void cleanup() {
+            // nothing to release by default
+        }
+
+        /**
+         * Account for transferred data and pause the transfer if the rate
+         * limit has been reached.
+         * @return true if the transfer has been paused
+         */
+        protected boolean transferred(final long count) {
+            transferredSize += count;
+            if (timer != null && count > 0) {
+                timer.transferred();
+            }
+            notifyObserver();
+
+            long waitNanos = rateLimiter.reserve(count);
+            if (waitNanos <= 0) {
+                return false;
+            }
+
+            // paused once back on the selector thread
+            pauseNanos = waitNanos;
+            return true;
+        }
+
+        /**
+         * Wait until we are allowed to transfer more
+         */
+        private void pause(final long waitNanos) {
+            paused = true;
+            engine.schedule(waitNanos, new Runnable() {
+                public void run() {
+                    paused = false;
+                    lastActivity = System.nanoTime();
+                    if (!finished && key.isValid()) {
+                        key.interestOps(interestOps);
+                    }
+                }
+            });
+        }
+
+        private void scheduleIdleCheck() {
+            if (maxIdleNanos <= 0) {
+                return;
+            }
+
+            engine.schedule(maxIdleNanos, new Runnable() {
+                public void run() {
+                    if (finished) {
+                        return;
+                    }
+
+                    // a running I/O task is busy with the transfer
+                    if (!paused && !busy
+                            && System.nanoTime() - lastActivity >= maxIdleNanos) {
+                        failed(new SocketTimeoutException(
+                                "Data connection idle timeout"));
+                    } else {
+                        scheduleIdleCheck();
+                    }
+                }
+            });
+        }
+
+        private void completed() {
+            finished = true;
+            if (key != null && key.isValid()) {
+                key.interestOps(0);
+            }
+            cleanup();
+
+            final long size = transferredSize;
+            if (timer != null) {
+                timer.completed(serverContext, size);
+            }
+            engine.complete(new Runnable() {
+                public void run() {
+                    listener.transferCompleted(size);
+                }
+            });
+        }
+
+        public void failed(final IOException e) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+
+            // the running I/O task still uses the buffers and the
+            // (de)compressor, they are released when it returns
+            if (busy) {
+                deferredFailure = e;
+                return;
+            }
+            release(e);
+        }
+
+        /**
+         * Abort a failed transfer and release its resources, on an I/O thread
+         * as aborting might write to the file
+         */
+        private void release(final IOException e) {
+            engine.io(new Runnable() {
+                public void run() {
+                    abort();
+                    cleanup();
+                    engine.complete(new Runnable() {
+                        public void run() {
+                            listener.transferFailed(e);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Transfer to the client
+     */
+    private class Download extends Transfer {
+
+        private final InputStream in;
+
+        /**
+         * Pooled buffer for the data read from the stream, not used for
+         * zero-copy transfers
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * Collects the translated or compressed data, null if the data is
+         * sent as read
+         */
+        private final ChunkOutputStream chunk;
+
+        private final OutputStream sink;
+
+        /**
+         * Pooled deflater for MODE Z, null if the data is not compressed
+         */
+        private Deflater deflater;
+
+        private final AsciiTranslator translator;
+
+        private final FileChannel fileChannel;
+
+        /**
+         * The number of bytes left to send with zero-copy, limited by any RANG
+         * byte range
+         */
+        private long remaining;
+
+        private ByteBuffer pending;
+
+        private int pendingCount;
+
+        private boolean eof = false;
+
+        public Download(final FtpSession ftpSession, final InputStream in,
+                final boolean translate, final TransferRateLimiter rateLimiter,
+                final DataTransferListener listener) {
+            // only file transfers are measured, not directory listings
+            super(ftpSession, rateLimiter, SelectionKey.OP_WRITE, listener,
+                    translate);
+            this.in = in;
+
+            boolean isAscii = ftpSession.getDataType() == DataType.ASCII;
+            if (translate && isAscii) {
+                translator = new AsciiTranslator(true, IODataConnection.EOL);
+            } else {
+                translator = null;
+            }
+
+            if (translator != null || factory.isZipMode()) {
+                chunk = new ChunkOutputStream(readSize * 2);
+            } else {
+                chunk = null;
+            }
+
+            if (factory.isZipMode()) {
+                deflater = serverContext.getCompressionPool().acquireDeflater(
+                        factory.getZipLevel());
+                sink = new DeflaterOutputStream(chunk, deflater, session
+                        .getDataTransferConfiguration()
+                        .getCompressionBufferSize());
+            } else {
+                sink = chunk;
+            }
+
+            // binary downloads of plain files are sent using zero-copy
+            FileInputStream fileIn = RangeInputStream.getFileInputStream(in);
+            if (translate && !isAscii && !factory.isZipMode()
+                    && fileIn != null) {
+                fileChannel = fileIn.getChannel();
+                remaining = RangeInputStream.getRemaining(in);
+            } else {
+                fileChannel = null;
+                buffer = heapBuffers.acquire();
+            }
+        }
+
+        @Override
+        protected void transfer() throws IOException {
+            if (fileChannel != null) {
+                transferZeroCopy();
+                return;
+            }
+
+            for (int i = 0; i < MAX_CHUNKS_PER_EVENT; i++) {
+                if (pending == null || !pending.hasRemaining()) {
+                    if (pendingCount > 0) {
+                        int count = pendingCount;
+                        pendingCount = 0;
+                        if (transferred(count)) {
+                            return;
+                        }
+                    }
+
+                    if (eof) {
+                        done();
+                        return;
+                    }
+
+                    fill();
+                }
+
+                channel.write(pending);
+                if (pending.hasRemaining()) {
+                    // wait until the client has read some data
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Read the next chunk of data and prepare it for sending
+         */
+        private void fill() throws IOException {
+            byte[] buff = buffer.array();
+            int count = in.read(buff, 0, readSize);
+
+            if (chunk == null) {
+                // send the data as read
+                if (count == -1) {
+                    eof = true;
+                    count = 0;
+                } else {
+                    // update MINA session
+                    if (defaultFtpSession != null) {
+                        defaultFtpSession.increaseWrittenDataBytes(count);
+                    }
+                    pendingCount = count;
+                }
+
+                buffer.clear();
+                buffer.limit(count);
+                pending = buffer;
+                return;
+            }
+
+            chunk.reset();
+            if (count == -1) {
+                if (sink != chunk) {
+                    ((DeflaterOutputStream) sink).finish();
+                }
+                eof = true;
+            } else {
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseWrittenDataBytes(count);
+                }
+
+                // if ascii, translate the line endings
+                if (translator != null) {
+                    translator.translate(buff, 0, count, sink);
+                } else {
+                    sink.write(buff, 0, count);
+                }
+                pendingCount = count;
+            }
+
+            pending = chunk.toByteBuffer();
+        }
+
+        @Override
+        protected void cleanup() {
+            heapBuffers.release(buffer);
+            buffer = null;
+            serverContext.getCompressionPool().releaseDeflater(deflater);
+            deflater = null;
+        }
+
+        private void transferZeroCopy() throws IOException {
+            long chunkSize = ZERO_COPY_CHUNK_SIZE;
+            if (rateLimiter.isLimited()) {
+                chunkSize = Math.min(chunkSize, rateLimiter.getBurst());
+            }
+
+            for (int i = 0; i < MAX_CHUNKS_PER_EVENT; i++) {
+                if (remaining <= 0) {
+                    done();
+                    return;
+                }
+
+                long position = fileChannel.position();
+                long count = fileChannel.transferTo(position, Math.min(
+                        chunkSize, remaining), channel);
+
+                if (count <= 0) {
+                    if (position >= fileChannel.size()) {
+                        done();
+                    }
+                    // otherwise wait until the client has read some data
+                    return;
+                }
+
+                // keep the stream position consistent with what we have sent
+                fileChannel.position(position + count);
+                remaining -= count;
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseWrittenDataBytes((int) count);
+                }
+
+                if (transferred(count)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transfer from the client
+     */
+    private class Upload extends Transfer {
+
+        private final OutputStream out;
+
+        private final AsciiTranslator translator;
+
+        private Inflater inflater;
+
+        /**
+         * The channel of the uploaded file, used to write binary uploads
+         * directly from a direct buffer. Null if the data must be written
+         * to the stream.
+         */
+        private final FileChannel fileChannel;
+
+        private final BufferPool bufferPool;
+
+        private ByteBuffer buffer;
+
+        private ByteBuffer outBuffer;
+
+        private ByteBuffer inflateBuffer;
+
+        private byte[] inflated;
+
+        public Upload(final FtpSession ftpSession, final OutputStream out,
+                final TransferRateLimiter rateLimiter,
+                final DataTransferListener listener) {
+            super(ftpSession, rateLimiter, SelectionKey.OP_READ, listener,
+                    true);
+
+            if (ftpSession.getDataType() == DataType.ASCII) {
+                translator = new AsciiTranslator(false, IODataConnection.EOL);
+            } else {
+                translator = null;
+            }
+
+            if (factory.isZipMode()) {
+                inflater = serverContext.getCompressionPool().acquireInflater();
+                inflateBuffer = heapBuffers.acquire();
+                inflated = inflateBuffer.array();
+            } else {
+                inflater = null;
+            }
+
+            if (translator == null && inflater == null
+                    && out instanceof FileOutputStream) {
+                // binary uploads go straight from the socket to the file
+                fileChannel = ((FileOutputStream) out).getChannel();
+                bufferPool = directBuffers;
+                this.out = out;
+            } else {
+                fileChannel = null;
+                bufferPool = heapBuffers;
+                if (translator != null || inflater != null) {
+                    // translation and inflation produce small writes
+                    outBuffer = heapBuffers.acquire();
+                    this.out = new ByteBufferOutputStream(out, outBuffer);
+                } else {
+                    this.out = out;
+                }
+            }
+
+            buffer = bufferPool.acquire();
+        }
+
+        @Override
+        protected void transfer() throws IOException {
+            for (int i = 0; i < MAX_CHUNKS_PER_EVENT; i++) {
+                buffer.clear();
+                buffer.limit(readSize);
+                int count = channel.read(buffer);
+
+                if (count == -1) {
+                    // a truncated compressed upload must not be stored as
+                    // a complete file
+                    if (inflater != null && !inflater.finished()) {
+                        throw new EOFException(
+                                "Unexpected end of ZLIB input stream");
+                    }
+                    out.flush();
+                    done();
+                    return;
+                } else if (count == 0) {
+                    // wait for more data from the client
+                    return;
+                }
+
+                if (fileChannel != null) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        fileChannel.write(buffer);
+                    }
+                } else if (inflater != null) {
+                    count = inflate(buffer.array(), count);
+                } else {
+                    write(buffer.array(), 0, count);
+                }
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseReadDataBytes(count);
+                }
+
+                if (transferred(count)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Inflate and write compressed data
+         * @return The number of inflated bytes
+         */
+        private int inflate(final byte[] data, final int count)
+                throws IOException {
+            int total = 0;
+
+            inflater.setInput(data, 0, count);
+            try {
+                while (!inflater.finished()) {
+                    int inflatedCount = inflater.inflate(inflated);
+                    if (inflatedCount == 0) {
+                        if (inflater.needsDictionary()) {
+                            throw new IOException(
+                                    "Compressed data requires a dictionary");
+                        }
+                        break;
+                    }
+                    write(inflated, 0, inflatedCount);
+                    total += inflatedCount;
+                }
+            } catch (DataFormatException e) {
+                IOException ioe = new IOException("Invalid compressed data: "
+                        + e.getMessage());
+                ioe.initCause(e);
+                throw ioe;
+            }
+
+            return total;
+        }
+
+        private void write(final byte[] data, final int offset,
+                final int count) throws IOException {
+            // if ascii, translate the line endings
+            if (translator != null) {
+                translator.translate(data, offset, count, out);
+            } else {
+                out.write(data, offset, count);
+            }
+        }
+
+        @Override
+        protected void cleanup() {
+            serverContext.getCompressionPool().releaseInflater(inflater);
+            inflater = null;
+
+            bufferPool.release(buffer);
+            heapBuffers.release(outBuffer);
+            heapBuffers.release(inflateBuffer);
+            buffer = null;
+            outBuffer = null;
+            inflateBuffer = null;
+            inflated = null;
+        }
+
+        @Override
+        protected void abort() {
+            try {
+                out.flush();
+            } catch (IOException ex) {
+                // ignore, we are already failing
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Drives all non-blocking data connections of a server from a single selector
+ * thread. Accepting, connecting and transferring data only happens once the
+ * channel is ready, so waiting for slow clients does not tie up any threads.
+ *
+ * All registrations and interest changes are made on the selector thread,
+ * other threads must hand them over using {@link #execute(Runnable)}. Reading
+ * and writing files must be handed over to the bounded pool of I/O threads
+ * using {@link #io(Runnable)}, so that a slow disk does not hold up the other
+ * data connections. Work which might block for a long time, like notifying
+ * the command about a finished transfer, must be handed over to
+ * {@link #complete(Runnable)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnectionEngine {
+
+    /**
+     * Receives the readiness events for a registered channel
+     */
+    public interface Handler {
+
+        /**
+         * The channel is ready for at least one of the operations in the
+         * interest set of the key.
+         * @param key The selection key for the channel
+         * @throws IOException If handling the event failed, will be passed on
+         *   to {@link #failed(IOException)}
+         */
+        void ready(SelectionKey key) throws IOException;
+
+        /**
+         * Handling an event failed.
+         * @param e The cause of the failure
+         */
+        void failed(IOException e);
+    }
+
+    /**
+     * A task to be run on the selector thread at a later time
+     */
+    private static class Timer implements Comparable<Timer> {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private final long deadline;
+
+        private final long sequence = SEQUENCE.incrementAndGet();
+
+        private final Runnable task;
+
+        public Timer(final long deadline, final Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public int compareTo(final Timer o) {
+            long diff = deadline - o.deadline;
+            if (diff == 0) {
+                diff = sequence - o.sequence;
+            }
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * The default number of threads reading and writing files
+     */
+    public static final int DEFAULT_IO_THREADS = Math.max(4, Runtime
+            .getRuntime().availableProcessors() * 2);
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnectionEngine.class);
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    // only accessed from the selector thread
+    private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+
+    private final Selector selector;
+
+    private final Thread selectorThread;
+
+    private final ExecutorService ioExecutor;
+
+    private final ExecutorService completionExecutor;
+
+    private volatile boolean running = true;
+
+    /**
+     * Create an engine with the default number of I/O threads and start the
+     * selector thread
+     * @throws IOException If the selector could not be opened
+     */
+    public NioDataConnectionEngine() throws IOException {
+        this(DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Create an engine and start the selector thread
+     * @param ioThreads The number of threads reading and writing files
+     * @throws IOException If the selector could not be opened
+     */
+    public NioDataConnectionEngine(final int ioThreads) throws IOException {
+        if (ioThreads <= 0) {
+            throw new IllegalArgumentException(
+                    "The number of I/O threads must be positive");
+        }
+
+        selector = Selector.open();
+
+        final AtomicInteger ioThreadCount = new AtomicInteger();
+        ioExecutor = Executors.newFixedThreadPool(ioThreads,
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, "FtpServer-data-io-"
+                                + ioThreadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        final AtomicInteger completionThreads = new AtomicInteger();
+        completionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "FtpServer-data-completion-"
+                        + completionThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        selectorThread = new Thread(new Runnable() {
+            public void run() {
+                select();
+            }
+        }, "FtpServer-data-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Run a task on the selector thread. Tasks are run in the order they are
+     * added.
+     * @param task The task
+     */
+    public void execute(final Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != selectorThread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Run a task on the selector thread after a delay. Must only be called
+     * from the selector thread.
+     * @param delayNanos The delay in nanoseconds
+     * @param task The task
+     */
+    public void schedule(final long delayNanos, final Runnable task) {
+        timers.add(new Timer(System.nanoTime() + delayNanos, task));
+    }
+
+    /**
+     * Run a task reading or writing files, outside of the selector thread.
+     * At most the configured number of I/O tasks run at the same time, any
+     * others wait for a free I/O thread.
+     * @param task The task
+     */
+    public void io(final Runnable task) {
+        ioExecutor.execute(task);
+    }
+
+    /**
+     * Run a task which might block, outside of the selector thread.
+     * @param task The task
+     */
+    public void complete(final Runnable task) {
+        completionExecutor.execute(task);
+    }
+
+    /**
+     * Register a channel with the selector. Must only be called from the
+     * selector thread.
+     * @param channel The channel, must be in non-blocking mode
+     * @param ops The initial interest set
+     * @param handler The handler for events on the channel
+     * @return The selection key for the channel
+     * @throws ClosedChannelException If the channel has been closed
+     */
+    public SelectionKey register(final SelectableChannel channel,
+            final int ops, final Handler handler) throws ClosedChannelException {
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Is the current thread the selector thread?
+     * @return true if called from the selector thread
+     */
+    public boolean isSelectorThread() {
+        return Thread.currentThread() == selectorThread;
+    }
+
+    /**
+     * Stop the engine. Registered channels are not closed, this is up to the
+     * owners of the channels.
+     */
+    public void dispose() {
+        running = false;
+        selector.wakeup();
+
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            // ignore, we are shutting down anyways
+        }
+
+        ioExecutor.shutdown();
+        completionExecutor.shutdown();
+    }
+
+    private void select() {
+        LOG.debug("Data connection selector started");
+
+        while (running) {
+            try {
+                long timeout = 0;
+                Timer next = timers.peek();
+                if (next != null) {
+                    // round up so that we don't wake up too early and spin
+                    timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadline
+                            - System.nanoTime() + 999999));
+                }
+
+                if (tasks.isEmpty()) {
+                    selector.select(timeout);
+                } else {
+                    selector.selectNow();
+                }
+
+                runTasks();
+                handleSelectedKeys();
+                runTimers();
+            } catch (Throwable e) {
+                LOG.error("Unexpected exception in data connection selector", e);
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close data connection selector", e);
+        }
+
+        LOG.debug("Data connection selector stopped");
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Data connection task failed", e);
+            }
+        }
+    }
+
+    private void handleSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            Handler handler = (Handler) key.attachment();
+            if (!key.isValid()) {
+                continue;
+            }
+
+            try {
+                handler.ready(key);
+            } catch (IOException e) {
+                handler.failed(e);
+            } catch (RuntimeException e) {
+                IOException ioe = new IOException("Data connection failed: "
+                        + e.getMessage());
+                ioe.initCause(e);
+                handler.failed(ioe);
+            }
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+
+        Timer next;
+        while ((next = timers.peek()) != null && next.deadline - now <= 0) {
+            timers.poll();
+            try {
+                next.task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Data connection timer failed", e);
+            }
+        }
+    }
+}
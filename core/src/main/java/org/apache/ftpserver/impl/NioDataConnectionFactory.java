@@ -0,0 +1,695 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.DataTransferConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Non-blocking alternative to {@link IODataConnectionFactory}. Data
+ * connections are accepted, connected and transferred by the
+ * {@link NioDataConnectionEngine} of the server, so no thread is needed while
+ * waiting for the client.
+ *
+ * SSL secured data connections are handed over to an
+ * {@link IODataConnectionFactory} and are always blocking.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnectionFactory implements ServerDataConnectionFactory {
+
+    /**
+     * Notified on the selector thread when the data channel has been
+     * accepted or connected, or when setting up or using the data channel
+     * failed.
+     */
+    interface ChannelListener {
+
+        /**
+         * The data channel is connected to the client.
+         * @param channel The data channel, in non-blocking mode
+         */
+        void channelOpened(SocketChannel channel);
+
+        /**
+         * The data channel could not be opened, or has been closed.
+         * @param e The cause of the failure
+         */
+        void channelFailed(IOException e);
+    }
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnectionFactory.class);
+
+    private final FtpServerContext serverContext;
+
+    private final FtpIoSession session;
+
+    private final NioDataConnectionEngine engine;
+
+    /**
+     * Used for SSL secured data connections and shared passive ports, which
+     * are always blocking
+     */
+    private final IODataConnectionFactory blockingFactory;
+
+    /**
+     * Is the current data connection handled by the blocking factory?
+     */
+    private boolean blocking = false;
+
+    /**
+     * The channel we are accepting the data connection on in passive mode, or
+     * connecting with in active mode
+     */
+    private SelectableChannel pendingChannel;
+
+    private SocketChannel dataChannel;
+
+    private DataSocketOptions socketOptions;
+
+    private IOException dataChannelFailure;
+
+    private ChannelListener channelListener;
+
+    private InetAddress address;
+
+    private int port = 0;
+
+    private long requestTime = 0L;
+
+    private boolean passive = false;
+
+    private boolean secure = false;
+
+    private boolean isZip = false;
+
+    private InetAddress serverControlAddress;
+
+    public NioDataConnectionFactory(final FtpServerContext serverContext,
+            final FtpIoSession session) {
+        this.session = session;
+        this.serverContext = serverContext;
+        this.engine = serverContext.getDataConnectionEngine();
+        this.blockingFactory = new IODataConnectionFactory(serverContext,
+                session);
+        if (session.getListener().getDataConnectionConfiguration()
+                .isImplicitSsl()) {
+            secure = true;
+        }
+    }
+
+    /**
+     * Close data channel.
+     * This method must be idempotent as we might call it multiple times during disconnect.
+     */
+    public void closeDataConnection() {
+        ChannelListener listener;
+        synchronized (this) {
+            blockingFactory.closeDataConnection();
+
+            // close client channel if any
+            if (dataChannel != null) {
+                close(dataChannel);
+                dataChannel = null;
+            }
+
+            // close server channel or the channel we are connecting with, if any
+            if (pendingChannel != null) {
+                close(pendingChannel);
+
+                if (passive && session != null) {
+                    DataConnectionConfiguration dcc = session.getListener()
+                            .getDataConnectionConfiguration();
+                    if (dcc != null) {
+                        dcc.releasePassivePort(port);
+                    }
+                }
+
+                pendingChannel = null;
+            }
+
+            dataChannelFailure = null;
+            listener = channelListener;
+            channelListener = null;
+
+            // reset request time
+            requestTime = 0L;
+        }
+
+        // fail any ongoing transfer
+        if (listener != null) {
+            notifyFailed(listener, new SocketException(
+                    "Data connection closed"));
+        }
+    }
+
+    private void close(final SelectableChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOG.warn("NioDataConnectionFactory.closeDataConnection()", ex);
+        }
+    }
+
+    /**
+     * Port command.
+     */
+    public void initActiveDataConnection(final InetSocketAddress address) {
+
+        // close old sockets if any
+        closeDataConnection();
+
+        synchronized (this) {
+            if (secure) {
+                blocking = true;
+                blockingFactory.initActiveDataConnection(address);
+                return;
+            }
+
+            // set variables
+            blocking = false;
+            passive = false;
+            this.address = address.getAddress();
+            port = address.getPort();
+            requestTime = System.currentTimeMillis();
+
+            // connect while the client sends the transfer command, if this
+            // fails the connect is retried when opening the data connection
+            try {
+                connect();
+            } catch (IOException ex) {
+                LOG.warn("Failed to start active data connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Initiate a data connection in passive mode (server listening).
+     */
+    public InetSocketAddress initPassiveDataConnection()
+            throws DataConnectionException {
+        // close old sockets if any
+        closeDataConnection();
+
+        synchronized (this) {
+            // shared passive ports are accepted by blocking acceptors
+            if (secure
+                    || session.getDataTransferConfiguration()
+                            .isSharedPassivePorts()) {
+                blocking = true;
+                return blockingFactory.initPassiveDataConnection();
+            }
+            blocking = false;
+
+            LOG.debug("Initiating non-blocking passive data connection");
+
+            DataTransferConfiguration dataCfg = session
+                    .getDataTransferConfiguration();
+
+            String passiveAddress = dataCfg.getPassiveAddress();
+            if (passiveAddress == null) {
+                address = serverControlAddress;
+            } else {
+                address = resolveAddress(passiveAddress);
+            }
+            socketOptions = DataSocketOptions.create(session);
+
+            // take an already bound server channel, if the pooled channels
+            // have the receive buffer size this session would use
+            ServerSocketChannel serverChannel = null;
+            if (dataCfg.getPassiveSocketPoolSize() > 0
+                    && socketOptions.getReceiveBufferSize() == dataCfg
+                            .getReceiveBufferSize()) {
+                serverChannel = serverContext.getPassiveSocketPool().take(
+                        dataCfg, address);
+            }
+
+            // get the passive port
+            int passivePort;
+            if (serverChannel != null) {
+                passivePort = serverChannel.socket().getLocalPort();
+            } else {
+                passivePort = dataCfg.requestPassivePort();
+                if (passivePort == -1) {
+                    throw new DataConnectionException(
+                            "Cannot find an available passive port.");
+                }
+            }
+
+            // open passive server channel and get parameters
+            try {
+                LOG.debug(
+                        "Opening passive data connection on address \"{}\" and port {}",
+                        address, passivePort);
+
+                if (serverChannel == null) {
+                    serverChannel = ServerSocketChannel.open();
+                    socketOptions.configure(serverChannel.socket());
+                    serverChannel.socket().bind(
+                            new InetSocketAddress(address, passivePort), 0);
+                }
+                serverChannel.configureBlocking(false);
+
+                port = serverChannel.socket().getLocalPort();
+                LOG.debug(
+                        "Passive data connection created on address \"{}\" and port {}",
+                        address, port);
+            } catch (Exception ex) {
+                if (serverChannel != null) {
+                    close(serverChannel);
+                }
+                dataCfg.releasePassivePort(passivePort);
+                throw new DataConnectionException(
+                        "Failed to initate passive data connection: "
+                                + ex.getMessage(), ex);
+            }
+
+            // set different state variables
+            pendingChannel = serverChannel;
+            passive = true;
+            requestTime = System.currentTimeMillis();
+
+            // accept the connection as soon as the client connects
+            final ServerSocketChannel channel = serverChannel;
+            final DataSocketOptions options = socketOptions;
+            engine.execute(new Runnable() {
+                public void run() {
+                    try {
+                        engine.register(channel, SelectionKey.OP_ACCEPT,
+                                new AcceptHandler(channel, options));
+                    } catch (IOException e) {
+                        channelFailed(channel, e);
+                    }
+                }
+            });
+
+            return new InetSocketAddress(address, port);
+        }
+    }
+
+    /**
+     * Accepts the data connection in passive mode
+     */
+    private class AcceptHandler implements NioDataConnectionEngine.Handler {
+        private final ServerSocketChannel serverChannel;
+
+        private final DataSocketOptions socketOptions;
+
+        public AcceptHandler(final ServerSocketChannel serverChannel,
+                final DataSocketOptions socketOptions) {
+            this.serverChannel = serverChannel;
+            this.socketOptions = socketOptions;
+        }
+
+        public void ready(final SelectionKey key) throws IOException {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+
+            // only a single data connection is accepted
+            key.cancel();
+
+            try {
+                channel.configureBlocking(false);
+                socketOptions.configure(channel.socket());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            LOG.debug("Passive data connection opened");
+            channelOpened(serverChannel, channel);
+        }
+
+        public void failed(final IOException e) {
+            channelFailed(serverChannel, e);
+        }
+    }
+
+    /**
+     * Connects the data connection in active mode
+     */
+    private class ConnectHandler implements NioDataConnectionEngine.Handler {
+        private final SocketChannel channel;
+
+        public ConnectHandler(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public void ready(final SelectionKey key) throws IOException {
+            if (channel.finishConnect()) {
+                key.interestOps(0);
+
+                LOG.debug("Active data connection opened");
+                channelOpened(channel, channel);
+            }
+        }
+
+        public void failed(final IOException e) {
+            channelFailed(channel, e);
+        }
+    }
+
+    /**
+     * Start connecting to the client in active mode.
+     */
+    private synchronized void connect() throws IOException {
+        final int timeout = session.getDataTransferConfiguration()
+                .getActiveConnectTimeout();
+
+        LOG.debug("Opening non-blocking active data connection");
+        final SocketChannel channel = ActiveConnect.openChannel(session);
+        try {
+            pendingChannel = channel;
+            final boolean connected = channel.connect(new InetSocketAddress(
+                    address, port));
+
+            engine.execute(new Runnable() {
+                public void run() {
+                    if (connected) {
+                        channelOpened(channel, channel);
+                        return;
+                    }
+
+                    try {
+                        engine.register(channel, SelectionKey.OP_CONNECT,
+                                new ConnectHandler(channel));
+                    } catch (IOException e) {
+                        channelFailed(channel, e);
+                        return;
+                    }
+
+                    if (timeout > 0) {
+                        engine.schedule(TimeUnit.SECONDS.toNanos(timeout),
+                                new Runnable() {
+                                    public void run() {
+                                        connectTimedOut(channel);
+                                    }
+                                });
+                    }
+                }
+            });
+        } catch (IOException e) {
+            close(channel);
+            pendingChannel = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Fail the active data connection if still connecting
+     */
+    private void connectTimedOut(final SocketChannel channel) {
+        if (channel.isOpen() && !channel.isConnected()) {
+            close(channel);
+            channelFailed(channel, new SocketTimeoutException(
+                    "Active data connection not opened in time"));
+        }
+    }
+
+    /**
+     * The data channel has been accepted or connected.
+     */
+    private void channelOpened(final SelectableChannel source,
+            final SocketChannel channel) {
+        ChannelListener listener;
+        synchronized (this) {
+            if (source != pendingChannel) {
+                // the data connection has been closed or replaced meanwhile
+                close(channel);
+                return;
+            }
+
+            dataChannel = channel;
+            listener = channelListener;
+        }
+
+        if (listener != null) {
+            listener.channelOpened(channel);
+        }
+    }
+
+    /**
+     * Accepting or connecting the data channel failed.
+     */
+    private void channelFailed(final SelectableChannel source,
+            final IOException e) {
+        ChannelListener listener;
+        synchronized (this) {
+            if (source != pendingChannel) {
+                return;
+            }
+
+            LOG.warn("Failed to open data connection", e);
+            dataChannelFailure = e;
+            listener = channelListener;
+        }
+
+        if (listener != null) {
+            listener.channelFailed(e);
+        }
+    }
+
+    /**
+     * Request the data channel. The listener will be notified on the selector
+     * thread as soon as the channel is available, and if the data connection
+     * is closed.
+     */
+    void requestDataChannel(final ChannelListener listener) {
+        SocketChannel channel;
+        IOException failure;
+        synchronized (this) {
+            channel = dataChannel;
+            failure = dataChannelFailure;
+            if (pendingChannel == null && failure == null) {
+                failure = new SocketException("Data connection closed");
+            }
+
+            channelListener = listener;
+        }
+
+        if (channel != null) {
+            notifyOpened(listener, channel);
+        } else if (failure != null) {
+            notifyFailed(listener, failure);
+        }
+    }
+
+    private void notifyOpened(final ChannelListener listener,
+            final SocketChannel channel) {
+        engine.execute(new Runnable() {
+            public void run() {
+                listener.channelOpened(channel);
+            }
+        });
+    }
+
+    private void notifyFailed(final ChannelListener listener,
+            final IOException e) {
+        engine.execute(new Runnable() {
+            public void run() {
+                listener.channelFailed(e);
+            }
+        });
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
+     */
+    public AsyncDataConnection openConnection() throws Exception {
+        synchronized (this) {
+            if (blocking) {
+                return blockingFactory.openConnection();
+            }
+
+            // not started, or already used by a previous transfer
+            if (!passive && pendingChannel == null) {
+                try {
+                    connect();
+                } catch (Exception ex) {
+                    closeDataConnection();
+                    LOG.warn("NioDataConnectionFactory.openConnection()", ex);
+                    throw ex;
+                }
+            }
+        }
+
+        return new NioDataConnection(engine, session, this, serverContext);
+    }
+
+    /*
+     *  (non-Javadoc)
+     *   Returns an InetAddress object from a hostname or IP address.
+     */
+    private InetAddress resolveAddress(String host)
+            throws DataConnectionException {
+        if (host == null) {
+            return null;
+        } else {
+            try {
+                return InetAddress.getByName(host);
+            } catch (UnknownHostException ex) {
+                throw new DataConnectionException("Failed to resolve address", ex);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.FtpDataConnectionFactory2#getInetAddress()
+     */
+    public synchronized InetAddress getInetAddress() {
+        if (blocking) {
+            return blockingFactory.getInetAddress();
+        }
+        return address;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.FtpDataConnectionFactory2#getPort()
+     */
+    public synchronized int getPort() {
+        if (blocking) {
+            return blockingFactory.getPort();
+        }
+        return port;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.DataConnectionFactory#isSecure()
+     */
+    public boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Set the security protocol.
+     */
+    public void setSecure(final boolean secure) {
+        this.secure = secure;
+        blockingFactory.setSecure(secure);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.DataConnectionFactory#isZipMode()
+     */
+    public boolean isZipMode() {
+        return isZip;
+    }
+
+    /**
+     * Set zip mode.
+     */
+    public void setZipMode(final boolean zip) {
+        isZip = zip;
+        blockingFactory.setZipMode(zip);
+    }
+
+    /**
+     * Get the compression level used in zip mode.
+     */
+    public int getZipLevel() {
+        return blockingFactory.getZipLevel();
+    }
+
+    /**
+     * Set the compression level used in zip mode, limited to the maximum
+     * level of the data connection configuration.
+     */
+    public void setZipLevel(final int level) {
+        blockingFactory.setZipLevel(level);
+    }
+
+    /**
+     * Check the data connection idle status.
+     */
+    public synchronized boolean isTimeout(final long currTime) {
+        if (blocking) {
+            return blockingFactory.isTimeout(currTime);
+        }
+
+        // data connection not requested - not a timeout
+        if (requestTime == 0L) {
+            return false;
+        }
+
+        // data connection active - not a timeout
+        if (dataChannel != null) {
+            return false;
+        }
+
+        // no idle time limit - not a timeout
+        int maxIdleTime = session.getListener()
+                .getDataConnectionConfiguration().getIdleTime() * 1000;
+        if (maxIdleTime == 0) {
+            return false;
+        }
+
+        // idle time is within limit - not a timeout
+        if ((currTime - requestTime) < maxIdleTime) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Dispose data connection - close all the sockets.
+     */
+    public void dispose() {
+        closeDataConnection();
+    }
+
+    /**
+     * Sets the server's control address.
+     */
+    public void setServerControlAddress(final InetAddress serverControlAddress) {
+        this.serverControlAddress = serverControlAddress;
+        blockingFactory.setServerControlAddress(serverControlAddress);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Accepts the passive data connections of all sessions on a small set of
+ * shared ports. Each port is bound once and served by a single acceptor
+ * thread. Every accepted connection is handed to the waiting PASV of the
+ * same client address on that port. Connections from addresses without a
+ * waiting PASV are closed.
+ *
+ * Only one PASV of each client address may wait on a port at a time. The
+ * client address is all that identifies a data connection, so two sessions
+ * behind the same address, for example behind a NAT, could otherwise get
+ * each other's data connection if they connect in a different order than
+ * they sent PASV.
+ *
+ * A pending PASV therefore costs neither a file descriptor nor a port of its
+ * own.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PassiveDemultiplexer {
+
+    /**
+     * The time to wait before accepting again after accepting failed, so
+     * that a persistent failure, for example running out of file
+     * descriptors, does not keep the acceptor spinning
+     */
+    private static final long ACCEPT_RETRY_DELAY = 100;
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(PassiveDemultiplexer.class);
+
+    /**
+     * A PASV waiting for its data connection
+     */
+    public static class PendingConnection {
+
+        private final Acceptor acceptor;
+
+        private final InetAddress clientAddress;
+
+        private final DataSocketOptions socketOptions;
+
+        private Socket socket;
+
+        private boolean done = false;
+
+        private PendingConnection(final Acceptor acceptor,
+                final InetAddress clientAddress,
+                final DataSocketOptions socketOptions) {
+            this.acceptor = acceptor;
+            this.clientAddress = clientAddress;
+            this.socketOptions = socketOptions;
+        }
+
+        /**
+         * Get the shared port the client must connect to
+         * @return The port
+         */
+        public int getPort() {
+            return acceptor.getPort();
+        }
+
+        /**
+         * Wait for the client to connect
+         * @param timeoutMillis The maximum time to wait, 0 to wait forever
+         * @return The connected data socket
+         * @throws SocketTimeoutException If the client did not connect in
+         *             time
+         * @throws IOException If the pending connection has been cancelled
+         *             or the shared port has been closed
+         */
+        public synchronized Socket await(final long timeoutMillis)
+                throws IOException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!done) {
+                long wait = 0;
+                if (timeoutMillis > 0) {
+                    wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        cancel();
+                        throw new SocketTimeoutException(
+                                "Passive data connection not opened in time");
+                    }
+                }
+
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                    throw new IOException(
+                            "Interrupted waiting for the passive data connection");
+                }
+            }
+
+            if (socket == null) {
+                throw new IOException("Passive data connection cancelled");
+            }
+
+            Socket accepted = socket;
+            socket = null;
+            return accepted;
+        }
+
+        /**
+         * Stop waiting for the data connection, closing it if it has been
+         * accepted but not yet taken
+         */
+        public void cancel() {
+            acceptor.remove(this);
+
+            Socket unused;
+            synchronized (this) {
+                done = true;
+                unused = socket;
+                socket = null;
+                notifyAll();
+            }
+            closeSocket(unused);
+        }
+
+        /**
+         * Called by the acceptor
+         * @return false if the connection has already been cancelled
+         */
+        private boolean accepted(final Socket accepted) {
+            synchronized (this) {
+                if (!done) {
+                    socket = accepted;
+                    done = true;
+                    notifyAll();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Accepts the connections of a single shared port
+     */
+    private class Acceptor implements Runnable {
+
+        private final ServerSocket serverSocket;
+
+        /**
+         * The pending connection of each client address
+         */
+        private final Map<InetAddress, PendingConnection> pending = new HashMap<InetAddress, PendingConnection>();
+
+        private Acceptor(final ServerSocket serverSocket) {
+            this.serverSocket = serverSocket;
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        /**
+         * @return The new pending connection, null if the client address
+         *         already has one on this port
+         */
+        public synchronized PendingConnection add(
+                final InetAddress clientAddress,
+                final DataSocketOptions socketOptions) throws IOException {
+            if (serverSocket.isClosed()) {
+                throw new IOException("Shared passive port closed");
+            }
+
+            if (pending.containsKey(clientAddress)) {
+                return null;
+            }
+
+            PendingConnection connection = new PendingConnection(this,
+                    clientAddress, socketOptions);
+            pending.put(clientAddress, connection);
+            return connection;
+        }
+
+        public synchronized void remove(final PendingConnection connection) {
+            if (pending.get(connection.clientAddress) == connection) {
+                pending.remove(connection.clientAddress);
+            }
+        }
+
+        private synchronized PendingConnection next(
+                final InetAddress clientAddress) {
+            return pending.remove(clientAddress);
+        }
+
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        LOG.warn("Failed to accept on shared passive port "
+                                + getPort(), e);
+                        try {
+                            Thread.sleep(ACCEPT_RETRY_DELAY);
+                        } catch (InterruptedException ie) {
+                            close();
+                        }
+                    }
+                    continue;
+                }
+
+                dispatch(socket);
+            }
+
+            // fail all connections still waiting
+            while (true) {
+                PendingConnection connection;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        break;
+                    }
+                    connection = pending.values().iterator().next();
+                }
+                connection.cancel();
+            }
+        }
+
+        private void dispatch(final Socket socket) {
+            InetAddress clientAddress = socket.getInetAddress();
+            PendingConnection connection = next(clientAddress);
+
+            if (connection != null && connection.socketOptions != null) {
+                try {
+                    connection.socketOptions.configure(socket);
+                } catch (SocketException e) {
+                    LOG.debug("Failed to configure the data connection on shared port "
+                            + getPort(), e);
+                }
+            }
+
+            // the connection might have been cancelled meanwhile
+            if (connection == null || !connection.accepted(socket)) {
+                LOG.debug(
+                        "No pending PASV from {}, closing data connection on shared port {}",
+                        clientAddress, Integer.valueOf(getPort()));
+                closeSocket(socket);
+            }
+        }
+
+        public void close() {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close shared passive port " + getPort(), e);
+            }
+        }
+    }
+
+    private final Map<InetSocketAddress, Acceptor> acceptors = new HashMap<InetSocketAddress, Acceptor>();
+
+    private boolean disposed = false;
+
+    /**
+     * Wait for a passive data connection on a shared port. The port is bound
+     * and its acceptor started when first used.
+     * @param address The address to bind the shared port to
+     * @param port The shared port, 0 for a single shared port chosen by the
+     *   operating system
+     * @param clientAddress The address the client will connect from
+     * @param socketOptions The options to configure the accepted data
+     *   connection with, might be null
+     * @return The pending connection, null if a PASV from the same client
+     *   address is already waiting on the port
+     * @throws IOException If the shared port could not be bound
+     */
+    public PendingConnection expect(final InetAddress address, final int port,
+            final InetAddress clientAddress,
+            final DataSocketOptions socketOptions) throws IOException {
+        return getAcceptor(new InetSocketAddress(address, port)).add(
+                clientAddress, socketOptions);
+    }
+
+    private synchronized Acceptor getAcceptor(
+            final InetSocketAddress bindAddress) throws IOException {
+        if (disposed) {
+            throw new IOException("Shared passive ports closed");
+        }
+
+        Acceptor acceptor = acceptors.get(bindAddress);
+        if (acceptor == null) {
+            // backed by a channel, so that accepted data sockets have a
+            // channel available for zero-copy transfers
+            ServerSocket serverSocket = ServerSocketChannel.open().socket();
+            try {
+                serverSocket.setReuseAddress(true);
+                serverSocket.bind(bindAddress);
+            } catch (IOException e) {
+                serverSocket.close();
+                throw e;
+            }
+
+            LOG.debug("Opened shared passive port {}", serverSocket
+                    .getLocalSocketAddress());
+            acceptor = new Acceptor(serverSocket);
+            acceptors.put(bindAddress, acceptor);
+
+            Thread thread = new Thread(acceptor,
+                    "FtpServer-passive-acceptor-" + acceptor.getPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return acceptor;
+    }
+
+    /**
+     * Close all shared ports, failing the pending connections
+     */
+    public void dispose() {
+        synchronized (this) {
+            disposed = true;
+            for (Acceptor acceptor : acceptors.values()) {
+                acceptor.close();
+            }
+            acceptors.clear();
+        }
+    }
+
+    private static void closeSocket(final Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -22,11 +22,17 @@ package org.apache.ftpserver.impl;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,7 +41,9 @@ import org.slf4j.LoggerFactory;
  * <strong>Internal class, do not use directly.</strong>
  * 
  * Provides support for parsing a passive ports string as well as keeping track
- * of reserved passive ports.
+ * of reserved passive ports. Reserved and quarantined ports are kept in
+ * bitmaps updated with compare-and-set, so ports can be reserved and released
+ * concurrently without locking.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -47,11 +55,46 @@ public class PassivePorts {
 
     private static final Integer MAX_PORT_INTEGER = Integer.valueOf(MAX_PORT);
 
-    private List<Integer> freeList;
+    /**
+     * How long ports found to be bound by another process are skipped
+     */
+    private static final long QUARANTINE_NANOS = TimeUnit.SECONDS.toNanos(60);
 
-    private Set<Integer> usedList;
+    /**
+     * The configured ports in ascending order, not including port 0
+     */
+    private final int[] ports;
 
-    private Random r = new Random();
+    /**
+     * The index in {@link #ports} of every port from the lowest to the
+     * highest configured port, -1 for ports which are not configured
+     */
+    private final int[] indexes;
+
+    /**
+     * Is port 0, for any port, configured?
+     */
+    private final boolean anyPort;
+
+    /**
+     * One bit for each port in {@link #ports}, set while the port is reserved
+     */
+    private final AtomicLongArray reserved;
+
+    /**
+     * One bit for each port in {@link #ports}, set while the port is
+     * quarantined
+     */
+    private final AtomicLongArray quarantined;
+
+    /**
+     * The time the current quarantine ends, 0 if no ports are quarantined
+     */
+    private final AtomicLong quarantineEnd = new AtomicLong(0);
+
+    private final Random random = new Random();
+
+    private final AtomicInteger nextSharedPort = new AtomicInteger(0);
 
     private String passivePortsString;
 
@@ -158,8 +201,32 @@ public class PassivePorts {
         	passivePorts.add(0);
         }
 
-        this.freeList = new ArrayList<Integer>(passivePorts);
-        this.usedList = new HashSet<Integer>(passivePorts.size());
+        List<Integer> sortedPorts = new ArrayList<Integer>(passivePorts);
+        Collections.sort(sortedPorts);
+        this.anyPort = sortedPorts.remove(Integer.valueOf(0));
+
+        this.ports = new int[sortedPorts.size()];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = sortedPorts.get(i);
+        }
+
+        if (ports.length > 0) {
+            this.indexes = new int[ports[ports.length - 1] - ports[0] + 1];
+            Arrays.fill(indexes, -1);
+            for (int i = 0; i < ports.length; i++) {
+                indexes[ports[i] - ports[0]] = i;
+            }
+        } else {
+            this.indexes = new int[0];
+        }
+
+        int words = (ports.length + 63) >>> 6;
+        this.reserved = new AtomicLongArray(words);
+        this.quarantined = new AtomicLongArray(words);
+        if ((ports.length & 63) != 0) {
+            // the bits after the last port are never free
+            reserved.set(words - 1, -1L << (ports.length & 63));
+        }
 
         this.checkIfBound = checkIfBound;
     }
@@ -198,44 +265,176 @@ public class PassivePorts {
         }
     }
 
-    public synchronized int reserveNextPort() {
-        // create a copy of the free ports, so that we can keep track of the tested ports
-        List<Integer> freeCopy = new ArrayList<Integer>(freeList);
-
-        // Loop until we have found a port, or exhausted all available ports
-        while (freeCopy.size() > 0) {
-            // Otherwise, pick one at random
-            int i = r.nextInt(freeCopy.size());
-            Integer ret = freeCopy.get(i);
-
-            if (ret == 0) {
-                // "Any" port should not be removed from our free list,
-                // nor added to the used list
-                return 0;
-            } else if (checkPortUnbound(ret)) {
-                // Not used by someone else, so lets reserve it and return it
-                freeList.remove(ret);
-                usedList.add(ret);
-                return ret;
-            } else {
-                freeCopy.remove(ret);
-                // log port unavailable, but left in pool
-                log.warn("Passive port in use by another process: " + ret);
+    /**
+     * Reserve a free port. Ports are picked at random, ports found to be
+     * bound by another process are quarantined and only checked again when
+     * the quarantine ends or when all other ports are reserved. Port 0, if
+     * configured, is used once all other ports are reserved.
+     *
+     * @return The reserved port, 0 for any port or -1 if all ports are
+     *         reserved
+     */
+    public int reserveNextPort() {
+        endQuarantine();
+
+        int port = reserve(true);
+        if (port == -1) {
+            // rather than giving up, check whether any of the quarantined
+            // ports have been released by the other process
+            port = reserve(false);
+        }
+
+        if (port == -1 && anyPort) {
+            // "Any" port is never reserved
+            return 0;
+        }
+        return port;
+    }
+
+    /**
+     * Reserve a free port, scanning the bitmap from a random port
+     */
+    private int reserve(final boolean skipQuarantined) {
+        if (ports.length == 0) {
+            return -1;
+        }
+
+        int words = reserved.length();
+        int start = random.nextInt(ports.length);
+        int word = start >>> 6;
+
+        // start with the ports after the random port, the ports before it
+        // are scanned when coming back to the first word
+        long mask = -1L << (start & 63);
+        for (int visit = 0; visit <= words; visit++) {
+            while (true) {
+                long bits = reserved.get(word);
+                long free = ~bits & mask;
+                if (skipQuarantined) {
+                    free &= ~quarantined.get(word);
+                }
+                if (free == 0) {
+                    break;
+                }
+
+                int bit = Long.numberOfTrailingZeros(free);
+                if (!reserved.compareAndSet(word, bits, bits | (1L << bit))) {
+                    // lost a race with another thread, try again
+                    continue;
+                }
+
+                int index = (word << 6) + bit;
+                int port = ports[index];
+                if (checkPortUnbound(port)) {
+                    if (!skipQuarantined) {
+                        clearBit(quarantined, index);
+                    }
+                    return port;
+                }
+
+                // log port unavailable, skip it until the quarantine ends
+                log.warn("Passive port in use by another process: " + port);
+                quarantine(index);
+                clearBit(reserved, index);
+                mask &= ~(1L << bit);
             }
+
+            word = (word + 1 == words) ? 0 : word + 1;
+            mask = (visit + 1 == words) ? ~(-1L << (start & 63)) : -1L;
         }
 
-     return -1;
+        return -1;
     }
 
-    public synchronized void releasePort(final int port) {
+    private void quarantine(final int index) {
+        setBit(quarantined, index);
+
+        // start the quarantine if not already running
+        quarantineEnd.compareAndSet(0, System.nanoTime() + QUARANTINE_NANOS);
+    }
+
+    /**
+     * Release all quarantined ports once the quarantine has ended
+     */
+    private void endQuarantine() {
+        long end = quarantineEnd.get();
+        if (end != 0 && System.nanoTime() - end >= 0
+                && quarantineEnd.compareAndSet(end, 0)) {
+            for (int i = 0; i < quarantined.length(); i++) {
+                quarantined.set(i, 0);
+            }
+        }
+    }
+
+    private static void setBit(final AtomicLongArray bitmap, final int index) {
+        int word = index >>> 6;
+        long flag = 1L << (index & 63);
+        while (true) {
+            long bits = bitmap.get(word);
+            if ((bits & flag) != 0
+                    || bitmap.compareAndSet(word, bits, bits | flag)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Clear a bit
+     * @return true if the bit was set
+     */
+    private static boolean clearBit(final AtomicLongArray bitmap,
+            final int index) {
+        int word = index >>> 6;
+        long flag = 1L << (index & 63);
+        while (true) {
+            long bits = bitmap.get(word);
+            if ((bits & flag) == 0) {
+                return false;
+            }
+            if (bitmap.compareAndSet(word, bits, bits & ~flag)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the port for the next shared passive data connection. Shared ports
+     * are used in turn and are never reserved.
+     *
+     * @return The port, 0 if only any port is configured
+     */
+    public int nextSharedPort() {
+        if (ports.length == 0) {
+            return 0;
+        }
+
+        int next = nextSharedPort.getAndIncrement() & Integer.MAX_VALUE;
+        return ports[next % ports.length];
+    }
+
+    /**
+     * Get the number of distinct ports returned by {@link #nextSharedPort()}
+     *
+     * @return The number of shared ports
+     */
+    public int getSharedPortCount() {
+        return Math.max(1, ports.length);
+    }
+
+    public void releasePort(final int port) {
         if (port == 0) {
             // Ignore port 0 being released,
-            // since its not put on the used list
+            // since it is never reserved
+            return;
+        }
 
-        } else if (usedList.remove(port)) {
-            freeList.add(port);
+        int index = -1;
+        if (ports.length > 0 && port >= ports[0]
+                && port <= ports[ports.length - 1]) {
+            index = indexes[port - ports[0]];
+        }
 
-        } else {
+        if (index == -1 || !clearBit(reserved, index)) {
             // log attempt to release unused port
             log.warn("Releasing unreserved passive port: " + port);
         }
@@ -249,7 +448,10 @@ public class PassivePorts {
 
         StringBuilder sb = new StringBuilder();
 
-        for (Integer port : freeList) {
+        if (anyPort) {
+            sb.append("0,");
+        }
+        for (int port : ports) {
             sb.append(port);
             sb.append(",");
         }
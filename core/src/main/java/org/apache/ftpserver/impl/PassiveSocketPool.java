@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.DataTransferConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Keeps passive server sockets bound in advance, so that PASV does not have
+ * to reserve, probe and bind a port while the client waits for the reply.
+ * There is one pool for each data connection configuration and bind address,
+ * created when first used. Taken sockets are replaced by a background thread.
+ *
+ * A pooled socket holds its reserved passive port. Once taken, the socket and
+ * its port are owned by the data connection, which closes the socket and
+ * releases the port as for a socket it had bound itself.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PassiveSocketPool {
+
+    private final Logger LOG = LoggerFactory.getLogger(PassiveSocketPool.class);
+
+    /**
+     * The pool of a data connection configuration and bind address
+     */
+    private class Pool implements Runnable {
+        private final DataTransferConfiguration config;
+
+        private final InetAddress address;
+
+        private final int capacity;
+
+        private final Queue<ServerSocketChannel> channels = new ConcurrentLinkedQueue<ServerSocketChannel>();
+
+        private final AtomicInteger available = new AtomicInteger(0);
+
+        private final AtomicBoolean filling = new AtomicBoolean(false);
+
+        public Pool(DataTransferConfiguration config, InetAddress address) {
+            this.config = config;
+            this.address = address;
+            this.capacity = config.getPassiveSocketPoolSize();
+        }
+
+        public ServerSocketChannel take() {
+            ServerSocketChannel channel;
+            while ((channel = channels.poll()) != null) {
+                available.decrementAndGet();
+                if (drain(channel)) {
+                    break;
+                }
+                close(channel);
+            }
+
+            fill();
+            return channel;
+        }
+
+        /**
+         * Start refilling the pool in the background, unless already full or
+         * being refilled
+         */
+        public void fill() {
+            if (!disposed && available.get() < capacity
+                    && filling.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // disposed
+                    filling.set(false);
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                while (!disposed && available.get() < capacity) {
+                    ServerSocketChannel channel = bind();
+                    if (channel == null) {
+                        // no free port, try again on the next take
+                        break;
+                    }
+                    channels.add(channel);
+                    available.incrementAndGet();
+                }
+            } finally {
+                filling.set(false);
+            }
+
+            // close anything added after a concurrent dispose
+            if (disposed) {
+                dispose();
+            }
+        }
+
+        private ServerSocketChannel bind() {
+            int port = config.requestPassivePort();
+            if (port == -1) {
+                return null;
+            }
+
+            ServerSocketChannel channel = null;
+            try {
+                channel = ServerSocketChannel.open();
+
+                // must be set before binding for receive buffers larger than
+                // 64 kB, data connections with another receive buffer size
+                // do not use the pool
+                if (config.getReceiveBufferSize() > 0) {
+                    channel.socket().setReceiveBufferSize(
+                            config.getReceiveBufferSize());
+                }
+                channel.socket().bind(new InetSocketAddress(address, port), 0);
+                return channel;
+            } catch (IOException e) {
+                LOG.warn("Failed to bind pooled passive socket on port "
+                        + port, e);
+                if (channel != null) {
+                    closeChannel(channel);
+                }
+                config.releasePassivePort(port);
+                return null;
+            }
+        }
+
+        /**
+         * Close a pooled socket and release its port
+         */
+        private void close(ServerSocketChannel channel) {
+            int port = channel.socket().getLocalPort();
+            closeChannel(channel);
+            config.releasePassivePort(port);
+        }
+
+        public int getAvailable() {
+            return available.get();
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void dispose() {
+            ServerSocketChannel channel;
+            while ((channel = channels.poll()) != null) {
+                available.decrementAndGet();
+                close(channel);
+            }
+        }
+    }
+
+    /**
+     * The key of a pool, the configuration is compared by identity
+     */
+    private static class Key {
+        private final DataTransferConfiguration config;
+
+        private final InetAddress address;
+
+        public Key(DataTransferConfiguration config, InetAddress address) {
+            this.config = config;
+            this.address = address;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return config == other.config && address.equals(other.address);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(config) * 31 + address.hashCode();
+        }
+    }
+
+    private final ConcurrentMap<Key, Pool> pools = new ConcurrentHashMap<Key, Pool>();
+
+    private final ExecutorService executor;
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private volatile boolean disposed = false;
+
+    public PassiveSocketPool() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "FtpServer-passive-socket-pool");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Take an already bound passive server socket. The returned channel is in
+     * blocking mode and has no pending connections. The caller is responsible
+     * for closing it and releasing its port.
+     * @param config The data connection configuration of the session
+     * @param address The address the socket must be bound to
+     * @return The bound server socket, or null if pooling is not enabled for
+     *         the configuration or the pool is empty
+     */
+    public ServerSocketChannel take(final DataTransferConfiguration config,
+            final InetAddress address) {
+        if (disposed || config.getPassiveSocketPoolSize() <= 0) {
+            return null;
+        }
+
+        ServerSocketChannel channel = getPool(config, address).take();
+        if (channel == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return channel;
+    }
+
+    private Pool getPool(final DataTransferConfiguration config,
+            final InetAddress address) {
+        Key key = new Key(config, address);
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            Pool newPool = new Pool(config, address);
+            pool = pools.putIfAbsent(key, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Close any connections made to a pooled socket while it was waiting, for
+     * example by port scanners, so that they are not mistaken for the data
+     * connection
+     * @return false if the socket is no longer usable
+     */
+    private boolean drain(final ServerSocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            SocketChannel stale;
+            while ((stale = channel.accept()) != null) {
+                LOG.debug("Closing stale connection to pooled passive socket");
+                closeChannel(stale);
+            }
+            channel.configureBlocking(true);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to drain pooled passive socket", e);
+            return false;
+        }
+    }
+
+    private void closeChannel(final Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close passive socket", e);
+        }
+    }
+
+    /**
+     * Get the number of bound sockets waiting in the pools
+     * @return The number of available sockets
+     */
+    public int getAvailable() {
+        int available = 0;
+        for (Pool pool : pools.values()) {
+            available += pool.getAvailable();
+        }
+        return available;
+    }
+
+    /**
+     * Get the total size of the pools
+     * @return The number of sockets the pools are kept filled to
+     */
+    public int getCapacity() {
+        int capacity = 0;
+        for (Pool pool : pools.values()) {
+            capacity += pool.getCapacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Get the number of PASV served with a pooled socket
+     * @return The number of pool hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of PASV which had to bind a socket because the pool was
+     * empty
+     * @return The number of pool misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Close all pooled sockets and release their ports
+     */
+    public void dispose() {
+        disposed = true;
+        executor.shutdown();
+        for (Pool pool : pools.values()) {
+            pool.dispose();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Input stream ending after a fixed number of bytes, used to send the byte
+ * range requested with RANG. Zero-copy transfers read the underlying stream
+ * directly and must stop after {@link #getRemaining()} bytes.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RangeInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    /**
+     * Create a stream
+     * @param in The underlying stream, positioned at the start of the range
+     * @param length The number of bytes in the range
+     */
+    public RangeInputStream(final InputStream in, final long length) {
+        super(in);
+        this.remaining = length;
+    }
+
+    /**
+     * Get the underlying stream
+     * @return The stream
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Get the number of bytes left in the range
+     * @return The number of bytes
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Get the plain file stream a download can be sent from with zero-copy
+     * @param in The stream to send
+     * @return The file stream, or null if the data must be read through the
+     *         stream
+     */
+    public static FileInputStream getFileInputStream(final InputStream in) {
+        InputStream source = in;
+        if (source instanceof RangeInputStream) {
+            source = ((RangeInputStream) source).in;
+        }
+
+        if (source instanceof FileInputStream) {
+            return (FileInputStream) source;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of bytes to send from a stream
+     * @param in The stream to send
+     * @return The number of bytes left in the range, or
+     *         {@link Long#MAX_VALUE} if the stream is sent to its end
+     */
+    public static long getRemaining(final InputStream in) {
+        if (in instanceof RangeInputStream) {
+            return ((RangeInputStream) in).remaining;
+        } else {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int b = in.read();
+        if (b != -1) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int count = in.read(b, off, (int) Math.min(len, remaining));
+        if (count > 0) {
+            remaining -= count;
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long count = in.skip(Math.min(n, remaining));
+        if (count > 0) {
+            remaining -= count;
+        }
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
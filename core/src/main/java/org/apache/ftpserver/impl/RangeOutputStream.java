@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Output stream accepting at most a fixed number of bytes, used to receive
+ * the byte range requested with RANG. Writing past the end of the range fails
+ * the upload instead of overwriting data outside the range. Closing this
+ * stream does not close the underlying stream.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RangeOutputStream extends FilterOutputStream {
+
+    private long remaining;
+
+    /**
+     * Create a stream
+     * @param out The underlying stream, positioned at the start of the range
+     * @param length The number of bytes in the range
+     */
+    public RangeOutputStream(final OutputStream out, final long length) {
+        super(out);
+        this.remaining = length;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (remaining < 1) {
+            throw new IOException("Data beyond the end of the byte range");
+        }
+        out.write(b);
+        remaining--;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (remaining < len) {
+            throw new IOException("Data beyond the end of the byte range");
+        }
+        out.write(b, off, len);
+        remaining -= len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
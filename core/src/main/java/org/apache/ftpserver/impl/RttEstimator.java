@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.Arrays;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Estimates the round-trip time of a control connection from the time
+ * between a reply being sent and the next request being received. Clients
+ * typically send their next command as soon as they have received the reply,
+ * so each exchange is one sample of the round-trip time plus the time the
+ * client took to respond.
+ *
+ * The estimate is the median of the most recent samples, so that the odd
+ * slow response (e.g. a user typing a command) or pipelined command does not
+ * skew it.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RttEstimator {
+
+    private static final int MAX_SAMPLES = 8;
+
+    private final long[] samples = new long[MAX_SAMPLES];
+
+    private int sampleCount = 0;
+
+    private boolean replyPending = false;
+
+    private long replySentTime;
+
+    /**
+     * Called when a final reply has been sent to the client
+     * @param now The current time, as given by {@link System#nanoTime()}
+     */
+    public synchronized void replySent(final long now) {
+        replyPending = true;
+        replySentTime = now;
+    }
+
+    /**
+     * Called when a request has been received from the client
+     * @param now The current time, as given by {@link System#nanoTime()}
+     */
+    public synchronized void requestReceived(final long now) {
+        if (!replyPending) {
+            return;
+        }
+        replyPending = false;
+
+        long sample = now - replySentTime;
+        if (sample > 0) {
+            samples[sampleCount % MAX_SAMPLES] = sample;
+            sampleCount++;
+        }
+    }
+
+    /**
+     * Get the estimated round-trip time
+     * @return The round-trip time in nanoseconds, 0 if not yet known
+     */
+    public synchronized long getRtt() {
+        if (sampleCount == 0) {
+            return 0;
+        }
+
+        int count = Math.min(sampleCount, MAX_SAMPLES);
+        long[] sorted = new long[count];
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted);
+
+        // the lower median, slow responses are more common than fast ones
+        return sorted[(count - 1) / 2];
+    }
+}
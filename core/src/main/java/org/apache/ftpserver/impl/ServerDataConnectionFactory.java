@@ -32,6 +32,15 @@ import org.apache.ftpserver.ftplet.DataConnectionFactory;
  */
 public interface ServerDataConnectionFactory extends DataConnectionFactory {
 
+    /**
+     * Open an active data connection, which can also transfer data
+     * asynchronously.
+     * 
+     * @return The open data connection
+     * @throws Exception on error
+     */
+    AsyncDataConnection openConnection() throws Exception;
+
     /**
      * Port command.
      */
@@ -58,6 +67,20 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
 
     void setZipMode(boolean zip);
 
+    /**
+     * Set the compression level used in zip mode. Levels above the maximum
+     * level allowed by the data connection configuration are lowered to the
+     * maximum.
+     * @param level The requested compression level, between 0 and 9
+     */
+    void setZipLevel(int level);
+
+    /**
+     * Get the compression level used in zip mode.
+     * @return The compression level
+     */
+    int getZipLevel();
+
     /**
      * Check the data connection idle status.
      */
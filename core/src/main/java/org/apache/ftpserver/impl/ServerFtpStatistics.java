@@ -20,17 +20,20 @@
 package org.apache.ftpserver.impl;
 
 import org.apache.ftpserver.ftplet.FtpFile;
-import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.Histogram;
+import org.apache.ftpserver.ftplet.TransferMetric;
+import org.apache.ftpserver.ftplet.TransferStatistics;
+import org.apache.ftpserver.listener.Listener;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * This is same as <code>org.apache.ftpserver.ftplet.FtpStatistics</code> with
+ * This is same as <code>org.apache.ftpserver.ftplet.TransferStatistics</code> with
  * added observer and setting values functionalities.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public interface ServerFtpStatistics extends FtpStatistics {
+public interface ServerFtpStatistics extends TransferStatistics {
 
     /**
      * Set statistics observer.
@@ -42,6 +45,50 @@ public interface ServerFtpStatistics extends FtpStatistics {
      */
     void setFileObserver(FileObserver observer);
 
+    /**
+     * Set the bandwidth manager used for the current transfer rates.
+     */
+    void setBandwidthManager(BandwidthManager bandwidthManager);
+
+    /**
+     * Set the buffer pool manager used for the transfer buffer gauges.
+     */
+    void setBufferPoolManager(BufferPoolManager bufferPoolManager);
+
+    /**
+     * Set the upload pipeline used for the upload pipeline gauges.
+     */
+    void setUploadPipeline(UploadPipeline uploadPipeline);
+
+    /**
+     * Set the passive socket pool used for the passive socket pool gauges.
+     */
+    void setPassiveSocketPool(PassiveSocketPool passiveSocketPool);
+
+    /**
+     * Get the current download rate of the specific listener
+     */
+    long getCurrentListenerDownloadRate(Listener listener);
+
+    /**
+     * Get the current upload rate of the specific listener
+     */
+    long getCurrentListenerUploadRate(Listener listener);
+
+    /**
+     * Get the distribution of a measurement of the completed downloads of the
+     * specific listener
+     */
+    Histogram getListenerDownloadHistogram(Listener listener,
+            TransferMetric metric);
+
+    /**
+     * Get the distribution of a measurement of the completed uploads of the
+     * specific listener
+     */
+    Histogram getListenerUploadHistogram(Listener listener,
+            TransferMetric metric);
+
     /**
      * Increment upload count.
      */
@@ -52,6 +99,27 @@ public interface ServerFtpStatistics extends FtpStatistics {
      */
     void setDownload(FtpIoSession session, FtpFile file, long size);
 
+    /**
+     * Record the timings of a completed data transfer.
+     * @param session The session of the transfer
+     * @param download true for downloads, false for uploads
+     * @param size The number of transferred bytes
+     * @param setupNanos The time spent opening the data connection
+     * @param firstByteNanos The time until the first byte was transferred,
+     *   negative if no data was transferred
+     * @param durationNanos The time spent transferring the data
+     */
+    void setTransferTimes(FtpIoSession session, boolean download, long size,
+            long setupNanos, long firstByteNanos, long durationNanos);
+
+    /**
+     * Record the time taken to serve a PASV or EPSV command.
+     * @param session The session of the command
+     * @param nanos The time from receiving the command until the reply was
+     *   written
+     */
+    void setPassiveTime(FtpIoSession session, long nanos);
+
     /**
      * Increment make directory count.
      */
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Token bucket used for limiting the bandwidth of data transfers. The bucket
+ * is filled with <code>rate</code> tokens (bytes) per second, up to a maximum
+ * of <code>burst</code> tokens. Transferring data takes tokens from the
+ * bucket, if not enough tokens are available the caller will sleep exactly as
+ * long as needed for the bucket to be refilled.
+ *
+ * A bucket can safely be shared between threads. Callers take tokens in the
+ * order they arrive, since the bucket is allowed to go into debt and every
+ * later caller has to wait for the debt of earlier callers to be paid.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The default burst, as a fraction of the rate, used when no burst is
+     * configured. Allows for 100 ms worth of data to be sent at once.
+     */
+    private static final int DEFAULT_BURST_DIVISOR = 10;
+
+    private final long rate;
+
+    private final long burst;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * Create a token bucket
+     * @param rate The number of bytes per second, must be larger than 0
+     * @param burst The maximum number of bytes that can be transferred
+     *   at once. If 0 or less, a default of 1/10 of the rate will be used.
+     */
+    public TokenBucket(final long rate, final long burst) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be larger than 0: "
+                    + rate);
+        }
+        this.rate = rate;
+
+        if (burst > 0) {
+            this.burst = burst;
+        } else {
+            this.burst = Math.max(1, rate / DEFAULT_BURST_DIVISOR);
+        }
+
+        // start with a full bucket
+        tokens = this.burst;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Get the number of bytes per second
+     * @return The rate of the bucket
+     */
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * Get the maximum number of bytes that can be transferred at once.
+     * Callers should not transfer larger chunks than this.
+     * @return The burst of the bucket
+     */
+    public long getBurst() {
+        return burst;
+    }
+
+    /**
+     * Take tokens for the provided number of bytes, sleeping until the bucket
+     * has been refilled if the tokens are not available.
+     * @param bytes The number of bytes transferred
+     * @throws InterruptedException If interrupted while waiting for tokens
+     */
+    public void take(final long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes, System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Take the tokens and calculate how long the caller has to wait for
+     * them to become available.
+     * @return The time to wait in nanoseconds
+     */
+    synchronized long reserve(final long bytes, final long now) {
+        refill(now);
+
+        tokens -= bytes;
+
+        if (tokens >= 0) {
+            return 0;
+        } else {
+            return (long) Math.ceil(-tokens * NANOS_PER_SECOND / rate);
+        }
+    }
+
+    /**
+     * Get the number of currently available tokens, might be negative if the
+     * bucket is in debt.
+     * @return The number of available tokens
+     */
+    public synchronized long getAvailableTokens() {
+        refill(System.nanoTime());
+        return (long) tokens;
+    }
+
+    private void refill(final long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + ((double) elapsed * rate)
+                    / NANOS_PER_SECOND);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Limits a single data transfer by all the {@link BandwidthLimiter}s on its
+ * path, from the session up to the whole server. Every transferred chunk is
+ * charged to every level and the transfer waits for the slowest one.
+ *
+ * The max rate of every level is a hard limit, a transfer never exceeds the
+ * rate of its session or user even if the levels above are idle. Capacity is
+ * not statically divided between the children of a level though, any
+ * capacity a child does not use is available to its siblings.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferRateLimiter {
+
+    private final BandwidthLimiter[] limiters;
+
+    private final long burst;
+
+    /**
+     * Create a limiter for a transfer
+     * @param limiters The limiters for each level, from the most specific
+     *   to the most general. Null limiters are ignored.
+     */
+    public TransferRateLimiter(final BandwidthLimiter... limiters) {
+        int count = 0;
+        for (BandwidthLimiter limiter : limiters) {
+            if (limiter != null) {
+                count++;
+            }
+        }
+
+        this.limiters = new BandwidthLimiter[count];
+
+        long minBurst = Long.MAX_VALUE;
+        int i = 0;
+        for (BandwidthLimiter limiter : limiters) {
+            if (limiter != null) {
+                this.limiters[i++] = limiter;
+                minBurst = Math.min(minBurst, limiter.getBurst());
+            }
+        }
+        burst = minBurst;
+    }
+
+    /**
+     * Is the transfer limited by any level?
+     * @return true if any of the levels has a max rate
+     */
+    public boolean isLimited() {
+        return burst != Long.MAX_VALUE;
+    }
+
+    /**
+     * Get the largest number of bytes that should be transferred at once
+     * @return The smallest burst of all the levels, {@link Long#MAX_VALUE} if
+     *         not limited
+     */
+    public long getBurst() {
+        return burst;
+    }
+
+    /**
+     * Charge the transferred bytes to all levels, waiting until all of them
+     * allow for more data to be transferred.
+     * @param bytes The number of transferred bytes
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void take(final long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes);
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Charge the transferred bytes to all levels without waiting. Used by
+     * non-blocking transfers, which must instead pause themselves for the
+     * returned time.
+     * @param bytes The number of transferred bytes
+     * @return The time in nanoseconds until all levels allow for more data
+     *         to be transferred
+     */
+    public long reserve(final long bytes) {
+        long now = System.nanoTime();
+        long waitNanos = 0;
+
+        for (BandwidthLimiter limiter : limiters) {
+            waitNanos = Math.max(waitNanos, limiter.reserve(bytes, now));
+        }
+
+        return waitNanos;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Measures a single data transfer for the transfer histograms of the
+ * {@link ServerFtpStatistics}. The transfer starts when the timer is created,
+ * after the data connection has been opened.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferTimer {
+
+    private final FtpIoSession session;
+
+    private final boolean download;
+
+    private final long setupNanos;
+
+    private final long startTime = System.nanoTime();
+
+    private long firstByteNanos = -1;
+
+    /**
+     * Start measuring a transfer
+     * @param session The session of the transfer
+     * @param download true for downloads, false for uploads
+     * @param setupNanos The time spent opening the data connection
+     */
+    public TransferTimer(final FtpIoSession session, final boolean download,
+            final long setupNanos) {
+        this.session = session;
+        this.download = download;
+        this.setupNanos = setupNanos;
+    }
+
+    /**
+     * Called whenever data has been transferred, only the first call is
+     * measured.
+     */
+    public void transferred() {
+        if (firstByteNanos < 0) {
+            firstByteNanos = System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Record the completed transfer in the server statistics
+     * @param serverContext The server context
+     * @param size The number of transferred bytes
+     */
+    public void completed(final FtpServerContext serverContext,
+            final long size) {
+        long durationNanos = System.nanoTime() - startTime;
+
+        ServerFtpStatistics statistics = (ServerFtpStatistics) serverContext
+                .getFtpStatistics();
+        statistics.setTransferTimes(session, download, size, setupNanos,
+                firstByteNanos, durationNanos);
+    }
+}
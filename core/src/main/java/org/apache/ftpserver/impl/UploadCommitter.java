@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.ftpserver.UploadDurability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Makes uploaded data durable before the upload is reported as complete,
+ * as configured by the {@link UploadDurability} of the listener. Only
+ * uploads written to a {@link FileOutputStream} can be synced, other streams
+ * are left to the file system implementation.
+ *
+ * In group commit mode, uploads finishing while a batch is being synced are
+ * queued and synced together in the next batch by a single background
+ * thread. The transfer threads never wait for the disk, and the number of
+ * concurrent syncs hitting the disk stays at one.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class UploadCommitter {
+
+    private final Logger LOG = LoggerFactory.getLogger(UploadCommitter.class);
+
+    /**
+     * An upload waiting to be synced
+     */
+    private static class PendingCommit {
+        private final FileOutputStream out;
+
+        private final long transferredSize;
+
+        private final DataTransferListener listener;
+
+        private IOException failure;
+
+        public PendingCommit(final FileOutputStream out,
+                final long transferredSize, final DataTransferListener listener) {
+            this.out = out;
+            this.transferredSize = transferredSize;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Queued by {@link #dispose()} to stop the committer thread. Interrupting
+     * the thread is not an option, as that would close the file channel it is
+     * syncing.
+     */
+    private static final PendingCommit STOP = new PendingCommit(null, 0, null);
+
+    private final BlockingQueue<PendingCommit> queue = new LinkedBlockingQueue<PendingCommit>();
+
+    private Thread committerThread;
+
+    private boolean disposed = false;
+
+    /**
+     * Wrap the listener of an upload so that it is only notified of a
+     * completed transfer once the uploaded data is durable. If the data can
+     * not be synced, the listener is notified of a failed transfer instead.
+     * @param session The session of the upload
+     * @param out The stream the upload is written to
+     * @param listener The listener to notify
+     * @return The listener to pass to the data connection
+     */
+    public DataTransferListener wrap(final FtpIoSession session,
+            final OutputStream out, final DataTransferListener listener) {
+        return wrap(session.getDataTransferConfiguration()
+                .getUploadDurability(), out, listener);
+    }
+
+    /**
+     * Wrap the listener of an upload so that it is only notified of a
+     * completed transfer once the uploaded data is durable.
+     * @param durability The durability of the upload
+     * @param out The stream the upload is written to
+     * @param listener The listener to notify
+     * @return The listener to pass to the data connection
+     */
+    public DataTransferListener wrap(final UploadDurability durability,
+            final OutputStream out, final DataTransferListener listener) {
+        if (durability == UploadDurability.NONE
+                || !(out instanceof FileOutputStream)) {
+            return listener;
+        }
+
+        return new DataTransferListener() {
+            public void transferCompleted(long transferredSize) {
+                commit(durability, (FileOutputStream) out, transferredSize,
+                        listener);
+            }
+
+            public void transferFailed(IOException e) {
+                listener.transferFailed(e);
+            }
+        };
+    }
+
+    private void commit(final UploadDurability durability,
+            final FileOutputStream out, final long transferredSize,
+            final DataTransferListener listener) {
+        PendingCommit commit = new PendingCommit(out, transferredSize,
+                listener);
+
+        if (durability == UploadDurability.GROUP_COMMIT && enqueue(commit)) {
+            return;
+        }
+
+        sync(commit);
+        notify(commit);
+    }
+
+    /**
+     * Queue a commit for the committer thread, starting it if needed
+     * @return false if the committer has been disposed
+     */
+    private synchronized boolean enqueue(final PendingCommit commit) {
+        if (disposed) {
+            return false;
+        }
+
+        if (committerThread == null) {
+            committerThread = new Thread(new Runnable() {
+                public void run() {
+                    runCommitter();
+                }
+            }, "FtpServer-upload-committer");
+            committerThread.setDaemon(true);
+            committerThread.start();
+        }
+
+        queue.add(commit);
+        return true;
+    }
+
+    private void runCommitter() {
+        List<PendingCommit> batch = new ArrayList<PendingCommit>();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+
+            // nothing is queued after STOP, so it is always last
+            if (batch.get(batch.size() - 1) == STOP) {
+                batch.remove(batch.size() - 1);
+                stopped = true;
+            }
+
+            for (PendingCommit commit : batch) {
+                sync(commit);
+            }
+            for (PendingCommit commit : batch) {
+                notify(commit);
+            }
+
+            LOG.debug("Committed {} uploads", batch.size());
+            batch.clear();
+        }
+    }
+
+    private void sync(final PendingCommit commit) {
+        try {
+            // release any space reserved beyond the written data before
+            // syncing, so that the file size is durable too
+            commit.out.flush();
+            commit.out.getChannel().force(true);
+        } catch (IOException e) {
+            commit.failure = e;
+        }
+    }
+
+    private void notify(final PendingCommit commit) {
+        try {
+            if (commit.failure == null) {
+                commit.listener.transferCompleted(commit.transferredSize);
+            } else {
+                LOG.warn("Failed to sync uploaded file", commit.failure);
+                commit.listener.transferFailed(commit.failure);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Exception when notifying committed upload", e);
+        }
+    }
+
+    /**
+     * Sync the pending uploads and stop the committer thread. Uploads
+     * finishing afterwards are synced by the thread finishing the transfer.
+     */
+    public void dispose() {
+        Thread thread;
+        synchronized (this) {
+            disposed = true;
+            thread = committerThread;
+            committerThread = null;
+        }
+
+        if (thread != null) {
+            queue.add(STOP);
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+}
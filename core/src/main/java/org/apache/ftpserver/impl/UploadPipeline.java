@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Runs the disk side of pipelined uploads. The thread reading from the data
+ * connection hands filled buffers to a {@link Ring}, and a writer thread
+ * writes them to the output stream and hands them back. A slow write then
+ * no longer stops the reads from the client, and the other way around,
+ * until all buffers of the ring are filled.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class UploadPipeline {
+
+    /**
+     * Marks the end of the uploaded data in the filled queue
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * Wakes up the reader when the writer has failed
+     */
+    private static final ByteBuffer FAILED = ByteBuffer.allocate(0);
+
+    /**
+     * The bounded ring of buffers of a single upload. The methods not run by
+     * the writer must only be called by the thread reading the upload.
+     */
+    public class Ring implements Runnable {
+
+        private final BufferPool bufferPool;
+
+        private final int depth;
+
+        private final OutputStream out;
+
+        private final AsciiTranslator translator;
+
+        private final ByteBuffer translateBuffer;
+
+        private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<ByteBuffer>();
+
+        private final BlockingQueue<ByteBuffer> filled = new LinkedBlockingQueue<ByteBuffer>();
+
+        /**
+         * All buffers acquired from the pool, at most depth
+         */
+        private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+        private final CountDownLatch writerDone = new CountDownLatch(1);
+
+        /**
+         * The reader and the writer, the last of them to be done with the
+         * ring releases the buffers
+         */
+        private final AtomicInteger users = new AtomicInteger(2);
+
+        private volatile IOException failure;
+
+        private volatile boolean aborted = false;
+
+        private Ring(final BufferPool bufferPool, final int depth,
+                final OutputStream out, final AsciiTranslator translator) {
+            this.bufferPool = bufferPool;
+            this.depth = depth;
+            this.translator = translator;
+
+            if (translator != null) {
+                // the translated line endings are written separately, so
+                // collect them in a buffer
+                translateBuffer = bufferPool.acquire();
+                this.out = new ByteBufferOutputStream(out, translateBuffer);
+            } else {
+                translateBuffer = null;
+                this.out = out;
+            }
+        }
+
+        /**
+         * Get an empty buffer to read into, waiting for the writer if all
+         * buffers of the ring are filled.
+         * @return A cleared buffer
+         * @throws IOException If the writer has failed
+         */
+        public ByteBuffer acquire() throws IOException {
+            ByteBuffer buffer = free.poll();
+            if (buffer == null) {
+                if (buffers.size() < depth) {
+                    buffer = bufferPool.acquire();
+                    buffers.add(buffer);
+                    return buffer;
+                }
+
+                fullStalls.incrementAndGet();
+                try {
+                    buffer = free.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(
+                            "Interrupted while waiting for the disk");
+                }
+            }
+
+            if (buffer == FAILED) {
+                // leave it for any later call
+                free.add(FAILED);
+                throw failure;
+            }
+
+            buffer.clear();
+            return buffer;
+        }
+
+        /**
+         * Hand a buffer to the writer
+         * @param buffer A buffer from {@link #acquire()}
+         * @param count The number of bytes read into the buffer
+         */
+        public void submit(final ByteBuffer buffer, final int count) {
+            buffer.clear();
+            buffer.limit(count);
+            filled.add(buffer);
+        }
+
+        /**
+         * Return an unused buffer to the ring
+         * @param buffer A buffer from {@link #acquire()}
+         */
+        public void recycle(final ByteBuffer buffer) {
+            free.add(buffer);
+        }
+
+        /**
+         * Wait until the writer has written and flushed all submitted
+         * buffers, and release the ring. If interrupted while waiting, the
+         * writer releases the ring once it is done.
+         * @throws IOException If the writer has failed
+         */
+        public void finish() throws IOException {
+            filled.add(END);
+            try {
+                awaitWriter();
+            } finally {
+                done();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Stop the writer, discarding any buffers not yet written, and
+         * release the ring. If interrupted while waiting, the writer releases
+         * the ring once it is done.
+         */
+        public void abort() {
+            aborted = true;
+            filled.add(END);
+            try {
+                awaitWriter();
+            } catch (InterruptedIOException e) {
+                // the writer is done once the current write returns
+                Thread.currentThread().interrupt();
+            } finally {
+                done();
+            }
+        }
+
+        /**
+         * Get the number of filled buffers waiting for the writer
+         */
+        public int getFilled() {
+            int count = filled.size();
+            return count > depth ? depth : count;
+        }
+
+        private void awaitWriter() throws InterruptedIOException {
+            try {
+                writerDone.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(
+                        "Interrupted while waiting for the disk");
+            }
+        }
+
+        /**
+         * The reader or the writer is done with the ring, release it if the
+         * other one is done as well
+         */
+        private void done() {
+            if (users.decrementAndGet() == 0) {
+                release();
+            }
+        }
+
+        private void release() {
+            rings.remove(this);
+            for (ByteBuffer buffer : buffers) {
+                bufferPool.release(buffer);
+            }
+            buffers.clear();
+            bufferPool.release(translateBuffer);
+        }
+
+        /**
+         * The writer, run on a thread of the pipeline
+         */
+        public void run() {
+            try {
+                while (!aborted) {
+                    ByteBuffer buffer = filled.poll();
+                    if (buffer == null) {
+                        emptyStalls.incrementAndGet();
+                        buffer = filled.take();
+                    }
+                    if (buffer == END) {
+                        break;
+                    }
+
+                    // if ascii, translate the line endings
+                    if (translator != null) {
+                        translator.translate(buffer.array(), 0, buffer
+                                .limit(), out);
+                    } else {
+                        out.write(buffer.array(), 0, buffer.limit());
+                    }
+                    free.add(buffer);
+                }
+
+                if (!aborted) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                fail(e);
+            } catch (InterruptedException e) {
+                fail(new InterruptedIOException(
+                        "Interrupted while writing upload"));
+            } catch (RuntimeException e) {
+                IOException ioe = new IOException("Failed writing upload: "
+                        + e.getMessage());
+                ioe.initCause(e);
+                fail(ioe);
+            } finally {
+                // before waking up the reader, so that a waiting reader
+                // releases the ring before it returns
+                done();
+                writerDone.countDown();
+            }
+        }
+
+        private void fail(final IOException e) {
+            failure = e;
+            free.add(FAILED);
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final ConcurrentHashMap<Ring, Boolean> rings = new ConcurrentHashMap<Ring, Boolean>();
+
+    private final AtomicLong fullStalls = new AtomicLong(0);
+
+    private final AtomicLong emptyStalls = new AtomicLong(0);
+
+    public UploadPipeline() {
+        final AtomicInteger writerThreads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "FtpServer-upload-writer-"
+                        + writerThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start the writer of a pipelined upload
+     * @param bufferPool The pool to take the buffers of the ring from
+     * @param depth The number of buffers in the ring
+     * @param out The stream to write the upload to
+     * @param translator The translator for ASCII uploads, null for binary
+     *   uploads
+     * @return The ring to hand the read data to
+     */
+    public Ring start(final BufferPool bufferPool, final int depth,
+            final OutputStream out, final AsciiTranslator translator) {
+        Ring ring = new Ring(bufferPool, depth, out, translator);
+        rings.put(ring, Boolean.TRUE);
+        try {
+            executor.execute(ring);
+        } catch (RuntimeException e) {
+            ring.release();
+            throw e;
+        }
+        return ring;
+    }
+
+    /**
+     * Get the number of filled buffers waiting to be written, for all
+     * running pipelined uploads
+     * @return The number of filled buffers
+     */
+    public int getBuffersFilled() {
+        int count = 0;
+        for (Ring ring : rings.keySet()) {
+            count += ring.getFilled();
+        }
+        return count;
+    }
+
+    /**
+     * Get the total number of buffers of all running pipelined uploads
+     * @return The capacity of all rings
+     */
+    public int getCapacity() {
+        int count = 0;
+        for (Ring ring : rings.keySet()) {
+            count += ring.depth;
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of times the reading of an upload had to wait because
+     * all buffers of its ring were filled, i.e. because of a slow disk
+     * @return The number of full ring stalls
+     */
+    public long getFullStalls() {
+        return fullStalls.get();
+    }
+
+    /**
+     * Get the number of times the writing of an upload had to wait because
+     * no buffer of its ring was filled, i.e. because of a slow client
+     * @return The number of empty ring stalls
+     */
+    public long getEmptyStalls() {
+        return emptyStalls.get();
+    }
+
+    /**
+     * Stop the writer threads once the running uploads are done
+     */
+    public void dispose() {
+        executor.shutdown();
+    }
+}
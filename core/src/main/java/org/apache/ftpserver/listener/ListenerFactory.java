@@ -27,6 +27,7 @@ import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.ipfilter.IpFilter;
+import org.apache.ftpserver.listener.nio.AbstractListener;
 import org.apache.ftpserver.listener.nio.NioListener;
 import org.apache.ftpserver.ssl.SslConfiguration;
 import org.apache.mina.filter.firewall.Subnet;
@@ -61,6 +62,21 @@ public class ListenerFactory {
      */
     private IpFilter ipFilter = null;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private int sendBufferSize = 0;
+
+    // control connections only carry commands, so keep the buffer small
+    private int receiveBufferSize = 512;
+
+    private int readBufferSize = 2048;
+
+    private boolean tcpNoDelay = false;
+
+    private int trafficClass = -1;
+
     /**
      * Default constructor
      */
@@ -83,6 +99,16 @@ public class ListenerFactory {
         blockedAddresses = listener.getBlockedAddresses();
         blockedSubnets = listener.getBlockedSubnets();
         this.ipFilter = listener.getIpFilter();
+        if (listener instanceof AbstractListener) {
+            AbstractListener abstractListener = (AbstractListener) listener;
+            maxDownloadRate = abstractListener.getMaxDownloadRate();
+            maxUploadRate = abstractListener.getMaxUploadRate();
+            sendBufferSize = abstractListener.getSendBufferSize();
+            receiveBufferSize = abstractListener.getReceiveBufferSize();
+            readBufferSize = abstractListener.getReadBufferSize();
+            tcpNoDelay = abstractListener.isTcpNoDelay();
+            trafficClass = abstractListener.getTrafficClass();
+        }
     }
 
     /**
@@ -103,11 +129,15 @@ public class ListenerFactory {
     	}
     	if(blockedAddresses != null || blockedSubnets != null) {
             return new NioListener(serverAddress, port, implicitSsl, ssl,
-                dataConnectionConfig, idleTimeout, blockedAddresses, blockedSubnets);
+                dataConnectionConfig, idleTimeout, blockedAddresses, blockedSubnets,
+                maxDownloadRate, maxUploadRate, sendBufferSize,
+                receiveBufferSize, readBufferSize, tcpNoDelay, trafficClass);
     	}
     	else {
 	        return new NioListener(serverAddress, port, implicitSsl, ssl,
-	        	dataConnectionConfig, idleTimeout, ipFilter);
+	        	dataConnectionConfig, idleTimeout, ipFilter, maxDownloadRate,
+	        	maxUploadRate, sendBufferSize, receiveBufferSize,
+	        	readBufferSize, tcpNoDelay, trafficClass);
     	}
     }
 
@@ -231,6 +261,141 @@ public class ListenerFactory {
         this.idleTimeout = idleTimeout;
     }
 
+    /**
+     * Get the maximum number of bytes per second downloaded by all sessions
+     * of the listener together
+     * @return The maximum download rate, 0 if not limited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second downloaded by all sessions
+     * of the listener together
+     * @param maxDownloadRate The maximum download rate, 0 to disable the limit
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * Get the maximum number of bytes per second uploaded by all sessions
+     * of the listener together
+     * @return The maximum upload rate, 0 if not limited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum number of bytes per second uploaded by all sessions
+     * of the listener together
+     * @param maxUploadRate The maximum upload rate, 0 to disable the limit
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * Get the send buffer size of control connections
+     * @return The send buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Set the send buffer size (SO_SNDBUF) of control connections
+     * @param sendBufferSize The send buffer size in bytes, 0 for the
+     *   operating system default
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Get the receive buffer size of control connections
+     * @return The receive buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Set the receive buffer size (SO_RCVBUF) of control connections.
+     * Defaults to 512 bytes, which is plenty for FTP commands.
+     * @param receiveBufferSize The receive buffer size in bytes, 0 for the
+     *   operating system default
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Get the size of the buffer control connections are initially read
+     * into
+     * @return The read buffer size in bytes
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * Set the size of the buffer control connections are initially read
+     * into. The buffer grows for larger reads and shrinks again for smaller
+     * ones. Defaults to 2048 bytes.
+     * @param readBufferSize The read buffer size in bytes
+     */
+    public void setReadBufferSize(int readBufferSize) {
+        if (readBufferSize <= 0) {
+            throw new FtpServerConfigurationException(
+                    "Read buffer size must be positive");
+        }
+        this.readBufferSize = readBufferSize;
+    }
+
+    /**
+     * Is Nagle's algorithm disabled for control connections?
+     * @return true if TCP_NODELAY is set
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Set whether Nagle's algorithm should be disabled (TCP_NODELAY) for
+     * control connections, sending replies without delay.
+     * @param tcpNoDelay true to set TCP_NODELAY
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Get the traffic class of control connections
+     * @return The traffic class, -1 for the operating system default
+     */
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Set the traffic class (IP_TOS) of control connections, for example
+     * 0x10 for low delay.
+     * @param trafficClass The traffic class, -1 for the operating system
+     *   default
+     */
+    public void setTrafficClass(int trafficClass) {
+        if (trafficClass < -1 || trafficClass > 255) {
+            throw new FtpServerConfigurationException(
+                    "Traffic class must be between 0 and 255, or -1");
+        }
+        this.trafficClass = trafficClass;
+    }
+
     /**
      * @deprecated Replaced by the IpFilter.    
      * Retrieves the {@link InetAddress} for which listeners created by this factory blocks
@@ -58,6 +58,20 @@ public abstract class AbstractListener implements Listener {
 
     private DataConnectionConfiguration dataConnectionConfig;
 
+    private int maxDownloadRate;
+
+    private int maxUploadRate;
+
+    private int sendBufferSize;
+
+    private int receiveBufferSize;
+
+    private int readBufferSize;
+
+    private boolean tcpNoDelay;
+
+    private int trafficClass;
+
     /**
      * @deprecated Use the constructor with IpFilter instead. 
      * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
@@ -66,8 +80,39 @@ public abstract class AbstractListener implements Listener {
     public AbstractListener(String serverAddress, int port, boolean implicitSsl, 
             SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig,
             int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets) {
+        // no rate limits and the default socket options of ListenerFactory
+        this(serverAddress, port, implicitSsl, sslConfiguration,
+                dataConnectionConfig, idleTimeout, blockedAddresses,
+                blockedSubnets, 0, 0, 0, 512, 2048, false, -1);
+    }
+
+    /**
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    public AbstractListener(String serverAddress, int port, boolean implicitSsl, 
+            SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig,
+            int idleTimeout, IpFilter ipFilter) {
+        // no rate limits and the default socket options of ListenerFactory
+        this(serverAddress, port, implicitSsl, sslConfiguration,
+                dataConnectionConfig, idleTimeout, ipFilter, 0, 0, 0, 512,
+                2048, false, -1);
+    }
+
+    /**
+     * @deprecated Use the constructor with IpFilter instead. 
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    @Deprecated
+    public AbstractListener(String serverAddress, int port, boolean implicitSsl, 
+            SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig,
+            int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets,
+            int maxDownloadRate, int maxUploadRate, int sendBufferSize,
+            int receiveBufferSize, int readBufferSize, boolean tcpNoDelay,
+            int trafficClass) {
     	this(serverAddress, port, implicitSsl, sslConfiguration, 
-    		dataConnectionConfig, idleTimeout, createBlackListFilter(blockedAddresses, blockedSubnets));
+    		dataConnectionConfig, idleTimeout, createBlackListFilter(blockedAddresses, blockedSubnets),
+    		maxDownloadRate, maxUploadRate, sendBufferSize, receiveBufferSize,
+    		readBufferSize, tcpNoDelay, trafficClass);
     	this.blockedAddresses = blockedAddresses;
     	this.blockedSubnets = blockedSubnets;
     }
@@ -77,7 +122,9 @@ public abstract class AbstractListener implements Listener {
      */
     public AbstractListener(String serverAddress, int port, boolean implicitSsl, 
             SslConfiguration sslConfiguration, DataConnectionConfiguration dataConnectionConfig,
-            int idleTimeout, IpFilter ipFilter) {
+            int idleTimeout, IpFilter ipFilter, int maxDownloadRate,
+            int maxUploadRate, int sendBufferSize, int receiveBufferSize,
+            int readBufferSize, boolean tcpNoDelay, int trafficClass) {
         this.serverAddress = serverAddress;
         this.port = port;
         this.implicitSsl = implicitSsl;
@@ -85,6 +132,13 @@ public abstract class AbstractListener implements Listener {
         this.ssl = sslConfiguration;
         this.idleTimeout = idleTimeout;
         this.ipFilter = ipFilter;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.readBufferSize = readBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.trafficClass = trafficClass;
     }
     
     /**
@@ -163,6 +217,68 @@ public abstract class AbstractListener implements Listener {
         return idleTimeout;
     }
 
+    /**
+     * Get the maximum number of bytes per second downloaded by all sessions
+     * of this listener together
+     * @return The maximum download rate, 0 if not limited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Get the maximum number of bytes per second uploaded by all sessions
+     * of this listener together
+     * @return The maximum upload rate, 0 if not limited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Get the send buffer size (SO_SNDBUF) of control connections
+     * @return The send buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Get the receive buffer size (SO_RCVBUF) of control connections
+     * @return The receive buffer size in bytes, 0 for the operating system
+     *         default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Get the size of the buffer control connections are initially read
+     * into
+     * @return The read buffer size in bytes
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * Should Nagle's algorithm be disabled (TCP_NODELAY) for control
+     * connections?
+     * @return true if TCP_NODELAY is set
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Get the traffic class (IP_TOS) of control connections
+     * @return The traffic class, -1 for the operating system default
+     */
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
     /**
      * Retrives the {@link InetAddress} for which this listener blocks
      * connections
@@ -56,7 +56,12 @@ public class FtpHandlerAdapter implements IoHandler {
     public void messageReceived(IoSession session, Object message)
             throws Exception {
         FtpIoSession ftpSession = new FtpIoSession(session, context);
-        FtpRequest request = new DefaultFtpRequest(message.toString());
+        FtpRequest request;
+        if (message instanceof FtpRequest) {
+            request = (FtpRequest) message;
+        } else {
+            request = new DefaultFtpRequest(message.toString());
+        }
 
         ftpHandler.messageReceived(ftpSession, request);
     }
@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.listener.nio;
 
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.slf4j.Logger;
@@ -67,21 +68,17 @@ public class FtpLoggingFilter extends LoggingFilter {
     @Override
     public void messageReceived(NextFilter nextFilter, IoSession session,
             Object message) throws Exception {
-        String request = (String) message;
-
-        String logMessage;
-        if (maskPassword) {
-
-            if (request.trim().toUpperCase().startsWith("PASS ")) {
+        if (logger.isInfoEnabled()) {
+            String logMessage;
+            if (maskPassword && message instanceof FtpRequest
+                    && "PASS".equals(((FtpRequest) message).getCommand())) {
                 logMessage = "PASS *****";
             } else {
-                logMessage = request;
+                logMessage = message.toString();
             }
-        } else {
-            logMessage = request;
-        }
 
-        logger.info("RECEIVED: {}", logMessage);
+            logger.info("RECEIVED: {}", logMessage);
+        }
         nextFilter.messageReceived(session, message);
     }
 
@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoderAdapter;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Decodes the command lines sent by the client directly into
+ * {@link DefaultFtpRequest}s. Lines end with <code>\n</code> and are trimmed
+ * and split into command and argument the same way as
+ * {@link DefaultFtpRequest#DefaultFtpRequest(String)} does.
+ * 
+ * Commands of up to eight ASCII characters are packed into a
+ * <code>long</code> and looked up in a table of the commands already seen,
+ * so that known commands are resolved to their {@link Command} without
+ * creating any strings. Only the argument is decoded into a new string.
+ * Other commands are looked up in the {@link CommandFactory} and added to the
+ * table if found.
+ * 
+ * Lines longer than the max length are discarded up to the next line ending
+ * and reported as a {@link RecoverableProtocolDecoderException}, the session
+ * can go on with the following commands.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpRequestDecoder extends ProtocolDecoderAdapter {
+
+    private static final AttributeKey CONTEXT = new AttributeKey(
+            FtpRequestDecoder.class, "context");
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The longest command that can be packed into a long
+     */
+    private static final int MAX_PACKED_LENGTH = 8;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * A known command, with its name as returned by
+     * {@link DefaultFtpRequest#getCommand()}
+     */
+    private static class CommandEntry {
+        private final String name;
+
+        private final Command command;
+
+        public CommandEntry(String name, Command command) {
+            this.name = name;
+            this.command = command;
+        }
+    }
+
+    /**
+     * Immutable open addressing hash table from packed commands to
+     * {@link CommandEntry}s. Never modified once published, adding a command
+     * creates a new table.
+     */
+    private static class CommandTable {
+        private final long[] keys;
+
+        private final CommandEntry[] entries;
+
+        private final int size;
+
+        public CommandTable(int capacity, int size) {
+            keys = new long[capacity];
+            entries = new CommandEntry[capacity];
+            this.size = size;
+        }
+
+        public CommandEntry get(long key) {
+            int mask = keys.length - 1;
+            for (int i = index(key, mask); entries[i] != null; i = (i + 1)
+                    & mask) {
+                if (keys[i] == key) {
+                    return entries[i];
+                }
+            }
+            return null;
+        }
+
+        public CommandTable with(long key, CommandEntry entry) {
+            int capacity = keys.length;
+
+            // keep at least half of the slots free
+            if ((size + 1) * 2 > capacity) {
+                capacity *= 2;
+            }
+
+            CommandTable table = new CommandTable(capacity, size + 1);
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null) {
+                    table.put(keys[i], entries[i]);
+                }
+            }
+            table.put(key, entry);
+            return table;
+        }
+
+        private void put(long key, CommandEntry entry) {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (entries[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            entries[i] = entry;
+        }
+
+        private static int index(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+
+    /**
+     * The decoding state of a single session
+     */
+    private static class Context {
+        private byte[] line = new byte[INITIAL_BUFFER_SIZE];
+
+        private int length = 0;
+
+        private boolean discarding = false;
+
+        private char[] chars;
+
+        private CharsetDecoder decoder;
+
+        public void append(IoBuffer in, int count) {
+            if (length + count > line.length) {
+                byte[] newLine = new byte[Math.max(length + count,
+                        line.length * 2)];
+                System.arraycopy(line, 0, newLine, 0, length);
+                line = newLine;
+            }
+            in.get(line, length, count);
+            length += count;
+        }
+
+        public char[] getChars(int count) {
+            if (chars == null || chars.length < count) {
+                chars = new char[Math.max(count, line.length)];
+            }
+            return chars;
+        }
+
+        public CharsetDecoder getDecoder() {
+            if (decoder == null) {
+                decoder = CHARSET.newDecoder();
+            }
+            return decoder;
+        }
+    }
+
+    private final CommandFactory commandFactory;
+
+    private final int maxLineLength;
+
+    private volatile CommandTable commands = new CommandTable(64, 0);
+
+    /**
+     * Create a decoder
+     * @param commandFactory The factory used to look up commands
+     * @param maxLineLength The maximum length of a line in bytes, including
+     *   the line ending
+     */
+    public FtpRequestDecoder(final CommandFactory commandFactory,
+            final int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException(
+                    "Max line length must be a positive number: "
+                            + maxLineLength);
+        }
+        this.commandFactory = commandFactory;
+        this.maxLineLength = maxLineLength;
+    }
+
+    public void decode(IoSession session, IoBuffer in,
+            ProtocolDecoderOutput out) throws Exception {
+        Context ctx = getContext(session);
+
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int limit = in.limit();
+
+            int eol = -1;
+            for (int i = start; i < limit; i++) {
+                if (in.get(i) == '\n') {
+                    eol = i;
+                    break;
+                }
+            }
+
+            int end = eol == -1 ? limit : eol + 1;
+            int count = end - start;
+
+            if (ctx.discarding || ctx.length + count > maxLineLength) {
+                // skip up to the end of the line, the error is reported once
+                // the whole line is gone so that the reply comes in order
+                in.position(end);
+                ctx.length = 0;
+                ctx.discarding = eol == -1;
+
+                if (!ctx.discarding) {
+                    throw new RecoverableProtocolDecoderException(
+                            "Line is longer than " + maxLineLength + " bytes");
+                }
+            } else {
+                ctx.append(in, count);
+
+                if (eol != -1) {
+                    int length = ctx.length;
+                    ctx.length = 0;
+                    out.write(parse(ctx, length));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dispose(IoSession session) throws Exception {
+        session.removeAttribute(CONTEXT);
+    }
+
+    private Context getContext(IoSession session) {
+        Context ctx = (Context) session.getAttribute(CONTEXT);
+        if (ctx == null) {
+            ctx = new Context();
+            session.setAttribute(CONTEXT, ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * Parse a complete line into a request
+     */
+    private DefaultFtpRequest parse(Context ctx, int length)
+            throws CharacterCodingException {
+        byte[] line = ctx.line;
+
+        // trim, bytes up to space are the same characters in UTF-8
+        int start = 0;
+        int end = length;
+        while (start < end && (line[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (line[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+
+        int verbEnd = start;
+        while (verbEnd < end && line[verbEnd] != ' ') {
+            verbEnd++;
+        }
+
+        String argument = null;
+        if (verbEnd + 1 < end) {
+            argument = decodeString(ctx, verbEnd + 1, end);
+        }
+
+        long key = pack(line, start, verbEnd);
+        if (key != 0) {
+            CommandEntry entry = commands.get(key);
+            if (entry != null) {
+                String verb;
+                if (entry.name.length() == verbEnd - start
+                        && matches(line, start, entry.name)) {
+                    // sent exactly as the command name, no need for a new
+                    // string
+                    verb = entry.name;
+                } else {
+                    verb = decodeString(ctx, start, verbEnd);
+                }
+                return new DefaultFtpRequest(verb, entry.name, argument,
+                        entry.command);
+            }
+        }
+
+        // not seen before, parse and look up the same way as
+        // DefaultFtpRequest
+        String verb = decodeString(ctx, start, verbEnd);
+        String name = verb.toUpperCase();
+        if (name.length() > 0 && name.charAt(0) == 'X') {
+            name = name.substring(1);
+        }
+
+        Command command = commandFactory.getCommand(name);
+        if (command != null && key != 0) {
+            addCommand(key, name, command);
+        }
+
+        return new DefaultFtpRequest(verb, name, argument, command);
+    }
+
+    /**
+     * Pack a command, upper cased and without any X prefix, into a long
+     * @return The packed command, or 0 if the command can not be packed
+     */
+    private static long pack(byte[] line, int start, int end) {
+        if (end - start > 1 && (line[start] == 'X' || line[start] == 'x')) {
+            start++;
+        }
+
+        int length = end - start;
+        if (length == 0 || length > MAX_PACKED_LENGTH) {
+            return 0;
+        }
+
+        long key = 0;
+        for (int i = start; i < end; i++) {
+            int b = line[i] & 0xff;
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            } else if (b <= ' ' || b >= 0x7f) {
+                return 0;
+            }
+            key = (key << 8) | b;
+        }
+
+        if (key == 'X') {
+            // a single X is an empty command
+            return 0;
+        }
+        return key;
+    }
+
+    private static boolean matches(byte[] line, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (line[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void addCommand(long key, String name,
+            Command command) {
+        if (commands.get(key) == null) {
+            commands = commands.with(key, new CommandEntry(name, command));
+        }
+    }
+
+    /**
+     * Decode bytes as UTF-8, with a fast path for plain ASCII
+     */
+    private static String decodeString(Context ctx, int start, int end)
+            throws CharacterCodingException {
+        byte[] line = ctx.line;
+        char[] chars = ctx.getChars(end - start);
+
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+            if (b < 0) {
+                return ctx.getDecoder().decode(
+                        ByteBuffer.wrap(line, start, end - start)).toString();
+            }
+            chars[i - start] = (char) b;
+        }
+        return new String(chars, 0, end - start);
+    }
+}
@@ -1,54 +1,164 @@
 /*
- *  Licensed to the Apache Software Foundation (ASF) under one
- *  or more contributor license agreements.  See the NOTICE file
- *  distributed with this work for additional information
- *  regarding copyright ownership.  The ASF licenses this file
- *  to you under the Apache License, Version 2.0 (the
- *  "License"); you may not use this file except in compliance
- *  with the License.  You may obtain a copy of the License at
- *  
- *    http://www.apache.org/licenses/LICENSE-2.0
- *  
- *  Unless required by applicable law or agreed to in writing,
- *  software distributed under the License is distributed on an
- *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- *  KIND, either express or implied.  See the License for the
- *  specific language governing permissions and limitations
- *  under the License. 
- *  
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
  */
+
+
 package org.apache.ftpserver.listener.nio;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
 import org.apache.mina.filter.codec.ProtocolEncoderOutput;
-import org.apache.mina.filter.codec.demux.MessageEncoder;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * A {@link MessageEncoder} that encodes {@link FtpReply}.
+ * Encodes {@link FtpReply}s as UTF-8.
+ * 
+ * Constant replies, where the message contains no variables, are only
+ * encoded once. The encoded bytes are kept as a read-only buffer and shared
+ * by all sessions. Other replies are encoded by an encoder confined to the
+ * current thread, into a reused scratch buffer which is then copied into an
+ * exactly sized buffer.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class FtpResponseEncoder extends ProtocolEncoderAdapter {
-    private static final CharsetEncoder ENCODER = Charset.forName("UTF-8")
-            .newEncoder();
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Upper bound for the number of cached replies, in case a message
+     * resource returns new messages all the time
+     */
+    private static final int MAX_CACHED_REPLIES = 1024;
+
+    /**
+     * Larger scratch buffers are not kept between replies
+     */
+    private static final int MAX_SCRATCH_SIZE = 8192;
+
+    /**
+     * The encoded form of a constant reply
+     */
+    private static class CachedReply {
+        private final int code;
+
+        private final IoBuffer buffer;
+
+        public CachedReply(int code, IoBuffer buffer) {
+            this.code = code;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * The encoder and scratch buffer of a single thread
+     */
+    private static class ThreadEncoder {
+        private final CharsetEncoder encoder = CHARSET.newEncoder();
+
+        private ByteBuffer scratch = ByteBuffer.allocate(1024);
+    }
+
+    private static final ThreadLocal<ThreadEncoder> ENCODERS = new ThreadLocal<ThreadEncoder>() {
+        @Override
+        protected ThreadEncoder initialValue() {
+            return new ThreadEncoder();
+        }
+    };
+
+    /**
+     * Constant replies, keyed by the message
+     */
+    private final ConcurrentMap<String, CachedReply> cache = new ConcurrentHashMap<String, CachedReply>();
 
     public void encode(IoSession session, Object message,
             ProtocolEncoderOutput out) throws Exception {
-        String value = message.toString();
+        if (message instanceof LocalizedFtpReply
+                && ((LocalizedFtpReply) message).isConstant()) {
+            LocalizedFtpReply reply = (LocalizedFtpReply) message;
+
+            CachedReply cached = cache.get(reply.getMessage());
+            if (cached == null && cache.size() < MAX_CACHED_REPLIES) {
+                cached = new CachedReply(reply.getCode(), encode(
+                        reply.toString()).asReadOnlyBuffer());
+                CachedReply existing = cache.putIfAbsent(reply.getMessage(),
+                        cached);
+                if (existing != null) {
+                    cached = existing;
+                }
+            }
+
+            // the same message might be used with different codes, only
+            // the first one is cached
+            if (cached != null && cached.code == reply.getCode()) {
+                out.write(cached.buffer.duplicate());
+                return;
+            }
+        }
+
+        out.write(encode(message.toString()));
+    }
+
+    /**
+     * Encode using the encoder of the current thread
+     */
+    private static IoBuffer encode(String value)
+            throws CharacterCodingException {
+        ThreadEncoder threadEncoder = ENCODERS.get();
+        CharsetEncoder encoder = threadEncoder.encoder;
 
-        IoBuffer buf = IoBuffer.allocate(value.length()).setAutoExpand(true);
+        int maxLength = (int) Math.ceil(value.length()
+                * encoder.maxBytesPerChar());
+        ByteBuffer bytes = threadEncoder.scratch;
+        if (bytes.capacity() < maxLength) {
+            bytes = ByteBuffer.allocate(maxLength);
+            if (maxLength <= MAX_SCRATCH_SIZE) {
+                threadEncoder.scratch = bytes;
+            }
+        }
+        bytes.clear();
 
-        buf.putString(value, ENCODER);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), bytes,
+                true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(bytes);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        bytes.flip();
 
+        IoBuffer buf = IoBuffer.allocate(bytes.remaining());
+        buf.put(bytes);
         buf.flip();
-        out.write(buf);
+        return buf;
     }
 }
@@ -19,13 +19,13 @@
  */
 package org.apache.ftpserver.listener.nio;
 
-import java.nio.charset.Charset;
-
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.impl.DefaultConnectionConfig;
+import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolEncoder;
-import org.apache.mina.filter.codec.textline.TextLineDecoder;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -35,11 +35,21 @@ import org.apache.mina.filter.codec.textline.TextLineDecoder;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class FtpServerProtocolCodecFactory implements ProtocolCodecFactory {
-    private ProtocolDecoder decoder = new TextLineDecoder(Charset
-            .forName("UTF-8"));
+    private final ProtocolDecoder decoder;
 
     private ProtocolEncoder encoder = new FtpResponseEncoder();
 
+    public FtpServerProtocolCodecFactory(final FtpServerContext context) {
+        int maxCommandLength = DefaultConnectionConfig.DEFAULT_MAX_COMMAND_LENGTH;
+        ConnectionConfig connectionConfig = context.getConnectionConfig();
+        if (connectionConfig instanceof DefaultConnectionConfig) {
+            maxCommandLength = ((DefaultConnectionConfig) connectionConfig)
+                    .getMaxCommandLength();
+        }
+        decoder = new FtpRequestDecoder(context.getCommandFactory(),
+                maxCommandLength);
+    }
+
     public ProtocolDecoder getDecoder(IoSession session) throws Exception {
         return decoder;
     }
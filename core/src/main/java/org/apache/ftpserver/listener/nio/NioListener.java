@@ -103,6 +103,41 @@ public class NioListener extends AbstractListener {
                 idleTimeout, ipFilter);   
     }
 
+    /**
+     * @deprecated Use the constructor with IpFilter instead. 
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    @Deprecated
+    public NioListener(String serverAddress, int port,
+            boolean implicitSsl,
+            SslConfiguration sslConfiguration,
+            DataConnectionConfiguration dataConnectionConfig, 
+            int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets,
+            int maxDownloadRate, int maxUploadRate, int sendBufferSize,
+            int receiveBufferSize, int readBufferSize, boolean tcpNoDelay,
+            int trafficClass) {
+        super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, 
+                idleTimeout, blockedAddresses, blockedSubnets, maxDownloadRate, maxUploadRate,
+                sendBufferSize, receiveBufferSize, readBufferSize, tcpNoDelay,
+                trafficClass);   
+    }
+
+    /**
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    public NioListener(String serverAddress, int port,
+            boolean implicitSsl,
+            SslConfiguration sslConfiguration,
+            DataConnectionConfiguration dataConnectionConfig, 
+            int idleTimeout, IpFilter ipFilter, int maxDownloadRate,
+            int maxUploadRate, int sendBufferSize, int receiveBufferSize,
+            int readBufferSize, boolean tcpNoDelay, int trafficClass) {
+        super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, 
+                idleTimeout, ipFilter, maxDownloadRate, maxUploadRate,
+                sendBufferSize, receiveBufferSize, readBufferSize, tcpNoDelay,
+                trafficClass);   
+    }
+
     /**
      * @see Listener#start(FtpServerContext)
      */
@@ -126,12 +161,21 @@ public class NioListener extends AbstractListener {
             }
     
             acceptor.setReuseAddress(true);
-            acceptor.getSessionConfig().setReadBufferSize(2048);
+            acceptor.getSessionConfig().setReadBufferSize(getReadBufferSize());
             acceptor.getSessionConfig().setIdleTime(IdleStatus.BOTH_IDLE,
                     getIdleTimeout());
-            // Decrease the default receiver buffer size
-            ((SocketSessionConfig) acceptor.getSessionConfig())
-                    .setReceiveBufferSize(512);
+            SocketSessionConfig sessionConfig = (SocketSessionConfig) acceptor
+                    .getSessionConfig();
+            if (getReceiveBufferSize() > 0) {
+                sessionConfig.setReceiveBufferSize(getReceiveBufferSize());
+            }
+            if (getSendBufferSize() > 0) {
+                sessionConfig.setSendBufferSize(getSendBufferSize());
+            }
+            sessionConfig.setTcpNoDelay(isTcpNoDelay());
+            if (getTrafficClass() != -1) {
+                sessionConfig.setTrafficClass(getTrafficClass());
+            }
     
             MdcInjectionFilter mdcFilter = new MdcInjectionFilter();
     
@@ -146,7 +190,7 @@ public class NioListener extends AbstractListener {
             acceptor.getFilterChain().addLast("threadPool",
                     new ExecutorFilter(context.getThreadPoolExecutor()));
             acceptor.getFilterChain().addLast("codec",
-                    new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
+                    new ProtocolCodecFilter(new FtpServerProtocolCodecFactory(context)));
             acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
             acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
     
@@ -49,6 +49,14 @@ public abstract class AbstractUserManager implements UserManager {
 
     public static final String ATTR_MAX_DOWNLOAD_RATE = "downloadrate";
 
+    public static final String ATTR_MAX_UPLOAD_BURST = "uploadburst";
+
+    public static final String ATTR_MAX_DOWNLOAD_BURST = "downloadburst";
+
+    public static final String ATTR_MAX_TOTAL_UPLOAD_RATE = "totaluploadrate";
+
+    public static final String ATTR_MAX_TOTAL_DOWNLOAD_RATE = "totaldownloadrate";
+
     public static final String ATTR_MAX_LOGIN_NUMBER = "maxloginnumber";
 
     public static final String ATTR_MAX_LOGIN_PER_IP = "maxloginperip";
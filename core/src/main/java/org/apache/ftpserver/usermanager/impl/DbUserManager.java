@@ -21,6 +21,7 @@ package org.apache.ftpserver.usermanager.impl;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -393,9 +394,15 @@ public class DbUserManager extends AbstractUserManager {
                         .getMaxUploadRate());
                 map.put(ATTR_MAX_DOWNLOAD_RATE, transferRateRequest
                         .getMaxDownloadRate());
+                map.put(ATTR_MAX_TOTAL_UPLOAD_RATE, transferRateRequest
+                        .getMaxTotalUploadRate());
+                map.put(ATTR_MAX_TOTAL_DOWNLOAD_RATE, transferRateRequest
+                        .getMaxTotalDownloadRate());
             } else {
                 map.put(ATTR_MAX_UPLOAD_RATE, 0);
                 map.put(ATTR_MAX_DOWNLOAD_RATE, 0);
+                map.put(ATTR_MAX_TOTAL_UPLOAD_RATE, 0);
+                map.put(ATTR_MAX_TOTAL_DOWNLOAD_RATE, 0);
             }
 
             // request that always will succeed
@@ -505,6 +512,16 @@ public class DbUserManager extends AbstractUserManager {
                         .getInt(ATTR_MAX_DOWNLOAD_RATE), rs
                         .getInt(ATTR_MAX_UPLOAD_RATE)));
 
+                // the total rates are optional, to support existing schemas
+                int totalDownloadRate = getOptionalInt(rs,
+                        ATTR_MAX_TOTAL_DOWNLOAD_RATE);
+                int totalUploadRate = getOptionalInt(rs,
+                        ATTR_MAX_TOTAL_UPLOAD_RATE);
+                if (totalDownloadRate > 0 || totalUploadRate > 0) {
+                    authorities.add(new TotalTransferRatePermission(
+                            totalDownloadRate, totalUploadRate));
+                }
+
                 thisUser.setAuthorities(authorities);
             }
             return thisUser;
@@ -515,6 +532,19 @@ public class DbUserManager extends AbstractUserManager {
         }
     }
 
+    /**
+     * Get an integer column, or 0 if the column is not part of the result
+     */
+    private int getOptionalInt(ResultSet rs, String column) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return rs.getInt(i);
+            }
+        }
+        return 0;
+    }
+
     /**
      * Get the user object. Fetch the row from the table.
      */
@@ -98,6 +98,26 @@ import org.slf4j.LoggerFactory;
  *      <td>ftpserver.user.{username}.downloadrate</td>
  *      <td>The maximum number of bytes per second the user is allowed to download files. 0 disables the check.</td>
  * </tr>
+ * <tr>
+ *      <td>ftpserver.user.{username}.uploadburst</td>
+ *      <td>The maximum number of bytes the user can upload at once when the upload rate is limited.
+ *              0 (the default) uses 1/10 of the upload rate.</td>
+ * </tr>
+ * <tr>
+ *      <td>ftpserver.user.{username}.downloadburst</td>
+ *      <td>The maximum number of bytes the user can download at once when the download rate is limited.
+ *              0 (the default) uses 1/10 of the download rate.</td>
+ * </tr>
+ * <tr>
+ *      <td>ftpserver.user.{username}.totaluploadrate</td>
+ *      <td>The maximum number of bytes per second the user is allowed to upload files, shared by all
+ *              sessions of the user. 0 disables the check.</td>
+ * </tr>
+ * <tr>
+ *      <td>ftpserver.user.{username}.totaldownloadrate</td>
+ *      <td>The maximum number of bytes per second the user is allowed to download files, shared by all
+ *              sessions of the user. 0 disables the check.</td>
+ * </tr>
  * </table>
  * 
  * <p>Example:</p>
@@ -277,9 +297,21 @@ public class PropertiesUserManager extends AbstractUserManager {
                     transferRateRequest.getMaxUploadRate());
             userDataProp.setProperty(thisPrefix + ATTR_MAX_DOWNLOAD_RATE,
                     transferRateRequest.getMaxDownloadRate());
+            userDataProp.setProperty(thisPrefix + ATTR_MAX_UPLOAD_BURST,
+                    transferRateRequest.getMaxUploadBurst());
+            userDataProp.setProperty(thisPrefix + ATTR_MAX_DOWNLOAD_BURST,
+                    transferRateRequest.getMaxDownloadBurst());
+            userDataProp.setProperty(thisPrefix + ATTR_MAX_TOTAL_UPLOAD_RATE,
+                    transferRateRequest.getMaxTotalUploadRate());
+            userDataProp.setProperty(thisPrefix + ATTR_MAX_TOTAL_DOWNLOAD_RATE,
+                    transferRateRequest.getMaxTotalDownloadRate());
         } else {
             userDataProp.remove(thisPrefix + ATTR_MAX_UPLOAD_RATE);
             userDataProp.remove(thisPrefix + ATTR_MAX_DOWNLOAD_RATE);
+            userDataProp.remove(thisPrefix + ATTR_MAX_UPLOAD_BURST);
+            userDataProp.remove(thisPrefix + ATTR_MAX_DOWNLOAD_BURST);
+            userDataProp.remove(thisPrefix + ATTR_MAX_TOTAL_UPLOAD_RATE);
+            userDataProp.remove(thisPrefix + ATTR_MAX_TOTAL_DOWNLOAD_RATE);
         }
 
         // request that always will succeed
@@ -440,8 +472,23 @@ public class PropertiesUserManager extends AbstractUserManager {
                 baseKey + ATTR_MAX_UPLOAD_RATE, 0);
         int downloadRate = userDataProp.getInteger(baseKey
                 + ATTR_MAX_DOWNLOAD_RATE, 0);
-
-        authorities.add(new TransferRatePermission(downloadRate, uploadRate));
+        int uploadBurst = userDataProp.getInteger(
+                baseKey + ATTR_MAX_UPLOAD_BURST, 0);
+        int downloadBurst = userDataProp.getInteger(baseKey
+                + ATTR_MAX_DOWNLOAD_BURST, 0);
+
+        authorities.add(new TransferRatePermission(downloadRate, uploadRate,
+                downloadBurst, uploadBurst));
+
+        int totalUploadRate = userDataProp.getInteger(baseKey
+                + ATTR_MAX_TOTAL_UPLOAD_RATE, 0);
+        int totalDownloadRate = userDataProp.getInteger(baseKey
+                + ATTR_MAX_TOTAL_DOWNLOAD_RATE, 0);
+
+        if (totalUploadRate > 0 || totalDownloadRate > 0) {
+            authorities.add(new TotalTransferRatePermission(totalDownloadRate,
+                    totalUploadRate));
+        }
 
         user.setAuthorities(authorities);
 
@@ -35,9 +35,28 @@ public class TransferRatePermission implements Authority {
 
     private int maxUploadRate;
 
+    private int maxDownloadBurst;
+
+    private int maxUploadBurst;
+
     public TransferRatePermission(int maxDownloadRate, int maxUploadRate) {
+        this(maxDownloadRate, maxUploadRate, 0, 0);
+    }
+
+    /**
+     * @param maxDownloadBurst
+     *            The maximum number of bytes sent at once when downloading,
+     *            0 for a default based on the rate
+     * @param maxUploadBurst
+     *            The maximum number of bytes received at once when uploading,
+     *            0 for a default based on the rate
+     */
+    public TransferRatePermission(int maxDownloadRate, int maxUploadRate,
+            int maxDownloadBurst, int maxUploadBurst) {
         this.maxDownloadRate = maxDownloadRate;
         this.maxUploadRate = maxUploadRate;
+        this.maxDownloadBurst = maxDownloadBurst;
+        this.maxUploadBurst = maxUploadBurst;
     }
 
     /**
@@ -49,6 +68,8 @@ public class TransferRatePermission implements Authority {
 
             transferRateRequest.setMaxDownloadRate(maxDownloadRate);
             transferRateRequest.setMaxUploadRate(maxUploadRate);
+            transferRateRequest.setMaxDownloadBurst(maxDownloadBurst);
+            transferRateRequest.setMaxUploadBurst(maxUploadBurst);
 
             return transferRateRequest;
         } else {
@@ -34,6 +34,14 @@ public class TransferRateRequest implements AuthorizationRequest {
 
     private int maxUploadRate = 0;
 
+    private int maxDownloadBurst = 0;
+
+    private int maxUploadBurst = 0;
+
+    private int maxTotalDownloadRate = 0;
+
+    private int maxTotalUploadRate = 0;
+
     /**
      * @return the maxDownloadRate
      */
@@ -64,4 +72,64 @@ public class TransferRateRequest implements AuthorizationRequest {
         this.maxUploadRate = maxUploadRate;
     }
 
+    /**
+     * @return the maxDownloadBurst
+     */
+    public int getMaxDownloadBurst() {
+        return maxDownloadBurst;
+    }
+
+    /**
+     * @param maxDownloadBurst
+     *            the maxDownloadBurst to set
+     */
+    public void setMaxDownloadBurst(int maxDownloadBurst) {
+        this.maxDownloadBurst = maxDownloadBurst;
+    }
+
+    /**
+     * @return the maxUploadBurst
+     */
+    public int getMaxUploadBurst() {
+        return maxUploadBurst;
+    }
+
+    /**
+     * @param maxUploadBurst
+     *            the maxUploadBurst to set
+     */
+    public void setMaxUploadBurst(int maxUploadBurst) {
+        this.maxUploadBurst = maxUploadBurst;
+    }
+
+    /**
+     * @return the maxTotalDownloadRate, shared by all sessions of the user
+     */
+    public int getMaxTotalDownloadRate() {
+        return maxTotalDownloadRate;
+    }
+
+    /**
+     * @param maxTotalDownloadRate
+     *            the maxTotalDownloadRate to set
+     */
+    public void setMaxTotalDownloadRate(int maxTotalDownloadRate) {
+        this.maxTotalDownloadRate = maxTotalDownloadRate;
+    }
+
+    /**
+     * @return the maxTotalUploadRate, shared by all sessions of the user
+     */
+    public int getMaxTotalUploadRate() {
+        return maxTotalUploadRate;
+    }
+
+    /**
+     * @param maxTotalUploadRate
+     *            the maxTotalUploadRate to set
+     */
+    public void setMaxTotalUploadRate(int maxTotalUploadRate) {
+        this.maxTotalUploadRate = maxTotalUploadRate;
+    }
+
 }
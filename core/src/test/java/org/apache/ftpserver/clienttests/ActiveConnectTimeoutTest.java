@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ActiveConnectTimeoutTest extends ClientTestTemplate {
+
+    private static final File TEST_FILE = new File(ROOT_DIR, "test.txt");
+
+    private static final byte[] TEST_DATA = "TESTDATA".getBytes();
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory server = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(server
+                .getListener("default"));
+
+        DataConnectionConfigurationFactory dccFactory = new DataConnectionConfigurationFactory();
+        dccFactory.setActiveConnectTimeout(1);
+
+        listenerFactory.setDataConnectionConfiguration(dccFactory
+                .createDataConnectionConfiguration());
+
+        server.addListener("default", listenerFactory.createListener());
+
+        return server;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        TestUtil.writeDataToFile(TEST_FILE, TEST_DATA);
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    public void testActiveTransfer() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILE.getName(), baos));
+        assertEquals(new String(TEST_DATA), new String(baos.toByteArray()));
+    }
+
+    public void testConnectTimesOut() throws Exception {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+        ServerSocket serverSocket = new ServerSocket(0, 1, localhost);
+        List<Socket> backlog = new ArrayList<Socket>();
+        try {
+            // fill the backlog, so that the server can neither connect nor
+            // be refused
+            while (true) {
+                Socket socket = new Socket();
+                backlog.add(socket);
+                try {
+                    socket.connect(serverSocket.getLocalSocketAddress(), 500);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+            }
+
+            int port = serverSocket.getLocalPort();
+            assertEquals(200, client.sendCommand("PORT 127,0,0,1,"
+                    + (port >> 8) + "," + (port & 0xff)));
+
+            long start = System.currentTimeMillis();
+            assertEquals(150, client.sendCommand("RETR " + TEST_FILE.getName()));
+            assertEquals(425, client.getReply());
+            assertTrue(System.currentTimeMillis() - start < 10000);
+        } finally {
+            for (Socket socket : backlog) {
+                socket.close();
+            }
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HashTest extends ClientTestTemplate {
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "test1.txt");
+
+    private static final File TEST_FILE_WITH_SPACE = new File(ROOT_DIR,
+            "test 2.txt");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static byte[] testData = null;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.clienttests.ClientTestTemplate#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        testData = "TESTDATA".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE1, testData);
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        // byte ranges are only supported for TYPE I
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private static String hash(String algorithm, byte[] data, int off,
+            int len) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        digest.update(data, off, len);
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    private void assertHash(String algorithm, int start, int end,
+            String path) throws Exception {
+        assertEquals("213 " + algorithm + " " + start + "-" + end + " "
+                + hash(algorithm, testData, start, end - start) + " " + path,
+                client.getReplyString().trim());
+    }
+
+    public void testHashDefaultsToSha1() throws Exception {
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("SHA-1", 0, testData.length, "/test1.txt");
+    }
+
+    public void testHashFileNameWithSpace() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE_WITH_SPACE, testData);
+
+        assertEquals(213, client.sendCommand("HASH "
+                + TEST_FILE_WITH_SPACE.getName()));
+        assertHash("SHA-1", 0, testData.length, "/test 2.txt");
+    }
+
+    public void testHashNoFileName() throws Exception {
+        assertEquals(501, client.sendCommand("HASH"));
+    }
+
+    public void testHashNonExistingFile() throws Exception {
+        assertEquals(550, client.sendCommand("HASH foo.txt"));
+    }
+
+    public void testHashDirectory() throws Exception {
+        TEST_DIR1.mkdirs();
+
+        assertEquals(550, client.sendCommand("HASH " + TEST_DIR1.getName()));
+    }
+
+    public void testOptsHashWithoutAlgorithm() throws Exception {
+        assertEquals(200, client.sendCommand("OPTS HASH"));
+        assertEquals("200 SHA-1", client.getReplyString().trim());
+    }
+
+    public void testOptsHashSelectsAlgorithm() throws Exception {
+        assertEquals(200, client.sendCommand("OPTS HASH SHA-256"));
+        assertEquals("200 SHA-256", client.getReplyString().trim());
+
+        assertEquals(200, client.sendCommand("OPTS HASH"));
+        assertEquals("200 SHA-256", client.getReplyString().trim());
+
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("SHA-256", 0, testData.length, "/test1.txt");
+    }
+
+    public void testOptsHashIgnoresCase() throws Exception {
+        assertEquals(200, client.sendCommand("OPTS HASH md5"));
+        assertEquals("200 MD5", client.getReplyString().trim());
+
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("MD5", 0, testData.length, "/test1.txt");
+    }
+
+    public void testOptsHashUnknownAlgorithm() throws Exception {
+        assertEquals(501, client.sendCommand("OPTS HASH FOO"));
+        assertEquals(501, client.sendCommand("OPTS HASH MD5 SHA-1"));
+
+        // the selected algorithm is unchanged
+        assertEquals(200, client.sendCommand("OPTS HASH"));
+        assertEquals("200 SHA-1", client.getReplyString().trim());
+    }
+
+    public void testHashWithRang() throws Exception {
+        // the end of RANG is inclusive, the end in the reply exclusive
+        assertEquals(350, client.sendCommand("RANG 2 5"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("SHA-1", 2, 6, "/test1.txt");
+
+        // the range is only used once
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("SHA-1", 0, testData.length, "/test1.txt");
+    }
+
+    public void testHashWithRangBeyondEndOfFile() throws Exception {
+        assertEquals(350, client.sendCommand("RANG 2 100"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("SHA-1", 2, testData.length, "/test1.txt");
+    }
+
+    public void testHashWithRest() throws Exception {
+        assertEquals(350, client.sendCommand("REST 3"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertHash("SHA-1", 3, testData.length, "/test1.txt");
+    }
+}
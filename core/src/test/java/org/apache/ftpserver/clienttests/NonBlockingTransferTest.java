@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* Large passive transfers and MODE Z uploads through the non-blocking data
+* connection engine
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class NonBlockingTransferTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.bin";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private byte[] testData;
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setNonBlocking(true);
+        return factory;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        testData = new byte[1024 * 1024];
+        new Random(4711).nextBytes(testData);
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.enterLocalPassiveMode();
+    }
+
+    public void testStore() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                testData)));
+
+        TestUtil.assertFileEqual(testData, TEST_FILE);
+    }
+
+    public void testStoreWithRestart() throws Exception {
+        int offset = 100000;
+        byte[] head = new byte[offset];
+        System.arraycopy(testData, 0, head, 0, offset);
+        TestUtil.writeDataToFile(TEST_FILE, head);
+
+        byte[] tail = new byte[testData.length - offset];
+        System.arraycopy(testData, offset, tail, 0, tail.length);
+
+        client.setRestartOffset(offset);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                tail)));
+
+        TestUtil.assertFileEqual(testData, TEST_FILE);
+    }
+
+    public void testAppend() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        assertTrue(client.appendFile(TEST_FILENAME, new ByteArrayInputStream(
+                testData)));
+
+        byte[] expected = new byte[testData.length * 2];
+        System.arraycopy(testData, 0, expected, 0, testData.length);
+        System.arraycopy(testData, 0, expected, testData.length,
+                testData.length);
+        TestUtil.assertFileEqual(expected, TEST_FILE);
+    }
+
+    public void testRetrieve() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        TestUtil.assertArraysEqual(testData, baos.toByteArray());
+    }
+
+    public void testStoreModeZ() throws Exception {
+        // only the server inflates, the client sends the raw bytes
+        assertEquals(200, client.sendCommand("MODE Z"));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(compressed);
+        out.write(testData);
+        out.close();
+
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                compressed.toByteArray())));
+
+        TestUtil.assertFileEqual(testData, TEST_FILE);
+    }
+
+    public void testStoreModeZTruncated() throws Exception {
+        assertEquals(200, client.sendCommand("MODE Z"));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(compressed);
+        out.write(testData);
+        out.close();
+
+        // cut off the end of the zlib stream
+        byte[] truncated = new byte[compressed.size() / 2];
+        System.arraycopy(compressed.toByteArray(), 0, truncated, 0,
+                truncated.length);
+
+        assertFalse(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                truncated)));
+        assertEquals(551, client.getReplyCode());
+    }
+
+    public void testStoreAscii() throws Exception {
+        // only the server translates, the client sends the raw bytes
+        assertEquals(200, client.sendCommand("TYPE A"));
+
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                "foo\r\nbar\r\n".getBytes("UTF-8"))));
+
+        String eol = System.getProperty("line.separator");
+        TestUtil.assertFileEqual(("foo" + eol + "bar" + eol)
+                .getBytes("UTF-8"), TEST_FILE);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.TransferStatistics;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PasvSocketPoolTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final byte[] TEST_DATA = "TESTDATA".getBytes();
+
+    private int passivePort;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory server = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(server
+                .getListener("default"));
+
+        DataConnectionConfigurationFactory dccFactory = new DataConnectionConfigurationFactory();
+
+        passivePort = TestUtil.findFreePort(12444);
+
+        dccFactory.setPassivePorts(passivePort + "-" + (passivePort + 10));
+        dccFactory.setPassiveSocketPoolSize(2);
+
+        listenerFactory.setDataConnectionConfiguration(dccFactory
+                .createDataConnectionConfiguration());
+
+        server.addListener("default", listenerFactory.createListener());
+
+        return server;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.enterLocalPassiveMode();
+    }
+
+    private void waitForPooledSockets(TransferStatistics stats, int expected)
+            throws InterruptedException {
+        for (int i = 0; i < 100
+                && stats.getPassiveSocketPoolAvailable() != expected; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, stats.getPassiveSocketPoolAvailable());
+    }
+
+    public void testTransfersUsePooledSockets() throws Exception {
+        TransferStatistics stats = (TransferStatistics) server
+                .getServerContext().getFtpStatistics();
+
+        // the first PASV creates the pool
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                TEST_DATA)));
+        assertEquals(1, stats.getPassiveSocketPoolMisses());
+        assertEquals(2, stats.getPassiveSocketPoolCapacity());
+
+        for (int i = 0; i < 3; i++) {
+            waitForPooledSockets(stats, 2);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+            assertEquals(new String(TEST_DATA), new String(baos.toByteArray()));
+
+            int port = client.getPassivePort();
+            assertTrue(port >= passivePort && port <= passivePort + 10);
+        }
+
+        assertEquals(3, stats.getPassiveSocketPoolHits());
+        assertEquals(4, stats.getPassiveHistogram().getCount());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>*
+*/
+public class RangTest extends ClientTestTemplate {
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "file1.txt");
+
+    private static final byte[] TEST_DATA1 = "0123456789".getBytes();
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.clienttests.ClientTestTemplate#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    /**
+     * Open a passive data connection, the range must be sent after PASV as
+     * PASV resets any previous range
+     */
+    private Socket openPassiveDataConnection() throws Exception {
+        assertEquals(227, client.sendCommand("PASV"));
+        Matcher matcher = PASV_REPLY.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+
+        String host = matcher.group(1) + "." + matcher.group(2) + "."
+                + matcher.group(3) + "." + matcher.group(4);
+        int port = Integer.parseInt(matcher.group(5)) * 256
+                + Integer.parseInt(matcher.group(6));
+        return new Socket(host, port);
+    }
+
+    public void testNoArgument() throws Exception {
+        assertEquals(501, client.sendCommand("RANG"));
+    }
+
+    public void testInvalidArguments() throws Exception {
+        assertEquals(200, client.sendCommand("TYPE I"));
+
+        assertEquals(501, client.sendCommand("RANG 5"));
+        assertEquals(501, client.sendCommand("RANG 5 2"));
+        assertEquals(501, client.sendCommand("RANG -1 2"));
+        assertEquals(501, client.sendCommand("RANG a b"));
+        assertEquals(501, client.sendCommand("RANG 1 2 3"));
+    }
+
+    public void testAsciiNotSupported() throws Exception {
+        assertEquals(200, client.sendCommand("TYPE A"));
+        assertEquals(504, client.sendCommand("RANG 2 5"));
+    }
+
+    public void testReset() throws Exception {
+        assertEquals(350, client.sendCommand("RANG 1 0"));
+    }
+
+    public void testRetrieveRange() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA1);
+        assertEquals(200, client.sendCommand("TYPE I"));
+
+        Socket socket = openPassiveDataConnection();
+        assertEquals(350, client.sendCommand("RANG 2 5"));
+        assertEquals(150, client.sendCommand("RETR " + TEST_FILE1.getName()));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        InputStream in = socket.getInputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            baos.write(b);
+        }
+        socket.close();
+
+        assertTrue(client.completePendingCommand());
+        assertEquals("2345", new String(baos.toByteArray()));
+    }
+
+    public void testStoreRange() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA1);
+        assertEquals(200, client.sendCommand("TYPE I"));
+
+        Socket socket = openPassiveDataConnection();
+        assertEquals(350, client.sendCommand("RANG 2 4"));
+        assertEquals(150, client.sendCommand("STOR " + TEST_FILE1.getName()));
+
+        OutputStream out = socket.getOutputStream();
+        out.write("abc".getBytes());
+        socket.close();
+
+        assertTrue(client.completePendingCommand());
+
+        // the rest of the file is left untouched
+        TestUtil.assertFileEqual("01abc56789".getBytes(), TEST_FILE1);
+    }
+
+    public void testStoreBeyondRange() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA1);
+        assertEquals(200, client.sendCommand("TYPE I"));
+
+        Socket socket = openPassiveDataConnection();
+        assertEquals(350, client.sendCommand("RANG 2 3"));
+        assertEquals(150, client.sendCommand("STOR " + TEST_FILE1.getName()));
+
+        OutputStream out = socket.getOutputStream();
+        out.write("abc".getBytes());
+        socket.close();
+
+        assertFalse(client.completePendingCommand());
+    }
+}
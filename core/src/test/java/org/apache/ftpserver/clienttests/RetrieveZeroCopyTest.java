@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+* Binary downloads over a clear text data connection go through
+* FileChannel.transferTo, ASCII and MODE Z downloads through the streams.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class RetrieveZeroCopyTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.bin";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    /**
+     * Max number of bytes for the replies written during a download
+     */
+    private static final int MAX_REPLY_BYTES = 512;
+
+    private byte[] testData;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        testData = new byte[1024 * 1024];
+        new Random(4711).nextBytes(testData);
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    private FtpIoSession getSession() {
+        return server.getListener("default").getActiveSessions().iterator()
+                .next();
+    }
+
+    private byte[] retrieve() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+        return baos.toByteArray();
+    }
+
+    private void assertWrittenBytes(long expected, long writtenBytes) {
+        // the written bytes include the replies on the control connection
+        assertTrue("Written bytes " + writtenBytes + ", expected "
+                + expected, writtenBytes >= expected
+                && writtenBytes < expected + MAX_REPLY_BYTES);
+    }
+
+    public void testRetrieve() throws Exception {
+        long writtenBefore = getSession().getWrittenBytes();
+        long downloadedBefore = server.getServerContext().getFtpStatistics()
+                .getTotalDownloadSize();
+
+        TestUtil.assertArraysEqual(testData, retrieve());
+
+        assertWrittenBytes(testData.length, getSession().getWrittenBytes()
+                - writtenBefore);
+        assertEquals(testData.length, server.getServerContext()
+                .getFtpStatistics().getTotalDownloadSize()
+                - downloadedBefore);
+    }
+
+    public void testRetrieveWithRestart() throws Exception {
+        int offset = 100000;
+        long writtenBefore = getSession().getWrittenBytes();
+
+        client.setRestartOffset(offset);
+        byte[] actual = retrieve();
+
+        byte[] expected = new byte[testData.length - offset];
+        System.arraycopy(testData, offset, expected, 0, expected.length);
+        TestUtil.assertArraysEqual(expected, actual);
+
+        assertWrittenBytes(expected.length, getSession().getWrittenBytes()
+                - writtenBefore);
+    }
+
+    public void testAsciiUsesStreams() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, "foo\nbar\n".getBytes("UTF-8"));
+
+        // only the server translates, the client reads the raw bytes
+        assertEquals(200, client.sendCommand("TYPE A"));
+
+        assertEquals("foo\r\nbar\r\n", new String(retrieve(), "UTF-8"));
+    }
+
+    public void testModeZUsesStreams() throws Exception {
+        // only the server compresses, the client reads the raw bytes
+        assertEquals(200, client.sendCommand("MODE Z"));
+
+        byte[] compressed = retrieve();
+        assertTrue(compressed.length != testData.length);
+
+        InflaterInputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        IoUtils.copy(in, baos, 4096);
+        TestUtil.assertArraysEqual(testData, baos.toByteArray());
+    }
+}
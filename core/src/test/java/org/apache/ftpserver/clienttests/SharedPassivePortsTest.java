@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SharedPassivePortsTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final byte[] TEST_DATA = "TESTDATA".getBytes();
+
+    private int passivePort;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory server = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(server
+                .getListener("default"));
+
+        DataConnectionConfigurationFactory dccFactory = new DataConnectionConfigurationFactory();
+
+        passivePort = TestUtil.findFreePort(12444);
+
+        dccFactory.setPassivePorts(String.valueOf(passivePort));
+        dccFactory.setSharedPassivePorts(true);
+
+        listenerFactory.setDataConnectionConfiguration(dccFactory
+                .createDataConnectionConfiguration());
+
+        server.addListener("default", listenerFactory.createListener());
+
+        return server;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.enterLocalPassiveMode();
+    }
+
+    public void testTransfersShareThePort() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                TEST_DATA)));
+        assertEquals(passivePort, client.getPassivePort());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+        assertEquals(passivePort, client.getPassivePort());
+        assertEquals(new String(TEST_DATA), new String(baos.toByteArray()));
+
+        assertEquals(1, client.listFiles().length);
+    }
+
+    private int readFully(Socket socket) throws IOException {
+        try {
+            InputStream in = socket.getInputStream();
+            int count = 0;
+            while (in.read() != -1) {
+                count++;
+            }
+            return count;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Get the port of a PASV reply
+     */
+    private int getPasvPort(String reply) {
+        String[] values = reply.substring(reply.indexOf('(') + 1,
+                reply.indexOf(')')).split(",");
+        return (Integer.parseInt(values[4]) << 8)
+                | Integer.parseInt(values[5]);
+    }
+
+    public void testConcurrentSessionsFromSameAddress() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                TEST_DATA)));
+
+        FTPClient client2 = new FTPClient();
+        client2.connect("localhost", getListenerPort());
+        try {
+            assertTrue(client2.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+            // the first session waits on the only shared port, the second
+            // one is refused
+            assertEquals(227, client.sendCommand("PASV"));
+            assertEquals(passivePort, getPasvPort(client.getReplyString()));
+            assertEquals(425, client2.sendCommand("PASV"));
+
+            Socket data1 = new Socket("localhost", passivePort);
+            assertEquals(150, client.sendCommand("RETR " + TEST_FILENAME));
+            assertEquals(TEST_DATA.length, readFully(data1));
+            assertTrue(client.completePendingCommand());
+
+            // the shared port is free again for the address
+            assertEquals(227, client2.sendCommand("PASV"));
+            assertEquals(passivePort, getPasvPort(client2.getReplyString()));
+
+            Socket data2 = new Socket("localhost", passivePort);
+            assertEquals(150, client2.sendCommand("NLST"));
+            assertEquals(TEST_FILENAME.length() + 2, readFully(data2));
+            assertTrue(client2.completePendingCommand());
+        } finally {
+            client2.disconnect();
+        }
+    }
+
+    public void testConcurrentTransfersFromSameAddress() throws Exception {
+        final int sessions = 5;
+        final byte[][] data = new byte[sessions][];
+        final Throwable[] failures = new Throwable[sessions];
+        Thread[] threads = new Thread[sessions];
+
+        for (int i = 0; i < sessions; i++) {
+            data[i] = ("TESTDATA" + i).getBytes();
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    FTPClient sessionClient = new FTPClient();
+                    try {
+                        sessionClient.connect("localhost", getListenerPort());
+                        assertTrue(sessionClient.login(ADMIN_USERNAME,
+                                ADMIN_PASSWORD));
+                        sessionClient.enterLocalPassiveMode();
+
+                        // a PASV is refused while another session from the
+                        // address waits on the shared port, so retry
+                        String fileName = "test" + index + ".txt";
+                        for (int j = 0; j < 10; j++) {
+                            while (!sessionClient.storeFile(fileName,
+                                    new ByteArrayInputStream(data[index]))) {
+                                assertEquals(425, sessionClient.getReplyCode());
+                                Thread.sleep(10);
+                            }
+
+                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                            while (!sessionClient.retrieveFile(fileName, baos)) {
+                                assertEquals(425, sessionClient.getReplyCode());
+                                Thread.sleep(10);
+                            }
+                            assertEquals(new String(data[index]), new String(
+                                    baos.toByteArray()));
+                        }
+                        sessionClient.disconnect();
+                    } catch (Throwable t) {
+                        failures[index] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < sessions; i++) {
+            threads[i].join(30000);
+            assertFalse(threads[i].isAlive());
+            if (failures[i] != null) {
+                fail("Session " + i + " failed: " + failures[i]);
+            }
+        }
+    }
+}
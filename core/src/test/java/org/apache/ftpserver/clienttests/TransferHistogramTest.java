@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.ftpserver.ftplet.Histogram;
+import org.apache.ftpserver.ftplet.TransferMetric;
+import org.apache.ftpserver.impl.ServerFtpStatistics;
+import org.apache.ftpserver.listener.Listener;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferHistogramTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final byte[] TEST_DATA = new byte[100000];
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private ServerFtpStatistics getStatistics() {
+        return (ServerFtpStatistics) server.getServerContext()
+                .getFtpStatistics();
+    }
+
+    private void assertRecorded(final Histogram histogram, final long count) {
+        assertEquals(count, histogram.getCount());
+        assertTrue(histogram.getMax() >= histogram.getMin());
+        assertTrue(histogram.getPercentile(50) >= histogram.getMin());
+        assertTrue(histogram.getPercentile(50) <= histogram.getMax());
+    }
+
+    public void testUploadRecorded() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                TEST_DATA)));
+
+        ServerFtpStatistics stats = getStatistics();
+        for (TransferMetric metric : TransferMetric.values()) {
+            assertRecorded(stats.getUploadHistogram(metric), 1);
+            assertRecorded(stats.getDownloadHistogram(metric), 0);
+        }
+        assertTrue(stats.getUploadHistogram(TransferMetric.THROUGHPUT)
+                .getMin() > 0);
+
+        Listener listener = server.getListener("default");
+        assertRecorded(stats.getListenerUploadHistogram(listener,
+                TransferMetric.DURATION), 1);
+    }
+
+    public void testDownloadRecorded() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                TEST_DATA)));
+        assertTrue(client.retrieveFile(TEST_FILENAME,
+                new ByteArrayOutputStream()));
+
+        ServerFtpStatistics stats = getStatistics();
+        for (TransferMetric metric : TransferMetric.values()) {
+            assertRecorded(stats.getDownloadHistogram(metric), 1);
+        }
+
+        Listener listener = server.getListener("default");
+        assertRecorded(stats.getListenerDownloadHistogram(listener,
+                TransferMetric.TIME_TO_FIRST_BYTE), 1);
+    }
+
+    public void testListingNotRecorded() throws Exception {
+        client.listFiles();
+
+        for (TransferMetric metric : TransferMetric.values()) {
+            assertRecorded(getStatistics().getDownloadHistogram(metric), 0);
+        }
+    }
+
+    public void testReset() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                TEST_DATA)));
+
+        getStatistics().resetStatisticsCounters();
+
+        assertRecorded(getStatistics().getUploadHistogram(
+                TransferMetric.DURATION), 0);
+        assertRecorded(getStatistics().getListenerUploadHistogram(
+                server.getListener("default"), TransferMetric.DURATION), 0);
+    }
+}
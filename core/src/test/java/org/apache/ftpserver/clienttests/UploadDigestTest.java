@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.apache.ftpserver.ftplet.UploadDigestSession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class UploadDigestTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static byte[] testData = null;
+
+    private volatile Map<String, String> uploadDigests;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        serverFactory.setUploadDigests(new String[] { "MD5", "SHA-256" });
+
+        Map<String, Ftplet> ftplets = new HashMap<String, Ftplet>();
+        ftplets.put("digests", new DefaultFtplet() {
+            @Override
+            public FtpletResult onUploadEnd(FtpSession session,
+                    FtpRequest request) throws FtpException, IOException {
+                uploadDigests = ((UploadDigestSession) session)
+                        .getUploadDigests();
+                return super.onUploadEnd(session, request);
+            }
+        });
+        serverFactory.setFtplets(ftplets);
+
+        return serverFactory;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.clienttests.ClientTestTemplate#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        testData = "TESTDATA".getBytes("UTF-8");
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    public void testDigestsAvailableToFtplets() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                testData)));
+
+        // the Ftplets have been called once the next command is executed
+        assertEquals(200, client.sendCommand("NOOP"));
+
+        assertEquals(2, uploadDigests.size());
+        assertEquals(DigestUtils.md5Hex(testData), uploadDigests.get("MD5"));
+        assertEquals(new String(Hex.encodeHex(MessageDigest.getInstance(
+                "SHA-256").digest(testData))), uploadDigests.get("SHA-256"));
+    }
+
+    public void testMd5AfterUpload() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                testData)));
+
+        assertEquals(251, client.sendCommand("MD5 " + TEST_FILENAME));
+        assertTrue(client.getReplyString().indexOf(
+                DigestUtils.md5Hex(testData).toUpperCase()) > -1);
+    }
+
+    public void testNoDigestsForAppend() throws Exception {
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                testData)));
+        assertTrue(client.appendFile(TEST_FILENAME, new ByteArrayInputStream(
+                testData)));
+        assertEquals(200, client.sendCommand("NOOP"));
+
+        assertTrue(uploadDigests.isEmpty());
+    }
+}
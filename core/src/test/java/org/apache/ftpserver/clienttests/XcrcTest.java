@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class XcrcTest extends ClientTestTemplate {
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "test1.txt");
+
+    private static final File TEST_FILE_WITH_SPACE = new File(ROOT_DIR,
+            "test 2.txt");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static byte[] testData = null;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.clienttests.ClientTestTemplate#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        testData = "TESTDATA".getBytes("UTF-8");
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private static String crc(byte[] data, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        String hex = Long.toHexString(crc.getValue()).toUpperCase();
+        while (hex.length() < 8) {
+            hex = "0" + hex;
+        }
+        return hex;
+    }
+
+    public void testXcrc() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, testData);
+
+        assertEquals(250, client.sendCommand("XCRC " + TEST_FILE1.getName()));
+        assertEquals("250 " + crc(testData, 0, testData.length), client
+                .getReplyString().trim());
+    }
+
+    public void testXcrcRange() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, testData);
+
+        assertEquals(250, client.sendCommand("XCRC " + TEST_FILE1.getName()
+                + " 2 6"));
+        assertEquals("250 " + crc(testData, 2, 4), client.getReplyString()
+                .trim());
+
+        // from the start position to the end of the file
+        assertEquals(250, client.sendCommand("XCRC " + TEST_FILE1.getName()
+                + " 2"));
+        assertEquals("250 " + crc(testData, 2, testData.length - 2), client
+                .getReplyString().trim());
+    }
+
+    public void testXcrcQuotedFileName() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE_WITH_SPACE, testData);
+
+        assertEquals(250, client.sendCommand("XCRC \""
+                + TEST_FILE_WITH_SPACE.getName() + "\" 0 4"));
+        assertEquals("250 " + crc(testData, 0, 4), client.getReplyString()
+                .trim());
+    }
+
+    public void testXcrcFileNameWithSpace() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE_WITH_SPACE, testData);
+
+        // "2.txt" is not a number, so it is part of the name
+        assertEquals(250, client.sendCommand("XCRC "
+                + TEST_FILE_WITH_SPACE.getName()));
+        assertEquals("250 " + crc(testData, 0, testData.length), client
+                .getReplyString().trim());
+    }
+
+    public void testXsha1() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, testData);
+
+        assertEquals(250, client.sendCommand("XSHA1 " + TEST_FILE1.getName()));
+        assertEquals("250 " + DigestUtils.shaHex(testData).toUpperCase(),
+                client.getReplyString().trim());
+    }
+
+    public void testXsha256Range() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, testData);
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(testData, 1, 3);
+        String expected = new String(Hex.encodeHex(digest.digest()))
+                .toUpperCase();
+
+        assertEquals(250, client.sendCommand("XSHA256 " + TEST_FILE1.getName()
+                + " 1 4"));
+        assertEquals("250 " + expected, client.getReplyString().trim());
+    }
+
+    public void testXcrcNoFileName() throws Exception {
+        assertEquals(501, client.sendCommand("XCRC"));
+    }
+
+    public void testXcrcInvalidRange() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, testData);
+
+        assertEquals(501, client.sendCommand("XCRC \"" + TEST_FILE1.getName()
+                + "\" 6 2"));
+    }
+
+    public void testXcrcNonExistingFile() throws Exception {
+        assertEquals(550, client.sendCommand("XCRC " + TEST_FILE1.getName()));
+    }
+
+    public void testXcrcDirectory() throws Exception {
+        TEST_DIR1.mkdirs();
+
+        assertEquals(550, client.sendCommand("XCRC " + TEST_DIR1.getName()));
+    }
+}
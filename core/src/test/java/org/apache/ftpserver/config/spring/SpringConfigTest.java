@@ -66,6 +66,7 @@ public class SpringConfigTest extends TestCase {
         assertEquals(2222, ((NioListener) listener).getPort());
         assertEquals(InetAddress.getByName("1.2.3.4"), InetAddress.getByName(((NioListener) listener)
                 .getServerAddress()));
+        assertEquals(4096, ((NioListener) listener).getReadBufferSize());
         assertEquals(100, ((NioListener) listener)
                 .getDataConnectionConfiguration().getIdleTime());
         assertTrue(((NioListener) listener)
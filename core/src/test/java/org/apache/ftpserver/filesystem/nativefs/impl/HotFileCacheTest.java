@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HotFileCacheTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File TEST_FILE1 = new File(TEST_TMP_DIR, "file1");
+
+    private static final File TEST_FILE2 = new File(TEST_TMP_DIR, "file2");
+
+    private static final File TEST_FILE3 = new File(TEST_TMP_DIR, "file3");
+
+    protected void setUp() throws Exception {
+        cleanTmpDirs();
+
+        TEST_TMP_DIR.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        cleanTmpDirs();
+    }
+
+    private void cleanTmpDirs() throws IOException {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+
+    private static void write(final File file, final String content)
+            throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Download a file for the first time, which is not cached yet
+     */
+    private static void admit(final HotFileCache cache, final File file)
+            throws IOException {
+        assertNull(cache.createInputStream(file, 0));
+    }
+
+    private static String read(final HotFileCache cache, final File file,
+            final long offset) throws IOException {
+        InputStream in = cache.createInputStream(file, offset);
+        assertNotNull(in);
+        return read(in);
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buff = new byte[3];
+        int count;
+        while ((count = in.read(buff)) != -1) {
+            bos.write(buff, 0, count);
+        }
+        in.close();
+        return new String(bos.toByteArray(), "UTF-8");
+    }
+
+    public void testHit() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 100);
+
+        admit(cache, TEST_FILE1);
+        assertEquals("hello world", read(cache, TEST_FILE1, 0));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        assertEquals("hello world", read(cache, TEST_FILE1, 0));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1.0 / 3, cache.getHitRate(), 0.0001);
+        assertEquals(1, cache.getFileCount());
+        assertEquals(11, cache.getSize());
+    }
+
+    public void testOffset() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 100);
+
+        admit(cache, TEST_FILE1);
+        assertEquals("world", read(cache, TEST_FILE1, 6));
+        assertEquals("hello world", read(cache, TEST_FILE1, 0));
+        assertEquals("", read(cache, TEST_FILE1, 20));
+    }
+
+    public void testModifiedFileIsReloaded() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 100);
+        admit(cache, TEST_FILE1);
+        assertEquals("hello world", read(cache, TEST_FILE1, 0));
+
+        write(TEST_FILE1, "hello again, world");
+
+        // still hot, reloaded right away
+        assertEquals("hello again, world", read(cache, TEST_FILE1, 0));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(18, cache.getSize());
+    }
+
+    public void testInvalidate() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 100);
+        admit(cache, TEST_FILE1);
+        read(cache, TEST_FILE1, 0);
+
+        cache.invalidate(TEST_FILE1);
+
+        assertEquals(0, cache.getFileCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(11, cache.getFreeSize());
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        write(TEST_FILE1, "0123456789");
+        write(TEST_FILE2, "0123456789");
+        write(TEST_FILE3, "0123456789");
+        HotFileCache cache = new HotFileCache(25, 100);
+
+        admit(cache, TEST_FILE1);
+        admit(cache, TEST_FILE2);
+        admit(cache, TEST_FILE3);
+        read(cache, TEST_FILE1, 0);
+        read(cache, TEST_FILE2, 0);
+        read(cache, TEST_FILE1, 0);
+        read(cache, TEST_FILE3, 0);
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getFileCount());
+        assertEquals(20, cache.getSize());
+
+        // file1 was used after file2, and must still be cached
+        long hits = cache.getHits();
+        read(cache, TEST_FILE1, 0);
+        assertEquals(hits + 1, cache.getHits());
+
+        // an evicted file must be downloaded twice again to be cached
+        admit(cache, TEST_FILE2);
+        assertEquals(hits + 1, cache.getHits());
+    }
+
+    public void testFileDownloadedOnceNotCached() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 100);
+
+        admit(cache, TEST_FILE1);
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getFileCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testAdmissionWindow() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 100, 50);
+
+        admit(cache, TEST_FILE1);
+        Thread.sleep(100);
+
+        // too late, counts as the first download again
+        admit(cache, TEST_FILE1);
+        assertEquals("hello world", read(cache, TEST_FILE1, 0));
+    }
+
+    public void testEvictedBufferReused() throws Exception {
+        write(TEST_FILE1, "0123456789");
+        write(TEST_FILE2, "abcdefghij");
+        HotFileCache cache = new HotFileCache(10, 100);
+
+        admit(cache, TEST_FILE1);
+        read(cache, TEST_FILE1, 0);
+        admit(cache, TEST_FILE2);
+        assertEquals("abcdefghij", read(cache, TEST_FILE2, 0));
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(10, cache.getSize());
+        assertEquals(0, cache.getFreeSize());
+    }
+
+    public void testBufferNotReusedWhileRead() throws Exception {
+        write(TEST_FILE1, "0123456789");
+        write(TEST_FILE2, "abcdefghij");
+        HotFileCache cache = new HotFileCache(10, 100);
+
+        admit(cache, TEST_FILE1);
+        InputStream in = cache.createInputStream(TEST_FILE1, 0);
+        admit(cache, TEST_FILE2);
+        assertEquals("abcdefghij", read(cache, TEST_FILE2, 0));
+        assertEquals(1, cache.getEvictions());
+
+        // still reads the evicted file
+        assertEquals("0123456789", read(in));
+        assertEquals(0, cache.getFreeSize());
+    }
+
+    public void testLargeFileNotCached() throws Exception {
+        write(TEST_FILE1, "hello world");
+        HotFileCache cache = new HotFileCache(100, 10);
+
+        assertNull(cache.createInputStream(TEST_FILE1, 0));
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.getFileCount());
+    }
+}
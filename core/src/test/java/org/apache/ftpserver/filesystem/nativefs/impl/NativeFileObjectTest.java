@@ -21,6 +21,7 @@ package org.apache.ftpserver.filesystem.nativefs.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -174,6 +175,38 @@ public class NativeFileObjectTest extends FtpFileTestTemplate {
     	assertTrue(physicalFile.delete());
     }
 
+    public void testCreateOutputStreamWithAllocationSize() throws IOException {
+        NativeFtpFile fileObj = (NativeFtpFile) createFileObject(FILE1_PATH,
+                USER);
+
+        OutputStream out = fileObj.createOutputStream(0, 1000);
+        assertEquals(1000, TEST_FILE1.length());
+
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        // the space not written to is released
+        assertEquals(3, TEST_FILE1.length());
+    }
+
+    public void testCreateOutputStreamWithAllocationSizeAndOffset()
+            throws IOException {
+        NativeFtpFile fileObj = (NativeFtpFile) createFileObject(FILE1_PATH,
+                USER);
+
+        OutputStream out = fileObj.createOutputStream(0);
+        out.write(new byte[] { 1, 2, 3, 4, 5 });
+        out.close();
+
+        out = fileObj.createOutputStream(2, 100);
+        assertEquals(102, TEST_FILE1.length());
+
+        out.write(6);
+        out.close();
+
+        assertEquals(3, TEST_FILE1.length());
+    }
+
     protected void tearDown() throws Exception {
         cleanTmpDirs();
     }
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ActiveConnectTest extends TestCase {
+
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("127.0.0.1");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private NioDataConnectionEngine engine;
+
+    private ServerSocket serverSocket;
+
+    private List<Socket> backlog = new ArrayList<Socket>();
+
+    protected void setUp() throws Exception {
+        engine = new NioDataConnectionEngine();
+        serverSocket = new ServerSocket(0, 1, LOCALHOST);
+    }
+
+    protected void tearDown() throws Exception {
+        for (Socket socket : backlog) {
+            socket.close();
+        }
+        serverSocket.close();
+        engine.dispose();
+    }
+
+    private ActiveConnect start(int timeoutSeconds) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        return ActiveConnect.start(engine, channel, serverSocket
+                .getLocalSocketAddress(), timeoutSeconds);
+    }
+
+    /**
+     * Fill the backlog of the server socket, so that further connects are
+     * neither accepted nor refused
+     */
+    private void fillBacklog() throws IOException {
+        while (true) {
+            Socket socket = new Socket();
+            backlog.add(socket);
+            try {
+                socket.connect(serverSocket.getLocalSocketAddress(), 500);
+            } catch (SocketTimeoutException e) {
+                return;
+            }
+        }
+    }
+
+    public void testConnect() throws Exception {
+        ActiveConnect connect = start(5);
+
+        SocketChannel channel = connect.await();
+        assertTrue(channel.isConnected());
+        assertTrue(channel.isBlocking());
+
+        Socket accepted = serverSocket.accept();
+        channel.socket().getOutputStream().write(1);
+        assertEquals(1, accepted.getInputStream().read());
+
+        accepted.close();
+        channel.close();
+    }
+
+    public void testTimeoutAfterConnect() throws Exception {
+        ActiveConnect connect = start(1);
+
+        SocketChannel channel = connect.await();
+
+        // the timeout must not close the connected channel
+        Thread.sleep(1500);
+        assertTrue(channel.isOpen());
+
+        Socket accepted = serverSocket.accept();
+        channel.socket().getOutputStream().write(1);
+        assertEquals(1, accepted.getInputStream().read());
+
+        accepted.close();
+        channel.close();
+    }
+
+    public void testRefused() throws Exception {
+        InetSocketAddress address = (InetSocketAddress) serverSocket
+                .getLocalSocketAddress();
+        serverSocket.close();
+
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        ActiveConnect connect = ActiveConnect.start(engine, channel, address,
+                5);
+
+        try {
+            connect.await();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    public void testTimeout() throws Exception {
+        fillBacklog();
+
+        long start = System.currentTimeMillis();
+        ActiveConnect connect = start(1);
+        try {
+            connect.await();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 900);
+        assertTrue(elapsed < 5000);
+    }
+
+    public void testCancel() throws Exception {
+        fillBacklog();
+
+        final ActiveConnect connect = start(0);
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                connect.cancel();
+            }
+        }.start();
+
+        try {
+            connect.await();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AsciiOffsetIndexTest extends TestCase {
+
+    private static class MockFileObject implements FtpFile {
+        private byte[] content;
+
+        private long lastModified = 1000;
+
+        private long lastOffset = -1;
+
+        public MockFileObject(final byte[] content) {
+            this.content = content;
+        }
+
+        public InputStream createInputStream(long offset) throws IOException {
+            lastOffset = offset;
+            return new ByteArrayInputStream(content, (int) offset,
+                    content.length - (int) offset);
+        }
+
+        public OutputStream createOutputStream(long offset) throws IOException {
+            return null;
+        }
+
+        public boolean delete() {
+            return false;
+        }
+
+        public boolean doesExist() {
+            return true;
+        }
+
+        public String getAbsolutePath() {
+            return "/file";
+        }
+
+        public String getGroupName() {
+            return "group";
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getLinkCount() {
+            return 1;
+        }
+
+        public String getOwnerName() {
+            return "owner";
+        }
+
+        public String getName() {
+            return "file";
+        }
+
+        public long getSize() {
+            return content.length;
+        }
+
+        public boolean isRemovable() {
+            return false;
+        }
+
+        public boolean isReadable() {
+            return true;
+        }
+
+        public boolean isWritable() {
+            return false;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+
+        public boolean isFile() {
+            return true;
+        }
+
+        public boolean isHidden() {
+            return false;
+        }
+
+        public List<FtpFile> listFiles() {
+            return null;
+        }
+
+        public boolean mkdir() {
+            return false;
+        }
+
+        public boolean move(FtpFile destination) {
+            return false;
+        }
+
+        public boolean setLastModified(long time) {
+            return false;
+        }
+    }
+
+    /**
+     * The byte per byte skipping previously used in RETR, used as the
+     * reference for the expected offset.
+     */
+    private static long skipByteByByte(final byte[] content, final long skipLen)
+            throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(
+                content));
+        int c;
+        long offset = 0L;
+        long read = 0L;
+        while (offset++ < skipLen) {
+            if ((c = in.read()) == -1) {
+                throw new IOException("Cannot skip");
+            }
+            read++;
+            if (c == '\n') {
+                offset++;
+            }
+        }
+        return read;
+    }
+
+    private static byte[] createContent(final int length) {
+        Random random = new Random(4711);
+        byte[] alphabet = new byte[] { '\r', '\n', 'a', 'b' };
+        byte[] content = new byte[length];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+        return content;
+    }
+
+    private static long open(final AsciiOffsetIndex index,
+            final MockFileObject file, final long skipLen) throws IOException {
+        InputStream in = index.openInputStream(null, file, skipLen);
+        in.close();
+        return file.lastOffset;
+    }
+
+    public void testSameAsByteByByte() throws IOException {
+        byte[] content = createContent(500);
+        MockFileObject file = new MockFileObject(content);
+        AsciiOffsetIndex index = new AsciiOffsetIndex(7, 10);
+
+        int asciiLength = content.length;
+        for (byte b : content) {
+            if (b == '\n') {
+                asciiLength++;
+            }
+        }
+
+        // both forwards, building the index, and backwards, using it
+        for (int skipLen = 0; skipLen <= asciiLength; skipLen++) {
+            assertEquals(skipByteByByte(content, skipLen), open(index, file,
+                    skipLen));
+        }
+        for (int skipLen = asciiLength; skipLen >= 0; skipLen--) {
+            assertEquals(skipByteByByte(content, skipLen), open(index, file,
+                    skipLen));
+        }
+    }
+
+    public void testBeyondEnd() throws IOException {
+        MockFileObject file = new MockFileObject("foo\nbar\n".getBytes("UTF-8"));
+        AsciiOffsetIndex index = new AsciiOffsetIndex(2, 10);
+
+        assertEquals(8, open(index, file, 10));
+        try {
+            open(index, file, 11);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testCheckpointsRecorded() throws IOException {
+        MockFileObject file = new MockFileObject(createContent(1000));
+        AsciiOffsetIndex index = new AsciiOffsetIndex(100, 10);
+
+        assertEquals(1, index.getCheckpointCount(null, file));
+        open(index, file, 550);
+        int checkpoints = index.getCheckpointCount(null, file);
+        assertTrue(checkpoints > 1);
+
+        // an earlier offset does not add any checkpoints
+        open(index, file, 100);
+        assertEquals(checkpoints, index.getCheckpointCount(null, file));
+    }
+
+    public void testModifiedFileIsReindexed() throws IOException {
+        MockFileObject file = new MockFileObject(createContent(1000));
+        AsciiOffsetIndex index = new AsciiOffsetIndex(100, 10);
+        open(index, file, 1000);
+        assertTrue(index.getCheckpointCount(null, file) > 1);
+
+        file.content = "foo\nbar\n".getBytes("UTF-8");
+        file.lastModified = 2000;
+
+        assertEquals(1, index.getCheckpointCount(null, file));
+        assertEquals(4, open(index, file, 5));
+    }
+
+    public void testMaxFiles() throws IOException {
+        AsciiOffsetIndex index = new AsciiOffsetIndex(100, 2);
+
+        for (int i = 0; i < 3; i++) {
+            final String path = "/file" + i;
+            open(index, new MockFileObject(createContent(10)) {
+                public String getAbsolutePath() {
+                    return path;
+                }
+            }, 5);
+        }
+
+        assertEquals(2, index.getFileCount());
+    }
+}
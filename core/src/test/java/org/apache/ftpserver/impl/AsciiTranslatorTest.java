@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AsciiTranslatorTest extends TestCase {
+
+    private static final byte[] LF = new byte[] { '\n' };
+
+    private static final byte[] CRLF = new byte[] { '\r', '\n' };
+
+    private static final int[] CHUNK_SIZES = new int[] { 1, 2, 3, 7, 64,
+            4096, Integer.MAX_VALUE };
+
+    private static List<byte[]> createCorpus() throws IOException {
+        List<byte[]> corpus = new ArrayList<byte[]>();
+
+        String[] texts = new String[] { "", "a", "\r", "\n", "\r\n", "\n\r",
+                "\r\r", "\n\n", "\r\n\r\n", "\r\r\n\n", "foo", "foo\n",
+                "foo\r\n", "foo\r", "\nfoo", "\r\nfoo", "\rfoo",
+                "foo\nbar\n", "foo\r\nbar\r\n", "foo\rbar\r", "foo\n\rbar",
+                "foo\r\n\nbar\r\r\n", "line1\nline2\r\nline3\rline4",
+                "\u00e5\u00e4\u00f6\r\n\u00c5\u00c4\u00d6\n" };
+        for (String text : texts) {
+            corpus.add(text.getBytes("UTF-8"));
+        }
+
+        // random data, mostly line endings to get all combinations
+        Random random = new Random(4711);
+        byte[] alphabet = new byte[] { '\r', '\n', 'a', 'b', 0, (byte) 0xff };
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[random.nextInt(300)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            corpus.add(data);
+        }
+
+        // random binary data
+        for (int i = 0; i < 20; i++) {
+            byte[] data = new byte[random.nextInt(10000)];
+            random.nextBytes(data);
+            corpus.add(data);
+        }
+
+        return corpus;
+    }
+
+    /**
+     * The byte per byte translation previously used in
+     * {@link IODataConnection}, used as the reference for the expected output.
+     */
+    private static byte[] translateByteByByte(final byte[] data,
+            final int chunkSize, final boolean isWrite, final byte[] eol)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        byte lastByte = 0;
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            int count = Math.min(chunkSize, data.length - offset);
+            byte[] buff = new byte[count];
+            System.arraycopy(data, offset, buff, 0, count);
+
+            for (int i = 0; i < count; ++i) {
+                byte b = buff[i];
+                if (isWrite) {
+                    if (b == '\n' && lastByte != '\r') {
+                        bos.write('\r');
+                    }
+
+                    bos.write(b);
+                } else {
+                    if (b == '\n') {
+                        if (lastByte != '\r') {
+                            bos.write(eol);
+                        }
+                    } else if (b == '\r') {
+                        bos.write(eol);
+                    } else {
+                        bos.write(b);
+                    }
+                }
+                lastByte = b;
+            }
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static byte[] translate(final byte[] data, final int chunkSize,
+            final boolean isWrite, final byte[] eol) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        AsciiTranslator translator = new AsciiTranslator(isWrite, eol);
+
+        // translate from the middle of a larger buffer, as when reading
+        // into a reused buffer
+        byte[] buff = new byte[Math.min(chunkSize, data.length) + 10];
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            int count = Math.min(chunkSize, data.length - offset);
+            Arrays.fill(buff, (byte) '\r');
+            System.arraycopy(data, offset, buff, 5, count);
+
+            translator.translate(buff, 5, count, bos);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private void assertSameAsByteByByte(final boolean isWrite,
+            final byte[] eol) throws IOException {
+        List<byte[]> corpus = createCorpus();
+        for (int i = 0; i < corpus.size(); i++) {
+            byte[] data = corpus.get(i);
+            for (int chunkSize : CHUNK_SIZES) {
+                byte[] expected = translateByteByByte(data, chunkSize,
+                        isWrite, eol);
+                byte[] actual = translate(data, chunkSize, isWrite, eol);
+
+                assertTrue("Corpus entry " + i + " with chunk size "
+                        + chunkSize, Arrays.equals(expected, actual));
+            }
+        }
+    }
+
+    public void testToClient() throws IOException {
+        assertSameAsByteByByte(true, LF);
+    }
+
+    public void testFromClientWithLf() throws IOException {
+        assertSameAsByteByByte(false, LF);
+    }
+
+    public void testFromClientWithCrLf() throws IOException {
+        assertSameAsByteByByte(false, CRLF);
+    }
+
+    public void testToClientAddsCr() throws IOException {
+        assertEquals("foo\r\nbar\r\n\r\n", new String(translate(
+                "foo\nbar\r\n\n".getBytes("UTF-8"), 4096, true, LF), "UTF-8"));
+    }
+
+    public void testFromClientUsesLocalEol() throws IOException {
+        assertEquals("foo\nbar\nbaz\n", new String(translate(
+                "foo\r\nbar\nbaz\r".getBytes("UTF-8"), 4096, false, LF),
+                "UTF-8"));
+    }
+
+    public void testCrLfSplitAcrossBuffers() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AsciiTranslator translator = new AsciiTranslator(false, LF);
+
+        translator.translate("foo\r".getBytes("UTF-8"), 0, 4, bos);
+        translator.translate("\nbar".getBytes("UTF-8"), 0, 4, bos);
+
+        assertEquals("foo\nbar", new String(bos.toByteArray(), "UTF-8"));
+    }
+}
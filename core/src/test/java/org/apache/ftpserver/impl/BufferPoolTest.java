@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class BufferPoolTest extends TestCase {
+
+    public void testAllocatesWhenEmpty() {
+        BufferPool pool = new BufferPool(1024, 2, false);
+
+        ByteBuffer buffer = pool.acquire();
+        assertEquals(1024, buffer.capacity());
+        assertFalse(buffer.isDirect());
+
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getInUse());
+    }
+
+    public void testReusesReleasedBuffers() {
+        BufferPool pool = new BufferPool(1024, 2, true);
+
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(0, pool.getInUse());
+        assertEquals(1, pool.getPooled());
+
+        ByteBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.limit());
+
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getInUse());
+        assertEquals(0, pool.getPooled());
+    }
+
+    public void testBounded() {
+        BufferPool pool = new BufferPool(16, 2, false);
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire();
+            assertEquals(16, buffers[i].capacity());
+        }
+        // the last two are transient buffers
+        assertEquals(2, pool.getInUse());
+        assertEquals(4, pool.getMisses());
+
+        for (int i = 0; i < buffers.length; i++) {
+            pool.release(buffers[i]);
+        }
+        assertEquals(0, pool.getInUse());
+        assertEquals(2, pool.getPooled());
+
+        // transient buffers are never reused
+        assertSame(buffers[0], pool.acquire());
+        assertSame(buffers[1], pool.acquire());
+        ByteBuffer buffer = pool.acquire();
+        assertNotSame(buffers[2], buffer);
+        assertNotSame(buffers[3], buffer);
+    }
+
+    public void testExhaustedDirectPoolUsesHeapBuffers() {
+        BufferPool pool = new BufferPool(16, 1, true);
+
+        ByteBuffer pooled = pool.acquire();
+        ByteBuffer transientBuffer = pool.acquire();
+        assertTrue(pooled.isDirect());
+        assertFalse(transientBuffer.isDirect());
+        assertEquals(1, pool.getInUse());
+
+        // releasing in any order keeps the count of the pooled buffers
+        pool.release(transientBuffer);
+        assertEquals(1, pool.getInUse());
+        assertEquals(0, pool.getPooled());
+
+        pool.release(pooled);
+        assertEquals(0, pool.getInUse());
+        assertEquals(1, pool.getPooled());
+    }
+
+    public void testReleaseNull() {
+        BufferPool pool = new BufferPool(16, 2, false);
+        pool.release(null);
+
+        assertEquals(0, pool.getInUse());
+        assertEquals(0, pool.getPooled());
+    }
+}
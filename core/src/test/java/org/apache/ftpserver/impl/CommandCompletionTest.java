@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CommandCompletionTest extends TestCase {
+
+    private static class CountingRunnable implements Runnable {
+        public int count = 0;
+
+        public void run() {
+            count++;
+        }
+    }
+
+    private CommandCompletion completion = new CommandCompletion();
+
+    private CountingRunnable continuation = new CountingRunnable();
+
+    public void testSynchronousCommand() {
+        completion.commandStarted(continuation);
+
+        assertTrue(completion.commandExecuted());
+        assertFalse(completion.isBusy());
+        assertFalse(completion.queue(new DefaultFtpRequest("NOOP")));
+
+        completion.complete();
+        assertEquals(0, continuation.count);
+    }
+
+    public void testCompletedBeforeReturning() {
+        completion.commandStarted(continuation);
+        completion.defer();
+        completion.complete();
+
+        assertTrue(completion.commandExecuted());
+        assertFalse(completion.isBusy());
+        assertEquals(0, continuation.count);
+    }
+
+    public void testCompletedAfterReturning() {
+        completion.commandStarted(continuation);
+        completion.defer();
+
+        assertFalse(completion.commandExecuted());
+        assertTrue(completion.isBusy());
+        assertEquals(0, continuation.count);
+
+        completion.complete();
+        assertEquals(1, continuation.count);
+
+        // only completes once
+        completion.complete();
+        assertEquals(1, continuation.count);
+    }
+
+    public void testRequestsQueuedWhileBusy() {
+        completion.commandStarted(continuation);
+        completion.defer();
+        completion.commandExecuted();
+
+        FtpRequest first = new DefaultFtpRequest("PWD");
+        FtpRequest second = new DefaultFtpRequest("NOOP");
+        assertTrue(completion.queue(first));
+        assertTrue(completion.queue(second));
+
+        completion.complete();
+
+        // still busy until all queued requests have been executed
+        assertSame(first, completion.nextQueuedRequest());
+        assertTrue(completion.isBusy());
+        assertTrue(completion.queue(new DefaultFtpRequest("QUIT")));
+        assertSame(second, completion.nextQueuedRequest());
+        assertEquals("QUIT", completion.nextQueuedRequest().getCommand());
+
+        assertNull(completion.nextQueuedRequest());
+        assertFalse(completion.isBusy());
+        assertFalse(completion.queue(new DefaultFtpRequest("NOOP")));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CompressionPoolTest extends TestCase {
+
+    private static byte[] createData() {
+        // compressible, but not trivially so
+        byte[] data = new byte[100000];
+        Random random = new Random(4711);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return data;
+    }
+
+    private static byte[] compress(final CompressionPool pool,
+            final byte[] data, final int level) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = pool.createDeflaterOutputStream(bos, level, 1024);
+        out.write(data);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private static byte[] decompress(final CompressionPool pool,
+            final byte[] data) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        InputStream in = pool.createInflaterInputStream(
+                new ByteArrayInputStream(data), 1024);
+        byte[] buff = new byte[4096];
+        int count;
+        while ((count = in.read(buff)) != -1) {
+            bos.write(buff, 0, count);
+        }
+        in.close();
+        return bos.toByteArray();
+    }
+
+    public void testRoundTripWithReusedInstances() throws Exception {
+        CompressionPool pool = new CompressionPool(2);
+        byte[] data = createData();
+
+        for (int i = 0; i < 3; i++) {
+            byte[] compressed = compress(pool, data, 6);
+            assertTrue(compressed.length < data.length);
+            assertTrue(Arrays.equals(data, decompress(pool, compressed)));
+        }
+
+        assertEquals(1, pool.getPooledDeflaters());
+        assertEquals(1, pool.getPooledInflaters());
+    }
+
+    public void testLevelOfReusedDeflater() throws Exception {
+        CompressionPool pool = new CompressionPool(2);
+        byte[] data = createData();
+
+        byte[] stored = compress(pool, data, 0);
+        byte[] compressed = compress(pool, data, 9);
+
+        assertTrue(stored.length > data.length);
+        assertTrue(compressed.length < data.length);
+        assertTrue(Arrays.equals(data, decompress(pool, compressed)));
+    }
+
+    public void testCloseReleasesOnce() throws Exception {
+        CompressionPool pool = new CompressionPool(2);
+        OutputStream out = pool.createDeflaterOutputStream(
+                new ByteArrayOutputStream(), 6, 1024);
+        out.close();
+        out.close();
+
+        assertEquals(1, pool.getPooledDeflaters());
+    }
+
+    public void testFullPoolEndsReleased() {
+        CompressionPool pool = new CompressionPool(1);
+        Deflater deflater1 = pool.acquireDeflater(6);
+        Deflater deflater2 = pool.acquireDeflater(6);
+
+        pool.releaseDeflater(deflater1);
+        pool.releaseDeflater(deflater2);
+
+        assertEquals(1, pool.getPooledDeflaters());
+        assertSame(deflater1, pool.acquireDeflater(6));
+        assertEnded(deflater2);
+    }
+
+    public void testDispose() {
+        CompressionPool pool = new CompressionPool(2);
+        Inflater pooled = pool.acquireInflater();
+        Inflater inUse = pool.acquireInflater();
+        pool.releaseInflater(pooled);
+
+        pool.dispose();
+        assertEquals(0, pool.getPooledInflaters());
+        assertEnded(pooled);
+
+        pool.releaseInflater(inUse);
+        assertEquals(0, pool.getPooledInflaters());
+        assertEnded(inUse);
+    }
+
+    private void assertEnded(final Deflater deflater) {
+        try {
+            deflater.getTotalIn();
+            fail("Must be ended");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    private void assertEnded(final Inflater inflater) {
+        try {
+            inflater.getTotalIn();
+            fail("Must be ended");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class Crc32cTest extends TestCase {
+
+    public void testCheckValue() throws Exception {
+        Crc32c crc = new Crc32c();
+        byte[] data = "123456789".getBytes("UTF-8");
+        crc.update(data, 0, data.length);
+
+        assertEquals(0xE3069283L, crc.getValue());
+    }
+
+    public void testSameAsPlatform() {
+        Checksum platform = Crc32c.create();
+
+        Random random = new Random(4711);
+        byte[] data = new byte[10000];
+        random.nextBytes(data);
+
+        Crc32c crc = new Crc32c();
+        crc.update(data, 0, 5000);
+        crc.update(data[5000]);
+        crc.update(data, 5001, data.length - 5001);
+        platform.update(data, 0, data.length);
+
+        assertEquals(platform.getValue(), crc.getValue());
+    }
+
+    public void testReset() throws Exception {
+        Crc32c crc = new Crc32c();
+        crc.update(1);
+        crc.reset();
+
+        assertEquals(0, crc.getValue());
+    }
+}
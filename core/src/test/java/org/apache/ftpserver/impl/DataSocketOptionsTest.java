@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class DataSocketOptionsTest extends TestCase {
+
+    private static final int MB = 1024 * 1024;
+
+    public void testBandwidthDelayProduct() {
+        // 100 ms at 10 MB/s
+        assertEquals(MB, DataSocketOptions.getAutoTunedBufferSize(
+                TimeUnit.MILLISECONDS.toNanos(100), 10 * MB, 4 * MB));
+    }
+
+    public void testMinimumSize() {
+        assertEquals(DataSocketOptions.MIN_AUTO_TUNED_BUFFER_SIZE,
+                DataSocketOptions.getAutoTunedBufferSize(TimeUnit.MICROSECONDS
+                        .toNanos(100), 10 * MB, 4 * MB));
+    }
+
+    public void testMaximumSize() {
+        assertEquals(4 * MB, DataSocketOptions.getAutoTunedBufferSize(
+                TimeUnit.SECONDS.toNanos(2), 10 * MB, 4 * MB));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class DigestCacheTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File CACHE_FILE = new File(TEST_TMP_DIR,
+            "digests.txt");
+
+    protected void setUp() throws Exception {
+        cleanTmpDirs();
+
+        TEST_TMP_DIR.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        cleanTmpDirs();
+    }
+
+    private void cleanTmpDirs() throws IOException {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+
+    public void testGet() {
+        DigestCache cache = new DigestCache();
+        cache.put(HashAlgorithm.MD5, "/foo", 10, 1000, "abcd");
+
+        assertEquals("abcd", cache.get(HashAlgorithm.MD5, "/foo", 10, 1000));
+        assertNull(cache.get(HashAlgorithm.SHA_1, "/foo", 10, 1000));
+        assertNull(cache.get(HashAlgorithm.MD5, "/bar", 10, 1000));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testChangedFile() {
+        DigestCache cache = new DigestCache();
+        cache.put(HashAlgorithm.MD5, "/foo", 10, 1000, "abcd");
+
+        assertNull(cache.get(HashAlgorithm.MD5, "/foo", 11, 1000));
+        assertNull(cache.get(HashAlgorithm.MD5, "/foo", 10, 2000));
+    }
+
+    public void testMaxEntries() {
+        DigestCache cache = new DigestCache(null, 2);
+        cache.put(HashAlgorithm.MD5, "/foo", 10, 1000, "abcd");
+        cache.put(HashAlgorithm.MD5, "/bar", 10, 1000, "abcd");
+        cache.get(HashAlgorithm.MD5, "/foo", 10, 1000);
+        cache.put(HashAlgorithm.MD5, "/baz", 10, 1000, "abcd");
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(HashAlgorithm.MD5, "/foo", 10, 1000));
+        assertNull(cache.get(HashAlgorithm.MD5, "/bar", 10, 1000));
+    }
+
+    public void testSaveAndLoad() throws IOException {
+        DigestCache cache = new DigestCache(CACHE_FILE, 10);
+        cache.put(HashAlgorithm.SHA_256, "/dir/with\ttab", 10, 1000, "abcd");
+        cache.put(HashAlgorithm.CRC32, "/foo", 20, 2000, "1234");
+        cache.put(HashAlgorithm.MD5, "/with\nnewline", 30, 3000, "5678");
+        cache.dispose();
+
+        DigestCache loaded = new DigestCache(CACHE_FILE, 10);
+        assertEquals(2, loaded.size());
+        assertEquals("abcd", loaded.get(HashAlgorithm.SHA_256,
+                "/dir/with\ttab", 10, 1000));
+        assertEquals("1234", loaded.get(HashAlgorithm.CRC32, "/foo", 20, 2000));
+    }
+
+    public void testSavesInBackground() throws Exception {
+        DigestCache cache = new DigestCache(CACHE_FILE, 2000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(HashAlgorithm.MD5, "/file" + i, i, 1000, "abcd");
+        }
+
+        // saved without dispose, once the background save has finished
+        for (int i = 0; i < 50 && !CACHE_FILE.exists(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(CACHE_FILE.exists());
+
+        DigestCache loaded = new DigestCache(CACHE_FILE, 2000);
+        assertEquals(1000, loaded.size());
+        assertEquals("abcd", loaded.get(HashAlgorithm.MD5, "/file999", 999,
+                1000));
+    }
+
+    public void testLoadCorruptFile() throws IOException {
+        FileOutputStream fos = new FileOutputStream(CACHE_FILE);
+        fos.write("garbage\nMD5\tx\t1000\tabcd\t/foo\nMD5\t10\t1000\tabcd\t/bar\n"
+                .getBytes("UTF-8"));
+        fos.close();
+
+        DigestCache cache = new DigestCache(CACHE_FILE, 10);
+        assertEquals(1, cache.size());
+        assertEquals("abcd", cache.get(HashAlgorithm.MD5, "/bar", 10, 1000));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HashEngineTest extends TestCase {
+
+    private static class Listener implements HashBatch.Listener {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicReference<String[]> digests = new AtomicReference<String[]>();
+
+        private volatile int failedIndex = -1;
+
+        public void hashed(String[] digests) {
+            this.digests.set(digests);
+            calls.incrementAndGet();
+            done.countDown();
+        }
+
+        public void failed(int index, IOException e) {
+            failedIndex = index;
+            calls.incrementAndGet();
+            done.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private HashEngine engine = new HashEngine(new DigestCache());
+
+    private MockFtpFile file;
+
+    protected void setUp() throws Exception {
+        file = new MockFtpFile("abc".getBytes("UTF-8"));
+    }
+
+    public void testAlgorithms() throws IOException {
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", engine.hash(null,
+                file, HashAlgorithm.MD5));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", engine.hash(
+                null, file, HashAlgorithm.SHA_1));
+        assertEquals(
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                engine.hash(null, file, HashAlgorithm.SHA_256));
+        assertEquals("352441c2", engine.hash(null, file, HashAlgorithm.CRC32));
+        assertEquals("364b3fb7", engine.hash(null, file, HashAlgorithm.CRC32C));
+    }
+
+    public void testRange() throws IOException {
+        file = new MockFtpFile("xxabcxx".getBytes("UTF-8"));
+
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", engine.hash(file,
+                HashAlgorithm.MD5, 2, 3));
+    }
+
+    public void testRangeBeyondEnd() {
+        try {
+            engine.hash(file, HashAlgorithm.MD5, 2, 3);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testRangeOnHashingThread() throws Exception {
+        file = new MockFtpFile("xxabcxx".getBytes("UTF-8"));
+
+        Listener listener = new Listener();
+        engine.hash(file, HashAlgorithm.MD5, 2, 3, listener);
+        listener.await();
+
+        assertEquals("900150983cd24fb0d6963f7d28e17f72",
+                listener.digests.get()[0]);
+    }
+
+    public void testRangeBeyondEndOnHashingThread() throws Exception {
+        Listener listener = new Listener();
+        engine.hash(file, HashAlgorithm.MD5, 2, 3, listener);
+        listener.await();
+
+        assertEquals(0, listener.failedIndex);
+        assertNull(listener.digests.get());
+    }
+
+    public void testCachedUntilChanged() throws IOException {
+        engine.hash(null, file, HashAlgorithm.MD5);
+        engine.hash(null, file, HashAlgorithm.MD5);
+        assertEquals(1, file.opened);
+
+        file.content = "abcd".getBytes("UTF-8");
+        file.lastModified = 2000;
+
+        assertEquals("e2fc714c4727ee9395f324cd2e7f331f", engine.hash(null,
+                file, HashAlgorithm.MD5));
+        assertEquals(2, file.opened);
+    }
+
+    public void testParse() {
+        assertEquals(HashAlgorithm.SHA_256, HashAlgorithm.parse("sha-256"));
+        assertEquals(HashAlgorithm.CRC32, HashAlgorithm.parse("CRC32"));
+        assertNull(HashAlgorithm.parse("SHA-3"));
+    }
+
+    public void testHashInParallel() throws Exception {
+        MockFtpFile[] files = new MockFtpFile[10];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new MockFtpFile("/file" + i, ("abc" + i)
+                    .getBytes("UTF-8"));
+        }
+        files[3] = file;
+
+        Listener listener = new Listener();
+        engine.hash(null, files, HashAlgorithm.MD5, listener);
+        listener.await();
+
+        String[] digests = listener.digests.get();
+        assertEquals(files.length, digests.length);
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", digests[3]);
+        for (int i = 0; i < files.length; i++) {
+            assertEquals(engine.hash(files[i], HashAlgorithm.MD5, 0,
+                    files[i].getSize()), digests[i]);
+        }
+        assertEquals(1, listener.calls.get());
+    }
+
+    public void testFailureCancelsBatch() throws Exception {
+        MockFtpFile failing = new MockFtpFile(new byte[0]) {
+            @Override
+            public InputStream createInputStream(long offset)
+                    throws IOException {
+                throw new IOException("Can not read");
+            }
+
+            @Override
+            public long getSize() {
+                return 1;
+            }
+        };
+
+        Listener listener = new Listener();
+        engine.hash(null, new MockFtpFile[] { file, failing, file },
+                HashAlgorithm.MD5, listener);
+        listener.await();
+
+        assertEquals(1, listener.failedIndex);
+        assertNull(listener.digests.get());
+
+        // the listener is only called once
+        Thread.sleep(100);
+        assertEquals(1, listener.calls.get());
+    }
+
+    public void testCancel() throws Exception {
+        Listener listener = new Listener();
+        HashBatch batch = new HashBatch(1, listener);
+        batch.cancel();
+
+        assertTrue(batch.isDone());
+        batch.hashed(0, "abcd");
+        assertEquals(0, listener.calls.get());
+    }
+
+    public void testRangeOfLocalFile() throws Exception {
+        final File tmpFile = File.createTempFile("hash", ".tmp");
+        try {
+            FileOutputStream fos = new FileOutputStream(tmpFile);
+            fos.write("xxabcxx".getBytes("UTF-8"));
+            fos.close();
+
+            MockFtpFile localFile = new MockFtpFile(new byte[7]) {
+                @Override
+                public InputStream createInputStream(long offset)
+                        throws IOException {
+                    FileInputStream fis = new FileInputStream(tmpFile);
+                    fis.getChannel().position(offset);
+                    return fis;
+                }
+            };
+
+            assertEquals("900150983cd24fb0d6963f7d28e17f72", engine.hash(
+                    localFile, HashAlgorithm.MD5, 2, 3));
+        } finally {
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HashingOutputStreamTest extends TestCase {
+
+    public void testHashAndWrite() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HashingOutputStream hos = new HashingOutputStream(out,
+                new HashAlgorithm[] { HashAlgorithm.MD5, HashAlgorithm.CRC32 });
+
+        byte[] data = "xabcx".getBytes("UTF-8");
+        hos.write(data, 1, 2);
+        hos.write('c');
+        hos.flush();
+
+        assertEquals("abc", new String(out.toByteArray(), "UTF-8"));
+
+        String[] digests = hos.digest();
+        assertEquals(2, digests.length);
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", digests[0]);
+        assertEquals("352441c2", digests[1]);
+    }
+
+    public void testUploadFinished() throws Exception {
+        HashEngine engine = new HashEngine(new DigestCache());
+        engine.setUploadAlgorithms(new HashAlgorithm[] { HashAlgorithm.SHA_1 });
+
+        HashingOutputStream hos = engine
+                .createUploadStream(new ByteArrayOutputStream());
+        hos.write("abc".getBytes("UTF-8"));
+
+        MockFtpFile file = new MockFtpFile("abc".getBytes("UTF-8"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", engine
+                .uploadFinished(null, file, hos, true).get("SHA-1"));
+
+        // cached, the file is never read
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", engine.hash(
+                null, file, HashAlgorithm.SHA_1));
+        assertEquals(0, file.opened);
+    }
+
+    public void testUploadFailed() throws Exception {
+        HashEngine engine = new HashEngine(new DigestCache());
+        engine.setUploadAlgorithms(new HashAlgorithm[] { HashAlgorithm.SHA_1 });
+
+        HashingOutputStream hos = engine
+                .createUploadStream(new ByteArrayOutputStream());
+        hos.write("abc".getBytes("UTF-8"));
+
+        assertTrue(engine.uploadFinished(null, new MockFtpFile(new byte[3]),
+                hos, false).isEmpty());
+        assertEquals(0, engine.getDigestCache().size());
+    }
+
+    public void testNotConfigured() {
+        HashEngine engine = new HashEngine(new DigestCache());
+
+        assertNull(engine.createUploadStream(new ByteArrayOutputStream()));
+        assertTrue(engine.uploadFinished(null, new MockFtpFile(new byte[3]),
+                null, true).isEmpty());
+    }
+}
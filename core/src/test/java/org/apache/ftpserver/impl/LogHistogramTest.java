@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class LogHistogramTest extends TestCase {
+
+    public void testEmpty() {
+        LogHistogram histogram = new LogHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    public void testExactStatistics() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(1000);
+        histogram.record(-5);
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(257.5, histogram.getMean(), 0.0);
+    }
+
+    public void testSmallValuesExact() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(100));
+    }
+
+    public void testBuckets() {
+        long previousEnd = 0;
+        int bucket = 0;
+        while (LogHistogram.getBucketEnd(bucket) != Long.MAX_VALUE) {
+            long end = LogHistogram.getBucketEnd(bucket);
+            assertTrue(end > previousEnd);
+
+            // the first and last value of every bucket map to it
+            assertEquals(bucket, LogHistogram.getBucket(previousEnd));
+            assertEquals(bucket, LogHistogram.getBucket(end - 1));
+
+            // buckets are never wider than 1/8 of their first value
+            assertTrue(end - previousEnd <= Math.max(1, previousEnd / 8));
+            previousEnd = end;
+            bucket++;
+        }
+
+        assertEquals(LogHistogram.getBucket(Long.MAX_VALUE), LogHistogram
+                .getBucket(previousEnd));
+    }
+
+    public void testPercentileWithinBucket() {
+        LogHistogram histogram = new LogHistogram();
+        Random random = new Random(4711);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1000000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] { 1, 50, 90, 99, 99.9 }) {
+            long expected = values[(int) Math.ceil(percentile / 100
+                    * values.length) - 1];
+            long actual = histogram.getPercentile(percentile);
+
+            assertTrue(actual >= expected);
+            assertTrue(actual - expected <= expected / 8);
+        }
+    }
+
+    public void testInvalidPercentile() {
+        try {
+            new LogHistogram().getPercentile(101);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final LogHistogram histogram = new LogHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 1; j <= 10000; j++) {
+                        histogram.record(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(10000, histogram.getPercentile(100));
+    }
+}
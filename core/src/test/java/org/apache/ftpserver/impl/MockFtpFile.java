@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+* In-memory file, counting how often it is read.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+class MockFtpFile implements FtpFile {
+    private final String path;
+
+    byte[] content;
+
+    long lastModified = 1000;
+
+    int opened = 0;
+
+    public MockFtpFile(final byte[] content) {
+        this("/file", content);
+    }
+
+    public MockFtpFile(final String path, final byte[] content) {
+        this.path = path;
+        this.content = content;
+    }
+
+    public InputStream createInputStream(long offset) throws IOException {
+        opened++;
+        return new ByteArrayInputStream(content, (int) offset,
+                content.length - (int) offset);
+    }
+
+    public OutputStream createOutputStream(long offset) throws IOException {
+        return null;
+    }
+
+    public boolean delete() {
+        return false;
+    }
+
+    public boolean doesExist() {
+        return true;
+    }
+
+    public String getAbsolutePath() {
+        return path;
+    }
+
+    public String getGroupName() {
+        return "group";
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getLinkCount() {
+        return 1;
+    }
+
+    public String getOwnerName() {
+        return "owner";
+    }
+
+    public String getName() {
+        return "file";
+    }
+
+    public long getSize() {
+        return content.length;
+    }
+
+    public boolean isRemovable() {
+        return false;
+    }
+
+    public boolean isReadable() {
+        return true;
+    }
+
+    public boolean isWritable() {
+        return false;
+    }
+
+    public boolean isDirectory() {
+        return false;
+    }
+
+    public boolean isFile() {
+        return true;
+    }
+
+    public boolean isHidden() {
+        return false;
+    }
+
+    public List<FtpFile> listFiles() {
+        return null;
+    }
+
+    public boolean mkdir() {
+        return false;
+    }
+
+    public boolean move(FtpFile destination) {
+        return false;
+    }
+
+    public boolean setLastModified(long time) {
+        return false;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.DataTransferConfiguration;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PassiveDemultiplexerTest extends TestCase {
+
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("127.0.0.1");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PassiveDemultiplexer demultiplexer;
+
+    protected void setUp() throws Exception {
+        demultiplexer = new PassiveDemultiplexer();
+    }
+
+    protected void tearDown() throws Exception {
+        demultiplexer.dispose();
+    }
+
+    /**
+     * Connect to the shared port and identify the connection by a single byte
+     */
+    private Socket connect(int port, int id) throws IOException {
+        Socket socket = new Socket(LOCALHOST, port);
+        socket.getOutputStream().write(id);
+        socket.getOutputStream().flush();
+        return socket;
+    }
+
+    private int read(Socket socket) throws IOException {
+        try {
+            return socket.getInputStream().read();
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testOnePendingPerClientAddress() throws Exception {
+        PassiveDemultiplexer.PendingConnection first = demultiplexer.expect(
+                LOCALHOST, 0, LOCALHOST, null);
+        assertNotNull(first);
+
+        // the same address already waits on the port
+        assertNull(demultiplexer.expect(LOCALHOST, 0, LOCALHOST, null));
+
+        // other addresses may still wait on it
+        PassiveDemultiplexer.PendingConnection other = demultiplexer.expect(
+                LOCALHOST, 0, InetAddress.getByName("192.0.2.1"), null);
+        assertNotNull(other);
+        assertEquals(first.getPort(), other.getPort());
+        other.cancel();
+
+        Socket client1 = connect(first.getPort(), 1);
+        Socket client2 = null;
+        try {
+            assertEquals(1, read(first.await(5000)));
+
+            // the port is free again for the address once connected
+            PassiveDemultiplexer.PendingConnection second = demultiplexer
+                    .expect(LOCALHOST, 0, LOCALHOST, null);
+            assertNotNull(second);
+
+            client2 = connect(second.getPort(), 2);
+            assertEquals(2, read(second.await(5000)));
+        } finally {
+            client1.close();
+            if (client2 != null) {
+                client2.close();
+            }
+        }
+    }
+
+    public void testAcceptedConnectionConfigured() throws Exception {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setTcpNoDelay(true);
+        DataSocketOptions socketOptions = new DataSocketOptions(
+                (DataTransferConfiguration) factory
+                        .createDataConnectionConfiguration(), 0);
+
+        PassiveDemultiplexer.PendingConnection pending = demultiplexer.expect(
+                LOCALHOST, 0, LOCALHOST, socketOptions);
+
+        Socket client = connect(pending.getPort(), 4);
+        try {
+            Socket accepted = pending.await(5000);
+            assertTrue(accepted.getTcpNoDelay());
+            assertEquals(4, read(accepted));
+        } finally {
+            client.close();
+        }
+    }
+
+    public void testCancelledConnectionFreesAddress() throws Exception {
+        PassiveDemultiplexer.PendingConnection cancelled = demultiplexer
+                .expect(LOCALHOST, 0, LOCALHOST, null);
+
+        cancelled.cancel();
+
+        PassiveDemultiplexer.PendingConnection waiting = demultiplexer.expect(
+                LOCALHOST, 0, LOCALHOST, null);
+        assertNotNull(waiting);
+
+        Socket client = connect(waiting.getPort(), 3);
+        try {
+            assertEquals(3, read(waiting.await(5000)));
+        } finally {
+            client.close();
+        }
+
+        try {
+            cancelled.await(5000);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testUnexpectedConnectionClosed() throws Exception {
+        PassiveDemultiplexer.PendingConnection pending = demultiplexer.expect(
+                LOCALHOST, 0, InetAddress.getByName("192.0.2.1"), null);
+
+        Socket client = new Socket(LOCALHOST, pending.getPort());
+        try {
+            // closed by the acceptor
+            assertEquals(-1, client.getInputStream().read());
+        } finally {
+            client.close();
+        }
+
+        pending.cancel();
+    }
+
+    public void testTimeout() throws Exception {
+        PassiveDemultiplexer.PendingConnection pending = demultiplexer.expect(
+                LOCALHOST, 0, LOCALHOST, null);
+
+        try {
+            pending.await(100);
+            fail("Must throw SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+    }
+
+    public void testDisposeFailsPending() throws Exception {
+        final PassiveDemultiplexer.PendingConnection pending = demultiplexer
+                .expect(LOCALHOST, 0, LOCALHOST, null);
+
+        demultiplexer.dispose();
+
+        try {
+            pending.await(5000);
+            fail("Must throw IOException");
+        } catch (SocketTimeoutException e) {
+            fail("Must fail before the timeout");
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            demultiplexer.expect(LOCALHOST, 0, LOCALHOST, null);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -22,7 +22,10 @@ package org.apache.ftpserver.impl;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
@@ -180,4 +183,109 @@ public class PassivePortsTest extends TestCase {
         assertEquals(0, valid.size());
     }
 
+    public void testAnyPortAfterOtherPorts() {
+        PassivePorts ports = new PassivePorts("0, 123", false);
+
+        assertEquals(123, ports.reserveNextPort());
+        assertEquals(0, ports.reserveNextPort());
+        assertEquals(0, ports.reserveNextPort());
+
+        ports.releasePort(123);
+        assertEquals(123, ports.reserveNextPort());
+    }
+
+    public void testReserveLargeRange() {
+        // spans several words of the bitmap, with a partial last word
+        PassivePorts ports = new PassivePorts("1000-1199", false);
+
+        Set<Integer> reserved = new HashSet<Integer>();
+        for (int i = 0; i < 200; i++) {
+            int port = ports.reserveNextPort();
+            assertTrue(port >= 1000 && port <= 1199);
+            assertTrue(reserved.add(port));
+        }
+        assertEquals(-1, ports.reserveNextPort());
+
+        ports.releasePort(1064);
+        assertEquals(1064, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+    }
+
+    public void testReleaseUnreservedPort() {
+        PassivePorts ports = new PassivePorts("123-125", false);
+
+        // must be ignored
+        ports.releasePort(124);
+        ports.releasePort(4711);
+
+        assertAllFree(ports, 3);
+    }
+
+    public void testQuarantinedPortSkipped() throws IOException {
+        ServerSocket ss = new ServerSocket(0);
+        int boundPort = ss.getLocalPort();
+        try {
+            PassivePorts ports = new PassivePorts(boundPort + "-"
+                    + (boundPort + 1), true);
+
+            // the bound port is never returned while another port is free
+            int port = ports.reserveNextPort();
+            assertEquals(boundPort + 1, port);
+            ports.releasePort(port);
+            assertEquals(boundPort + 1, ports.reserveNextPort());
+
+            assertEquals(-1, ports.reserveNextPort());
+        } finally {
+            ss.close();
+        }
+    }
+
+    public void testConcurrentReserveAndRelease() throws Exception {
+        final PassivePorts ports = new PassivePorts("2000-2099", false);
+        final AtomicInteger[] owners = new AtomicInteger[100];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = new AtomicInteger(0);
+        }
+        final AtomicInteger errors = new AtomicInteger(0);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        int port = ports.reserveNextPort();
+                        if (port == -1) {
+                            continue;
+                        }
+
+                        // no other thread may hold the same port
+                        AtomicInteger owner = owners[port - 2000];
+                        if (owner.incrementAndGet() != 1) {
+                            errors.incrementAndGet();
+                        }
+                        owner.decrementAndGet();
+
+                        ports.releasePort(port);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertAllFree(ports, 100);
+    }
+
+    private void assertAllFree(PassivePorts ports, int count) {
+        Set<Integer> reserved = new HashSet<Integer>();
+        for (int i = 0; i < count; i++) {
+            assertTrue(reserved.add(ports.reserveNextPort()));
+        }
+        assertFalse(reserved.contains(-1));
+        assertEquals(-1, ports.reserveNextPort());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PassiveSocketPoolTest extends TestCase {
+
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("127.0.0.1");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PassiveSocketPool pool;
+
+    private int port;
+
+    protected void setUp() throws Exception {
+        pool = new PassiveSocketPool();
+        port = TestUtil.findFreePort(12444);
+    }
+
+    protected void tearDown() throws Exception {
+        pool.dispose();
+    }
+
+    private DataConnectionConfiguration createConfig(String ports, int size) {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setPassivePorts(ports);
+        factory.setPassiveSocketPoolSize(size);
+        return factory.createDataConnectionConfiguration();
+    }
+
+    private void waitForAvailable(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && pool.getAvailable() != expected; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, pool.getAvailable());
+    }
+
+    public void testDisabled() {
+        DataConnectionConfiguration config = createConfig(
+                Integer.toString(port), 0);
+
+        assertNull(pool.take(config, LOCALHOST));
+        assertEquals(0, pool.getCapacity());
+        assertEquals(0, pool.getMisses());
+    }
+
+    public void testTakeRefills() throws Exception {
+        DataConnectionConfiguration config = createConfig(port + "-"
+                + (port + 10), 2);
+
+        // the pool is created and filled on first use
+        assertNull(pool.take(config, LOCALHOST));
+        assertEquals(1, pool.getMisses());
+        assertEquals(2, pool.getCapacity());
+        waitForAvailable(2);
+
+        ServerSocketChannel channel = pool.take(config, LOCALHOST);
+        assertNotNull(channel);
+        assertEquals(1, pool.getHits());
+        assertTrue(channel.isBlocking());
+        assertEquals(LOCALHOST, channel.socket().getInetAddress());
+        int localPort = channel.socket().getLocalPort();
+        assertTrue(localPort >= port && localPort <= port + 10);
+
+        // the taken socket is bound and accepts connections
+        Socket client = new Socket(LOCALHOST, localPort);
+        Socket accepted = channel.socket().accept();
+        accepted.close();
+        client.close();
+        channel.close();
+        config.releasePassivePort(localPort);
+
+        waitForAvailable(2);
+    }
+
+    public void testStaleConnectionsClosed() throws Exception {
+        DataConnectionConfiguration config = createConfig(
+                Integer.toString(port), 1);
+
+        pool.take(config, LOCALHOST);
+        waitForAvailable(1);
+
+        Socket stale = new Socket(LOCALHOST, port);
+
+        ServerSocketChannel channel = pool.take(config, LOCALHOST);
+        assertNotNull(channel);
+
+        channel.configureBlocking(false);
+        assertNull(channel.accept());
+
+        // closed by the pool
+        stale.setSoTimeout(2000);
+        assertEquals(-1, stale.getInputStream().read());
+
+        stale.close();
+        channel.close();
+    }
+
+    public void testNoFreePort() throws Exception {
+        DataConnectionConfiguration config = createConfig(
+                Integer.toString(port), 1);
+        assertEquals(port, config.requestPassivePort());
+
+        assertNull(pool.take(config, LOCALHOST));
+        Thread.sleep(200);
+        assertEquals(0, pool.getAvailable());
+
+        // filled as soon as the port is free
+        config.releasePassivePort(port);
+        assertNull(pool.take(config, LOCALHOST));
+        waitForAvailable(1);
+    }
+
+    public void testDisposeReleasesPorts() throws Exception {
+        DataConnectionConfiguration config = createConfig(
+                Integer.toString(port), 1);
+
+        pool.take(config, LOCALHOST);
+        waitForAvailable(1);
+
+        pool.dispose();
+        assertEquals(0, pool.getAvailable());
+        assertNull(pool.take(config, LOCALHOST));
+
+        assertEquals(port, config.requestPassivePort());
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(LOCALHOST, port));
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class RttEstimatorTest extends TestCase {
+
+    private RttEstimator estimator = new RttEstimator();
+
+    public void testUnknown() {
+        assertEquals(0, estimator.getRtt());
+
+        // no reply sent yet
+        estimator.requestReceived(1000);
+        assertEquals(0, estimator.getRtt());
+    }
+
+    public void testSingleSample() {
+        estimator.replySent(1000);
+        estimator.requestReceived(1500);
+
+        assertEquals(500, estimator.getRtt());
+    }
+
+    public void testOnlyFirstRequestAfterReply() {
+        estimator.replySent(1000);
+        estimator.requestReceived(1500);
+        estimator.requestReceived(9000);
+
+        assertEquals(500, estimator.getRtt());
+    }
+
+    public void testMedianIgnoresOutliers() {
+        long now = 0;
+        long[] samples = new long[] { 500, 100000, 450, 20, 520, 480 };
+        for (long sample : samples) {
+            estimator.replySent(now);
+            now += sample;
+            estimator.requestReceived(now);
+        }
+
+        assertEquals(480, estimator.getRtt());
+    }
+
+    public void testOnlyRecentSamples() {
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            estimator.replySent(now);
+            now += 10000;
+            estimator.requestReceived(now);
+        }
+        for (int i = 0; i < 8; i++) {
+            estimator.replySent(now);
+            now += 200;
+            estimator.requestReceived(now);
+        }
+
+        assertEquals(200, estimator.getRtt());
+    }
+}
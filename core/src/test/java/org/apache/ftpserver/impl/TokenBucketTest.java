@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TokenBucketTest extends TestCase {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public void testDefaultBurst() {
+        assertEquals(100, new TokenBucket(1000, 0).getBurst());
+        assertEquals(1, new TokenBucket(5, 0).getBurst());
+        assertEquals(300, new TokenBucket(1000, 300).getBurst());
+    }
+
+    public void testInvalidRate() {
+        try {
+            new TokenBucket(0, 100);
+            fail("Must fail due to zero rate");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testNoWaitWithinBurst() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(200, now));
+        assertEquals(0, bucket.reserve(300, now));
+    }
+
+    public void testWaitWhenEmpty() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(500, now));
+
+        // 250 bytes at 1000 bytes per second takes 250 ms
+        assertEquals(SECOND / 4, bucket.reserve(250, now));
+
+        // the next caller has to wait for the debt of the previous one
+        assertEquals(SECOND / 2, bucket.reserve(250, now));
+    }
+
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(500, now));
+        assertEquals(0, bucket.reserve(100, now + SECOND / 10));
+        assertEquals(SECOND / 10, bucket.reserve(100, now + SECOND / 10));
+    }
+
+    public void testRefillLimitedToBurst() {
+        TokenBucket bucket = new TokenBucket(1000, 500);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(500, now));
+
+        // even after a long pause, only the burst is available
+        assertEquals(0, bucket.reserve(500, now + 10 * SECOND));
+        assertEquals(SECOND / 10, bucket.reserve(100, now + 10 * SECOND));
+    }
+}
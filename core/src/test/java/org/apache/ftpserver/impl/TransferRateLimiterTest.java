@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferRateLimiterTest extends TestCase {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public void testNotLimited() throws Exception {
+        TransferRateLimiter limiter = new TransferRateLimiter(
+                new BandwidthLimiter(0, 0), null, new BandwidthLimiter(0, 0));
+
+        assertFalse(limiter.isLimited());
+        assertEquals(Long.MAX_VALUE, limiter.getBurst());
+
+        // must not block
+        limiter.take(Integer.MAX_VALUE);
+    }
+
+    public void testSmallestBurst() {
+        TransferRateLimiter limiter = new TransferRateLimiter(
+                new BandwidthLimiter(1000, 500), null,
+                new BandwidthLimiter(10000, 0), new BandwidthLimiter(0, 0));
+
+        assertTrue(limiter.isLimited());
+        assertEquals(500, limiter.getBurst());
+    }
+
+    public void testParentLimitsChildren() {
+        BandwidthLimiter parent = new BandwidthLimiter(1000, 500);
+        BandwidthLimiter child1 = new BandwidthLimiter(1000, 500);
+        BandwidthLimiter child2 = new BandwidthLimiter(1000, 500);
+        long now = System.nanoTime();
+
+        // each child is within its own limit, but together they use up the
+        // parent
+        assertEquals(0, Math.max(child1.reserve(500, now), parent.reserve(500,
+                now)));
+        assertEquals(SECOND / 2, Math.max(child2.reserve(500, now), parent
+                .reserve(500, now)));
+    }
+
+    public void testSiblingsShareParentCapacity() {
+        BandwidthLimiter parent = new BandwidthLimiter(1000, 1000);
+        TransferRateLimiter busy = new TransferRateLimiter(
+                new BandwidthLimiter(1000, 1000), parent);
+        TransferRateLimiter idle = new TransferRateLimiter(
+                new BandwidthLimiter(1000, 1000), parent);
+
+        // the parent capacity is not divided, the busy child may use all of
+        // it while its sibling is idle
+        assertEquals(0, busy.reserve(1000));
+
+        // and the sibling must then wait for the parent, although it has
+        // not used its own capacity
+        assertTrue(idle.reserve(500) > 0);
+    }
+
+    public void testChildLimitedByOwnRate() {
+        BandwidthLimiter parent = new BandwidthLimiter(10000, 10000);
+        TransferRateLimiter child = new TransferRateLimiter(
+                new BandwidthLimiter(1000, 1000), parent);
+
+        // the child never exceeds its own rate, even if the parent is idle
+        assertEquals(0, child.reserve(1000));
+        assertTrue(child.reserve(1000) > 0);
+    }
+
+    public void testCurrentRateCountsUnlimitedTransfers() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(0, 0);
+        new TransferRateLimiter(limiter).take(1000);
+
+        Thread.sleep(1100);
+
+        assertTrue(limiter.getCurrentRate() > 0);
+    }
+}
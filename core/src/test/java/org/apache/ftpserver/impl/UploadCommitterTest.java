@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.UploadDurability;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class UploadCommitterTest extends TestCase {
+
+    private static class RecordingListener implements DataTransferListener {
+        private final CountDownLatch done;
+
+        private final AtomicInteger completed = new AtomicInteger();
+
+        private volatile long transferredSize = -1;
+
+        private volatile IOException failure;
+
+        private volatile Thread thread;
+
+        public RecordingListener(final CountDownLatch done) {
+            this.done = done;
+        }
+
+        public void transferCompleted(long transferredSize) {
+            this.transferredSize = transferredSize;
+            this.thread = Thread.currentThread();
+            completed.incrementAndGet();
+            done.countDown();
+        }
+
+        public void transferFailed(IOException e) {
+            this.failure = e;
+            this.thread = Thread.currentThread();
+            done.countDown();
+        }
+    }
+
+    private File file;
+
+    private UploadCommitter committer = new UploadCommitter();
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("committer", ".tmp");
+    }
+
+    protected void tearDown() throws Exception {
+        committer.dispose();
+        file.delete();
+    }
+
+    public void testNoneIsNotWrapped() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        DataTransferListener listener = new RecordingListener(
+                new CountDownLatch(1));
+
+        assertSame(listener, committer.wrap(UploadDurability.NONE, out,
+                listener));
+        out.close();
+    }
+
+    public void testOtherStreamsAreNotWrapped() {
+        DataTransferListener listener = new RecordingListener(
+                new CountDownLatch(1));
+
+        assertSame(listener, committer.wrap(UploadDurability.SYNC,
+                new ByteArrayOutputStream(), listener));
+    }
+
+    public void testSyncInTransferThread() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        RecordingListener listener = new RecordingListener(
+                new CountDownLatch(1));
+
+        out.write(new byte[] { 1, 2, 3 });
+        committer.wrap(UploadDurability.SYNC, out, listener)
+                .transferCompleted(3);
+        out.close();
+
+        assertEquals(3, listener.transferredSize);
+        assertSame(Thread.currentThread(), listener.thread);
+    }
+
+    public void testFailedSync() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.close();
+        RecordingListener listener = new RecordingListener(
+                new CountDownLatch(1));
+
+        committer.wrap(UploadDurability.SYNC, out, listener)
+                .transferCompleted(3);
+
+        assertNotNull(listener.failure);
+        assertEquals(0, listener.completed.get());
+    }
+
+    public void testFailedTransferIsNotSynced() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        RecordingListener listener = new RecordingListener(
+                new CountDownLatch(1));
+        IOException failure = new IOException();
+
+        committer.wrap(UploadDurability.GROUP_COMMIT, out, listener)
+                .transferFailed(failure);
+        out.close();
+
+        assertSame(failure, listener.failure);
+        assertSame(Thread.currentThread(), listener.thread);
+    }
+
+    public void testGroupCommit() throws Exception {
+        int count = 20;
+        CountDownLatch done = new CountDownLatch(count);
+        FileOutputStream[] outs = new FileOutputStream[count];
+        RecordingListener[] listeners = new RecordingListener[count];
+
+        for (int i = 0; i < count; i++) {
+            outs[i] = new FileOutputStream(file, true);
+            outs[i].write(i);
+            listeners[i] = new RecordingListener(done);
+            committer.wrap(UploadDurability.GROUP_COMMIT, outs[i],
+                    listeners[i]).transferCompleted(i);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            outs[i].close();
+            assertEquals(i, listeners[i].transferredSize);
+            assertNotSame(Thread.currentThread(), listeners[i].thread);
+        }
+    }
+
+    public void testGroupCommitAfterDispose() throws Exception {
+        committer.dispose();
+
+        FileOutputStream out = new FileOutputStream(file);
+        RecordingListener listener = new RecordingListener(
+                new CountDownLatch(1));
+
+        committer.wrap(UploadDurability.GROUP_COMMIT, out, listener)
+                .transferCompleted(0);
+        out.close();
+
+        assertEquals(1, listener.completed.get());
+        assertSame(Thread.currentThread(), listener.thread);
+    }
+}
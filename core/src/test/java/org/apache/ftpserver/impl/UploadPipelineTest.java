@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class UploadPipelineTest extends TestCase {
+
+    private UploadPipeline pipeline = new UploadPipeline();
+
+    private BufferPool bufferPool = new BufferPool(16, 8, false);
+
+    protected void tearDown() throws Exception {
+        pipeline.dispose();
+    }
+
+    private void submit(final UploadPipeline.Ring ring, final byte[] data)
+            throws IOException {
+        ByteBuffer buffer = ring.acquire();
+        buffer.put(data);
+        ring.submit(buffer, data.length);
+    }
+
+    public void testWritesAllData() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UploadPipeline.Ring ring = pipeline.start(bufferPool, 3, out, null);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            byte[] data = new byte[i % 16 + 1];
+            Arrays.fill(data, (byte) i);
+            expected.write(data);
+            submit(ring, data);
+        }
+        ring.finish();
+
+        assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+        assertEquals(0, bufferPool.getInUse());
+        assertEquals(0, pipeline.getCapacity());
+    }
+
+    public void testTranslatesAscii() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UploadPipeline.Ring ring = pipeline.start(bufferPool, 2, out,
+                new AsciiTranslator(false, new byte[] { '\n' }));
+
+        submit(ring, "foo\r".getBytes("UTF-8"));
+        submit(ring, "\nbar\r\n".getBytes("UTF-8"));
+        ring.finish();
+
+        assertEquals("foo\nbar\n", new String(out.toByteArray(), "UTF-8"));
+        assertEquals(0, bufferPool.getInUse());
+    }
+
+    public void testReaderWaitsForFullRing() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch diskReady = new CountDownLatch(1);
+        OutputStream slowDisk = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    diskReady.await();
+                } catch (InterruptedException e) {
+                    throw new IOException();
+                }
+            }
+        };
+
+        final UploadPipeline.Ring ring = pipeline.start(bufferPool, 2,
+                slowDisk, null);
+        assertEquals(2, pipeline.getCapacity());
+
+        // the first buffer is being written, the second is waiting
+        submit(ring, new byte[] { 1 });
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        submit(ring, new byte[] { 2 });
+        assertEquals(1, pipeline.getBuffersFilled());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ring.recycle(ring.acquire());
+                    acquired.countDown();
+                } catch (IOException e) {
+                    // fails the test below
+                }
+            }
+        }.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, pipeline.getFullStalls());
+
+        diskReady.countDown();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        ring.finish();
+        assertEquals(0, bufferPool.getInUse());
+    }
+
+    public void testWriterFailure() throws Exception {
+        final IOException failure = new IOException();
+        OutputStream brokenDisk = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw failure;
+            }
+        };
+
+        UploadPipeline.Ring ring = pipeline.start(bufferPool, 1, brokenDisk,
+                null);
+        submit(ring, new byte[] { 1 });
+
+        try {
+            ring.acquire();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+
+        ring.abort();
+        assertEquals(0, bufferPool.getInUse());
+    }
+
+    public void testInterruptedAbortLeavesBuffersToWriter() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch diskReady = new CountDownLatch(1);
+        OutputStream slowDisk = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writing.countDown();
+                while (true) {
+                    try {
+                        diskReady.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // the disk can not be interrupted
+                    }
+                }
+            }
+        };
+
+        UploadPipeline.Ring ring = pipeline.start(bufferPool, 2, slowDisk,
+                null);
+        submit(ring, new byte[] { 1 });
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        Thread.currentThread().interrupt();
+        ring.abort();
+        assertTrue(Thread.interrupted());
+
+        // the writer still uses its buffer
+        assertEquals(1, bufferPool.getInUse());
+
+        diskReady.countDown();
+        for (int i = 0; i < 50 && bufferPool.getInUse() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, bufferPool.getInUse());
+        assertEquals(0, pipeline.getCapacity());
+    }
+
+    public void testAbortDiscardsData() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UploadPipeline.Ring ring = pipeline.start(bufferPool, 2, out, null);
+
+        ring.abort();
+
+        assertEquals(0, bufferPool.getInUse());
+        assertEquals(0, pipeline.getCapacity());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.charset.MalformedInputException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.impl.PWD;
+import org.apache.ftpserver.command.impl.STOR;
+import org.apache.ftpserver.command.impl.USER;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpRequestDecoderTest extends TestCase {
+
+    private static final int[] CHUNK_SIZES = new int[] { 1, 2, 3, 7,
+            Integer.MAX_VALUE };
+
+    private static class CountingCommandFactory implements CommandFactory {
+        private final Map<String, Command> commands = new HashMap<String, Command>();
+
+        private int lookups = 0;
+
+        public Command getCommand(String commandName) {
+            lookups++;
+            return commands.get(commandName);
+        }
+    }
+
+    private static class Output implements ProtocolDecoderOutput {
+        private final List<Object> messages = new ArrayList<Object>();
+
+        public void write(Object message) {
+            messages.add(message);
+        }
+
+        public void flush(NextFilter nextFilter, IoSession session) {
+            // nothing to flush
+        }
+    }
+
+    private CountingCommandFactory commandFactory;
+
+    private Command pwd = new PWD();
+
+    @Override
+    protected void setUp() throws Exception {
+        commandFactory = new CountingCommandFactory();
+        commandFactory.commands.put("PWD", pwd);
+        commandFactory.commands.put("STOR", new STOR());
+        commandFactory.commands.put("USER", new USER());
+    }
+
+    /**
+     * Decode the data in chunks, continuing after recoverable errors the same
+     * way as the protocol codec filter does
+     * @return The decoded requests, with errors as the thrown exceptions
+     */
+    private List<Object> decode(FtpRequestDecoder decoder, byte[] data,
+            int chunkSize) throws Exception {
+        IoSession session = new DummySession();
+        Output out = new Output();
+
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            int count = Math.min(chunkSize, data.length - offset);
+            IoBuffer in = IoBuffer.wrap(data, offset, count);
+
+            while (in.hasRemaining()) {
+                try {
+                    decoder.decode(session, in, out);
+                } catch (RecoverableProtocolDecoderException e) {
+                    out.write(e);
+                }
+            }
+        }
+
+        return out.messages;
+    }
+
+    private List<Object> decode(String data, int chunkSize) throws Exception {
+        return decode(new FtpRequestDecoder(commandFactory, 1024), data
+                .getBytes("UTF-8"), chunkSize);
+    }
+
+    public void testSameAsRequestLineParsing() throws Exception {
+        String[] lines = new String[] { "PWD", "pwd", "XPWD", "xpwd", "Pwd",
+                "STOR foo", "stor foo bar", "STOR  foo", "STOR foo ",
+                "  STOR foo", "\tSTOR\tfoo", "STOR ", "X", "x", "XX",
+                "FOO bar", "XFOO", "", " ", "\r", "TOOLONGCOMMAND arg",
+                "XTOOLONGC", "USER \u00e5\u00e4\u00f6", "\u00e5\u00e4\u00f6 foo",
+                "CWD\r\rfoo", "STOR\u0001 foo" };
+
+        for (String line : lines) {
+            for (int chunkSize : CHUNK_SIZES) {
+                List<Object> messages = decode(line + "\r\n" + line + "\n",
+                        chunkSize);
+
+                DefaultFtpRequest expected = new DefaultFtpRequest(line);
+                assertEquals(2, messages.size());
+                for (Object message : messages) {
+                    DefaultFtpRequest actual = (DefaultFtpRequest) message;
+                    String context = "\"" + line + "\" with chunk size "
+                            + chunkSize;
+
+                    assertEquals(context, expected.getCommand(), actual
+                            .getCommand());
+                    assertEquals(context, expected.getArgument(), actual
+                            .getArgument());
+                    assertEquals(context, expected.getRequestLine(), actual
+                            .getRequestLine());
+                    assertSame(context, commandFactory.commands.get(expected
+                            .getCommand()), actual.getResolvedCommand());
+                }
+            }
+        }
+    }
+
+    public void testKnownCommandLookedUpOnce() throws Exception {
+        FtpRequestDecoder decoder = new FtpRequestDecoder(commandFactory, 1024);
+
+        List<Object> messages = decode(decoder, "PWD\r\nxpwd\r\nPwd\r\n"
+                .getBytes("UTF-8"), Integer.MAX_VALUE);
+        messages.addAll(decode(decoder, "XPWD\r\n".getBytes("UTF-8"),
+                Integer.MAX_VALUE));
+
+        assertEquals(1, commandFactory.lookups);
+        assertEquals(4, messages.size());
+        for (Object message : messages) {
+            assertSame(pwd, ((DefaultFtpRequest) message).getResolvedCommand());
+        }
+
+        // the command name is reused when sent as is
+        assertSame(((DefaultFtpRequest) messages.get(0)).getCommand(),
+                ((DefaultFtpRequest) messages.get(0)).getRequestLine());
+    }
+
+    public void testUnknownCommandLookedUpEachTime() throws Exception {
+        List<Object> messages = decode("FOO\r\nFOO\r\n", Integer.MAX_VALUE);
+
+        assertEquals(2, commandFactory.lookups);
+        assertEquals(2, messages.size());
+        assertNull(((DefaultFtpRequest) messages.get(0)).getResolvedCommand());
+    }
+
+    public void testTooLongLine() throws Exception {
+        FtpRequestDecoder decoder = new FtpRequestDecoder(commandFactory, 10);
+
+        for (int chunkSize : CHUNK_SIZES) {
+            List<Object> messages = decode(decoder,
+                    "USER foo\r\nSTOR foobar\r\nPWD\r\n".getBytes("UTF-8"),
+                    chunkSize);
+
+            assertEquals(3, messages.size());
+            assertEquals("USER foo", messages.get(0).toString());
+            assertTrue(messages.get(1) instanceof RecoverableProtocolDecoderException);
+            assertEquals("PWD", messages.get(2).toString());
+        }
+    }
+
+    public void testInvalidUtf8() throws Exception {
+        FtpRequestDecoder decoder = new FtpRequestDecoder(commandFactory, 1024);
+
+        try {
+            decode(decoder, new byte[] { 'S', 'T', 'O', 'R', ' ', (byte) 0xff,
+                    '\r', '\n' }, Integer.MAX_VALUE);
+            fail("Must throw MalformedInputException");
+        } catch (MalformedInputException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpServerContext;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpResponseEncoderTest extends TestCase {
+
+    private static class Output implements ProtocolEncoderOutput {
+        private final List<IoBuffer> buffers = new ArrayList<IoBuffer>();
+
+        public void write(Object encodedMessage) {
+            buffers.add((IoBuffer) encodedMessage);
+        }
+
+        public void mergeAll() {
+            // not used
+        }
+
+        public WriteFuture flush() {
+            return null;
+        }
+    }
+
+    private DefaultFtpServerContext context;
+
+    private FtpIoSession session;
+
+    private FtpResponseEncoder encoder;
+
+    @Override
+    protected void setUp() throws Exception {
+        context = new DefaultFtpServerContext();
+        session = new FtpIoSession(new DummySession(), context);
+        encoder = new FtpResponseEncoder();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        context.dispose();
+    }
+
+    private String encode(FtpReply reply) throws Exception {
+        Output out = new Output();
+        encoder.encode(session, reply, out);
+
+        assertEquals(1, out.buffers.size());
+        IoBuffer buf = out.buffers.get(0);
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private IoBuffer encodeToBuffer(FtpReply reply) throws Exception {
+        Output out = new Output();
+        encoder.encode(session, reply, out);
+        return out.buffers.get(0);
+    }
+
+    public void testConstantReplyShared() throws Exception {
+        LocalizedFtpReply reply = LocalizedFtpReply.translate(session, null,
+                context, 200, "NOOP", null);
+        assertTrue(reply.isConstant());
+
+        assertEquals("200 Command NOOP okay.\r\n", encode(reply));
+
+        // encoded again from the cache, the cached buffer must not have been
+        // consumed by the first write
+        IoBuffer buf = encodeToBuffer(LocalizedFtpReply.translate(session,
+                null, context, 200, "NOOP", null));
+        assertTrue(buf.isReadOnly());
+        assertEquals("200 Command NOOP okay.\r\n", encode(reply));
+    }
+
+    public void testReplyWithVariables() throws Exception {
+        LocalizedFtpReply reply = LocalizedFtpReply.translate(session,
+                new DefaultFtpRequest("FOO"), context, 502, "not.implemented",
+                null);
+        assertFalse(reply.isConstant());
+        assertEquals("502 Command FOO not implemented.\r\n", encode(reply));
+
+        reply = LocalizedFtpReply.translate(session,
+                new DefaultFtpRequest("BAR"), context, 502, "not.implemented",
+                null);
+        assertEquals("502 Command BAR not implemented.\r\n", encode(reply));
+    }
+
+    public void testSameMessageWithDifferentCodes() throws Exception {
+        // no such messages, both are empty
+        assertEquals("550 \r\n", encode(LocalizedFtpReply.translate(session,
+                null, context, 550, "no.such.message", null)));
+        assertEquals("551 \r\n", encode(LocalizedFtpReply.translate(session,
+                null, context, 551, "no.such.message", null)));
+        assertEquals("550 \r\n", encode(LocalizedFtpReply.translate(session,
+                null, context, 550, "no.such.message", null)));
+    }
+
+    public void testMultiLineNonAsciiReply() throws Exception {
+        FtpReply reply = new DefaultFtpReply(250, new String[] {
+                "\u00e5\u00e4\u00f6", "200 foo", "\u20ac end" });
+
+        assertEquals(reply.toString(), encode(reply));
+    }
+
+    public void testReplyLargerThanScratchBuffer() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("\u00e5\u20ac");
+        }
+        FtpReply reply = new DefaultFtpReply(200, sb.toString());
+
+        assertEquals(reply.toString(), encode(reply));
+
+        // and the thread's scratch buffer still works for small replies
+        assertEquals("200 foo\r\n", encode(new DefaultFtpReply(200, "foo")));
+    }
+}
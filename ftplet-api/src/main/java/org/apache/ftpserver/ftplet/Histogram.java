@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ftplet;
+
+/**
+ * A distribution of recorded values, e.g. the durations of data transfers.
+ * Values are grouped into buckets, so percentiles are approximate, while the
+ * count, minimum, maximum and mean are exact.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface Histogram {
+
+    /**
+     * Get the number of recorded values
+     * @return The number of values
+     */
+    long getCount();
+
+    /**
+     * Get the smallest recorded value
+     * @return The smallest value, 0 if no values have been recorded
+     */
+    long getMin();
+
+    /**
+     * Get the largest recorded value
+     * @return The largest value, 0 if no values have been recorded
+     */
+    long getMax();
+
+    /**
+     * Get the mean of the recorded values
+     * @return The mean, 0 if no values have been recorded
+     */
+    double getMean();
+
+    /**
+     * Get an approximate percentile of the recorded values
+     * @param percentile The percentile, between 0 and 100, e.g. 99 for the
+     *   value which 99% of the recorded values do not exceed
+     * @return The percentile, within 1/8 of the actual value, 0 if no values
+     *         have been recorded
+     */
+    long getPercentile(double percentile);
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ftplet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A file which can reserve disk space for an upload of a known size, as
+ * announced by the client with the ALLO command. Reserving the space up
+ * front lets the file system lay out large files contiguously, instead of
+ * growing them one write at a time.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface PreallocatableFtpFile extends FtpFile {
+
+    /**
+     * Create output stream for writing, reserving space for the data to be
+     * written. Any reserved space not written to must be released when the
+     * stream is closed, so that the file ends after the last written byte.
+     * @param offset The number of bytes at where to start writing.
+     *      If the file is not random accessible,
+     *      any offset other than zero will throw an exception.
+     * @param allocationSize The number of bytes expected to be written from
+     *      the offset
+     * @return An {@link OutputStream} used to write to the {@link FtpFile}
+     * @throws IOException when the io stream can't be created
+     */
+    OutputStream createOutputStream(long offset, long allocationSize)
+            throws IOException;
+}
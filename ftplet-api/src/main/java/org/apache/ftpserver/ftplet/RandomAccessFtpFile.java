@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ftplet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A file which can be written in parts, as requested by the client with the
+ * RANG command. Several parts of the same file can be uploaded at the same
+ * time over different data connections.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface RandomAccessFtpFile extends FtpFile {
+
+    /**
+     * Create output stream for writing part of the file. Unlike
+     * {@link FtpFile#createOutputStream(long)}, the file must not be
+     * truncated at the offset, any data after the written bytes is left
+     * untouched. The file is extended if the offset is beyond its end.
+     * @param offset The number of bytes at where to start writing
+     * @return An {@link OutputStream} used to write to the {@link FtpFile}
+     * @throws IOException when the io stream can't be created
+     */
+    OutputStream createRangeOutputStream(long offset) throws IOException;
+}
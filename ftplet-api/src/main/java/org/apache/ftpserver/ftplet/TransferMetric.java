@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ftplet;
+
+/**
+ * The measurements recorded for every completed data transfer, each kept in a
+ * {@link Histogram}
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum TransferMetric {
+
+    /**
+     * The number of bytes transferred per second over the
+     * {@link #DURATION} of the transfer
+     */
+    THROUGHPUT,
+
+    /**
+     * The microseconds from the start of the transfer until the first data
+     * has been written to the client or read from the client
+     */
+    TIME_TO_FIRST_BYTE,
+
+    /**
+     * The microseconds spent opening the data connection, including
+     * accepting or connecting the socket and the TLS handshake
+     */
+    CONNECTION_SETUP_TIME,
+
+    /**
+     * The microseconds from the start of the transfer until the last data has
+     * been transferred, not including the connection setup
+     */
+    DURATION
+}
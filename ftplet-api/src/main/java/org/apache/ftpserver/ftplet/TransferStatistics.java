@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.ftplet;
+
+/**
+ * Statistical information about the data transfers of the ftp server, in
+ * addition to the totals of {@link FtpStatistics}. The statistics of the
+ * server implement this interface, so it is available by casting the result
+ * of {@link FtpletContext#getFtpStatistics()}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface TransferStatistics extends FtpStatistics {
+
+    /**
+     * Get the current download rate of the whole server
+     * @return The current number of bytes per second
+     */
+    long getCurrentDownloadRate();
+
+    /**
+     * Get the current upload rate of the whole server
+     * @return The current number of bytes per second
+     */
+    long getCurrentUploadRate();
+
+    /**
+     * Get the current download rate for all sessions of the specific user
+     * @param user The {@link User} for which to retrieve the rate
+     * @return The current number of bytes per second
+     */
+    long getCurrentUserDownloadRate(User user);
+
+    /**
+     * Get the current upload rate for all sessions of the specific user
+     * @param user The {@link User} for which to retrieve the rate
+     * @return The current number of bytes per second
+     */
+    long getCurrentUserUploadRate(User user);
+
+    /**
+     * Get the current download rate of the specific session
+     * @param session The {@link FtpSession} for which to retrieve the rate
+     * @return The current number of bytes per second
+     */
+    long getCurrentSessionDownloadRate(FtpSession session);
+
+    /**
+     * Get the current upload rate of the specific session
+     * @param session The {@link FtpSession} for which to retrieve the rate
+     * @return The current number of bytes per second
+     */
+    long getCurrentSessionUploadRate(FtpSession session);
+
+    /**
+     * Get the number of data transfer buffers reused from the buffer pools
+     * @return The number of pool hits
+     */
+    long getTransferBufferPoolHits();
+
+    /**
+     * Get the number of data transfer buffers which had to be allocated
+     * because the buffer pools were empty
+     * @return The number of pool misses
+     */
+    long getTransferBufferPoolMisses();
+
+    /**
+     * Get the number of pooled data transfer buffers currently used by
+     * running transfers
+     * @return The number of buffers in use
+     */
+    int getTransferBuffersInUse();
+
+    /**
+     * Get the number of filled buffers of pipelined uploads waiting to be
+     * written to disk. Compared to the capacity, this shows how full the
+     * rings of the pipelined uploads are.
+     * @return The number of filled buffers
+     */
+    int getUploadPipelineBuffersFilled();
+
+    /**
+     * Get the total number of buffers in the rings of the running pipelined
+     * uploads
+     * @return The number of buffers
+     */
+    int getUploadPipelineCapacity();
+
+    /**
+     * Get the number of times a pipelined upload stopped reading from the
+     * client because all buffers of its ring were waiting to be written
+     * @return The number of full ring stalls
+     */
+    long getUploadPipelineFullStalls();
+
+    /**
+     * Get the number of times a pipelined upload had no data to write
+     * because it was waiting for the client
+     * @return The number of empty ring stalls
+     */
+    long getUploadPipelineEmptyStalls();
+
+    /**
+     * Get the distribution of a measurement of the completed downloads
+     * @param metric The measurement
+     * @return The histogram of the measurement for all listeners
+     */
+    Histogram getDownloadHistogram(TransferMetric metric);
+
+    /**
+     * Get the distribution of a measurement of the completed uploads
+     * @param metric The measurement
+     * @return The histogram of the measurement for all listeners
+     */
+    Histogram getUploadHistogram(TransferMetric metric);
+
+    /**
+     * Get the number of passive sockets bound in advance and waiting to be
+     * used by a PASV. Compared to the capacity, this shows how full the
+     * passive socket pools are.
+     * @return The number of available pooled sockets
+     */
+    int getPassiveSocketPoolAvailable();
+
+    /**
+     * Get the total size of the passive socket pools
+     * @return The number of sockets the pools are kept filled to
+     */
+    int getPassiveSocketPoolCapacity();
+
+    /**
+     * Get the number of PASV served with a pooled socket
+     * @return The number of pool hits
+     */
+    long getPassiveSocketPoolHits();
+
+    /**
+     * Get the number of PASV which had to bind a socket themselves because
+     * the passive socket pool was empty
+     * @return The number of pool misses
+     */
+    long getPassiveSocketPoolMisses();
+
+    /**
+     * Get the distribution of the time taken to serve PASV and EPSV commands,
+     * in microseconds
+     * @return The histogram of the passive command times
+     */
+    Histogram getPassiveHistogram();
+}
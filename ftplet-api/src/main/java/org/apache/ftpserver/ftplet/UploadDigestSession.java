@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ftplet;
+
+import java.util.Map;
+
+/**
+ * A session which provides the hashes of uploaded data, in addition to the
+ * information of {@link FtpSession}. The sessions passed to the Ftplets by
+ * the server implement this interface.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface UploadDigestSession extends FtpSession {
+
+    /**
+     * Get the hashes of the data received by the last upload. Only
+     * available if the server is configured to hash uploads and the upload
+     * replaced the whole file, for example in
+     * {@link DefaultFtplet#onUploadEnd(FtpSession, FtpRequest)}.
+     * @return The hashes as hex digits, keyed by algorithm name such as
+     *         "MD5" or "SHA-256". Empty if the last upload was not hashed.
+     */
+    Map<String, String> getUploadDigests();
+}